@@ -0,0 +1,149 @@
+package ru.avsh.specialist.mx.units;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.avsh.specialist.mx.units.memory.BenchmarkMachine;
+import ru.avsh.specialist.mx.units.memory.MemoryManager;
+
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Класс "Микробенчмарк выполнения команд CPU" - по группам команд и механизмам выполнения.
+ * <p>
+ * Программа группы команд выполняется в цикле с адреса 0x0000 страницы 0 RAM (данные - с адреса 0x8000,
+ * стек - ниже 0x8800). Один вызов выполняет не менее BATCH эмулированных тактов, поэтому результат в ops/us
+ * равен эффективной частоте эмулированного CPU в МГц.
+ *
+ * @author -=AVSh=-
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CpuDispatchBenchmark {
+    // Количество эмулированных тактов за один вызов
+    private static final int BATCH  = 100_000;
+    // Количество повторов тела цикла программы группы команд
+    private static final int REPEAT = 16;
+    // Адреса данных и вершины стека
+    private static final int DATA   = 0x8000;
+    private static final int STACK  = 0x8800;
+
+    @Param({"mov", "alu", "rotate", "incdec", "lxi_dad", "load_store", "push_pop", "jump_call"})
+    private String family;
+
+    @Param({"interp", "blocks", "compiler"})
+    private String engine;
+
+    private CPUi8080 fCPU;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        final BenchmarkMachine machine    = new BenchmarkMachine(false);
+        final MemoryManager    memManager = machine.getMemoryManager();
+        final byte[]           program    = program(family);
+        memManager.writeBlock(0x0000, program, 0, program.length);
+        for (int address = DATA; address < STACK; address++) {
+            memManager.writeByte(address, address * 7);
+        }
+
+        fCPU = new CPUi8080(machine.getRAM()::getPage, new ClockSpeedGenerator(), memManager, null);
+        fCPU.setBlockCompiler("compiler".equals(engine));
+        fCPU.setBlockCache(!"interp".equals(engine));
+        fCPU.fBC = 0x8010;
+        fCPU.fDE = 0x8020;
+        fCPU.fHL = DATA;
+        fCPU.fSP = STACK;
+        fCPU.fPC = 0x0000;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public int dispatch() {
+        final CPUi8080 cpu = fCPU;
+        int cycles = 0;
+        while (cycles < BATCH) {
+            cycles += cpu.execCmd();
+        }
+        return cycles;
+    }
+
+    /**
+     * Формирует программу группы команд: тело цикла (повторенное REPEAT раз) и переход на начало.
+     * Команды не изменяют регистры HL (кроме lxi_dad и load_store, где HL восстанавливается) и SP.
+     *
+     * @param family группа команд
+     * @return образ программы
+     */
+    private static byte[] program(final String family) {
+        final int[] body;
+        switch (family) {
+            case "mov": // MOV B,C; MOV D,E; MOV A,B; MOV C,A; MOV E,D; MOV A,M; MOV M,A
+                body = new int[]{0x41, 0x53, 0x78, 0x4F, 0x5A, 0x7E, 0x77};
+                break;
+            case "alu": // ADD B; SUB C; ANA D; ORA E; XRA H; CMP L; ADI 5A; ADC M; SBI 11
+                body = new int[]{0x80, 0x91, 0xA2, 0xB3, 0xAC, 0xBD, 0xC6, 0x5A, 0x8E, 0xDE, 0x11};
+                break;
+            case "rotate": // RLC; RRC; RAL; RAR; CMA; STC; CMC; DAA
+                body = new int[]{0x07, 0x0F, 0x17, 0x1F, 0x2F, 0x37, 0x3F, 0x27};
+                break;
+            case "incdec": // INR B; DCR C; INR D; DCR E; INX B; DCX D; INR M; DCR M
+                body = new int[]{0x04, 0x0D, 0x14, 0x1D, 0x03, 0x1B, 0x34, 0x35};
+                break;
+            case "lxi_dad": // LXI B,1234; LXI D,0101; DAD B; DAD D; DAD H; LXI H,8000
+                body = new int[]{0x01, 0x34, 0x12, 0x11, 0x01, 0x01, 0x09, 0x19, 0x29, 0x21, 0x00, 0x80};
+                break;
+            case "load_store": // LDA 8000; STA 8001; LHLD 8002; SHLD 8004; LDAX B; STAX D; LXI H,8000
+                body = new int[]{0x3A, 0x00, 0x80, 0x32, 0x01, 0x80, 0x2A, 0x02, 0x80, 0x22, 0x04, 0x80,
+                                 0x0A, 0x12, 0x21, 0x00, 0x80};
+                break;
+            case "push_pop": // PUSH B; PUSH D; PUSH H; PUSH PSW; XTHL; POP PSW; POP H; POP D; POP B
+                body = new int[]{0xC5, 0xD5, 0xE5, 0xF5, 0xE3, 0xF1, 0xE1, 0xD1, 0xC1};
+                break;
+            case "jump_call":
+                // 0000: CALL 0010; XRA A; CNZ 0010; JZ 000B; NOP; 000B: JMP 0000; 0010: RET
+                return toBytes(new int[]{0xCD, 0x10, 0x00, 0xAF, 0xC4, 0x10, 0x00, 0xCA, 0x0B, 0x00, 0x00,
+                                         0xC3, 0x00, 0x00, 0x00, 0x00, 0xC9});
+            default:
+                throw new IllegalArgumentException(String.format("Неизвестная группа команд: %s", family));
+        }
+        final ByteArrayOutputStream program = new ByteArrayOutputStream();
+        final byte[] bytes = toBytes(body);
+        for (int i = 0; i < REPEAT; i++) {
+            program.write(bytes, 0, bytes.length);
+        }
+        // JMP 0000
+        program.write(0xC3);
+        program.write(0x00);
+        program.write(0x00);
+        return program.toByteArray();
+    }
+
+    /**
+     * Преобразует коды команд в массив байт.
+     *
+     * @param codes коды команд
+     * @return массив байт
+     */
+    private static byte[] toBytes(final int[] codes) {
+        final byte[] bytes = new byte[codes.length];
+        for (int i = 0; i < codes.length; i++) {
+            bytes[i] = (byte) codes[i];
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,83 @@
+package ru.avsh.specialist.mx.units.memory;
+
+import com.sun.javafx.application.PlatformImpl;
+import ru.avsh.specialist.mx.units.memory.units.KeyboardPort;
+import ru.avsh.specialist.mx.units.memory.units.MainMemory;
+import ru.avsh.specialist.mx.units.memory.units.MainMemoryPort;
+import ru.avsh.specialist.mx.units.memory.units.ProgrammableTimer;
+import ru.avsh.specialist.mx.units.memory.units.Screen;
+import ru.avsh.specialist.mx.units.memory.units.ScreenColorPort;
+import ru.avsh.specialist.mx.units.memory.units.SimpleMemory;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static ru.avsh.specialist.mx.helpers.Constants.NUMBER_PAGES_RAMDISK;
+
+/**
+ * Класс "Минимальная машина для микробенчмарков" - устройства памяти "Специалиста MX" без окна, звука и тактового
+ * генератора. Адреса устройств - как в SpecialistMX (без контроллера дисковода и порта программатора).
+ *
+ * @author -=AVSh=-
+ */
+public final class BenchmarkMachine {
+    // Границы диапазонов адресов
+    public static final int SCREEN_START = 0x9000;
+    public static final int SCREEN_END   = 0xC000;
+    public static final int DEVICE_START = 0xFFC0;
+
+    private static final AtomicBoolean FX_STARTED = new AtomicBoolean();
+
+    private final MainMemory        fRAM;
+    private final Screen            fScreen;
+    private final ProgrammableTimer fTimer;
+    private final MemoryManager     fMemManager;
+
+    /**
+     * Конструктор.
+     *
+     * @param withScreen true = подключить экран (требует инициализации JavaFX Toolkit, окно не создается)
+     */
+    public BenchmarkMachine(final boolean withScreen) {
+        fScreen     = withScreen ? createScreen() : null;
+        fRAM        = new MainMemory(NUMBER_PAGES_RAMDISK + 1, fScreen);
+        fTimer      = new ProgrammableTimer(null);
+        fMemManager = new MemoryManager();
+        fMemManager.addMemoryUnit(0x0000, fRAM);
+        if (fScreen != null) {
+            fMemManager.addMemoryUnit(SCREEN_START, fScreen);
+            fMemManager.addMemoryUnit(0xFFF8, new ScreenColorPort(fScreen));
+        }
+        fMemManager.addMemoryUnit(DEVICE_START, new SimpleMemory(0x20));
+        fMemManager.addMemoryUnit(0xFFE0, new KeyboardPort(null));
+        fMemManager.addMemoryUnit(0xFFEC, fTimer);
+        fMemManager.addMemoryUnit(0xFFFC, new MainMemoryPort(fRAM));
+    }
+
+    /**
+     * Создает экран. JavaFX Toolkit инициализируется один раз (экран - изображение JavaFX с таймером анимации).
+     *
+     * @return экран
+     */
+    public static Screen createScreen() {
+        if (!FX_STARTED.getAndSet(true)) {
+            PlatformImpl.startup(() -> { });
+        }
+        return new Screen();
+    }
+
+    public MainMemory getRAM() {
+        return fRAM;
+    }
+
+    public Screen getScreen() {
+        return fScreen;
+    }
+
+    public ProgrammableTimer getTimer() {
+        return fTimer;
+    }
+
+    public MemoryManager getMemoryManager() {
+        return fMemManager;
+    }
+}
@@ -0,0 +1,136 @@
+package ru.avsh.specialist.mx.units.memory;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.avsh.specialist.mx.units.memory.units.MainMemory;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Класс "Микробенчмарк диспетчера запоминающих устройств" - чтение/запись байт по диапазонам адресов
+ * (RAM, экран, устройства) и переключение страниц памяти.
+ * <p>
+ * Один вызов выполняет OPS операций, поэтому результат в ns/op - время одной операции.
+ *
+ * @author -=AVSh=-
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MemoryManagerBenchmark {
+    // Количество операций за один вызов
+    private static final int OPS = 1024;
+
+    // ram    - RAM (0x0000-0x8FFF);
+    // screen - экран (0x9000-0xBFFF);
+    // device - ячейки 0xFFC0-0xFFDF и порт клавиатуры 0xFFE0-0xFFE3 (запись - только в ячейки 0xFFC0-0xFFDF)
+    @Param({"ram", "screen", "device"})
+    private String range;
+
+    private MemoryManager fMemManager;
+    private MainMemory    fRAM;
+    private int[]         fReadAddresses;
+    private int[]         fWriteAddresses;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        final BenchmarkMachine machine = new BenchmarkMachine(!"ram".equals(range));
+        fMemManager = machine.getMemoryManager();
+        fRAM        = machine.getRAM();
+
+        final int start;
+        final int readEnd;
+        final int writeEnd;
+        switch (range) {
+            case "ram":
+                start    = 0x0000;
+                readEnd  = BenchmarkMachine.SCREEN_START;
+                writeEnd = BenchmarkMachine.SCREEN_START;
+                break;
+            case "screen":
+                start    = BenchmarkMachine.SCREEN_START;
+                readEnd  = BenchmarkMachine.SCREEN_END;
+                writeEnd = BenchmarkMachine.SCREEN_END;
+                break;
+            case "device":
+                start    = BenchmarkMachine.DEVICE_START;
+                readEnd  = 0xFFE4;
+                writeEnd = 0xFFE0;
+                break;
+            default:
+                throw new IllegalArgumentException(String.format("Неизвестный диапазон адресов: %s", range));
+        }
+        fReadAddresses  = addresses(start, readEnd );
+        fWriteAddresses = addresses(start, writeEnd);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(OPS)
+    public int readByte() {
+        final MemoryManager memManager = fMemManager;
+        int result = 0;
+        for (int address : fReadAddresses) {
+            result += memManager.readByte(address);
+        }
+        return result;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(OPS)
+    public void writeByte() {
+        final MemoryManager memManager = fMemManager;
+        int value = 0;
+        for (int address : fWriteAddresses) {
+            memManager.writeByte(address, value++);
+        }
+    }
+
+    /**
+     * Переключение страниц памяти (RAM-диск, ROM-диск, страница 0) с чтением байта из выбранной страницы.
+     *
+     * @return сумма прочитанных байт
+     */
+    @Benchmark
+    @OperationsPerInvocation(OPS)
+    public int setPage() {
+        final MemoryManager memManager = fMemManager;
+        final MainMemory    ram        = fRAM;
+        int result = 0;
+        for (int i = 0; i < OPS; i++) {
+            ram.setPage(i % (MainMemory.ROM_DISK + 1));
+            result += memManager.readByte(i);
+        }
+        ram.setPage(0);
+        return result;
+    }
+
+    /**
+     * Формирует OPS адресов, равномерно распределенных по диапазону [start, end).
+     *
+     * @param start начальный адрес
+     * @param end   конечный адрес (не включается)
+     * @return адреса
+     */
+    private static int[] addresses(final int start, final int end) {
+        final int[] addresses = new int[OPS];
+        final int   length    = end - start;
+        for (int i = 0; i < OPS; i++) {
+            addresses[i] = start + (int) ((i * 0x9E37L) % length);
+        }
+        return addresses;
+    }
+}
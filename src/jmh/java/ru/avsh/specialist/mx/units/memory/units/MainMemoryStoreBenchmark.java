@@ -0,0 +1,120 @@
+package ru.avsh.specialist.mx.units.memory.units;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Класс "Микробенчмарк хранилища оперативной памяти" - чтение и запись байт по случайным адресам в массиве
+ * (рабочая копия памяти MainMemory) и в ByteBuffer (прямом и отображенном в файл) того же размера.
+ * <p>
+ * Обоснование того, что рабочей копией памяти остается массив, а в файл RAM-диска при выходе записываются только
+ * измененные страницы. Один вызов выполняет OPS пар "чтение + запись", поэтому результат в ns/op - время одной пары.
+ *
+ * @author -=AVSh=-
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MainMemoryStoreBenchmark {
+    // Количество пар "чтение + запись" за один вызов
+    private static final int OPS  = 1024;
+    // Размер хранилища: RAM + RAM-диск (8 страниц) + ROM-диск
+    private static final int SIZE = 0xFFC0 * 9 + 0xC000;
+
+    // array  - массив байт;
+    // direct - прямой ByteBuffer;
+    // mapped - ByteBuffer, отображенный в файл
+    @Param({"array", "direct", "mapped"})
+    private String store;
+
+    private byte[]     fArray;
+    private ByteBuffer fBuffer;
+    private File       fFile;
+    private int[]      fAddresses;
+    private int        fIndex;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        switch (store) {
+            case "array":
+                fArray  = new byte[SIZE];
+                break;
+            case "direct":
+                fBuffer = ByteBuffer.allocateDirect(SIZE);
+                break;
+            case "mapped":
+                fFile   = File.createTempFile("ramdisk", ".bin");
+                try (RandomAccessFile raf = new RandomAccessFile(fFile, "rw")) {
+                    fBuffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, SIZE);
+                }
+                break;
+            default:
+                throw new IllegalArgumentException(String.format("Неизвестное хранилище: %s", store));
+        }
+        // Адреса в пределах страницы памяти, смещенной на случайную страницу (как при работе с RAM-диском)
+        final Random random = new Random(1);
+        fAddresses = new int[OPS * 16];
+        for (int i = 0; i < fAddresses.length; i++) {
+            fAddresses[i] = 0xFFC0 * random.nextInt(9) + random.nextInt(0xFFC0);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        fBuffer = null;
+        if ((fFile != null) && !fFile.delete()) {
+            fFile.deleteOnExit();
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(OPS)
+    public int readWrite() {
+        final int[] addresses = fAddresses;
+        final int   from      = fIndex;
+        fIndex = (from + OPS) % addresses.length;
+
+        int sum = 0;
+        if (fArray != null) {
+            final byte[] array = fArray;
+            for (int i = from; i < from + OPS; i++) {
+                final int address = addresses[i];
+                final int value   = array[address] & 0xFF;
+                array[address] = (byte) (value + 1);
+                sum += value;
+            }
+        } else {
+            final ByteBuffer buffer = fBuffer;
+            for (int i = from; i < from + OPS; i++) {
+                final int address = addresses[i];
+                final int value   = buffer.get(address) & 0xFF;
+                buffer.put(address, (byte) (value + 1));
+                sum += value;
+            }
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,73 @@
+package ru.avsh.specialist.mx.units.memory.units;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Класс "Микробенчмарк таймера КР580ВИ53" - тактирование запрограммированных счетчиков (без вывода звука).
+ * <p>
+ * Один вызов выполняет OPS тактов таймера, поэтому результат в ns/op - время одного такта.
+ *
+ * @author -=AVSh=-
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProgrammableTimerBenchmark {
+    // Количество тактов таймера за один вызов
+    private static final int OPS = 1024;
+
+    private ProgrammableTimer fTimer;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        fTimer = new ProgrammableTimer(null);
+        // Счетчики 0 и 1 - режим 3 (меандр), счетчик 2 - режим 2 (делитель), загрузка младшего, затем старшего байта
+        setup(0x36, 0, 0x0123);
+        setup(0x76, 1, 0x0010);
+        setup(0xB4, 2, 0x0004);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(OPS)
+    public void cycle() {
+        final ProgrammableTimer timer = fTimer;
+        for (int i = 0; i < OPS; i++) {
+            timer.cycle();
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(OPS)
+    public void cycles() {
+        fTimer.cycles(OPS);
+    }
+
+    /**
+     * Программирует счетчик таймера.
+     *
+     * @param control управляющее слово
+     * @param counter номер счетчика
+     * @param value   начальное значение счетчика
+     */
+    private void setup(final int control, final int counter, final int value) {
+        fTimer.writeByte(3      , control     );
+        fTimer.writeByte(counter, value & 0xFF);
+        fTimer.writeByte(counter, value >> 8  );
+    }
+}
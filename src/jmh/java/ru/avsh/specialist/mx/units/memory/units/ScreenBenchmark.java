@@ -0,0 +1,75 @@
+package ru.avsh.specialist.mx.units.memory.units;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.avsh.specialist.mx.units.memory.BenchmarkMachine;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Класс "Микробенчмарк экрана" - запись байт и блоков в экранную область (без окна JavaFX).
+ * <p>
+ * Один вызов записывает OPS байт, поэтому результат в ns/op - время записи одного байта.
+ *
+ * @author -=AVSh=-
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ScreenBenchmark {
+    // Количество байт за один вызов (одна строка знакомест: 48 столбцов по 8 строк)
+    private static final int OPS = 0x180;
+
+    private Screen fScreen;
+    private byte[] fBuffer;
+    private int    fAddress;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        fScreen = BenchmarkMachine.createScreen();
+        fBuffer = new byte[OPS];
+        for (int i = 0; i < OPS; i++) {
+            fBuffer[i] = (byte) (i * 0x25);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(OPS)
+    public void writeByte() {
+        final Screen screen  = fScreen;
+        final int    address = nextAddress();
+        for (int i = 0; i < OPS; i++) {
+            screen.writeByte(address + i, i);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(OPS)
+    public void writeBlock() {
+        fScreen.writeBlock(nextAddress(), fBuffer, 0, OPS);
+    }
+
+    /**
+     * Возвращает начальный адрес следующего блока записи (блоки перебираются по всей экранной области).
+     *
+     * @return адрес
+     */
+    private int nextAddress() {
+        final int address = fAddress;
+        fAddress = (address + OPS) % (fScreen.storageSize() - OPS);
+        return address;
+    }
+}
@@ -95,16 +95,41 @@ public class SpMxApplication extends Application {
         final CheckMenuItem size21Item = new CheckMenuItem("Размер 2:1");
         final RadioMenuItem modeMXItem = new RadioMenuItem("Клавиатура \"".concat(SPMX_NAME).concat("\""));
         final RadioMenuItem modeSTItem = new RadioMenuItem("Клавиатура \"Специалист\"");
+        final CheckMenuItem exactItem  = new CheckMenuItem("Потактовая эмуляция");
+        final CheckMenuItem blockItem  = new CheckMenuItem("Кэширование блоков кода");
+        final CheckMenuItem compItem   = new CheckMenuItem("Компиляция блоков кода");
+        final CheckMenuItem idleItem   = new CheckMenuItem("Пропуск холостых циклов");
+        final CheckMenuItem hooksItem  = new CheckMenuItem("Перехват подпрограмм ПЗУ");
+        final CheckMenuItem traceItem  = new CheckMenuItem("Трассировка команд");
+        final CheckMenuItem profItem   = new CheckMenuItem("Профилирование");
+        final      MenuItem profSaveItem = new      MenuItem("Сохранить профиль...");
+        final CheckMenuItem covItem    = new CheckMenuItem("Покрытие кода");
+        final      MenuItem covSaveItem  = new      MenuItem("Сохранить покрытие...");
+        final      MenuItem covDiffItem  = new      MenuItem("Сравнить покрытие...");
         final      Menu       viewMenu = new      Menu    ("Просмотр", null,
                 infoItem,  debugItem,
                 new SeparatorMenuItem(), size11Item, size21Item,
-                new SeparatorMenuItem(), modeMXItem, modeSTItem);
+                new SeparatorMenuItem(), modeMXItem, modeSTItem,
+                new SeparatorMenuItem(), exactItem, blockItem, compItem, idleItem, hooksItem, traceItem,
+                new SeparatorMenuItem(), profItem, profSaveItem,
+                new SeparatorMenuItem(), covItem, covSaveItem, covDiffItem);
 
         final   ToggleGroup       group = new ToggleGroup();
         modeMXItem.setToggleGroup(group);
         modeSTItem.setToggleGroup(group);
         modeMXItem.setSelected(!fSpMX.isKeyboardMode());
         modeSTItem.setSelected( fSpMX.isKeyboardMode());
+        exactItem .setSelected( fSpMX.isExactClockMode());
+        blockItem .setSelected( fSpMX.isBlockCacheMode());
+        compItem  .setSelected( fSpMX.isBlockCompilerMode());
+        idleItem  .setSelected( fSpMX.isIdleDetectionMode());
+        hooksItem .setSelected( fSpMX.isRomHooksMode());
+        traceItem .setSelected( fSpMX.isTraceMode());
+        profItem  .setSelected( fSpMX.isProfilerMode());
+        profSaveItem.setDisable(!fSpMX.isProfilerMode());
+        covItem   .setSelected( fSpMX.isCoverageMode());
+        covSaveItem.setDisable(!fSpMX.isCoverageMode());
+        covDiffItem.setDisable(!fSpMX.isCoverageMode());
 
         final MenuItem aboutItem = new MenuItem("О программе...");
         final Menu     aboutMenu = new Menu    ("О программе", null, aboutItem);
@@ -344,6 +369,74 @@ public class SpMxApplication extends Application {
         modeMXItem.setOnAction(event -> fSpMX.setKeyboardMode(false));
         modeSTItem.setOnAction(event -> fSpMX.setKeyboardMode(true ));
 
+        // -= Режим работы тактового генератора =-
+        exactItem.setOnAction(event -> fSpMX.setExactClockMode(exactItem.isSelected()));
+        blockItem.setOnAction(event -> fSpMX.setBlockCacheMode(blockItem.isSelected()));
+        compItem .setOnAction(event -> fSpMX.setBlockCompilerMode(compItem.isSelected()));
+        idleItem .setOnAction(event -> fSpMX.setIdleDetectionMode(idleItem.isSelected()));
+        hooksItem.setOnAction(event -> fSpMX.setRomHooksMode(hooksItem.isSelected()));
+        traceItem.setOnAction(event -> fSpMX.setTraceMode(traceItem.isSelected()));
+
+        // -= Профилирование =-
+        profItem.setOnAction(event -> {
+            fSpMX.setProfilerMode(profItem.isSelected());
+            profSaveItem.setDisable(!profItem.isSelected());
+        });
+        profSaveItem.setOnAction(event -> {
+            final FileChooser chooser = new FileChooser();
+            chooser.setTitle("Сохранить профиль");
+            chooser.getExtensionFilters().add(new FileChooser.ExtensionFilter("Файлы: *.folded", "*.folded"));
+            chooser.setInitialDirectory(new File(getCurPath()));
+
+            final File file = chooser.showSaveDialog(primaryStage);
+            if (file != null) {
+                setCurPath(file.getParent());
+                if (!fSpMX.saveProfile(file)) {
+                    setTitle(primaryStage, "(Ошибка сохранения!)");
+                }
+            }
+        });
+
+        // -= Покрытие кода =-
+        covItem.setOnAction(event -> {
+            fSpMX.setCoverageMode(covItem.isSelected());
+            covSaveItem.setDisable(!covItem.isSelected());
+            covDiffItem.setDisable(!covItem.isSelected());
+        });
+        covSaveItem.setOnAction(event -> {
+            final FileChooser chooser = new FileChooser();
+            chooser.setTitle("Сохранить покрытие кода");
+            chooser.getExtensionFilters().add(new FileChooser.ExtensionFilter("Файлы: *.cov", "*.cov"));
+            chooser.setInitialDirectory(new File(getCurPath()));
+
+            final File file = chooser.showSaveDialog(primaryStage);
+            if (file != null) {
+                setCurPath(file.getParent());
+                if (!fSpMX.saveCoverage(file)) {
+                    setTitle(primaryStage, "(Ошибка сохранения!)");
+                }
+            }
+        });
+        covDiffItem.setOnAction(event -> {
+            final FileChooser chooser = new FileChooser();
+            chooser.setTitle("Выбрать карту покрытия для сравнения");
+            chooser.getExtensionFilters().add(new FileChooser.ExtensionFilter("Файлы: *.cov", "*.cov"));
+            chooser.setInitialDirectory(new File(getCurPath()));
+
+            final File baseFile = chooser.showOpenDialog(primaryStage);
+            if (baseFile != null) {
+                setCurPath(baseFile.getParent());
+                chooser.setTitle("Сохранить различия покрытия");
+                chooser.getExtensionFilters().setAll(new FileChooser.ExtensionFilter("Файлы: *.diff", "*.diff"));
+                chooser.setInitialDirectory(baseFile.getParentFile());
+
+                final File diffFile = chooser.showSaveDialog(primaryStage);
+                if ((diffFile != null) && !fSpMX.compareCoverage(baseFile, diffFile)) {
+                    setTitle(primaryStage, "(Ошибка сравнения!)");
+                }
+            }
+        });
+
         // -= О программе =-
         aboutItem.setOnAction(event -> {
             String name      = "Эмулятор \"".concat(SPMX_NAME).concat("\"");
@@ -409,6 +502,15 @@ public class SpMxApplication extends Application {
 
         // Обработчик вызывается, когда окно закрывается - для завершения работы программы
         primaryStage.setOnCloseRequest(event -> {
+            // Сохраняем RAM-диск (при ошибке выход можно отменить)
+            fSpMX.pause(true, true);
+            if (!fSpMX.saveRamDisk() && showConfirmDialog(ICON, "Что делать?", null,
+                    "RAM-диск не сохранен. Выйти без сохранения RAM-диска?", YES_NO_OPTION).isCancelButton()) {
+                setTitle(primaryStage, "(Ошибка сохранения!)");
+                fSpMX.pause(false, true);
+                event.consume();
+                return;
+            }
             // Запоминаем размеры формы в ini-файле
             fSpMX.putIni(INI_SECTION_CONFIG, INI_OPTION_FORM_WIDTH , primaryStage.getWidth ());
             fSpMX.putIni(INI_SECTION_CONFIG, INI_OPTION_FORM_HEIGHT, primaryStage.getHeight());
@@ -8,9 +8,12 @@ import ru.avsh.specialist.mx.gui.swing.debugger.types.EventType;
 import ru.avsh.specialist.mx.gui.swing.debugger.types.MemoryPageType;
 import ru.avsh.specialist.mx.gui.swing.utils.JFormattedTextFieldExt;
 import ru.avsh.specialist.mx.helpers.Constants;
+import ru.avsh.specialist.mx.helpers.Disassembler;
 import ru.avsh.specialist.mx.helpers.Trap;
+import ru.avsh.specialist.mx.helpers.Watch;
 import ru.avsh.specialist.mx.root.SpecialistMX;
 import ru.avsh.specialist.mx.units.CPUi8080.DebugRegPair;
+import ru.avsh.specialist.mx.units.TraceBuffer;
 import ru.avsh.specialist.mx.units.memory.units.MainMemory;
 
 import javax.swing.*;
@@ -18,6 +21,7 @@ import javax.swing.border.Border;
 import javax.swing.border.EmptyBorder;
 import javax.swing.border.LineBorder;
 import javax.swing.event.*;
+import javax.swing.filechooser.FileNameExtensionFilter;
 import javax.swing.plaf.basic.BasicLabelUI;
 import javax.swing.table.*;
 import javax.swing.text.AttributeSet;
@@ -25,7 +29,11 @@ import javax.swing.text.BadLocationException;
 import javax.swing.text.PlainDocument;
 import java.awt.*;
 import java.awt.event.*;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 import java.util.Observable;
 import java.util.Observer;
 import java.util.function.UnaryOperator;
@@ -46,110 +54,6 @@ public final class DebuggerCPUi8080 extends JDialog {
     private static final String INI_OPTION_FRAME_WIDTH  = "DebugFrameWidth" ;
     private static final String INI_OPTION_FRAME_HEIGHT = "DebugFrameHeight";
 
-    // Массив мнемоник процессора i8080 (К580ВМ80А)
-    private static final String   M_NOP  = "nop"  ;
-    private static final String   M_CALL = "call ";
-    private static final String[] MNEMONICS = new String[] {
-            "NOP"     , "LXI  B," , "STAX B"  , "INX  B"  , "INR  B"  , "DCR  B"  , "MVI  B," , "RLC"     ,
-            M_NOP     , "DAD  B"  , "LDAX B"  , "DCX  B"  , "INR  C"  , "DCR  C"  , "MVI  C," , "RRC"     ,
-
-            M_NOP     , "LXI  D," , "STAX D"  , "INX  D"  , "INR  D"  , "DCR  D"  , "MVI  D," , "RAL"     ,
-            M_NOP     , "DAD  D"  , "LDAX D"  , "DCX  D"  , "INR  E"  , "DCR  E"  , "MVI  E," , "RAR"     ,
-
-            M_NOP     , "LXI  H," , "SHLD "   , "INX  H"  , "INR  H"  , "DCR  H"  , "MVI  H," , "DAA"     ,
-            M_NOP     , "DAD  H"  , "LHLD "   , "DCX  H"  , "INR  L"  , "DCR  L"  , "MVI  L," , "CMA"     ,
-
-            M_NOP     , "LXI  SP,", "STA  "   , "INX  SP" , "INR  M"  , "DCR  M"  , "MVI  M," , "STC"     ,
-            M_NOP     , "DAD  SP" , "LDA  "   , "DCX  SP" , "INR  A"  , "DCR  A"  , "MVI  A," , "CMC"     ,
-
-            "MOV  B,B", "MOV  B,C", "MOV  B,D", "MOV  B,E", "MOV  B,H", "MOV  B,L", "MOV  B,M", "MOV  B,A",
-            "MOV  C,B", "MOV  C,C", "MOV  C,D", "MOV  C,E", "MOV  C,H", "MOV  C,L", "MOV  C,M", "MOV  C,A",
-
-            "MOV  D,B", "MOV  D,C", "MOV  D,D", "MOV  D,E", "MOV  D,H", "MOV  D,L", "MOV  D,M", "MOV  D,A",
-            "MOV  E,B", "MOV  E,C", "MOV  E,D", "MOV  E,E", "MOV  E,H", "MOV  E,L", "MOV  E,M", "MOV  E,A",
-
-            "MOV  H,B", "MOV  H,C", "MOV  H,D", "MOV  H,E", "MOV  H,H", "MOV  H,L", "MOV  H,M", "MOV  H,A",
-            "MOV  L,B", "MOV  L,C", "MOV  L,D", "MOV  L,E", "MOV  L,H", "MOV  L,L", "MOV  L,M", "MOV  L,A",
-
-            "MOV  M,B", "MOV  M,C", "MOV  M,D", "MOV  M,E", "MOV  M,H", "MOV  M,L", "HLT"     , "MOV  M,A",
-            "MOV  A,B", "MOV  A,C", "MOV  A,D", "MOV  A,E", "MOV  A,H", "MOV  A,L", "MOV  A,M", "MOV  A,A",
-
-            "ADD  B"  , "ADD  C"  , "ADD  D"  , "ADD  E"  , "ADD  H"  , "ADD  L"  , "ADD  M"  , "ADD  A"  ,
-            "ADC  B"  , "ADC  C"  , "ADC  D"  , "ADC  E"  , "ADC  H"  , "ADC  L"  , "ADC  M"  , "ADC  A"  ,
-
-            "SUB  B"  , "SUB  C"  , "SUB  D"  , "SUB  E"  , "SUB  H"  , "SUB  L"  , "SUB  M"  , "SUB  A"  ,
-            "SBB  B"  , "SBB  C"  , "SBB  D"  , "SBB  E"  , "SBB  H"  , "SBB  L"  , "SBB  M"  , "SBB  A"  ,
-
-            "ANA  B"  , "ANA  C"  , "ANA  D"  , "ANA  E"  , "ANA  H"  , "ANA  L"  , "ANA  M"  , "ANA  A"  ,
-            "XRA  B"  , "XRA  C"  , "XRA  D"  , "XRA  E"  , "XRA  H"  , "XRA  L"  , "XRA  M"  , "XRA  A"  ,
-
-            "ORA  B"  , "ORA  C"  , "ORA  D"  , "ORA  E"  , "ORA  H"  , "ORA  L"  , "ORA  M"  , "ORA  A"  ,
-            "CMP  B"  , "CMP  C"  , "CMP  D"  , "CMP  E"  , "CMP  H"  , "CMP  L"  , "CMP  M"  , "CMP  A"  ,
-
-            "RNZ"     , "POP  B"  , "JNZ  "   , "JMP  "   , "CNZ  "   , "PUSH B"  , "ADI  "   , "RST  0"  ,
-            "RZ"      , "RET"     , "JZ   "   , "jmp  "   , "CZ   "   , "CALL "   , "ACI  "   , "RST  1"  ,
-
-            "RNC"     , "POP  D"  , "JNC  "   , "OUT  "   , "CNC  "   , "PUSH D"  , "SUI  "   , "RST  2"  ,
-            "RC"      , "ret"     , "JC   "   , "IN   "   , "CC   "   , M_CALL    , "SBI  "   , "RST  3"  ,
-
-            "RPO"     , "POP  H"  , "JPO  "   , "XTHL"    , "CPO  "   , "PUSH H"  , "ANI  "   , "RST  4"  ,
-            "RPE"     , "PCHL"    , "JPE  "   , "XCHG"    , "CPE  "   , M_CALL    , "XRI  "   , "RST  5"  ,
-
-            "RP"      , "POP  PSW", "JP   "   , "DI"      , "CP   "   , "PUSH PSW", "ORI  "   , "RST  6"  ,
-            "RM"      , "SPHL"    , "JM   "   , "EI"      , "CM   "   , M_CALL    , "CPI  "   , "RST  7"
-    };
-
-    // Массив длин команд процессора i8080 (К580ВМ80А)
-    private static final int[] CMD_LEN = {
-            1, 3, 1, 1, 1, 1, 2, 1,
-            1, 1, 1, 1, 1, 1, 2, 1,
-
-            1, 3, 1, 1, 1, 1, 2, 1,
-            1, 1, 1, 1, 1, 1, 2, 1,
-
-            1, 3, 3, 1, 1, 1, 2, 1,
-            1, 1, 3, 1, 1, 1, 2, 1,
-
-            1, 3, 3, 1, 1, 1, 2, 1,
-            1, 1, 3, 1, 1, 1, 2, 1,
-
-            1, 1, 1, 1, 1, 1, 1, 1,
-            1, 1, 1, 1, 1, 1, 1, 1,
-
-            1, 1, 1, 1, 1, 1, 1, 1,
-            1, 1, 1, 1, 1, 1, 1, 1,
-
-            1, 1, 1, 1, 1, 1, 1, 1,
-            1, 1, 1, 1, 1, 1, 1, 1,
-
-            1, 1, 1, 1, 1, 1, 1, 1,
-            1, 1, 1, 1, 1, 1, 1, 1,
-
-            1, 1, 1, 1, 1, 1, 1, 1,
-            1, 1, 1, 1, 1, 1, 1, 1,
-
-            1, 1, 1, 1, 1, 1, 1, 1,
-            1, 1, 1, 1, 1, 1, 1, 1,
-
-            1, 1, 1, 1, 1, 1, 1, 1,
-            1, 1, 1, 1, 1, 1, 1, 1,
-
-            1, 1, 1, 1, 1, 1, 1, 1,
-            1, 1, 1, 1, 1, 1, 1, 1,
-
-            1, 1, 3, 3, 3, 1, 2, 1,
-            1, 1, 3, 3, 3, 3, 2, 1,
-
-            1, 1, 3, 2, 3, 1, 2, 1,
-            1, 1, 3, 2, 3, 3, 2, 1,
-
-            1, 1, 3, 1, 3, 1, 2, 1,
-            1, 1, 3, 1, 3, 3, 2, 1,
-
-            1, 1, 3, 1, 3, 1, 2, 1,
-            1, 1, 3, 1, 3, 3, 2, 1
-    };
-
     // Кодовая таблица знаков -=КОИ8=-
     private static final String KOI8 =
           // 0123456789ABCDEF0123456789ABCDEF01 23456789ABCDEF0123456789ABCDEF
@@ -218,10 +122,11 @@ public final class DebuggerCPUi8080 extends JDialog {
     private static final int SP_COL_DAT = 0;
 
     // Количество колонок таблицы с данными ловушек
-    private static final int TP_NUM_COLUMNS = 2;
+    private static final int TP_NUM_COLUMNS = 3;
     // Колонки таблицы с данными ловушек
     private static final int TP_COL_PAG = 0;
     private static final int TP_COL_ADR = 1;
+    private static final int TP_COL_CND = 2;
 
     // Количество строк и колонок таблицы с данными памяти (просмотр данных)
     private static final int MD_NUM_ROWS    = DA_NUM_ROWS >> 4;
@@ -251,6 +156,7 @@ public final class DebuggerCPUi8080 extends JDialog {
     private static final Border NO_FOCUS_BORDER       = new EmptyBorder(1, 1, 1, 1);
     private static final Color  YELLOW_GREEN          = new Color(128, 255, 0);
     private static final Color  YELLOW_RED            = new Color(255, 128, 0);
+    private static final Color  EXECUTED              = new Color(220, 235, 255);
     private static final Font   HEADER_FONT           = new Font(Font.MONOSPACED, Font.BOLD , 11);
     private static final Font   DEFAULT_FONT          = new Font(Font.MONOSPACED, Font.PLAIN, 11);
     private static final String BYTE_MASK             = "HH"   ;
@@ -258,6 +164,7 @@ public final class DebuggerCPUi8080 extends JDialog {
     private static final String STR_ADDRESS           = "Адрес";
     private static final String STR16_MASK            = "****************"   ;
     private static final String EDITING_OR_NAVIGATING = "EditingOrNavigating";
+    private static final int    TRACE_LINES           = 256; // Количество команд трассы, выводимых в отладчике
 
     private final transient SpecialistMX  fSpMX;
     private final transient EmulatorLayer fEmulatorLayer;
@@ -399,8 +306,8 @@ public final class DebuggerCPUi8080 extends JDialog {
 
         final JButton   findButton = new JButton("Find"  );
         final JButton selectButton = new JButton("Select");
-        final JButton      button3 = new JButton("---"   );
-        final JButton      button4 = new JButton("---"   );
+        final JButton  watchButton = new JButton("Watch" );
+        final JButton  traceButton = new JButton("Trace" );
 
         // Основные кнопки управления отладчиком
         final Action performStep = new AbstractAction("F6 Step") {
@@ -439,6 +346,10 @@ public final class DebuggerCPUi8080 extends JDialog {
             findButton.setToolTipText("Осуществляет поиск данных");
           selectButton.setMnemonic('e');
           selectButton.setToolTipText("Осуществляет выделение диапазона адресов в таблице просмотра данных");
+           watchButton.setMnemonic('W');
+           watchButton.setToolTipText("Устанавливает точки наблюдения за чтением/записью памяти и портов");
+           traceButton.setMnemonic('a');
+           traceButton.setToolTipText("Показывает последние выполненные команды и сохраняет трассу в файл");
             gotoButton.setMnemonic('G');
             gotoButton.setToolTipText("Выполняет переход к заданному адресу в таблицах просмотра кода/данных");
             toPCButton.setMnemonic('T');
@@ -589,12 +500,12 @@ public final class DebuggerCPUi8080 extends JDialog {
                 buttonBar.add(selectButton, new GridBagConstraints(1, 0, 1, 1, 0.0, 0.0,
                         GridBagConstraints.CENTER, GridBagConstraints.BOTH, new Insets(0, 0, 5, 5), 0, 0));
 
-                //---- button3 ----
-                buttonBar.add(button3, new GridBagConstraints(2, 0, 1, 1, 0.0, 0.0,
+                //---- watchButton ----
+                buttonBar.add(watchButton, new GridBagConstraints(2, 0, 1, 1, 0.0, 0.0,
                         GridBagConstraints.CENTER, GridBagConstraints.BOTH, new Insets(0, 0, 5, 5), 0, 0));
 
-                //---- button4 ----
-                buttonBar.add(button4, new GridBagConstraints(3, 0, 1, 1, 0.0, 0.0,
+                //---- traceButton ----
+                buttonBar.add(traceButton, new GridBagConstraints(3, 0, 1, 1, 0.0, 0.0,
                         GridBagConstraints.CENTER, GridBagConstraints.BOTH, new Insets(0, 0, 5, 5), 0, 0));
 
                 //---- gotoButton ----
@@ -780,11 +691,11 @@ public final class DebuggerCPUi8080 extends JDialog {
             }
         });
 
-        // Изменяем реакцию на двойной клик мышью в колонках таблицы с ловушками trapsTable
+        // Изменяем реакцию на двойной клик мышью в колонках таблицы с ловушками trapsTable (кроме колонки условия - она редактируется)
         trapsTable.addMouseListener(new MouseAdapter() {
             @Override
             public void mouseClicked(MouseEvent mouseEvent) {
-                if (mouseEvent.getClickCount() == 2) {
+                if ((mouseEvent.getClickCount() == 2) && (getFocusedColumnModel(trapsTable) != TP_COL_CND)) {
                     final int rowM = getFocusedRowModel((JTable) mouseEvent.getComponent());
                     if ((rowM != -1) && (rowM < fEmulatorLayer.getTrapCount())) {
                         Trap trap = fEmulatorLayer.getTrap(rowM);
@@ -846,6 +757,8 @@ public final class DebuggerCPUi8080 extends JDialog {
         // Определяем обработчики кнопок
           findButton.addActionListener(actionEvent -> findData          ());
         selectButton.addActionListener(actionEvent -> selectAddressRange());
+         watchButton.addActionListener(actionEvent -> editWatches       ());
+         traceButton.addActionListener(actionEvent -> showTrace         ());
           gotoButton.addActionListener(actionEvent -> gotoAddress       ());
           toPCButton.addActionListener(actionEvent -> {
                   fEmulatorLayer.setCodePage(fEmulatorLayer.getCpuPage());
@@ -960,7 +873,7 @@ public final class DebuggerCPUi8080 extends JDialog {
             int address = codeAddress;
             for (int i  = 0; i < BUF_SIZE; i++) {
                                      buf[i][IND_ADR] = address;
-                int cmdLen = CMD_LEN[buf[i][IND_CMD] = fEmulatorLayer.debugReadByte(page,   address)];
+                int cmdLen = Disassembler.getLength(buf[i][IND_CMD] = fEmulatorLayer.debugReadByte(page,   address));
                 if ((pc   <= address)   ||  (pc >= address + cmdLen)) {
                     buf[i][IND_BT1] = (--cmdLen > 0) ? fEmulatorLayer.debugReadByte(page, ++address) : EMPTY;
                     buf[i][IND_BT2] = (--cmdLen > 0) ? fEmulatorLayer.debugReadByte(page, ++address) : EMPTY;
@@ -988,7 +901,7 @@ public final class DebuggerCPUi8080 extends JDialog {
 
             final int[][] curBuf;
             // Начальный адрес данных после fStartBuffer
-            int movedStart = fStartBuffer[BUF_SIZE - 1][IND_ADR] + CMD_LEN[fStartBuffer[BUF_SIZE - 1][IND_CMD]];
+            int movedStart = fStartBuffer[BUF_SIZE - 1][IND_ADR] + Disassembler.getLength(fStartBuffer[BUF_SIZE - 1][IND_CMD]);
             // Определяем из какого буфера брать данные
             if (address < movedStart) {
                  curBuf = fStartBuffer;
@@ -1005,7 +918,7 @@ public final class DebuggerCPUi8080 extends JDialog {
                         // Пытаемся выполнить выравнивание кода (в надежде, что повезет :-)
                         //noinspection StatementWithEmptyBody
                         for (int page = fEmulatorLayer.getCodePage(), endAddress = movedStart + FOR_ALIGNMENT, len;
-                             movedStart + (len = CMD_LEN[fEmulatorLayer.debugReadByte(page, endAddress)]) < endAddress;
+                             movedStart + (len = Disassembler.getLength(fEmulatorLayer.debugReadByte(page, endAddress))) < endAddress;
                              movedStart += len) {
                             //
                         }
@@ -1068,7 +981,7 @@ public final class DebuggerCPUi8080 extends JDialog {
             if ( record.length ==   REC_SIZE) {
                 for (int codeCall : CALL_CMD) {
                     if ( codeCall ==   record[IND_CMD]) {
-                        return CMD_LEN[record[IND_CMD]] + address;
+                        return Disassembler.getLength(record[IND_CMD]) + address;
                     }
                 }
             }
@@ -1147,7 +1060,7 @@ public final class DebuggerCPUi8080 extends JDialog {
                                           .concat((record[IND_BT1] >= 0) ? ",".concat((String) getValueAt(rowIndex, DA_COL_BT1)) : "");
                         } else {
                             // Выводим мнемоники
-                            return MNEMONICS[record[IND_CMD]].concat((String) getValueAt(rowIndex, DA_COL_BT2))
+                            return Disassembler.getMnemonic(record[IND_CMD]).concat((String) getValueAt(rowIndex, DA_COL_BT2))
                                                              .concat((String) getValueAt(rowIndex, DA_COL_BT1));
                         }
                     default:
@@ -1335,6 +1248,9 @@ public final class DebuggerCPUi8080 extends JDialog {
                     }
                     if ((fEmulatorLayer.getCodePage() == fEmulatorLayer.getCpuPage()) && (address == pc)) {
                         setBackground(Color.green);
+                    } else if (fEmulatorLayer.isExecuted(fEmulatorLayer.getCodePage(), address)) {
+                        // Команды, выполненные при учете покрытия кода
+                        setBackground(EXECUTED);
                     } else {
                         setBackground(table.getBackground());
                     }
@@ -1925,6 +1841,8 @@ public final class DebuggerCPUi8080 extends JDialog {
                     return "Страница";
                 case TP_COL_ADR:
                     return STR_ADDRESS;
+                case TP_COL_CND:
+                    return "Условие";
                 default:
                     return super.getColumnName(column);
             }
@@ -1938,10 +1856,31 @@ public final class DebuggerCPUi8080 extends JDialog {
                     return fEmulatorLayer.getPageName(trap.getPage());
                 case TP_COL_ADR:
                     return String.format("%04X",trap.getAddress());
+                case TP_COL_CND:
+                    return fEmulatorLayer.getTrapCondition(trap.getPage(), trap.getAddress());
                 default:
                     return null;
             }
         }
+
+        @Override
+        public boolean isCellEditable(int rowIndex, int columnIndex) {
+            return columnIndex == TP_COL_CND;
+        }
+
+        @Override
+        public void setValueAt(Object aValue, int rowIndex, int columnIndex) {
+            if (columnIndex == TP_COL_CND) {
+                final Trap trap = fEmulatorLayer.getTrap(rowIndex);
+                try {
+                    fEmulatorLayer.setTrapCondition(trap.getPage(), trap.getAddress(), (String) aValue);
+                } catch (IllegalArgumentException e) {
+                    showMessageDialog(DebuggerCPUi8080.this, e.getMessage(), Constants.STR_ERROR, ERROR_MESSAGE);
+                }
+                return;
+            }
+            super.setValueAt(aValue, rowIndex, columnIndex);
+        }
     }
     //=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=
     /**
@@ -1970,7 +1909,7 @@ public final class DebuggerCPUi8080 extends JDialog {
                     return this;
                 }
 
-                if (table.convertColumnIndexToModel(column) == TP_COL_PAG) {
+                if (table.convertColumnIndexToModel(column) != TP_COL_ADR) {
                     setHorizontalAlignment(LEFT);
                 } else {
                     setHorizontalAlignment(CENTER);
@@ -2562,7 +2501,6 @@ public final class DebuggerCPUi8080 extends JDialog {
 
         @Override
         public Object getValueAt(int rowIndex, int columnIndex) {
-            final int page = fEmulatorLayer.getDataPage();
             switch (columnIndex) {
                 case MD_COL_ADR:
                     return String.format("%04X:", rowIndex << 4);
@@ -2582,11 +2520,11 @@ public final class DebuggerCPUi8080 extends JDialog {
                 case MD_COL_B13:
                 case MD_COL_B14:
                 case MD_COL_B15:
-                    return String.format("%02X", fEmulatorLayer.debugReadByte(page, (rowIndex << 4) + columnIndex - MD_COL_B00));
+                    return String.format("%02X", fEmulatorLayer.getDataImageByte((rowIndex << 4) + columnIndex - MD_COL_B00));
                 case MD_COL_STR: {
                     final char[] str   = new char[16];
                     for (int i  = 0, j = rowIndex << 4; i < 16; i++, j++) {
-                         str[i] = KOI8.charAt(fEmulatorLayer.debugReadByte(page, j));
+                         str[i] = KOI8.charAt(fEmulatorLayer.getDataImageByte(j));
                     }
                     return new String(str);
                 }
@@ -2823,6 +2761,8 @@ public final class DebuggerCPUi8080 extends JDialog {
             if (   fEmulatorLayer.eventCheck(event, EventType.MEMORY, fEmulatorLayer.getDataPage())
                 || fEmulatorLayer.eventCheck(event, EventType.PAGE  , MemoryPageType.DATA)
                 || fEmulatorLayer.eventCheck(event, EventType.STEP  , null)) {
+                // Перечитываются только измененные страницы памяти
+                fEmulatorLayer.refreshDataImage();
                 repaint();
             }
         }
@@ -2933,6 +2873,102 @@ public final class DebuggerCPUi8080 extends JDialog {
         }
     }
 
+    /**
+     * Формирует диалог редактирования точек наблюдения (по одной в строке) и устанавливает их.
+     */
+    private void editWatches() {
+        final StringBuilder text = new StringBuilder();
+        for (Watch watch : fEmulatorLayer.getWatches()) {
+            text.append(watch).append('\n');
+        }
+        final JTextArea textArea = new JTextArea(text.toString(), 8, 40);
+        textArea.setFont(DEFAULT_FONT);
+
+        final JLabel helpLabel = new JLabel("<html>R|W|RW адрес[-адрес] [условие], например:<br>" +
+                "RW FFE8-FFEB<br>W 9000-BFFF A == 0 &amp;&amp; HITS &gt; 10</html>");
+        helpLabel.setFont(HEADER_FONT);
+
+        final JPanel panel = new JPanel(new BorderLayout(0, 5));
+        panel.add(helpLabel, BorderLayout.NORTH);
+        panel.add(new JScrollPane(textArea), BorderLayout.CENTER);
+
+        if (showConfirmDialog(DebuggerCPUi8080.this, panel, "Watch ...", OK_CANCEL_OPTION, QUESTION_MESSAGE) == OK_OPTION) {
+            try {
+                final List<Watch> watches = new ArrayList<>();
+                for (String line : textArea.getText().split("\n")) {
+                    if (!line.trim().isEmpty()) {
+                        watches.add(Watch.parse(line));
+                    }
+                }
+                fEmulatorLayer.setWatches(watches);
+            } catch (IllegalArgumentException e) {
+                showMessageDialog(DebuggerCPUi8080.this, e.getMessage(), Constants.STR_ERROR, ERROR_MESSAGE);
+            }
+        }
+    }
+
+    /**
+     * Показывает последние выполненные команды из трассы и позволяет сохранить трассу в файлы
+     * (двоичный и текстовый) или включить/выключить потоковую запись трассы в файл.
+     */
+    private void showTrace() {
+        final TraceBuffer trace = fEmulatorLayer.getTrace();
+        if (trace == null) {
+            showMessageDialog(DebuggerCPUi8080.this,
+                    "Трассировка команд выключена (включается в меню \"Просмотр\")", TITLE, INFORMATION_MESSAGE);
+            return;
+        }
+        final JTextArea textArea = new JTextArea(String.join("\n", trace.getLast(TRACE_LINES)), 20, 100);
+        textArea.setFont(DEFAULT_FONT);
+        textArea.setEditable(false);
+
+        final String   stream  = trace.isStreaming() ? "Stop stream" : "Stream...";
+        final Object[] options = {"Save...", stream, "Close"};
+        final int      result  = showOptionDialog(DebuggerCPUi8080.this, new JScrollPane(textArea),
+                String.format("Trace (последние %d из %d команд)", Math.min(TRACE_LINES, trace.size()), trace.size()),
+                DEFAULT_OPTION, PLAIN_MESSAGE, null, options, options[2]);
+        try {
+            if (result == 0) {
+                final File file = chooseTraceFile("Сохранить трассу");
+                if (file != null) {
+                    final String name = file.getPath().replaceFirst("\\.[^.\\\\/]*$", "");
+                    trace.saveBinary(new File(name.concat(".bin")).toPath());
+                    trace.saveText  (new File(name.concat(".txt")).toPath());
+                }
+            } else if (result == 1) {
+                if (trace.isStreaming()) {
+                    trace.stopStreaming();
+                } else {
+                    final File file = chooseTraceFile("Потоковая запись трассы");
+                    if (file != null) {
+                        trace.startStreaming(file.toPath());
+                    }
+                }
+            }
+        } catch (IOException e) {
+            showMessageDialog(DebuggerCPUi8080.this, e.toString(), Constants.STR_ERROR, ERROR_MESSAGE);
+        }
+    }
+
+    /**
+     * Выводит диалог выбора файла для трассы.
+     *
+     * @param title заголовок диалога
+     * @return файл (null = файл не выбран)
+     */
+    private File chooseTraceFile(final String title) {
+        final JFileChooser chooser = new JFileChooser();
+        chooser.setDialogTitle(title);
+        chooser.setCurrentDirectory(new File(Constants.getCurPath()));
+        chooser.setFileFilter(new FileNameExtensionFilter("Файлы: *.bin", "bin"));
+        if (chooser.showSaveDialog(DebuggerCPUi8080.this) == JFileChooser.APPROVE_OPTION) {
+            final File file = chooser.getSelectedFile();
+            Constants.setCurPath(file.getParent());
+            return file;
+        }
+        return null;
+    }
+
     /**
      * Формирует диалог ввода адресов начала/конца выделяемого участка памяти,
      * затем выполняет само выделение заданного диапазона адресов.
@@ -3284,11 +3320,16 @@ public final class DebuggerCPUi8080 extends JDialog {
                         address = 0;
                     }
 
+                    // Читаем страницу одним блоком (за границей 64K, как и при побайтном чтении, - 0xFF)
+                    final byte[] memory = new byte[0x1_0000 + length];
+                    Arrays.fill(memory, 0x1_0000, memory.length, (byte) 0xFF);
+                    fEmulatorLayer.debugReadBlock(fEmulatorLayer.getDataPage(), 0, memory, 0, 0x1_0000);
+
                     // Выполняем поиск данных
                     for (; address < 0x1_0000; address++) {
                         int  i;
                         for (i = 0; i < length; i++) {
-                            if (fEmulatorLayer.debugReadByte(fEmulatorLayer.getDataPage(), address + i) != bytes[i]) {
+                            if ((memory[address + i] & 0xFF) != bytes[i]) {
                                 break;
                             }
                         }
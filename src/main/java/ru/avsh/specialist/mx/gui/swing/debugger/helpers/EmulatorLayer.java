@@ -6,9 +6,15 @@ import ru.avsh.specialist.mx.gui.swing.debugger.types.EventType;
 import ru.avsh.specialist.mx.gui.swing.debugger.types.MemoryPageType;
 import ru.avsh.specialist.mx.helpers.Constants;
 import ru.avsh.specialist.mx.helpers.Trap;
+import ru.avsh.specialist.mx.helpers.Watch;
 import ru.avsh.specialist.mx.root.SpecialistMX;
 import ru.avsh.specialist.mx.units.CPUi8080;
+import ru.avsh.specialist.mx.units.Coverage;
+import ru.avsh.specialist.mx.units.TraceBuffer;
+import ru.avsh.specialist.mx.units.memory.DirtyPages;
+import ru.avsh.specialist.mx.units.memory.units.MainMemory;
 
+import java.util.List;
 import java.util.Observable;
 
 /**
@@ -17,9 +23,20 @@ import java.util.Observable;
 public class EmulatorLayer extends Observable {
     private final SpecialistMX fSpMX;
 
+    // Начало области устройств (не входит в MainMemory и всегда перечитывается)
+    private static final int DEVICES_START = 0xFFC0;
+
+    // Образ страницы памяти для просмотра данных и наборы битов измененных 256-байтных страниц
+    private final byte[] fDataImage      = new byte[0x1_0000];
+    private final long[] fDataDirty      = new long[0x100 >> 6];
+    private final long[] fDataDirtyUpper = new long[0x100 >> 6];
+
     private boolean fDisableEvents;
     private int     fCodePage;
     private int     fDataPage;
+    // Страница памяти в образе (-1 = образ не заполнен) и поколение измененных страниц (см. DirtyPages)
+    private int     fDataImagePage = -1;
+    private int     fDataImageGen;
 
     /**
      * Конструктор.
@@ -232,6 +249,71 @@ public class EmulatorLayer extends Observable {
         sendEvent(EventType.TRAPS, null);
     }
 
+    /**
+     * Устанавливает условие для ловушки.
+     *
+     * @param page      номер страницы памяти
+     * @param address   адрес ловушки
+     * @param condition условие (пустая строка = без условия)
+     * @throws IllegalArgumentException при ошибке в условии
+     */
+    public void setTrapCondition(final int page, final int address, final String condition) {
+        fSpMX.getCPU().debugSetTrapCondition(page, address, condition);
+        // Отправляем событие наблюдателям
+        sendEvent(EventType.TRAPS, new Trap(page, address));
+    }
+
+    /**
+     * Возвращает условие ловушки.
+     *
+     * @param page    номер страницы памяти
+     * @param address адрес ловушки
+     * @return условие (пустая строка = без условия)
+     */
+    public String getTrapCondition(final int page, final int address) {
+        return fSpMX.getCPU().debugGetTrapCondition(page, address);
+    }
+
+    /**
+     * Устанавливает точки наблюдения (заменяет все установленные).
+     *
+     * @param watches точки наблюдения
+     * @throws IllegalArgumentException при ошибке в условии
+     */
+    public void setWatches(final List<Watch> watches) {
+        fSpMX.getCPU().debugSetWatches(watches);
+    }
+
+    /**
+     * Возвращает установленные точки наблюдения.
+     *
+     * @return точки наблюдения
+     */
+    public List<Watch> getWatches() {
+        return fSpMX.getCPU().debugGetWatches();
+    }
+
+    /**
+     * Возвращает трассу выполнения команд.
+     *
+     * @return трасса (null = трассировка отключена)
+     */
+    public TraceBuffer getTrace() {
+        return fSpMX.getCPU().getTrace();
+    }
+
+    /**
+     * Проверяет, выполнялась ли команда по заданному адресу (при включенном учете покрытия кода).
+     *
+     * @param page    номер страницы памяти
+     * @param address адрес
+     * @return true = команда выполнялась (false = не выполнялась или учет покрытия отключен)
+     */
+    public boolean isExecuted(final int page, final int address) {
+        final Coverage coverage = fSpMX.getCPU().getCoverage();
+        return (coverage != null) && ((coverage.get(page, address) & Coverage.EXEC) != 0);
+    }
+
     /**
      * Проверяет, установлена ли по заданному адресу ловушка.
      *
@@ -368,15 +450,18 @@ public class EmulatorLayer extends Observable {
      * @return считанный байт
      */
     public synchronized int readByte(final int page, final int address) {
-        final int curPage  = fSpMX.getPage();
-        if (      curPage != page) {
-            fSpMX.setPage(   page);
-        }
-        final int result   = fSpMX.readByte(address);
-        if (page  !=      curPage) {
-            fSpMX.setPage(curPage);
-        }
-        return result;
+        // Переключение страницы и чтение выполняются одним действием с памятью
+        return fSpMX.getMemoryManager().call(() -> {
+            final int curPage  = fSpMX.getPage();
+            if (      curPage != page) {
+                fSpMX.setPage(   page);
+            }
+            final int result   = fSpMX.readByte(address);
+            if (page  !=      curPage) {
+                fSpMX.setPage(curPage);
+            }
+            return result;
+        });
     }
 
     /**
@@ -387,15 +472,95 @@ public class EmulatorLayer extends Observable {
      * @return считанный байт
      */
     public synchronized int debugReadByte(final int page, final int address) {
-        final int curPage  = fSpMX.getPage();
-        if (      curPage != page) {
-            fSpMX.setPage(   page);
-        }
-        final int result   = fSpMX.debugReadByte(address);
-        if (page  !=      curPage) {
-            fSpMX.setPage(curPage);
+        // Переключение страницы и чтение выполняются одним действием с памятью
+        return fSpMX.getMemoryManager().call(() -> {
+            final int curPage  = fSpMX.getPage();
+            if (      curPage != page) {
+                fSpMX.setPage(   page);
+            }
+            final int result   = fSpMX.debugReadByte(address);
+            if (page  !=      curPage) {
+                fSpMX.setPage(curPage);
+            }
+            return result;
+        });
+    }
+
+    /**
+     * Читает блок байт из памяти (без влияния на устройства памяти).
+     *
+     * @param page    страница памяти
+     * @param address начальный адрес
+     * @param buffer  буфер для считанных байт
+     * @param offset  смещение в буфере
+     * @param length  количество байт
+     */
+    public synchronized void debugReadBlock(final int page, final int address,
+                                            final byte[] buffer, final int offset, final int length) {
+        // Переключение страницы и чтение выполняются одним действием с памятью
+        fSpMX.getMemoryManager().call(() -> {
+            final int curPage  = fSpMX.getPage();
+            if (      curPage != page) {
+                fSpMX.setPage(   page);
+            }
+            fSpMX.debugReadBlock(address, buffer, offset, length);
+            if (page  !=      curPage) {
+                fSpMX.setPage(curPage);
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Обновляет образ страницы памяти для просмотра данных. Одним действием с памятью считываются только
+     * 256-байтные страницы, измененные с прошлого обновления (см. DirtyPages), и область устройств FFC0-FFFF.
+     * При смене страницы для просмотра данных образ считывается полностью.
+     */
+    public synchronized void refreshDataImage() {
+        final int page  = fDataPage;
+        final int since = (fDataImagePage == page) ? fDataImageGen : 0;
+        fDataImageGen   = fSpMX.getMemoryManager().call(() -> {
+            final MainMemory ram = fSpMX.getRAM();
+            ram.collectDirtyPages(page, since, fDataDirty);
+            if (page >= MainMemory.ROM_DISK) {
+                // На странице ROM-диска адреса >= C000 относятся к основной странице
+                ram.collectDirtyPages(0, since, fDataDirtyUpper);
+                for (int i = 0xC0; i < 0x100; i++) {
+                    fDataDirty[i >> 6] |= fDataDirtyUpper[i >> 6] & (1L << i);
+                }
+            }
+            final int generation = ram.getDirtyPages().advance();
+
+            final int curPage  = fSpMX.getPage();
+            if (      curPage != page) {
+                fSpMX.setPage(   page);
+            }
+            for (int i = 0; i < fDataImage.length >> DirtyPages.PAGE_SHIFT; i++) {
+                if ((fDataDirty[i >> 6] & (1L << i)) != 0) {
+                    final int start = i << DirtyPages.PAGE_SHIFT;
+                    fSpMX.debugReadBlock(start, fDataImage, start, Math.min(DirtyPages.PAGE_SIZE, DEVICES_START - start));
+                }
+            }
+            fSpMX.debugReadBlock(DEVICES_START, fDataImage, DEVICES_START, fDataImage.length - DEVICES_START);
+            if (page  !=      curPage) {
+                fSpMX.setPage(curPage);
+            }
+            return generation;
+        });
+        fDataImagePage = page;
+    }
+
+    /**
+     * Возвращает байт из образа страницы памяти для просмотра данных (см. refreshDataImage()).
+     *
+     * @param address адрес
+     * @return байт
+     */
+    public synchronized int getDataImageByte(final int address) {
+        if (fDataImagePage != fDataPage) {
+            refreshDataImage();
         }
-        return result;
+        return fDataImage[address & 0xFFFF] & 0xFF;
     }
 
     /**
@@ -406,14 +571,17 @@ public class EmulatorLayer extends Observable {
      * @param value   байт
      */
     public synchronized void writeByte(final int page, final int address, final int value) {
-        final int curPage  = fSpMX.getPage();
-        if (      curPage != page) {
-            fSpMX.setPage(   page);
-        }
-        fSpMX.writeByte(address, value);
-        if (page !=       curPage) {
-            fSpMX.setPage(curPage);
-        }
+        // Переключение страницы и запись выполняются одним действием с памятью
+        fSpMX.getMemoryManager().execute(() -> {
+            final int curPage  = fSpMX.getPage();
+            if (      curPage != page) {
+                fSpMX.setPage(   page);
+            }
+            fSpMX.writeByte(address, value);
+            if (page !=       curPage) {
+                fSpMX.setPage(curPage);
+            }
+        });
         sendEvent(EventType.MEMORY, page);
     }
 
@@ -30,6 +30,20 @@ public final class Constants {
     public static final String INI_SECTION_CONFIG  = "Config" ;
     // Опция в ini-файле для ROM-файла эмулятора "Специалист MX"
     public static final String INI_OPTION_ROM_FILE = "RomFile";
+    // Опция в ini-файле для точного (потактового) режима тактового генератора
+    public static final String INI_OPTION_EXACT_CLOCK = "ExactClock";
+    // Опция в ini-файле для кэша блоков кода CPU
+    public static final String INI_OPTION_BLOCK_CACHE = "BlockCache";
+    // Опция в ini-файле для компиляции часто выполняемых блоков кода CPU
+    public static final String INI_OPTION_BLOCK_COMPILER = "BlockCompiler";
+    // Опция в ini-файле для пропуска холостых циклов (циклов опроса клавиатуры) CPU
+    public static final String INI_OPTION_IDLE_DETECTION = "IdleDetection";
+    // Опция в ini-файле для трассировки команд CPU
+    public static final String INI_OPTION_TRACE = "Trace";
+    // Опция в ini-файле для перехвата подпрограмм ПЗУ (высокоуровневой эмуляции подпрограмм монитора)
+    public static final String INI_OPTION_ROM_HOOKS = "RomHooks";
+    // Опция в ini-файле для файла, в который RAM-диск сохраняется при выходе (пусто = не сохранять)
+    public static final String INI_OPTION_RAM_DISK_FILE = "RamDiskFile";
 
     // Путь к каталогу с MON-файлами эмулятора "Специалист MX"
     public static final String PATH_MON_FILES = APP_DIR.concat(File.separator).concat("mon");
@@ -0,0 +1,160 @@
+package ru.avsh.specialist.mx.helpers;
+
+/**
+ * Класс "Дизассемблер процессора i8080 (К580ВМ80А)" - мнемоники и длины команд.
+ * Используется отладчиком, трассой команд и отчетом о покрытии кода (без зависимости от GUI).
+ *
+ * @author -=AVSh=-
+ */
+public final class Disassembler {
+    // Массив мнемоник процессора i8080 (К580ВМ80А)
+    private static final String   M_NOP  = "nop"  ;
+    private static final String   M_CALL = "call ";
+    private static final String[] MNEMONICS = new String[] {
+            "NOP"     , "LXI  B," , "STAX B"  , "INX  B"  , "INR  B"  , "DCR  B"  , "MVI  B," , "RLC"     ,
+            M_NOP     , "DAD  B"  , "LDAX B"  , "DCX  B"  , "INR  C"  , "DCR  C"  , "MVI  C," , "RRC"     ,
+
+            M_NOP     , "LXI  D," , "STAX D"  , "INX  D"  , "INR  D"  , "DCR  D"  , "MVI  D," , "RAL"     ,
+            M_NOP     , "DAD  D"  , "LDAX D"  , "DCX  D"  , "INR  E"  , "DCR  E"  , "MVI  E," , "RAR"     ,
+
+            M_NOP     , "LXI  H," , "SHLD "   , "INX  H"  , "INR  H"  , "DCR  H"  , "MVI  H," , "DAA"     ,
+            M_NOP     , "DAD  H"  , "LHLD "   , "DCX  H"  , "INR  L"  , "DCR  L"  , "MVI  L," , "CMA"     ,
+
+            M_NOP     , "LXI  SP,", "STA  "   , "INX  SP" , "INR  M"  , "DCR  M"  , "MVI  M," , "STC"     ,
+            M_NOP     , "DAD  SP" , "LDA  "   , "DCX  SP" , "INR  A"  , "DCR  A"  , "MVI  A," , "CMC"     ,
+
+            "MOV  B,B", "MOV  B,C", "MOV  B,D", "MOV  B,E", "MOV  B,H", "MOV  B,L", "MOV  B,M", "MOV  B,A",
+            "MOV  C,B", "MOV  C,C", "MOV  C,D", "MOV  C,E", "MOV  C,H", "MOV  C,L", "MOV  C,M", "MOV  C,A",
+
+            "MOV  D,B", "MOV  D,C", "MOV  D,D", "MOV  D,E", "MOV  D,H", "MOV  D,L", "MOV  D,M", "MOV  D,A",
+            "MOV  E,B", "MOV  E,C", "MOV  E,D", "MOV  E,E", "MOV  E,H", "MOV  E,L", "MOV  E,M", "MOV  E,A",
+
+            "MOV  H,B", "MOV  H,C", "MOV  H,D", "MOV  H,E", "MOV  H,H", "MOV  H,L", "MOV  H,M", "MOV  H,A",
+            "MOV  L,B", "MOV  L,C", "MOV  L,D", "MOV  L,E", "MOV  L,H", "MOV  L,L", "MOV  L,M", "MOV  L,A",
+
+            "MOV  M,B", "MOV  M,C", "MOV  M,D", "MOV  M,E", "MOV  M,H", "MOV  M,L", "HLT"     , "MOV  M,A",
+            "MOV  A,B", "MOV  A,C", "MOV  A,D", "MOV  A,E", "MOV  A,H", "MOV  A,L", "MOV  A,M", "MOV  A,A",
+
+            "ADD  B"  , "ADD  C"  , "ADD  D"  , "ADD  E"  , "ADD  H"  , "ADD  L"  , "ADD  M"  , "ADD  A"  ,
+            "ADC  B"  , "ADC  C"  , "ADC  D"  , "ADC  E"  , "ADC  H"  , "ADC  L"  , "ADC  M"  , "ADC  A"  ,
+
+            "SUB  B"  , "SUB  C"  , "SUB  D"  , "SUB  E"  , "SUB  H"  , "SUB  L"  , "SUB  M"  , "SUB  A"  ,
+            "SBB  B"  , "SBB  C"  , "SBB  D"  , "SBB  E"  , "SBB  H"  , "SBB  L"  , "SBB  M"  , "SBB  A"  ,
+
+            "ANA  B"  , "ANA  C"  , "ANA  D"  , "ANA  E"  , "ANA  H"  , "ANA  L"  , "ANA  M"  , "ANA  A"  ,
+            "XRA  B"  , "XRA  C"  , "XRA  D"  , "XRA  E"  , "XRA  H"  , "XRA  L"  , "XRA  M"  , "XRA  A"  ,
+
+            "ORA  B"  , "ORA  C"  , "ORA  D"  , "ORA  E"  , "ORA  H"  , "ORA  L"  , "ORA  M"  , "ORA  A"  ,
+            "CMP  B"  , "CMP  C"  , "CMP  D"  , "CMP  E"  , "CMP  H"  , "CMP  L"  , "CMP  M"  , "CMP  A"  ,
+
+            "RNZ"     , "POP  B"  , "JNZ  "   , "JMP  "   , "CNZ  "   , "PUSH B"  , "ADI  "   , "RST  0"  ,
+            "RZ"      , "RET"     , "JZ   "   , "jmp  "   , "CZ   "   , "CALL "   , "ACI  "   , "RST  1"  ,
+
+            "RNC"     , "POP  D"  , "JNC  "   , "OUT  "   , "CNC  "   , "PUSH D"  , "SUI  "   , "RST  2"  ,
+            "RC"      , "ret"     , "JC   "   , "IN   "   , "CC   "   , M_CALL    , "SBI  "   , "RST  3"  ,
+
+            "RPO"     , "POP  H"  , "JPO  "   , "XTHL"    , "CPO  "   , "PUSH H"  , "ANI  "   , "RST  4"  ,
+            "RPE"     , "PCHL"    , "JPE  "   , "XCHG"    , "CPE  "   , M_CALL    , "XRI  "   , "RST  5"  ,
+
+            "RP"      , "POP  PSW", "JP   "   , "DI"      , "CP   "   , "PUSH PSW", "ORI  "   , "RST  6"  ,
+            "RM"      , "SPHL"    , "JM   "   , "EI"      , "CM   "   , M_CALL    , "CPI  "   , "RST  7"
+    };
+
+    // Массив длин команд процессора i8080 (К580ВМ80А)
+    private static final int[] CMD_LEN = {
+            1, 3, 1, 1, 1, 1, 2, 1,
+            1, 1, 1, 1, 1, 1, 2, 1,
+
+            1, 3, 1, 1, 1, 1, 2, 1,
+            1, 1, 1, 1, 1, 1, 2, 1,
+
+            1, 3, 3, 1, 1, 1, 2, 1,
+            1, 1, 3, 1, 1, 1, 2, 1,
+
+            1, 3, 3, 1, 1, 1, 2, 1,
+            1, 1, 3, 1, 1, 1, 2, 1,
+
+            1, 1, 1, 1, 1, 1, 1, 1,
+            1, 1, 1, 1, 1, 1, 1, 1,
+
+            1, 1, 1, 1, 1, 1, 1, 1,
+            1, 1, 1, 1, 1, 1, 1, 1,
+
+            1, 1, 1, 1, 1, 1, 1, 1,
+            1, 1, 1, 1, 1, 1, 1, 1,
+
+            1, 1, 1, 1, 1, 1, 1, 1,
+            1, 1, 1, 1, 1, 1, 1, 1,
+
+            1, 1, 1, 1, 1, 1, 1, 1,
+            1, 1, 1, 1, 1, 1, 1, 1,
+
+            1, 1, 1, 1, 1, 1, 1, 1,
+            1, 1, 1, 1, 1, 1, 1, 1,
+
+            1, 1, 1, 1, 1, 1, 1, 1,
+            1, 1, 1, 1, 1, 1, 1, 1,
+
+            1, 1, 1, 1, 1, 1, 1, 1,
+            1, 1, 1, 1, 1, 1, 1, 1,
+
+            1, 1, 3, 3, 3, 1, 2, 1,
+            1, 1, 3, 3, 3, 3, 2, 1,
+
+            1, 1, 3, 2, 3, 1, 2, 1,
+            1, 1, 3, 2, 3, 3, 2, 1,
+
+            1, 1, 3, 1, 3, 1, 2, 1,
+            1, 1, 3, 1, 3, 3, 2, 1,
+
+            1, 1, 3, 1, 3, 1, 2, 1,
+            1, 1, 3, 1, 3, 3, 2, 1
+    };
+
+    /**
+     * Конструктор.
+     */
+    private Disassembler() {
+        //
+    }
+
+    /**
+     * Дизассемблирует команду CPU.
+     *
+     * @param opCode код команды
+     * @param byte1  1-й байт операнда
+     * @param byte2  2-й байт операнда
+     * @return мнемоника команды с операндом
+     */
+    public static String disAsm(final int opCode, final int byte1, final int byte2) {
+        final String mnemonic = MNEMONICS[opCode & 0xFF];
+        switch (CMD_LEN[opCode & 0xFF]) {
+            case 2:
+                return mnemonic.concat(String.format("%02X"    , byte1 & 0xFF));
+            case 3:
+                return mnemonic.concat(String.format("%02X%02X", byte2 & 0xFF, byte1 & 0xFF));
+            default:
+                return mnemonic;
+        }
+    }
+
+    /**
+     * Возвращает мнемонику команды CPU (без операнда).
+     *
+     * @param opCode код команды
+     * @return мнемоника
+     */
+    public static String getMnemonic(final int opCode) {
+        return MNEMONICS[opCode & 0xFF];
+    }
+
+    /**
+     * Возвращает длину команды CPU.
+     *
+     * @param opCode код команды
+     * @return длина команды в байтах
+     */
+    public static int getLength(final int opCode) {
+        return CMD_LEN[opCode & 0xFF];
+    }
+}
@@ -0,0 +1,142 @@
+package ru.avsh.specialist.mx.helpers;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Locale;
+import java.util.Objects;
+
+/**
+ * Класс "Точка наблюдения" - остановка CPU при чтении/записи заданного диапазона адресов
+ * (память или регистры устройств ввода/вывода), возможно, с условием.
+ *
+ * @author -=AVSh=-
+ */
+public final class Watch {
+    // Типы обращений
+    public static final int READ  = 0b01;
+    public static final int WRITE = 0b10;
+
+    private final int    fType     ;
+    private final int    fStart    ;
+    private final int    fEnd      ;
+    private final String fCondition;
+
+    /**
+     * Конструктор.
+     *
+     * @param type      типы обращений (READ, WRITE или READ | WRITE)
+     * @param start     начальный адрес диапазона
+     * @param end       конечный адрес диапазона
+     * @param condition условие остановки (пустая строка = без условия)
+     */
+    public Watch(final int type, final int start, final int end, @NotNull final String condition) {
+        if (((type & (READ | WRITE)) == 0) || ((type & ~(READ | WRITE)) != 0)) {
+            throw new IllegalArgumentException("Неверный тип точки наблюдения");
+        }
+        if ((start < 0) || (end > 0xFFFF) || (start > end)) {
+            throw new IllegalArgumentException("Неверный диапазон адресов точки наблюдения");
+        }
+        fType      = type;
+        fStart     = start;
+        fEnd       = end;
+        fCondition = condition.trim();
+    }
+
+    /**
+     * Создает точку наблюдения из строки вида "RW FFE8-FFEB условие" (тип R, W или RW; адреса шестнадцатеричные;
+     * конечный адрес и условие необязательны).
+     *
+     * @param text строка
+     * @return точка наблюдения
+     * @throws IllegalArgumentException при ошибке в строке
+     */
+    public static Watch parse(@NotNull final String text) {
+        final String[] parts = text.trim().split("\\s+", 3);
+        if (parts.length < 2) {
+            throw new IllegalArgumentException("Точка наблюдения должна иметь вид: R|W|RW адрес[-адрес] [условие]");
+        }
+        final int type;
+        switch (parts[0].toUpperCase(Locale.ROOT)) {
+            case "R":
+                type = READ;
+                break;
+            case "W":
+                type = WRITE;
+                break;
+            case "RW":
+            case "WR":
+                type = READ | WRITE;
+                break;
+            default:
+                throw new IllegalArgumentException("Неверный тип точки наблюдения: ".concat(parts[0]));
+        }
+        final int dash = parts[1].indexOf('-');
+        try {
+            final int start = Integer.parseInt((dash == -1) ? parts[1] : parts[1].substring(0, dash), 16);
+            final int end   = (dash == -1) ? start : Integer.parseInt(parts[1].substring(dash + 1), 16);
+            return new Watch(type, start, end, (parts.length > 2) ? parts[2] : "");
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Неверный адрес точки наблюдения: ".concat(parts[1]));
+        }
+    }
+
+    /**
+     * Возвращает типы обращений.
+     *
+     * @return READ, WRITE или READ | WRITE
+     */
+    public int getType() {
+        return fType;
+    }
+
+    /**
+     * Возвращает начальный адрес диапазона.
+     *
+     * @return адрес
+     */
+    public int getStart() {
+        return fStart;
+    }
+
+    /**
+     * Возвращает конечный адрес диапазона.
+     *
+     * @return адрес
+     */
+    public int getEnd() {
+        return fEnd;
+    }
+
+    /**
+     * Возвращает условие остановки.
+     *
+     * @return условие (пустая строка = без условия)
+     */
+    public String getCondition() {
+        return fCondition;
+    }
+
+    @Override
+    public String toString() {
+        final String type  = ((fType & READ) != 0) ? (((fType & WRITE) != 0) ? "RW" : "R") : "W";
+        final String range = (fStart == fEnd) ? String.format("%04X", fStart) : String.format("%04X-%04X", fStart, fEnd);
+        return fCondition.isEmpty() ? String.format("%s %s", type, range) : String.format("%s %s %s", type, range, fCondition);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if ((o == null) || (getClass() != o.getClass())) {
+            return false;
+        }
+        final Watch watch = (Watch) o;
+        return (fType == watch.fType) && (fStart == watch.fStart) && (fEnd == watch.fEnd) && fCondition.equals(watch.fCondition);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(fType, fStart, fEnd, fCondition);
+    }
+}
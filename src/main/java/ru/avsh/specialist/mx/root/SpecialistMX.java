@@ -12,6 +12,8 @@ import ru.avsh.specialist.mx.helpers.Constants;
 import ru.avsh.specialist.mx.helpers.FileFinder;
 import ru.avsh.specialist.mx.units.CPUi8080;
 import ru.avsh.specialist.mx.units.ClockSpeedGenerator;
+import ru.avsh.specialist.mx.units.Coverage;
+import ru.avsh.specialist.mx.units.GuestProfiler;
 import ru.avsh.specialist.mx.units.Speaker;
 import ru.avsh.specialist.mx.units.memory.MemoryManager;
 import ru.avsh.specialist.mx.units.memory.units.*;
@@ -20,6 +22,8 @@ import javax.sound.sampled.LineUnavailableException;
 import javax.swing.*;
 import java.io.*;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
 import java.util.List;
 import java.util.Optional;
 import java.util.Properties;
@@ -40,6 +44,9 @@ import static ru.avsh.specialist.mx.helpers.Constants.*;
  * @author -=AVSh=-
  */
 public final class SpecialistMX {
+    // Количество строк в таблицах самых "горячих" подпрограмм и адресов профилировщика
+    private static final int PROFILE_HOT_SPOTS = 50;
+
     private final Wini                 fIni;
     private final Speaker              fSpc;
     private final Screen               fScr;
@@ -68,10 +75,13 @@ public final class SpecialistMX {
 
         // Создаем тактовый генератор
         fGen = new ClockSpeedGenerator();
+        fGen.setExactMode(Boolean.TRUE.equals(getIni(INI_SECTION_CONFIG, INI_OPTION_EXACT_CLOCK, Boolean.class)));
         // Создаем диспетчер запоминающих устройств
         fMemoryManager = new MemoryManager();
         // Создаем CPU
         fCPU = new CPUi8080(this, fMemoryManager, null);
+        fCPU.setBlockCompiler(Boolean.TRUE.equals(getIni(INI_SECTION_CONFIG, INI_OPTION_BLOCK_COMPILER, Boolean.class)));
+        fCPU.setBlockCache(!Boolean.FALSE.equals(getIni(INI_SECTION_CONFIG, INI_OPTION_BLOCK_CACHE, Boolean.class)));
         // Создаем Speaker
         Speaker speaker;
         try {
@@ -83,7 +93,11 @@ public final class SpecialistMX {
         // Создаем запоминающие устройства
         fScr = new Screen();
         fRAM = new MainMemory(NUMBER_PAGES_RAMDISK + 1, fScr); // RAM + RAM-диск (8 страниц) + ROM-диск
+        setRamDiskFile(getIni(INI_SECTION_CONFIG, INI_OPTION_RAM_DISK_FILE, String.class));
         fKey = new KeyboardPort(fSpc);
+        fCPU.setIdleDetection(!Boolean.FALSE.equals(getIni(INI_SECTION_CONFIG, INI_OPTION_IDLE_DETECTION, Boolean.class)) ? fKey : null);
+        fCPU.setTrace(Boolean.TRUE.equals(getIni(INI_SECTION_CONFIG, INI_OPTION_TRACE, Boolean.class)));
+        fCPU.setHle(!Boolean.FALSE.equals(getIni(INI_SECTION_CONFIG, INI_OPTION_ROM_HOOKS, Boolean.class)));
         fFDC = new FloppyDiskController(fGen, fCPU);
 
         final ProgrammableTimer        timer   = new ProgrammableTimer       (fSpc );
@@ -121,6 +135,48 @@ public final class SpecialistMX {
         reset(false, true);
     }
 
+    /**
+     * Задает файл, в который RAM-диск сохраняется при выходе из эмулятора (и из которого загружается).
+     *
+     * @param fileName имя файла (относительно каталога эмулятора), null или пусто = RAM-диск не сохраняется
+     */
+    private void setRamDiskFile(final String fileName) {
+        if ((fileName != null) && !fileName.trim().isEmpty()) {
+            try {
+                fRAM.setRamDiskFile(APP_PATH.resolve(fileName.trim()).toFile());
+            } catch (IOException | InvalidPathException e) {
+                // RAM-диск не сохраняется - сообщаем об этом после запуска приложения
+                Platform.runLater(() -> showMessageDialog(ICON, STR_ERROR, null,
+                        String.format("Ошибка загрузки RAM-диска: \"%s\"%n%s%nRAM-диск не будет сохранен!", fileName.trim(), e.toString()),
+                        AlertType.ERROR));
+            }
+        }
+    }
+
+    /**
+     * Сохраняет измененные страницы RAM-диска в файл RAM-диска (если он задан).
+     * Сохранение выполняется между командами CPU (см. MemoryManager.call()), о неудаче сообщается пользователю.
+     *
+     * @return false = сохранение не удалось
+     */
+    public boolean saveRamDisk() {
+        try {
+            fMemoryManager.call(() -> {
+                try {
+                    fRAM.saveRamDisk();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                return null;
+            });
+            return true;
+        } catch (UncheckedIOException e) {
+            showMessageDialog(ICON, STR_ERROR, null,
+                    String.format("Ошибка сохранения RAM-диска:%n%s", e.getCause().toString()), AlertType.ERROR);
+        }
+        return false;
+    }
+
     @Nullable
     private Wini getWini() {
         Wini ini =  new Wini();
@@ -257,35 +313,72 @@ public final class SpecialistMX {
      * Читает байт по заданному адресу из устройства памяти.
      * Чтение осуществляется из первого встречного устройства типа R/W,
      * остальные устройства игнорируются.
+     * (Метод можно вызывать из любого потока - см. MemoryManager.call())
      *
      * @param address заданный адрес
      * @return считанный из устройства памяти байт (байт представлен как int)
      */
     public int readByte(final int address) {
-        return fMemoryManager.readByte(address);
+        return fMemoryManager.call(() -> fMemoryManager.readByte(address));
     }
 
     /**
      * Читает байт по заданному адресу из устройства памяти.
      * Чтение осуществляется из первого встречного устройства типа R/W,
      * остальные устройства игнорируются.
-     * (Метод для вызова из отладчика - минимизирует влияние отладчика на работу устройств памяти)
+     * (Метод для вызова из отладчика - минимизирует влияние отладчика на работу устройств памяти,
+     * можно вызывать из любого потока)
      *
      * @param address заданный адрес
      * @return считанный из устройства памяти байт (байт представлен как int)
      */
     public int debugReadByte(final int address) {
-        return fMemoryManager.debugReadByte(address);
+        return fMemoryManager.call(() -> fMemoryManager.debugReadByte(address));
     }
 
     /**
      * Записывает байт по заданному адресу в устройство/устройства памяти.
+     * (Метод можно вызывать из любого потока - см. MemoryManager.call())
      *
      * @param address заданный адрес
      * @param value   записываемый байт (байт представлен как int)
      */
     public void writeByte(final int address, final int value) {
-        fMemoryManager.writeByte(address, value);
+        fMemoryManager.execute(() -> {
+            fMemoryManager.writeByte(address, value);
+            // Память изменена в обход CPU - устаревшие блоки кода нужно сбросить
+            fCPU.invalidateCode();
+        });
+    }
+
+    /**
+     * Читает блок байт, начиная с заданного адреса, из устройств памяти (см. MemoryManager.debugReadBlock()).
+     * (Метод для вызова из отладчика и при сохранении памяти, можно вызывать из любого потока)
+     *
+     * @param address заданный адрес
+     * @param buffer  буфер для считанных байт
+     * @param offset  смещение в буфере
+     * @param length  количество байт
+     */
+    public void debugReadBlock(final int address, final byte[] buffer, final int offset, final int length) {
+        fMemoryManager.call(() -> fMemoryManager.debugReadBlock(address, buffer, offset, length));
+    }
+
+    /**
+     * Записывает блок байт, начиная с заданного адреса, в устройство/устройства памяти (см. MemoryManager.writeBlock()).
+     * (Метод можно вызывать из любого потока - см. MemoryManager.call())
+     *
+     * @param address заданный адрес
+     * @param buffer  буфер с записываемыми байтами
+     * @param offset  смещение в буфере
+     * @param length  количество байт
+     */
+    public void writeBlock(final int address, final byte[] buffer, final int offset, final int length) {
+        fMemoryManager.execute(() -> {
+            fMemoryManager.writeBlock(address, buffer, offset, length);
+            // Память изменена в обход CPU - устаревшие блоки кода нужно сбросить
+            fCPU.invalidateCode();
+        });
     }
 
     /**
@@ -326,6 +419,246 @@ public final class SpecialistMX {
         fKey.setKeyboardMode(keyboardMode);
     }
 
+    /**
+     * Возвращает режим работы тактового генератора.
+     *
+     * @return true = точный (потактовый) режим / false = быстрый режим
+     */
+    public boolean isExactClockMode() {
+        return fGen.isExactMode();
+    }
+
+    /**
+     * Устанавливает режим работы тактового генератора (режим запоминается в ini-файле).
+     *
+     * @param exactMode true = точный (потактовый) режим / false = быстрый режим
+     */
+    public void setExactClockMode(final boolean exactMode) {
+        fGen.setExactMode(exactMode);
+        putIni(INI_SECTION_CONFIG, INI_OPTION_EXACT_CLOCK, exactMode);
+    }
+
+    /**
+     * Показывает включен ли кэш блоков кода CPU.
+     *
+     * @return true = кэш блоков кода включен
+     */
+    public boolean isBlockCacheMode() {
+        return fCPU.isBlockCache();
+    }
+
+    /**
+     * Включает/выключает кэш блоков кода CPU (режим запоминается в ini-файле).
+     *
+     * @param blockCacheMode true = включить кэш блоков кода
+     */
+    public void setBlockCacheMode(final boolean blockCacheMode) {
+        fCPU.setBlockCache(blockCacheMode);
+        putIni(INI_SECTION_CONFIG, INI_OPTION_BLOCK_CACHE, blockCacheMode);
+    }
+
+    /**
+     * Показывает включена ли компиляция часто выполняемых блоков кода CPU.
+     *
+     * @return true = компиляция включена
+     */
+    public boolean isBlockCompilerMode() {
+        return fCPU.isBlockCompiler();
+    }
+
+    /**
+     * Включает/выключает компиляцию часто выполняемых блоков кода CPU в классы JVM (режим запоминается в ini-файле).
+     *
+     * @param blockCompilerMode true = включить компиляцию
+     */
+    public void setBlockCompilerMode(final boolean blockCompilerMode) {
+        fCPU.setBlockCompiler(blockCompilerMode);
+        putIni(INI_SECTION_CONFIG, INI_OPTION_BLOCK_COMPILER, blockCompilerMode);
+    }
+
+    /**
+     * Показывает включен ли пропуск холостых циклов (циклов опроса клавиатуры) CPU.
+     *
+     * @return true = пропуск холостых циклов включен
+     */
+    public boolean isIdleDetectionMode() {
+        return fCPU.isIdleDetection();
+    }
+
+    /**
+     * Включает/выключает пропуск холостых циклов (циклов опроса клавиатуры) CPU (режим запоминается в ini-файле).
+     *
+     * @param idleDetectionMode true = включить пропуск холостых циклов
+     */
+    public void setIdleDetectionMode(final boolean idleDetectionMode) {
+        fCPU.setIdleDetection(idleDetectionMode ? fKey : null);
+        putIni(INI_SECTION_CONFIG, INI_OPTION_IDLE_DETECTION, idleDetectionMode);
+    }
+
+    /**
+     * Показывает включен ли перехват подпрограмм ПЗУ.
+     *
+     * @return true = перехват включен
+     */
+    public boolean isRomHooksMode() {
+        return fCPU.isHle();
+    }
+
+    /**
+     * Включает/выключает перехват подпрограмм ПЗУ (режим запоминается в ini-файле).
+     *
+     * @param romHooksMode true = включить перехват
+     */
+    public void setRomHooksMode(final boolean romHooksMode) {
+        fCPU.setHle(romHooksMode);
+        putIni(INI_SECTION_CONFIG, INI_OPTION_ROM_HOOKS, romHooksMode);
+    }
+
+    /**
+     * Показывает включена ли трассировка команд CPU.
+     *
+     * @return true = трассировка включена
+     */
+    public boolean isTraceMode() {
+        return fCPU.isTrace();
+    }
+
+    /**
+     * Включает/выключает трассировку команд CPU (режим запоминается в ini-файле).
+     *
+     * @param traceMode true = включить трассировку
+     */
+    public void setTraceMode(final boolean traceMode) {
+        fCPU.setTrace(traceMode);
+        putIni(INI_SECTION_CONFIG, INI_OPTION_TRACE, traceMode);
+    }
+
+    /**
+     * Показывает включено ли профилирование программ CPU.
+     *
+     * @return true = профилирование включено
+     */
+    public boolean isProfilerMode() {
+        return fCPU.isProfiler();
+    }
+
+    /**
+     * Включает/выключает профилирование программ CPU (при включении результаты предыдущего профилирования сбрасываются).
+     *
+     * @param profilerMode true = включить профилирование
+     */
+    public void setProfilerMode(final boolean profilerMode) {
+        fCPU.setProfiler(profilerMode);
+    }
+
+    /**
+     * Сохраняет результаты профилирования: свернутые стеки вызовов для flame graph (файл *.folded)
+     * и таблицу самых "горячих" подпрограмм и адресов (файл *.txt с тем же именем).
+     *
+     * @param file файл для свернутых стеков
+     * @return false = сохранение не удалось
+     */
+    public boolean saveProfile(final File file) {
+        final GuestProfiler profiler = fCPU.getProfiler();
+        if ((file == null) || (profiler == null)) {
+            showMessageDialog(ICON, STR_ERROR, null, "Профилирование не включено - сохранение невозможно!", AlertType.ERROR);
+            return false;
+        }
+        final String path = file.getPath().replaceFirst("\\.[^.\\\\/]*$", "");
+        pause(true , true);
+        try {
+            profiler.saveFolded(new File(path.concat(".folded")).toPath());
+            Files.write(new File(path.concat(".txt")).toPath(), profiler.getHotSpots(PROFILE_HOT_SPOTS), StandardCharsets.UTF_8);
+            return true;
+        } catch (IOException e) {
+            showMessageDialog(ICON, STR_ERROR, null,
+                    String.format("Ошибка сохранения файла: \"%s\"%n%s", file.getName(), e.toString()), AlertType.ERROR);
+        } finally {
+            pause(false, true);
+        }
+        return false;
+    }
+
+    /**
+     * Показывает включен ли учет покрытия кода.
+     *
+     * @return true = учет покрытия кода включен
+     */
+    public boolean isCoverageMode() {
+        return fCPU.isCoverage();
+    }
+
+    /**
+     * Включает/выключает учет покрытия кода (при включении предыдущее покрытие сбрасывается).
+     *
+     * @param coverageMode true = включить учет покрытия кода
+     */
+    public void setCoverageMode(final boolean coverageMode) {
+        fCPU.setCoverage(coverageMode);
+    }
+
+    /**
+     * Сохраняет покрытие кода: карту покрытия (файл *.cov) и дизассемблированный листинг
+     * с отметками покрытия (файл *.lst с тем же именем).
+     *
+     * @param file файл для карты покрытия
+     * @return false = сохранение не удалось
+     */
+    public boolean saveCoverage(final File file) {
+        final Coverage coverage = fCPU.getCoverage();
+        if ((file == null) || (coverage == null)) {
+            showMessageDialog(ICON, STR_ERROR, null, "Учет покрытия кода не включен - сохранение невозможно!", AlertType.ERROR);
+            return false;
+        }
+        final String path = file.getPath().replaceFirst("\\.[^.\\\\/]*$", "");
+        pause(true , true);
+        final int curPage = getPage();
+        try {
+            coverage.saveMap(new File(path.concat(".cov")).toPath());
+            coverage.saveListing(new File(path.concat(".lst")).toPath(), (page, address) -> {
+                if (getPage() != page) {
+                    setPage(page);
+                }
+                return debugReadByte(address);
+            });
+            return true;
+        } catch (IOException e) {
+            showMessageDialog(ICON, STR_ERROR, null,
+                    String.format("Ошибка сохранения файла: \"%s\"%n%s", file.getName(), e.toString()), AlertType.ERROR);
+        } finally {
+            setPage(curPage);
+            pause(false, true);
+        }
+        return false;
+    }
+
+    /**
+     * Сравнивает текущее покрытие кода с картой покрытия другого прогона и сохраняет различия
+     * (строки "+страница:начало-конец флаги" - новые в текущем прогоне, "-..." - только в другом прогоне).
+     *
+     * @param baseFile файл карты покрытия другого прогона (*.cov)
+     * @param diffFile файл для различий
+     * @return false = сравнение не удалось
+     */
+    public boolean compareCoverage(final File baseFile, final File diffFile) {
+        final Coverage coverage = fCPU.getCoverage();
+        if ((baseFile == null) || (diffFile == null) || (coverage == null)) {
+            showMessageDialog(ICON, STR_ERROR, null, "Учет покрытия кода не включен - сравнение невозможно!", AlertType.ERROR);
+            return false;
+        }
+        pause(true , true);
+        try {
+            Files.write(diffFile.toPath(), coverage.diff(Coverage.loadMap(baseFile.toPath())), StandardCharsets.UTF_8);
+            return true;
+        } catch (IOException e) {
+            showMessageDialog(ICON, STR_ERROR, null,
+                    String.format("Ошибка сравнения покрытия: \"%s\"%n%s", baseFile.getName(), e.toString()), AlertType.ERROR);
+        } finally {
+            pause(false, true);
+        }
+        return false;
+    }
+
     /**
      * Очищает клавиатурный буфер.
      */
@@ -527,9 +860,7 @@ public final class SpecialistMX {
                     }
                     // Перемещаем данные из буфера в память через менеджер устройств памяти
                     if (isPaused()) {
-                        for (byte data : buf) {
-                            writeByte(address++, data); // Вызываем синхронизированный метод
-                        }
+                        writeBlock(address, buf, 0, length); // Вызываем потокобезопасный метод
                     } else {
                         throw new IOException("Процессор эмулятора не находится в состоянии \"Пауза\" - невозможно загрузить в память файл: ".concat(fileName));
                     }
@@ -603,10 +934,7 @@ public final class SpecialistMX {
                 }
                 // Перемещаем данные из буфера в память через менеджер устройств памяти
                 if (isPaused()) {
-                    int address = 0x0000;
-                    for (byte data : buf) {
-                        writeByte(address++, data); // Вызываем синхронизированный метод
-                    }
+                    writeBlock(0x0000, buf, 0, length); // Вызываем потокобезопасный метод
                 } else {
                     throw new IOException("Процессор эмулятора не находится в состоянии \"Пауза\" - невозможно загрузить в память ROM-файл эмулятора!");
                 }
@@ -650,6 +978,7 @@ public final class SpecialistMX {
             loadROM();
             // Запоминаем имя ROM-файла
             fCurMonName = SPMX_ROM_FILE.toLowerCase();
+            fCPU.setHleProfile(fCurMonName);
             // Сбрасываем CPU с адреса 0x0000 (сброс устройств памяти устанавливает страницу памяти 0, что здесь не подходит)
             reset(0x0000, false);
             return true;
@@ -718,6 +1047,7 @@ public final class SpecialistMX {
                 });
                 // Запоминаем имя MON-файла
                 fCurMonName = fileName.toLowerCase();
+                fCPU.setHleProfile(fCurMonName);
                 // Сбрасываем CPU с заданного адреса
                 reset(address, true);
                 return true;
@@ -978,9 +1308,7 @@ public final class SpecialistMX {
             final byte[] buf = new byte[length];
             // Перемещаем данные из памяти в буфер через менеджер устройств памяти
             pause(true , true);
-            for (int i = 0; i < length; i++) {
-                buf[i] = (byte) debugReadByte(beginAddress++); // Вызываем синхронизированный метод
-            }
+            debugReadBlock(beginAddress, buf, 0, length); // Вызываем потокобезопасный метод
             pause(false, true);
             // Сохраняем I80-файл
             try (FileOutputStream fos = new FileOutputStream(file)) {
@@ -1023,10 +1351,7 @@ public final class SpecialistMX {
             buf[3] = (byte) ((endAddress   >> 8) & 0xFF);
             // Перемещаем данные из памяти в буфер через менеджер устройств памяти
             pause(true , true);
-            for (int i = 4, j = length + i; i < j; i++) {
-                // Вызываем синхронизированный метод
-                buf[i] = (byte) debugReadByte(beginAddress++);
-            }
+            debugReadBlock(beginAddress, buf, 4, length); // Вызываем потокобезопасный метод
             pause(false, true);
             // Рассчитаем контрольную сумму данных
             final int checkSum = getChecksum(buf, 4, length);
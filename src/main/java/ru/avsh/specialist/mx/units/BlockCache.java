@@ -0,0 +1,894 @@
+package ru.avsh.specialist.mx.units;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import ru.avsh.specialist.mx.units.memory.MemoryManager;
+import ru.avsh.specialist.mx.units.memory.units.MainMemory;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.function.IntSupplier;
+
+/**
+ * Класс "Кэш блоков кода" для CPU i8080.
+ * <p>
+ * Линейные участки кода (базовые блоки) декодируются один раз в массив обработчиков с уже извлеченными операндами
+ * и далее выполняются без выборки команд через диспетчер памяти. Блоки хранятся для каждой пары (страница памяти, адрес).
+ * Блок заканчивается командой передачи управления, перед командами HLT/IN/OUT и перед обращениями к области устройств
+ * ввода/вывода (0xFFC0-0xFFFF) - такие команды всегда выполняет интерпретатор CPU, поэтому остальные тактируемые
+ * устройства к моменту обращения к ним успевают выполнить все такты предыдущих команд. Переключение страниц памяти
+ * выполняется записью в порт (0xFFFC-0xFFFF), т.е. тоже только интерпретатором - после него блок выбирается уже
+ * для новой страницы.
+ * <p>
+ * Запись CPU в память, занятую блоками, сбрасывает эти блоки (в том числе текущий - выполнение прерывается после
+ * команды, выполнившей запись). Запись в обход CPU (отладчик, загрузка файлов, сброс) очищает весь кэш.
+ *
+ * @author -=AVSh=-
+ */
+final class BlockCache {
+    // Начало области устройств ввода/вывода (обращения к ней выполняет только интерпретатор)
+    static final int IO_AREA                  = 0xFFC0;
+    // На странице ROM-диска адреса >= 0xC000 отображаются на страницу 0 - блоки не пересекают эту границу
+    private static final int ROM_BOUNDARY     = 0xC000;
+    // Количество выполнений блока, после которого блок компилируется (если компиляция включена)
+    static final int HOT_THRESHOLD            = 1_000;
+    // Максимальное количество команд в блоке
+    private static final int MAX_BLOCK_LENGTH = 32;
+    // Максимальный размер блока в байтах
+    private static final int MAX_BLOCK_BYTES  = MAX_BLOCK_LENGTH * 3;
+    // Максимальное количество тактов, пропускаемых свернутым циклом задержки за один вызов
+    // (ограничивает задержку реакции CPU на запросы HOLD/паузы и размер пакета тактов для остальных устройств)
+    private static final int MAX_LOOP_CYCLES  = 4_096;
+    // Количество страниц памяти (RAM + RAM-диск + ROM-диск)
+    private static final int NUMBER_PAGES     = MainMemory.ROM_DISK + 1;
+
+    // Длина команд CPU в байтах (используется также трассой команд)
+    static final int[] LENGTHS = new int[256];
+
+    static {
+        Arrays.fill(LENGTHS, 1);
+        for (int opCode = 0; opCode < 256; opCode++) {
+            switch (opCode & 0b1100_0111) {
+                case 0b0000_0110: // MVI
+                case 0b1100_0110: // ADI, ACI, SUI, SBI, ANI, XRI, ORI, CPI
+                    LENGTHS[opCode] = 2;
+                    break;
+                case 0b1100_0010: // Jcc
+                case 0b1100_0100: // Ccc
+                    LENGTHS[opCode] = 3;
+                    break;
+                default:
+                    break;
+            }
+        }
+        for (int opCode : new int[]{0x01, 0x11, 0x21, 0x31, 0x22, 0x2A, 0x32, 0x3A, 0xC3, 0xCB, 0xCD, 0xDD, 0xED, 0xFD}) {
+            LENGTHS[opCode] = 3; // LXI, SHLD, LHLD, STA, LDA, JMP, CALL
+        }
+        LENGTHS[0xD3] = 2; // OUT
+        LENGTHS[0xDB] = 2; // IN
+    }
+
+    /**
+     * Интерфейс "Обработчик команды" с уже извлеченными операндами.
+     */
+    @FunctionalInterface
+    interface Op {
+        /**
+         * Выполняет команду.
+         *
+         * @param cpu CPU
+         * @return количество тактов команды или -1, если команда обращается к устройствам ввода/вывода
+         * (команда не выполнена и будет выполнена интерпретатором)
+         */
+        int exec(CPUi8080 cpu);
+    }
+
+    /**
+     * Класс "Блок кода".
+     */
+    static final class Block {
+        final Op[]    fOps        ;
+        final int[]   fOpAddresses; // Адреса команд, с которых начинаются обработчики
+        final int[]   fAddresses  ; // Адреса команд блока
+        final int[]   fCodes      ; // Команды блока: код операции | (операнд << 8)
+        final int     fEnd        ; // Адрес, следующий за блоком
+        final boolean fJump       ; // true = последняя команда блока сама устанавливает PC
+
+        boolean       fValid = true;
+        boolean       fLoop       ; // true = блок - свернутый цикл задержки или обработки блока памяти (не компилируется)
+        int           fCount      ; // Счетчик выполнений (до компиляции блока)
+        CompiledBlock fCompiled   ; // Скомпилированный блок (null = блок еще не скомпилирован)
+
+        Block(final Op[] ops, final int[] opAddresses, final int[] addresses, final int[] codes, final int end, final boolean jump) {
+            fOps         = ops        ;
+            fOpAddresses = opAddresses;
+            fAddresses   = addresses  ;
+            fCodes       = codes      ;
+            fEnd         = end        ;
+            fJump        = jump       ;
+        }
+
+        /**
+         * Выполняет блок.
+         *
+         * @param cpu CPU
+         * @return количество тактов выполненных команд (0 = ни одна команда не выполнена)
+         */
+        int exec(final CPUi8080 cpu) {
+            final Op[] ops = fOps;
+            if (ops.length == 0) {
+                return 0;
+            }
+            int cycles = 0;
+            for (int index = 0; index < ops.length; index++) {
+                final int c = ops[index].exec(cpu);
+                if (c < 0) {
+                    // Команду выполнит интерпретатор
+                    cpu.fPC = fOpAddresses[index];
+                    return cycles;
+                }
+                cycles += c;
+                // Команда изменила код этого же блока - дальше выполнять блок нельзя
+                if (!fValid && (index + 1 < ops.length)) {
+                    cpu.fPC = fOpAddresses[index + 1];
+                    return cycles;
+                }
+            }
+            if (!fJump) {
+                cpu.fPC = fEnd;
+            }
+            return cycles;
+        }
+    }
+
+    private final CPUi8080      fCPU;
+    private final IntSupplier   fPages;
+    private final MemoryManager fMemManager;
+
+    // Блоки по страницам памяти и начальным адресам
+    private final Block[][] fBlocks;
+    // Битовая карта адресов, занятых блоками (на любой странице памяти)
+    private final int[]     fCodeMap;
+
+    // Таблица слияния команд (со статистикой выполнений)
+    private final FusionTable  fFusions;
+    // Распознаватель циклов обработки блоков памяти
+    private final MemoryIdioms fIdioms ;
+
+    // Компиляция часто выполняемых блоков (true = включена)
+    private volatile boolean fCompile;
+
+    /**
+     * Конструктор.
+     *
+     * @param cpu        CPU
+     * @param pages      источник номера текущей страницы памяти
+     * @param memManager диспетчер запоминающих устройств CPU
+     */
+    BlockCache(@NotNull final CPUi8080 cpu, @NotNull final IntSupplier pages, @NotNull final MemoryManager memManager) {
+        fCPU        = cpu ;
+        fPages      = pages;
+        fMemManager = memManager;
+        fBlocks     = new Block[NUMBER_PAGES][];
+        fCodeMap    = new int[(0x1_0000 >> 5) + 1]; // +1 - для записи слова по адресу 0xFFFF
+        fFusions    = new FusionTable();
+        fIdioms     = new MemoryIdioms(memManager, fCodeMap);
+    }
+
+    /**
+     * Возвращает номер страницы, которой принадлежит код по заданному адресу.
+     *
+     * @param page    текущая страница памяти
+     * @param address адрес
+     * @return номер страницы для кэша
+     */
+    private static int keyPage(final int page, final int address) {
+        return ((page == MainMemory.ROM_DISK) && (address >= ROM_BOUNDARY)) ? 0 : page;
+    }
+
+    /**
+     * Проверяет, установлена ли ловушка по заданному адресу в текущей странице памяти
+     * (для адресов, общих для страницы 0 и ROM-диска, проверяются обе страницы).
+     *
+     * @param address адрес
+     * @return true = ловушка установлена
+     */
+    private boolean isTrap(final int address) {
+        final int page = fPages.getAsInt();
+        if ((address >= ROM_BOUNDARY) && ((page == 0) || (page == MainMemory.ROM_DISK))) {
+            return fCPU.isTrap(0, address) || fCPU.isTrap(MainMemory.ROM_DISK, address);
+        }
+        return fCPU.isTrap(page, address);
+    }
+
+    /**
+     * Выполняет блок с адреса, заданного в регистре PC.
+     *
+     * @return количество тактов выполненных команд (0 = блок не выполнялся, команду выполнит интерпретатор)
+     */
+    int exec() {
+        final int pc = fCPU.fPC;
+        if (pc >= IO_AREA) {
+            return 0;
+        }
+        final int page = keyPage(fPages.getAsInt(), pc);
+        Block[] blocks = fBlocks[page];
+        if (blocks == null) {
+            blocks = fBlocks[page] = new Block[IO_AREA];
+        }
+        Block block = blocks[pc];
+        if (block == null) {
+            block = blocks[pc] = decode(pc);
+        }
+        if (fCompile) {
+            CompiledBlock compiled = block.fCompiled;
+            if ((compiled == null) && (++block.fCount == HOT_THRESHOLD) && (block.fOps.length > 0) && !block.fLoop) {
+                compiled = block.fCompiled = BlockCompiler.compile(fCPU, block);
+            }
+            if (compiled != null) {
+                return compiled.exec();
+            }
+        }
+        return block.exec(fCPU);
+    }
+
+    /**
+     * Включает/выключает компиляцию часто выполняемых блоков в классы JVM.
+     *
+     * @param mode true = включить компиляцию
+     */
+    void setCompile(final boolean mode) {
+        fCompile = mode;
+    }
+
+    /**
+     * Сообщает кэшу о записи CPU в память.
+     *
+     * @param address адрес записи
+     */
+    void written(final int address) {
+        if ((fCodeMap[address >> 5] & (1 << address)) != 0) {
+            invalidate(address);
+        }
+    }
+
+    /**
+     * Показывает, занят ли адрес блоками кода (на любой странице памяти).
+     *
+     * @param address адрес
+     * @return true = адрес занят блоками кода
+     */
+    boolean isCode(final int address) {
+        return (fCodeMap[address >> 5] & (1 << address)) != 0;
+    }
+
+    /**
+     * Сбрасывает блоки текущей страницы памяти, содержащие заданный адрес.
+     *
+     * @param address адрес
+     */
+    private void invalidate(final int address) {
+        final Block[] blocks = fBlocks[keyPage(fPages.getAsInt(), address)];
+        if (blocks != null) {
+            // Диапазон адресов сброшенных блоков
+            int from = address + 1;
+            int to   = address;
+            for (int start = Math.max(address - MAX_BLOCK_BYTES + 1, 0), end = Math.min(address, IO_AREA - 1); start <= end; start++) {
+                final Block block = blocks[start];
+                if ((block != null) && (block.fEnd > address)) {
+                    block.fValid  = false;
+                    blocks[start] = null ;
+                    from = Math.min(from, start     );
+                    to   = Math.max(to  , block.fEnd);
+                }
+            }
+            if (from < to) {
+                unmarkCode(from, to);
+            }
+        }
+    }
+
+    /**
+     * Снимает в битовой карте пометку адресов сброшенных блоков. Карта общая для всех страниц памяти, поэтому
+     * адреса диапазона, занятые оставшимися блоками (на любой странице), помечаются снова.
+     *
+     * @param from начальный адрес диапазона
+     * @param to   адрес, следующий за диапазоном
+     */
+    private void unmarkCode(final int from, final int to) {
+        for (int a = from; a < to; a++) {
+            fCodeMap[a >> 5] &= ~(1 << a);
+        }
+        for (Block[] blocks : fBlocks) {
+            if (blocks != null) {
+                for (int start = Math.max(from - MAX_BLOCK_BYTES + 1, 0), end = Math.min(to, IO_AREA) - 1; start <= end; start++) {
+                    final Block block = blocks[start];
+                    if ((block != null) && (block.fEnd > from)) {
+                        markCode(Math.max(start, from), Math.min(block.fEnd, to));
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Помечает диапазон адресов в битовой карте адресов, занятых блоками.
+     *
+     * @param from начальный адрес диапазона
+     * @param to   адрес, следующий за диапазоном
+     */
+    private void markCode(final int from, final int to) {
+        for (int a = from; a < to; a++) {
+            fCodeMap[a >> 5] |= 1 << a;
+        }
+    }
+
+    /**
+     * Очищает кэш.
+     */
+    void clear() {
+        for (Block[] blocks : fBlocks) {
+            if (blocks != null) {
+                for (Block block : blocks) {
+                    if (block != null) {
+                        block.fValid = false;
+                    }
+                }
+            }
+        }
+        Arrays.fill(fBlocks , null);
+        Arrays.fill(fCodeMap, 0   );
+    }
+
+    /**
+     * Декодирует блок с заданного адреса.
+     *
+     * @param start начальный адрес блока
+     * @return блок (блок без команд - с этого адреса команду выполняет интерпретатор)
+     */
+    private Block decode(final int start) {
+        final int   limit     = (start < ROM_BOUNDARY) ? ROM_BOUNDARY : IO_AREA;
+        final Op[]  ops       = new Op [MAX_BLOCK_LENGTH];
+        final int[] addresses = new int[MAX_BLOCK_LENGTH];
+        final int[] codes     = new int[MAX_BLOCK_LENGTH];
+
+        int     count   = 0;
+        int     address = start;
+        boolean jump    = false;
+        while ((count < MAX_BLOCK_LENGTH) && !jump) {
+            // Блок заканчивается перед адресом ловушки (ловушки проверяются после выполнения блока)
+            // и перед адресом перехватчика подпрограммы ПЗУ (перехватчики проверяются перед выполнением блока)
+            if ((count > 0) && (isTrap(address) || fCPU.isHleHook(address))) {
+                break;
+            }
+            final int opCode = fMemManager.debugReadByte(address);
+            final int length = LENGTHS[opCode];
+            if (address + length > limit) {
+                break;
+            }
+            final int data;
+            switch (length) {
+                case 2:
+                    data = fMemManager.debugReadByte(address + 1);
+                    break;
+                case 3:
+                    data = fMemManager.debugReadByte(address + 1) | (fMemManager.debugReadByte(address + 2) << 8);
+                    break;
+                default:
+                    data = 0;
+                    break;
+            }
+            final Op op = decodeOp(opCode, data, address + length);
+            if (op == null) {
+                break;
+            }
+            ops      [count  ] = op;
+            codes    [count  ] = opCode | (data << 8);
+            addresses[count++] = address;
+            address += length;
+            jump     = isJump(opCode);
+        }
+
+        // Помечаем адреса блока в битовой карте (для пустого блока - первый байт, чтобы его тоже можно было сбросить)
+        final int end = Math.max(address, start + 1);
+        markCode(start, end);
+
+        // Цикл задержки или обработки блока памяти выполняется одним обработчиком, вычисляющим результат сразу для многих итераций
+        // (кроме цикла с ловушкой в начале - каждая его итерация должна проходить через проверку ловушки)
+        Op loop = null;
+        if (!isTrap(start)) {
+            loop = decodeDelayLoop(start, codes, count, end);
+            if (loop == null) {
+                loop = fIdioms.decode(start, codes, count, end);
+            }
+        }
+        if (loop != null) {
+            final Block block = new Block(new Op[]{loop}, new int[]{start}, Arrays.copyOf(addresses, count), Arrays.copyOf(codes, count), end, true);
+            block.fLoop = true;
+            return block;
+        }
+
+        // Заменяем последовательности команд из таблицы слияния одним обработчиком
+        final Op[]  fusedOps       = new Op [count];
+        final int[] fusedAddresses = new int[count];
+        int fusedCount = 0;
+        for (int index = 0; index < count; fusedCount++) {
+            final FusionTable.Fused fused = fFusions.fuse(codes, addresses, index, count, end);
+            fusedAddresses[fusedCount] = addresses[index];
+            if (fused != null) {
+                fusedOps[fusedCount] = fused.fOp;
+                index += fused.fLength;
+            } else {
+                fusedOps[fusedCount] = ops[index++];
+            }
+        }
+        return new Block(Arrays.copyOf(fusedOps, fusedCount), Arrays.copyOf(fusedAddresses, fusedCount),
+                Arrays.copyOf(addresses, count), Arrays.copyOf(codes, count), end, jump);
+    }
+
+    /**
+     * Распознает цикл задержки, не обращающийся к памяти и устройствам ввода/вывода:
+     * "DCR r; JNZ start" или "DCX rp; MOV A,rh; ORA rl; JNZ start" (регистры пары в любом порядке).
+     * Обработчик такого цикла за один вызов пропускает сразу до MAX_LOOP_CYCLES тактов итераций, устанавливая
+     * регистры и флаги такими, какими они были бы после этих итераций. Тактовый генератор передает пропущенные такты
+     * остальным устройствам, поэтому таймер и звук не смещаются во времени.
+     *
+     * @param start начальный адрес блока
+     * @param codes команды блока: код операции | (операнд << 8)
+     * @param count количество команд в блоке
+     * @param end   адрес, следующий за блоком
+     * @return обработчик цикла или null, если блок не является циклом задержки
+     */
+    @Nullable
+    private static Op decodeDelayLoop(final int start, final int[] codes, final int count, final int end) {
+        final int jnzStart = 0xC2 | (start << 8);
+        if ((count == 2) && (codes[1] == jnzStart) && ((codes[0] & 0b1100_0111) == 0b0000_0101) && (codes[0] != 0x35)) {
+            // DCR r; JNZ start - 15 тактов на итерацию
+            final int r = (codes[0] >> 3) & 0b111;
+            return cpu -> {
+                final int v = cpu.getReg(r);
+                final int n = (v == 0) ? 0x100 : v; // Итераций до выхода из цикла
+                final int k = Math.min(n, MAX_LOOP_CYCLES / 15);
+                final int result = (v - k) & 0xFF;
+                cpu.setReg(r, result);
+                cpu.fF  = CPUi8080.FLAGS_DCR[result] | (cpu.fF & 1);
+                cpu.fPC = (k == n) ? end : start;
+                return k * 15;
+            };
+        }
+        if ((count == 4) && (codes[3] == jnzStart) && ((codes[0] & 0b1100_1111) == 0b0000_1011) && (codes[0] != 0x3B)
+                && ((codes[1] & 0b1111_1000) == 0x78) && ((codes[2] & 0b1111_1000) == 0xB0)) {
+            // DCX rp; MOV A,rh; ORA rl; JNZ start - 24 такта на итерацию
+            final int pair = (codes[0] >> 3) & 0b110;
+            final int x    = codes[1] & 0b111;
+            final int y    = codes[2] & 0b111;
+            if (((x == pair) && (y == pair + 1)) || ((x == pair + 1) && (y == pair))) {
+                return cpu -> {
+                    final int v = cpu.getRegPair(pair);
+                    final int n = (v == 0) ? 0x1_0000 : v; // Итераций до выхода из цикла
+                    final int k = Math.min(n, MAX_LOOP_CYCLES / 24);
+                    final int result = (v - k) & 0xFFFF;
+                    cpu.setRegPair(pair, result);
+                    cpu.fA  = ((result >> 8) | result) & 0xFF;
+                    cpu.fF  = CPUi8080.FLAGS_SZP[cpu.fA];
+                    cpu.fPC = (k == n) ? end : start;
+                    return k * 24;
+                };
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Возвращает статистику выполнений слитых обработчиков.
+     *
+     * @return имя последовательности команд -> количество выполнений
+     */
+    Map<String, Long> getFusionStatistics() {
+        return fFusions.getStatistics();
+    }
+
+    /**
+     * Проверяет, является ли команда командой передачи управления.
+     *
+     * @param opCode код операции
+     * @return true = команда изменяет PC
+     */
+    private static boolean isJump(final int opCode) {
+        switch (opCode & 0b1100_0111) {
+            case 0b1100_0000: // Rcc
+            case 0b1100_0010: // Jcc
+            case 0b1100_0100: // Ccc
+            case 0b1100_0111: // RST
+                return true;
+            default:
+                switch (opCode) {
+                    case 0xC3: // JMP
+                    case 0xCB:
+                    case 0xC9: // RET
+                    case 0xD9:
+                    case 0xCD: // CALL
+                    case 0xDD:
+                    case 0xED:
+                    case 0xFD:
+                    case 0xE9: // PCHL
+                        return true;
+                    default:
+                        return false;
+                }
+        }
+    }
+
+    /**
+     * Проверяет, попадает ли запись слова в стек в область устройств ввода/вывода.
+     *
+     * @param cpu CPU
+     * @return true = команду должен выполнить интерпретатор
+     */
+    private static boolean isPushIO(final CPUi8080 cpu) {
+        return ((cpu.fSP - 2) & 0xFFFF) >= IO_AREA - 1;
+    }
+
+    /**
+     * Создает обработчик команды.
+     *
+     * @param opCode код операции
+     * @param data   операнд команды (байт или слово)
+     * @param next   адрес следующей команды
+     * @return обработчик или null, если команду должен выполнять интерпретатор
+     */
+    @Nullable
+    private static Op decodeOp(final int opCode, final int data, final int next) {
+        final int cycles = CPUi8080.CYCLES[opCode];
+        final int taken  = cycles >> 8  ;
+        final int other  = cycles & 0xFF;
+        final int r      = (opCode >> 3) & 0b111;
+        final int s      =  opCode       & 0b111;
+
+        switch (opCode >> 6) {
+            case 0:
+                return decodeMisc(opCode, data, cycles);
+            case 1:
+                if (opCode == 0x76) { // HLT
+                    return null;
+                }
+                if (s == 6) { // MOV r, M
+                    return cpu -> {
+                        final int a = cpu.fHL;
+                        if (a >= IO_AREA) {
+                            return -1;
+                        }
+                        cpu.setReg(r, cpu.readByte(a));
+                        return cycles;
+                    };
+                }
+                if (r == 6) { // MOV M, r
+                    return cpu -> {
+                        final int a = cpu.fHL;
+                        if (a >= IO_AREA) {
+                            return -1;
+                        }
+                        cpu.writeByte(a, cpu.getReg(s));
+                        return cycles;
+                    };
+                }
+                return cpu -> {
+                    cpu.setReg(r, cpu.getReg(s));
+                    return cycles;
+                };
+            case 2:
+                if (s == 6) { // ALU M
+                    return cpu -> {
+                        final int a = cpu.fHL;
+                        if (a >= IO_AREA) {
+                            return -1;
+                        }
+                        cpu.cmdGroupAlu(r, cpu.readByte(a));
+                        return cycles;
+                    };
+                }
+                return cpu -> {
+                    cpu.cmdGroupAlu(r, cpu.getReg(s));
+                    return cycles;
+                };
+            default:
+                break;
+        }
+
+        switch (s) {
+            case 0: // Rcc
+                return cpu -> {
+                    if (cpu.testFlags(r)) {
+                        if (cpu.fSP >= IO_AREA - 1) {
+                            return -1;
+                        }
+                        cpu.fPC = cpu.popWord();
+                        return taken;
+                    }
+                    cpu.fPC = next;
+                    return other;
+                };
+            case 1:
+                if ((opCode & 0b1000) == 0) { // POP
+                    final int pair = (opCode & 0b0011_0000) >> 3;
+                    return cpu -> {
+                        if (cpu.fSP >= IO_AREA - 1) {
+                            return -1;
+                        }
+                        final int v = cpu.popWord();
+                        cpu.setRegPair(pair, (pair == 6) ? (v & 0b1111_1111_1101_0111 | 0b10) : v);
+                        return cycles;
+                    };
+                }
+                switch ((opCode >> 4) & 0b11) {
+                    case 2: // PCHL
+                        return cpu -> {
+                            cpu.fPC = cpu.fHL;
+                            return cycles;
+                        };
+                    case 3: // SPHL
+                        return cpu -> {
+                            cpu.fSP = cpu.fHL;
+                            return cycles;
+                        };
+                    default: // RET
+                        return cpu -> {
+                            if (cpu.fSP >= IO_AREA - 1) {
+                                return -1;
+                            }
+                            cpu.fPC = cpu.popWord();
+                            return cycles;
+                        };
+                }
+            case 2: // Jcc
+                return cpu -> {
+                    cpu.fPC = cpu.testFlags(r) ? data : next;
+                    return taken;
+                };
+            case 3:
+                switch (r) {
+                    case 0: // JMP
+                    case 1:
+                        return cpu -> {
+                            cpu.fPC = data;
+                            return cycles;
+                        };
+                    case 4: // XTHL
+                        return cpu -> {
+                            final int sp = cpu.fSP;
+                            if (sp >= IO_AREA - 1) {
+                                return -1;
+                            }
+                            final int v = cpu.readWord(sp);
+                            cpu.writeWord(sp, cpu.fHL);
+                            cpu.fHL = v;
+                            return cycles;
+                        };
+                    case 5: // XCHG
+                        return cpu -> {
+                            final int v = cpu.fDE;
+                            cpu.fDE = cpu.fHL;
+                            cpu.fHL = v;
+                            return cycles;
+                        };
+                    case 6: // DI
+                    case 7: // EI
+                        return cpu -> cycles;
+                    default: // OUT, IN
+                        return null;
+                }
+            case 4: // Ccc
+                return cpu -> {
+                    if (cpu.testFlags(r)) {
+                        if (isPushIO(cpu)) {
+                            return -1;
+                        }
+                        cpu.pushWord(next);
+                        cpu.fPC = data;
+                        return taken;
+                    }
+                    cpu.fPC = next;
+                    return other;
+                };
+            case 5:
+                if ((opCode & 0b1000) == 0) { // PUSH
+                    final int pair = (opCode & 0b0011_0000) >> 3;
+                    return cpu -> {
+                        if (isPushIO(cpu)) {
+                            return -1;
+                        }
+                        cpu.pushWord(cpu.getRegPair(pair));
+                        return cycles;
+                    };
+                }
+                return cpu -> { // CALL
+                    if (isPushIO(cpu)) {
+                        return -1;
+                    }
+                    cpu.pushWord(next);
+                    cpu.fPC = data;
+                    return cycles;
+                };
+            case 6: // ADI, ACI, SUI, SBI, ANI, XRI, ORI, CPI
+                return cpu -> {
+                    cpu.cmdGroupAlu(r, data);
+                    return cycles;
+                };
+            default: // RST
+                return cpu -> {
+                    if (isPushIO(cpu)) {
+                        return -1;
+                    }
+                    cpu.pushWord(next);
+                    cpu.fPC = opCode & 0b0011_1000;
+                    return cycles;
+                };
+        }
+    }
+
+    /**
+     * Создает обработчик команды группы 00xxxxxx.
+     *
+     * @param opCode код операции
+     * @param data   операнд команды (байт или слово)
+     * @param cycles количество тактов команды
+     * @return обработчик или null, если команду должен выполнять интерпретатор
+     */
+    @Nullable
+    private static Op decodeMisc(final int opCode, final int data, final int cycles) {
+        final int r = (opCode >> 3) & 0b111;
+        switch (opCode & 0b111) {
+            case 0: // NOP
+                return cpu -> cycles;
+            case 1:
+                if ((opCode & 0b1000) != 0) { // DAD
+                    return cpu -> {
+                        cpu.cmdLxiDad(opCode);
+                        return cycles;
+                    };
+                }
+                switch (r >> 1) { // LXI
+                    case 0:
+                        return cpu -> {
+                            cpu.fBC = data;
+                            return cycles;
+                        };
+                    case 1:
+                        return cpu -> {
+                            cpu.fDE = data;
+                            return cycles;
+                        };
+                    case 2:
+                        return cpu -> {
+                            cpu.fHL = data;
+                            return cycles;
+                        };
+                    default:
+                        return cpu -> {
+                            cpu.fSP = data;
+                            return cycles;
+                        };
+                }
+            case 2:
+                return decodeLoadStore(r, data, cycles);
+            case 3: // INX, DCX
+                return cpu -> {
+                    cpu.cmdInxDcx(opCode);
+                    return cycles;
+                };
+            case 4: // INR
+            case 5: // DCR
+                final boolean inr = (opCode & 1) == 0;
+                if (r == 6) {
+                    return cpu -> {
+                        if (cpu.fHL >= IO_AREA) {
+                            return -1;
+                        }
+                        if (inr) {
+                            cpu.cmdInr(r);
+                        } else {
+                            cpu.cmdDcr(r);
+                        }
+                        return cycles;
+                    };
+                }
+                return inr ? cpu -> {
+                    cpu.cmdInr(r);
+                    return cycles;
+                } : cpu -> {
+                    cpu.cmdDcr(r);
+                    return cycles;
+                };
+            case 6: // MVI
+                if (r == 6) {
+                    return cpu -> {
+                        final int a = cpu.fHL;
+                        if (a >= IO_AREA) {
+                            return -1;
+                        }
+                        cpu.writeByte(a, data);
+                        return cycles;
+                    };
+                }
+                return cpu -> {
+                    cpu.setReg(r, data);
+                    return cycles;
+                };
+            default: // RLC, RRC, RAL, RAR, DAA, CMA, STC, CMC
+                return cpu -> {
+                    cpu.cmdRotateFlags(r);
+                    return cycles;
+                };
+        }
+    }
+
+    /**
+     * Создает обработчик команд STAX, LDAX, SHLD, LHLD, STA, LDA.
+     *
+     * @param code   код команды в группе (биты 3-5 кода операции)
+     * @param data   адрес (для SHLD, LHLD, STA, LDA)
+     * @param cycles количество тактов команды
+     * @return обработчик или null, если команду должен выполнять интерпретатор
+     */
+    @Nullable
+    private static Op decodeLoadStore(final int code, final int data, final int cycles) {
+        switch (code) {
+            case 0: // STAX B
+                return cpu -> {
+                    final int a = cpu.fBC;
+                    if (a >= IO_AREA) {
+                        return -1;
+                    }
+                    cpu.writeByte(a, cpu.fA);
+                    return cycles;
+                };
+            case 1: // LDAX B
+                return cpu -> {
+                    final int a = cpu.fBC;
+                    if (a >= IO_AREA) {
+                        return -1;
+                    }
+                    cpu.fA = cpu.readByte(a);
+                    return cycles;
+                };
+            case 2: // STAX D
+                return cpu -> {
+                    final int a = cpu.fDE;
+                    if (a >= IO_AREA) {
+                        return -1;
+                    }
+                    cpu.writeByte(a, cpu.fA);
+                    return cycles;
+                };
+            case 3: // LDAX D
+                return cpu -> {
+                    final int a = cpu.fDE;
+                    if (a >= IO_AREA) {
+                        return -1;
+                    }
+                    cpu.fA = cpu.readByte(a);
+                    return cycles;
+                };
+            case 4: // SHLD addr
+                return (data >= IO_AREA - 1) ? null : cpu -> {
+                    cpu.writeWord(data, cpu.fHL);
+                    return cycles;
+                };
+            case 5: // LHLD addr
+                return (data >= IO_AREA - 1) ? null : cpu -> {
+                    cpu.fHL = cpu.readWord(data);
+                    return cycles;
+                };
+            case 6: // STA addr
+                return (data >= IO_AREA) ? null : cpu -> {
+                    cpu.writeByte(data, cpu.fA);
+                    return cycles;
+                };
+            default: // LDA addr
+                return (data >= IO_AREA) ? null : cpu -> {
+                    cpu.fA = cpu.readByte(data);
+                    return cycles;
+                };
+        }
+    }
+}
@@ -0,0 +1,1060 @@
+package ru.avsh.specialist.mx.units;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static ru.avsh.specialist.mx.units.BlockCache.IO_AREA;
+
+/**
+ * Класс "Компилятор блоков кода" CPU i8080 в классы JVM.
+ * <p>
+ * Каждый часто выполняемый блок из кэша блоков кода компилируется в отдельный класс-наследник CompiledBlock
+ * с одним методом run(). Регистры CPU в методе хранятся в локальных переменных (их распределяет по регистрам
+ * процессора JIT-компилятор), флаги вычисляются только там, где их значение используется: перед командами, которые
+ * их читают, перед возможным выходом из блока и в конце блока.
+ * <p>
+ * Семантика скомпилированного блока совпадает с семантикой блока кэша: перед обращением к области устройств
+ * ввода/вывода блок завершается (команду выполнит интерпретатор), после записи в код этого же блока выполнение
+ * прерывается на следующей команде. Установленные ловушки отладчика выполнению блоков не мешают: блок заканчивается
+ * перед адресом ловушки, ловушку CPU проверяет после выполнения блока; при остальных запросах к CPU (HOLD, точки
+ * наблюдения, трассировка и т.п.) команды выполняет интерпретатор.
+ * <p>
+ * Класс генерируется в формате Java 5 (без StackMapTable) и загружается собственным загрузчиком классов, поэтому
+ * выгружается вместе со сброшенным блоком.
+ *
+ * @author -=AVSh=-
+ */
+final class BlockCompiler {
+    // Версия формата class-файла (Java 5 - проверка байт-кода выводом типов, StackMapTable не нужна)
+    private static final int CLASS_VERSION = 49;
+
+    private static final String SUPER_CLASS  = "ru/avsh/specialist/mx/units/CompiledBlock";
+    private static final String CLASS_PREFIX = "ru/avsh/specialist/mx/units/CompiledBlock_";
+
+    // Счетчик скомпилированных блоков (для уникальных имен классов)
+    private static final AtomicInteger COUNTER = new AtomicInteger();
+
+    // Теги элементов пула констант
+    private static final int CONSTANT_UTF8          =  1;
+    private static final int CONSTANT_INTEGER       =  3;
+    private static final int CONSTANT_CLASS         =  7;
+    private static final int CONSTANT_FIELD_REF     =  9;
+    private static final int CONSTANT_METHOD_REF    = 10;
+    private static final int CONSTANT_NAME_AND_TYPE = 12;
+
+    // Флаги доступа
+    private static final int ACC_PUBLIC    = 0x0001;
+    private static final int ACC_PROTECTED = 0x0004;
+    private static final int ACC_FINAL     = 0x0010;
+    private static final int ACC_SUPER     = 0x0020;
+
+    // Используемые команды JVM
+    private static final int ICONST_0      = 0x03;
+    private static final int BIPUSH        = 0x10;
+    private static final int SIPUSH        = 0x11;
+    private static final int LDC_W         = 0x13;
+    private static final int ILOAD         = 0x15;
+    private static final int ALOAD_0       = 0x2A;
+    private static final int ISTORE        = 0x36;
+    private static final int POP           = 0x57;
+    private static final int DUP           = 0x59;
+    private static final int IADD          = 0x60;
+    private static final int ISUB          = 0x64;
+    private static final int ISHL          = 0x78;
+    private static final int ISHR          = 0x7A;
+    private static final int IAND          = 0x7E;
+    private static final int IOR           = 0x80;
+    private static final int IXOR          = 0x82;
+    private static final int IFEQ          = 0x99;
+    private static final int IFNE          = 0x9A;
+    private static final int IF_ICMPLT     = 0xA1;
+    private static final int GOTO          = 0xA7;
+    private static final int IRETURN       = 0xAC;
+    private static final int RETURN        = 0xB1;
+    private static final int GETFIELD      = 0xB4;
+    private static final int PUTFIELD      = 0xB5;
+    private static final int INVOKEVIRTUAL = 0xB6;
+    private static final int INVOKESPECIAL = 0xB7;
+    private static final int INVOKESTATIC  = 0xB8;
+
+    // Локальные переменные метода run()
+    private static final int L_A      =  1;
+    private static final int L_F      =  2;
+    private static final int L_BC     =  3;
+    private static final int L_DE     =  4;
+    private static final int L_HL     =  5;
+    private static final int L_SP     =  6;
+    private static final int L_PC     =  7;
+    private static final int L_CYCLES =  8;
+    private static final int L_TMP    =  9;
+    private static final int L_TMP2   = 10;
+    private static final int MAX_LOCALS = 11;
+    private static final int MAX_STACK  =  6;
+
+    // Поля регистров CompiledBlock в порядке локальных переменных L_A..L_PC
+    private static final String[] REG_FIELDS = {null, "fA", "fF", "fBC", "fDE", "fHL", "fSP", "fPC"};
+    // Локальные переменные регистровых пар по коду пары (BC, DE, HL, SP)
+    private static final int[] PAIR_LOCALS = {L_BC, L_DE, L_HL, L_SP};
+    // Маски флагов для кодов условий (NZ/Z, NC/C, PO/PE, P/M)
+    private static final int[] CONDITION_MASKS = {0b0100_0000, 0b0000_0001, 0b0000_0100, 0b1000_0000};
+
+    /**
+     * Класс "Загрузчик сгенерированного класса" (отдельный для каждого класса - для выгрузки сброшенных блоков).
+     */
+    private static final class Loader extends ClassLoader {
+        Loader() {
+            super(BlockCompiler.class.getClassLoader());
+        }
+
+        Class<?> define(final String name, final byte[] bytes) {
+            return defineClass(name, bytes, 0, bytes.length);
+        }
+    }
+
+    private final BlockCache.Block fBlock;
+
+    // Пул констант
+    private final ByteArrayOutputStream fPoolBytes;
+    private final DataOutputStream      fPool;
+    private final Map<String, Integer>  fPoolIndexes;
+    private int fPoolCount;
+
+    // Байт-код метода run()
+    private final ByteArrayOutputStream fCode;
+    // Позиции переходов на общий выход из метода
+    private final List<Integer> fExits;
+
+    private BlockCompiler(@NotNull final BlockCache.Block block) {
+        fBlock       = block;
+        fPoolBytes   = new ByteArrayOutputStream();
+        fPool        = new DataOutputStream(fPoolBytes);
+        fPoolIndexes = new HashMap<>();
+        fPoolCount   = 1;
+        fCode        = new ByteArrayOutputStream();
+        fExits       = new ArrayList<>();
+    }
+
+    /**
+     * Компилирует блок кода.
+     *
+     * @param cpu   CPU
+     * @param block блок кода
+     * @return скомпилированный блок или null, если блок скомпилировать не удалось (блок остается в кэше некомпилированным)
+     */
+    @Nullable
+    static CompiledBlock compile(@NotNull final CPUi8080 cpu, @NotNull final BlockCache.Block block) {
+        final String name = String.format("%s%04X_%d", CLASS_PREFIX, block.fAddresses[0], COUNTER.incrementAndGet());
+        try {
+            final byte[]        bytes    = new BlockCompiler(block).generate(name);
+            final CompiledBlock compiled = (CompiledBlock) new Loader().define(name.replace('/', '.'), bytes).getConstructor().newInstance();
+            compiled.bind(cpu, block);
+            return compiled;
+        } catch (IOException | ReflectiveOperationException | LinkageError e) {
+            return null;
+        }
+    }
+
+    //-------------------------------------------------- class-файл --------------------------------------------------
+
+    /**
+     * Генерирует class-файл.
+     *
+     * @param name внутреннее имя класса
+     * @return class-файл
+     * @throws IOException ошибка записи (не возникает при записи в память)
+     */
+    private byte[] generate(final String name) throws IOException {
+        final int thisClass  = classRef(name);
+        final int superClass = classRef(SUPER_CLASS);
+        final int initName   = utf8("<init>");
+        final int initDesc   = utf8("()V");
+        final int runName    = utf8("run");
+        final int runDesc    = utf8("()I");
+        final int codeName   = utf8("Code");
+        final int superInit  = methodRef(SUPER_CLASS, "<init>", "()V");
+
+        // Конструктор
+        final byte[] init = {ALOAD_0, (byte) INVOKESPECIAL, (byte) (superInit >> 8), (byte) superInit, (byte) RETURN};
+        // Метод run()
+        generateRun();
+        final byte[] run = fCode.toByteArray();
+
+        final ByteArrayOutputStream result = new ByteArrayOutputStream();
+        final DataOutputStream      out    = new DataOutputStream(result);
+        out.writeInt  (0xCAFE_BABE);
+        out.writeShort(0);
+        out.writeShort(CLASS_VERSION);
+        out.writeShort(fPoolCount);
+        out.write     (fPoolBytes.toByteArray());
+        out.writeShort(ACC_PUBLIC | ACC_FINAL | ACC_SUPER);
+        out.writeShort(thisClass );
+        out.writeShort(superClass);
+        out.writeShort(0); // Интерфейсы
+        out.writeShort(0); // Поля
+        out.writeShort(2); // Методы
+        writeMethod(out, ACC_PUBLIC   , initName, initDesc, codeName, 1         , 1         , init);
+        writeMethod(out, ACC_PROTECTED, runName , runDesc , codeName, MAX_STACK , MAX_LOCALS, run );
+        out.writeShort(0); // Атрибуты класса
+        return result.toByteArray();
+    }
+
+    /**
+     * Записывает метод в class-файл.
+     */
+    private static void writeMethod(final DataOutputStream out, final int access, final int name, final int desc,
+                                    final int codeName, final int maxStack, final int maxLocals, final byte[] code) throws IOException {
+        out.writeShort(access);
+        out.writeShort(name  );
+        out.writeShort(desc  );
+        out.writeShort(1); // Атрибут Code
+        out.writeShort(codeName);
+        out.writeInt  (12 + code.length);
+        out.writeShort(maxStack );
+        out.writeShort(maxLocals);
+        out.writeInt  (code.length);
+        out.write     (code);
+        out.writeShort(0); // Таблица исключений
+        out.writeShort(0); // Атрибуты кода
+    }
+
+    private int constant(final String key, final int tag, final int a, final int b, final String utf8) throws IOException {
+        final Integer index = fPoolIndexes.get(key);
+        if (index != null) {
+            return index;
+        }
+        fPool.writeByte(tag);
+        switch (tag) {
+            case CONSTANT_UTF8:
+                fPool.writeUTF(utf8);
+                break;
+            case CONSTANT_INTEGER:
+                fPool.writeInt(a);
+                break;
+            case CONSTANT_CLASS:
+                fPool.writeShort(a);
+                break;
+            default: // CONSTANT_FIELD_REF, CONSTANT_METHOD_REF, CONSTANT_NAME_AND_TYPE
+                fPool.writeShort(a);
+                fPool.writeShort(b);
+                break;
+        }
+        fPoolIndexes.put(key, fPoolCount);
+        return fPoolCount++;
+    }
+
+    private int utf8(final String value) throws IOException {
+        return constant("U" + value, CONSTANT_UTF8, 0, 0, value);
+    }
+
+    private int integer(final int value) throws IOException {
+        return constant("I" + value, CONSTANT_INTEGER, value, 0, null);
+    }
+
+    private int classRef(final String name) throws IOException {
+        return constant("C" + name, CONSTANT_CLASS, utf8(name), 0, null);
+    }
+
+    private int nameAndType(final String name, final String desc) throws IOException {
+        return constant("N" + name + ':' + desc, CONSTANT_NAME_AND_TYPE, utf8(name), utf8(desc), null);
+    }
+
+    private int fieldRef(final String owner, final String name, final String desc) throws IOException {
+        return constant("F" + owner + '.' + name + ':' + desc, CONSTANT_FIELD_REF, classRef(owner), nameAndType(name, desc), null);
+    }
+
+    private int methodRef(final String owner, final String name, final String desc) throws IOException {
+        return constant("M" + owner + '.' + name + desc, CONSTANT_METHOD_REF, classRef(owner), nameAndType(name, desc), null);
+    }
+
+    //-------------------------------------------------- байт-код ----------------------------------------------------
+
+    private void op(final int opCode) {
+        fCode.write(opCode);
+    }
+
+    private void op(final int opCode, final int u2) {
+        fCode.write(opCode);
+        fCode.write(u2 >> 8);
+        fCode.write(u2);
+    }
+
+    private void load(final int local) {
+        fCode.write(ILOAD);
+        fCode.write(local);
+    }
+
+    private void store(final int local) {
+        fCode.write(ISTORE);
+        fCode.write(local);
+    }
+
+    private void push(final int value) throws IOException {
+        if ((value >= -1) && (value <= 5)) {
+            op(ICONST_0 + value);
+        } else if ((value >= Byte.MIN_VALUE) && (value <= Byte.MAX_VALUE)) {
+            op(BIPUSH);
+            op(value);
+        } else if ((value >= Short.MIN_VALUE) && (value <= Short.MAX_VALUE)) {
+            op(SIPUSH, value);
+        } else {
+            op(LDC_W, integer(value));
+        }
+    }
+
+    private void invoke(final String name, final String desc) throws IOException {
+        op(INVOKEVIRTUAL, methodRef(SUPER_CLASS, name, desc));
+    }
+
+    private void invokeStatic(final String name, final String desc) throws IOException {
+        op(INVOKESTATIC, methodRef(SUPER_CLASS, name, desc));
+    }
+
+    /**
+     * Записывает команду условного перехода вперед.
+     *
+     * @param opCode код команды перехода
+     * @return позиция команды (для bind())
+     */
+    private int branch(final int opCode) {
+        final int position = fCode.size();
+        op(opCode, 0);
+        return position;
+    }
+
+    /**
+     * Устанавливает адрес перехода, записанного командой branch(), на текущую позицию.
+     *
+     * @param position позиция команды перехода
+     */
+    private void bind(final int position) {
+        final byte[] code   = fCode.toByteArray();
+        final int    offset = code.length - position;
+        code[position + 1] = (byte) (offset >> 8);
+        code[position + 2] = (byte)  offset;
+        fCode.reset();
+        fCode.write(code, 0, code.length);
+    }
+
+    /**
+     * Записывает выход из блока с заданными значениями PC и количества тактов.
+     */
+    private void exit(final int pc, final int cycles) throws IOException {
+        push (pc  );
+        store(L_PC);
+        exit (cycles);
+    }
+
+    /**
+     * Записывает выход из блока (значение PC уже записано в L_PC).
+     */
+    private void exit(final int cycles) throws IOException {
+        push (cycles  );
+        store(L_CYCLES);
+        fExits.add(branch(GOTO));
+    }
+
+    /**
+     * Записывает выход из блока (интерпретатору), если адрес в локальной переменной >= limit.
+     */
+    private void bailIfAbove(final int local, final int limit, final int pc, final int cycles) throws IOException {
+        load(local);
+        push(limit);
+        final int ok = branch(IF_ICMPLT);
+        exit(pc, cycles);
+        bind(ok);
+    }
+
+    /**
+     * Записывает выход из блока (интерпретатору), если запись в стек попадает в область устройств ввода/вывода.
+     */
+    private void bailIfPushIO(final int pc, final int cycles) throws IOException {
+        load(L_SP);
+        push(2);
+        op  (ISUB);
+        push(0xFFFF);
+        op  (IAND);
+        push(IO_AREA - 1);
+        final int ok = branch(IF_ICMPLT);
+        exit(pc, cycles);
+        bind(ok);
+    }
+
+    /**
+     * Проверяет результат записи в память (значение на стеке): если код блока изменен - выход из блока.
+     */
+    private void checkValid(final boolean last, final int next, final int cycles) throws IOException {
+        if (last) {
+            op(POP);
+        } else {
+            final int ok = branch(IFNE);
+            exit(next, cycles);
+            bind(ok);
+        }
+    }
+
+    /**
+     * Записывает на стек значение регистра (кроме M).
+     */
+    private void getReg(final int r) throws IOException {
+        if (r == 7) {
+            load(L_A);
+        } else {
+            load(PAIR_LOCALS[r >> 1]);
+            if ((r & 1) == 0) {
+                push(8);
+                op  (ISHR);
+            } else {
+                push(0xFF);
+                op  (IAND);
+            }
+        }
+    }
+
+    /**
+     * Записывает значение со стека в регистр (кроме M).
+     */
+    private void setReg(final int r) throws IOException {
+        if (r == 7) {
+            store(L_A);
+        } else {
+            final int pair = PAIR_LOCALS[r >> 1];
+            if ((r & 1) == 0) {
+                push (8);
+                op   (ISHL);
+                load (pair);
+                push (0xFF);
+            } else {
+                load (pair);
+                push (0xFF00);
+            }
+            op   (IAND);
+            op   (IOR );
+            store(pair);
+        }
+    }
+
+    /**
+     * Записывает на стек байт из памяти по адресу HL.
+     */
+    private void readM() throws IOException {
+        op  (ALOAD_0);
+        load(L_HL);
+        invoke("readByte", "(I)I");
+    }
+
+    /**
+     * Записывает значение со стека в память по адресу HL и проверяет, не изменен ли код блока.
+     */
+    private void writeM(final boolean last, final int next, final int cycles) throws IOException {
+        store(L_TMP2);
+        op   (ALOAD_0);
+        load (L_HL);
+        load (L_TMP2);
+        invoke("writeByte", "(II)Z");
+        checkValid(last, next, cycles);
+    }
+
+    /**
+     * Раскладывает значение (A << 8) | F со стека в регистры A и F.
+     */
+    private void unpackAF() throws IOException {
+        op   (DUP);
+        push (8);
+        op   (ISHR);
+        store(L_A);
+        push (0xFF);
+        op   (IAND);
+        store(L_F);
+    }
+
+    /**
+     * Записывает проверку условия: переход вперед, если условие не выполнено.
+     *
+     * @param condition код условия от 0 до 7
+     * @return позиция команды перехода (для bind())
+     */
+    private int branchIfNot(final int condition) throws IOException {
+        load(L_F);
+        push(CONDITION_MASKS[condition >> 1]);
+        op  (IAND);
+        return branch(((condition & 1) == 0) ? IFNE : IFEQ);
+    }
+
+    //--------------------------------------------------- команды ----------------------------------------------------
+
+    /**
+     * Проверяет, вычисляет ли команда все флаги заново (без использования прежних значений).
+     */
+    private static boolean isFlagsDefined(final int opCode) {
+        return ((opCode & 0b1100_0000) == 0b1000_0000) || ((opCode & 0b1100_0111) == 0b1100_0110) || (opCode == 0xF1);
+    }
+
+    /**
+     * Проверяет, зависит ли результат команды (кроме самих флагов) от флагов.
+     */
+    private static boolean isFlagsUsed(final int opCode) {
+        if (((opCode & 0b1100_0000) == 0b1000_0000) || ((opCode & 0b1100_0111) == 0b1100_0110)) {
+            final int operation = (opCode >> 3) & 0b111;
+            return (operation == 1) || (operation == 3); // ADC, SBB, ACI, SBI
+        }
+        switch (opCode & 0b1100_0111) {
+            case 0b1100_0000: // Rcc
+            case 0b1100_0010: // Jcc
+            case 0b1100_0100: // Ccc
+                return true;
+            default:
+                return (opCode == 0x17) || (opCode == 0x1F) || (opCode == 0x27) || (opCode == 0xF5); // RAL, RAR, DAA, PUSH PSW
+        }
+    }
+
+    /**
+     * Проверяет, может ли команда завершить блок до своего выполнения (обращение к памяти по адресу из регистров).
+     */
+    private static boolean isBail(final int opCode) {
+        if ((opCode >= 0x40) && (opCode < 0x80)) {
+            return ((opCode & 0b111) == 6) || ((opCode & 0b0011_1000) == 0b0011_0000); // MOV r,M / MOV M,r
+        }
+        if ((opCode >= 0x80) && (opCode < 0xC0)) {
+            return (opCode & 0b111) == 6; // ALU M
+        }
+        switch (opCode & 0b1100_0111) {
+            case 0b0000_0100: // INR
+            case 0b0000_0101: // DCR
+            case 0b0000_0110: // MVI
+                return ((opCode >> 3) & 0b111) == 6;
+            case 0b0000_0010: // STAX, LDAX
+                return opCode < 0x20;
+            case 0b1100_0000: // Rcc
+            case 0b1100_0001: // POP, RET
+            case 0b1100_0100: // Ccc
+            case 0b1100_0101: // PUSH, CALL
+            case 0b1100_0111: // RST
+                return (opCode != 0xE9) && (opCode != 0xF9); // кроме PCHL, SPHL
+            default:
+                return opCode == 0xE3; // XTHL
+        }
+    }
+
+    /**
+     * Генерирует метод run().
+     */
+    private void generateRun() throws IOException {
+        final int[] codes     = fBlock.fCodes;
+        final int[] addresses = fBlock.fAddresses;
+        final int   count     = codes.length;
+
+        // Анализ живости флагов: live[i] = значение флагов после команды i используется
+        final boolean[] live = new boolean[count];
+        boolean flags = true;
+        for (int index = count - 1; index >= 0; index--) {
+            final int opCode = codes[index] & 0xFF;
+            live[index] = flags || ((index < count - 1) && isWrite(opCode));
+            flags = isFlagsUsed(opCode) || isBail(opCode) || (live[index] && !isFlagsDefined(opCode));
+        }
+
+        // Загружаем регистры в локальные переменные
+        for (int local = L_A; local <= L_SP; local++) {
+            op   (ALOAD_0);
+            op   (GETFIELD, fieldRef(SUPER_CLASS, REG_FIELDS[local], "I"));
+            store(local);
+        }
+
+        int cycles = 0;
+        for (int index = 0; index < count; index++) {
+            final int     opCode = codes[index] & 0xFF;
+            final int     data   = codes[index] >>> 8;
+            final int     pc     = addresses[index];
+            final int     next   = (index + 1 < count) ? addresses[index + 1] : fBlock.fEnd;
+            final boolean last   = index == count - 1;
+            cycles = generateCmd(opCode, data, pc, next, cycles, live[index], last);
+        }
+        if (!fBlock.fJump) {
+            exit(fBlock.fEnd, cycles);
+        }
+
+        // Общий выход: возвращаем регистры в поля
+        for (int position : fExits) {
+            bind(position);
+        }
+        for (int local = L_A; local <= L_PC; local++) {
+            op  (ALOAD_0);
+            load(local);
+            op  (PUTFIELD, fieldRef(SUPER_CLASS, REG_FIELDS[local], "I"));
+        }
+        load(L_CYCLES);
+        op  (IRETURN);
+    }
+
+    /**
+     * Проверяет, записывает ли команда в память (без учета команд передачи управления - они последние в блоке).
+     */
+    private static boolean isWrite(final int opCode) {
+        switch (opCode) {
+            case 0x02: // STAX B
+            case 0x12: // STAX D
+            case 0x22: // SHLD
+            case 0x32: // STA
+            case 0x34: // INR M
+            case 0x35: // DCR M
+            case 0x36: // MVI M
+            case 0xE3: // XTHL
+                return true;
+            default:
+                return ((opCode & 0b1111_1000) == 0x70) || ((opCode & 0b1100_1111) == 0b1100_0101); // MOV M,r / PUSH
+        }
+    }
+
+    /**
+     * Генерирует байт-код команды.
+     *
+     * @param opCode код операции
+     * @param data   операнд
+     * @param pc     адрес команды
+     * @param next   адрес следующей команды
+     * @param cycles количество тактов предыдущих команд блока
+     * @param live   true = флаги после команды используются
+     * @param last   true = последняя команда блока
+     * @return количество тактов с учетом команды (для команд передачи управления - не используется)
+     */
+    private int generateCmd(final int opCode, final int data, final int pc, final int next, final int cycles,
+                            final boolean live, final boolean last) throws IOException {
+        final int total = cycles + (CPUi8080.CYCLES[opCode] & 0xFF);
+        final int r     = (opCode >> 3) & 0b111;
+        final int s     =  opCode       & 0b111;
+
+        switch (opCode >> 6) {
+            case 0:
+                generateMisc(opCode, data, pc, next, cycles, total, live, last);
+                return total;
+            case 1: // MOV
+                if (s == 6) {
+                    bailIfAbove(L_HL, IO_AREA, pc, cycles);
+                    readM ();
+                    setReg(r);
+                } else if (r == 6) {
+                    bailIfAbove(L_HL, IO_AREA, pc, cycles);
+                    getReg(s);
+                    writeM(last, next, total);
+                } else if (r != s) {
+                    getReg(s);
+                    setReg(r);
+                }
+                return total;
+            case 2: // ADD, ADC, SUB, SBB, ANA, XRA, ORA, CMP
+                if (s == 6) {
+                    bailIfAbove(L_HL, IO_AREA, pc, cycles);
+                    readM();
+                } else {
+                    getReg(s);
+                }
+                generateAlu(r, live);
+                return total;
+            default:
+                generateJump(opCode, data, pc, next, cycles, live, last);
+                return total;
+        }
+    }
+
+    /**
+     * Генерирует арифметико-логическую операцию (операнд на стеке).
+     */
+    private void generateAlu(final int operation, final boolean live) throws IOException {
+        if (live) {
+            store(L_TMP);
+            push (operation);
+            load (L_A);
+            load (L_F);
+            load (L_TMP);
+            invokeStatic("alu", "(IIII)I");
+            unpackAF();
+            return;
+        }
+        // Флаги не используются - вычисляем только результат
+        switch (operation) {
+            case 0: // ADD
+            case 1: // ADC
+                load(L_A);
+                op  (IADD);
+                if (operation == 1) {
+                    load(L_F);
+                    push(1);
+                    op  (IAND);
+                    op  (IADD);
+                }
+                push (0xFF);
+                op   (IAND);
+                store(L_A );
+                break;
+            case 2: // SUB
+            case 3: // SBB
+                store(L_TMP);
+                load (L_A);
+                load (L_TMP);
+                op   (ISUB);
+                if (operation == 3) {
+                    load(L_F);
+                    push(1);
+                    op  (IAND);
+                    op  (ISUB);
+                }
+                push (0xFF);
+                op   (IAND);
+                store(L_A );
+                break;
+            case 4: // ANA
+                load (L_A);
+                op   (IAND);
+                store(L_A);
+                break;
+            case 5: // XRA
+                load (L_A);
+                op   (IXOR);
+                store(L_A);
+                break;
+            case 6: // ORA
+                load (L_A);
+                op   (IOR);
+                store(L_A);
+                break;
+            default: // CMP
+                op(POP);
+                break;
+        }
+    }
+
+    /**
+     * Генерирует команды группы 00xxxxxx.
+     */
+    private void generateMisc(final int opCode, final int data, final int pc, final int next, final int cycles,
+                              final int total, final boolean live, final boolean last) throws IOException {
+        final int r    = (opCode >> 3) & 0b111;
+        final int pair = PAIR_LOCALS[(opCode >> 4) & 0b11];
+        switch (opCode & 0b111) {
+            case 0: // NOP
+                break;
+            case 1:
+                if ((opCode & 0b1000) == 0) { // LXI
+                    push (data);
+                    store(pair);
+                } else { // DAD
+                    load (L_HL);
+                    load (pair);
+                    op   (IADD);
+                    store(L_TMP);
+                    if (live) {
+                        load (L_F);
+                        push (0b1111_1110);
+                        op   (IAND);
+                        load (L_TMP);
+                        push (16);
+                        op   (ISHR);
+                        op   (IOR);
+                        store(L_F);
+                    }
+                    load (L_TMP);
+                    push (0xFFFF);
+                    op   (IAND);
+                    store(L_HL);
+                }
+                break;
+            case 2:
+                generateLoadStore(r, data, pc, next, cycles, total, last);
+                break;
+            case 3: // INX, DCX
+                load (pair);
+                push (1);
+                op   (((opCode & 0b1000) == 0) ? IADD : ISUB);
+                push (0xFFFF);
+                op   (IAND);
+                store(pair);
+                break;
+            case 4: // INR
+            case 5: // DCR
+                final boolean inr = (opCode & 1) == 0;
+                if (r == 6) {
+                    bailIfAbove(L_HL, IO_AREA, pc, cycles);
+                    readM();
+                } else {
+                    getReg(r);
+                }
+                if (live) {
+                    load (L_F);
+                    invokeStatic(inr ? "inr" : "dcr", "(II)I");
+                    store(L_TMP);
+                    load (L_TMP);
+                    push (0xFF);
+                    op   (IAND);
+                    store(L_F);
+                    load (L_TMP);
+                    push (8);
+                    op   (ISHR);
+                } else {
+                    push(1);
+                    op  (inr ? IADD : ISUB);
+                    push(0xFF);
+                    op  (IAND);
+                }
+                if (r == 6) {
+                    writeM(last, next, total);
+                } else {
+                    setReg(r);
+                }
+                break;
+            case 6: // MVI
+                if (r == 6) {
+                    bailIfAbove(L_HL, IO_AREA, pc, cycles);
+                    push  (data);
+                    writeM(last, next, total);
+                } else {
+                    push  (data);
+                    setReg(r);
+                }
+                break;
+            default: // RLC, RRC, RAL, RAR, DAA, CMA, STC, CMC
+                if (!live && (r >= 5)) {
+                    if (r == 5) { // CMA
+                        load (L_A);
+                        push (0xFF);
+                        op   (IXOR);
+                        store(L_A);
+                    }
+                    break;
+                }
+                push(r);
+                load(L_A);
+                load(L_F);
+                invokeStatic("rotate", "(III)I");
+                unpackAF();
+                break;
+        }
+    }
+
+    /**
+     * Генерирует команды STAX, LDAX, SHLD, LHLD, STA, LDA.
+     */
+    private void generateLoadStore(final int code, final int data, final int pc, final int next, final int cycles,
+                                   final int total, final boolean last) throws IOException {
+        switch (code) {
+            case 0: // STAX B
+            case 2: // STAX D
+                final int pair = (code == 0) ? L_BC : L_DE;
+                bailIfAbove(pair, IO_AREA, pc, cycles);
+                op  (ALOAD_0);
+                load(pair);
+                load(L_A);
+                invoke("writeByte", "(II)Z");
+                checkValid(last, next, total);
+                break;
+            case 1: // LDAX B
+            case 3: // LDAX D
+                final int src = (code == 1) ? L_BC : L_DE;
+                bailIfAbove(src, IO_AREA, pc, cycles);
+                op    (ALOAD_0);
+                load  (src);
+                invoke("readByte", "(I)I");
+                store (L_A);
+                break;
+            case 4: // SHLD addr
+                op  (ALOAD_0);
+                push(data);
+                load(L_HL);
+                invoke("writeWord", "(II)Z");
+                checkValid(last, next, total);
+                break;
+            case 5: // LHLD addr
+                op    (ALOAD_0);
+                push  (data);
+                invoke("readWord", "(I)I");
+                store (L_HL);
+                break;
+            case 6: // STA addr
+                op  (ALOAD_0);
+                push(data);
+                load(L_A);
+                invoke("writeByte", "(II)Z");
+                checkValid(last, next, total);
+                break;
+            default: // LDA addr
+                op    (ALOAD_0);
+                push  (data);
+                invoke("readByte", "(I)I");
+                store (L_A);
+                break;
+        }
+    }
+
+    /**
+     * Записывает на стек значение со стека CPU (с увеличением SP на 2).
+     */
+    private void popWord() throws IOException {
+        op    (ALOAD_0);
+        load  (L_SP);
+        invoke("readWord", "(I)I");
+        load  (L_SP);
+        push  (2);
+        op    (IADD);
+        push  (0xFFFF);
+        op    (IAND);
+        store (L_SP);
+    }
+
+    /**
+     * Помещает в стек CPU значение из локальной переменной (с уменьшением SP на 2),
+     * результат записи (true = код блока не изменен) остается на стеке.
+     */
+    private void pushWord(final int local) throws IOException {
+        load  (L_SP);
+        push  (2);
+        op    (ISUB);
+        push  (0xFFFF);
+        op    (IAND);
+        store (L_SP);
+        op    (ALOAD_0);
+        load  (L_SP);
+        load  (local);
+        invoke("writeWord", "(II)Z");
+    }
+
+    /**
+     * Генерирует команды группы 11xxxxxx.
+     */
+    private void generateJump(final int opCode, final int data, final int pc, final int next, final int cycles,
+                              final boolean live, final boolean last) throws IOException {
+        final int packed = CPUi8080.CYCLES[opCode];
+        final int taken  = cycles + (packed >> 8  );
+        final int other  = cycles + (packed & 0xFF);
+        final int total  = other;
+        final int r      = (opCode >> 3) & 0b111;
+        final int notTaken;
+
+        switch (opCode & 0b111) {
+            case 0: // Rcc
+                notTaken = branchIfNot(r);
+                bailIfAbove(L_SP, IO_AREA - 1, pc, cycles);
+                popWord();
+                store(L_PC);
+                exit (taken);
+                bind (notTaken);
+                exit (next, other);
+                break;
+            case 1:
+                if ((opCode & 0b1000) == 0) { // POP
+                    bailIfAbove(L_SP, IO_AREA - 1, pc, cycles);
+                    popWord();
+                    if (opCode == 0xF1) { // PSW
+                        push(0b1111_1111_1101_0111);
+                        op  (IAND);
+                        push(0b10);
+                        op  (IOR);
+                        unpackAF();
+                    } else {
+                        store(PAIR_LOCALS[(opCode >> 4) & 0b11]);
+                    }
+                } else if (opCode == 0xE9) { // PCHL
+                    load (L_HL);
+                    store(L_PC);
+                    exit (total);
+                } else if (opCode == 0xF9) { // SPHL
+                    load (L_HL);
+                    store(L_SP);
+                } else { // RET
+                    bailIfAbove(L_SP, IO_AREA - 1, pc, cycles);
+                    popWord();
+                    store(L_PC);
+                    exit (total);
+                }
+                break;
+            case 2: // Jcc
+                notTaken = branchIfNot(r);
+                exit(data, total);
+                bind(notTaken);
+                exit(next, total);
+                break;
+            case 3:
+                switch (r) {
+                    case 0: // JMP
+                    case 1:
+                        exit(data, total);
+                        break;
+                    case 4: // XTHL
+                        bailIfAbove(L_SP, IO_AREA - 1, pc, cycles);
+                        op    (ALOAD_0);
+                        load  (L_SP);
+                        invoke("readWord", "(I)I");
+                        store (L_TMP);
+                        op    (ALOAD_0);
+                        load  (L_SP);
+                        load  (L_HL);
+                        invoke("writeWord", "(II)Z");
+                        load  (L_TMP);
+                        store (L_HL);
+                        checkValid(last, next, total);
+                        break;
+                    case 5: // XCHG
+                        load (L_DE);
+                        load (L_HL);
+                        store(L_DE);
+                        store(L_HL);
+                        break;
+                    default: // DI, EI (IN и OUT в блоки не попадают)
+                        break;
+                }
+                break;
+            case 4: // Ccc
+                notTaken = branchIfNot(r);
+                bailIfPushIO(pc, cycles);
+                push (next);
+                store(L_TMP);
+                pushWord(L_TMP);
+                op   (POP);
+                exit (data, taken);
+                bind (notTaken);
+                exit (next, other);
+                break;
+            case 5:
+                bailIfPushIO(pc, cycles);
+                if ((opCode & 0b1000) == 0) { // PUSH
+                    if (opCode == 0xF5) { // PSW
+                        load (L_A);
+                        push (8);
+                        op   (ISHL);
+                        load (L_F);
+                        op   (IOR);
+                        store(L_TMP);
+                        pushWord(L_TMP);
+                    } else {
+                        pushWord(PAIR_LOCALS[(opCode >> 4) & 0b11]);
+                    }
+                    checkValid(last, next, total);
+                } else { // CALL
+                    push (next);
+                    store(L_TMP);
+                    pushWord(L_TMP);
+                    op   (POP);
+                    exit (data, total);
+                }
+                break;
+            case 6: // ADI, ACI, SUI, SBI, ANI, XRI, ORI, CPI
+                push(data);
+                generateAlu(r, live);
+                break;
+            default: // RST
+                bailIfPushIO(pc, cycles);
+                push (next);
+                store(L_TMP);
+                pushWord(L_TMP);
+                op   (POP);
+                exit (opCode & 0b0011_1000, total);
+                break;
+        }
+    }
+}
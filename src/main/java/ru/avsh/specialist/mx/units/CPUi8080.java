@@ -6,18 +6,27 @@ import ru.avsh.specialist.mx.gui.swing.debugger.DebuggerCPUi8080;
 import ru.avsh.specialist.mx.gui.swing.utils.StubMainFrame;
 import ru.avsh.specialist.mx.helpers.Constants;
 import ru.avsh.specialist.mx.helpers.Trap;
+import ru.avsh.specialist.mx.helpers.Watch;
 import ru.avsh.specialist.mx.root.SpecialistMX;
 import ru.avsh.specialist.mx.units.memory.MemoryManager;
+import ru.avsh.specialist.mx.units.memory.units.KeyboardPort;
+import ru.avsh.specialist.mx.units.memory.units.MainMemory;
 import ru.avsh.specialist.mx.units.types.ClockedUnit;
 
 import java.awt.*;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.SortedSet;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentSkipListSet;
 import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.function.IntSupplier;
 
 import static ru.avsh.specialist.mx.helpers.Constants.SPMX_ICON_FILE;
 
@@ -28,7 +37,7 @@ import static ru.avsh.specialist.mx.helpers.Constants.SPMX_ICON_FILE;
  */
 public final class CPUi8080 implements ClockedUnit {
     // Количество тактов для каждой команды CPU
-    private static final int[] CYCLES = {
+    static final int[] CYCLES = {
                  4, 10,      7,  5,      5,  5,  7,  4,      4, 10,      7,  5,      5,  5,  7,  4,
                  4, 10,      7,  5,      5,  5,  7,  4,      4, 10,      7,  5,      5,  5,  7,  4,
                  4, 10,     16,  5,      5,  5,  7,  4,      4, 10,     16,  5,      5,  5,  7,  4,
@@ -47,17 +56,53 @@ public final class CPUi8080 implements ClockedUnit {
             0x0B05, 10, 0x0A0A,  4, 0x110B, 11,  7, 11, 0x0B05,  5, 0x0A0A,  4, 0x110B, 17,  7, 11
     };
 
-    // Индексы регистров CPU в массиве fRegs (здесь без enum - для скорости)
+    // Флаги S, Z, P для результата (вместе с всегда установленным битом 1 - SZ0A_0P1C)
+    static final int[] FLAGS_SZP = new int[256];
+    // Флаги S, Z, P, AC для результата команд INR/DCR (флаг C команды не изменяют)
+    static final int[] FLAGS_INR = new int[256];
+    static final int[] FLAGS_DCR = new int[256];
+    // Флаги C, AC для сложения/вычитания по индексу ((a ^ b ^ r) >> 4) & 0x11 (бит 0 - перенос из бита 3, бит 4 - из бита 7)
+    static final int[] FLAGS_ADD_CA = new int[0x12];
+    static final int[] FLAGS_SUB_CA = new int[0x12];
+    // Результаты команды DAA ((A << 8) | F) по индексу (C << 9) | (AC << 8) | A
+    static final int[] DAA_RESULTS  = new int[0x800];
+
+    static {
+        for (int r = 0; r < 256; r++) {
+            final int szp = (r & 0x80) | (r == 0 ? 0b0100_0000 : 0) | ((Integer.bitCount(r) & 1) == 0 ? 0b100 : 0) | 0b10;
+            FLAGS_SZP[r] = szp;
+            FLAGS_INR[r] = szp | ((r & 0xF) == 0   ? 0b1_0000 : 0);
+            FLAGS_DCR[r] = szp | ((r & 0xF) != 0xF ? 0b1_0000 : 0); // Тут флаг AC взводится наоборот
+        }
+        for (int i = 0; i < 0x12; i++) {
+            FLAGS_ADD_CA[i] = (( i & 1) << 4) | ((i >> 4) & 1);
+            FLAGS_SUB_CA[i] = ((~i & 1) << 4) | ((i >> 4) & 1); // Тут флаг AC взводится наоборот
+        }
+        for (int i = 0; i < DAA_RESULTS.length; i++) {
+            final int a = i & 0xFF;
+            int     s = 0;
+            boolean c = (i & 0x200) != 0;
+            if (((i & 0x100) != 0) || ((a & 0xF) > 9)) {
+                s = 6;
+            }
+            if (c || ((a >> 4) > 9) || (((a >> 4) >= 9) && ((a & 0xF) > 9))) {
+                s |= 0x60;
+                c  = true;
+            }
+            final int r = a + s;
+            final int f = FLAGS_SZP[r & 0xFF] | (FLAGS_ADD_CA[((a ^ s ^ r) >> 4) & 0x11] & 0b1_0000) | (c ? 1 : 0);
+            DAA_RESULTS[i] = ((r & 0xFF) << 8) | f;
+        }
+    }
+
+    // Коды регистров CPU (здесь без enum - для скорости)
     private static final int B  = 0;
     private static final int C  = 1;
     private static final int D  = 2;
     private static final int E  = 3;
     private static final int H  = 4;
     private static final int L  = 5;
-    private static final int F  = 6;
     private static final int A  = 7;
-    private static final int SP = 8;
-    private static final int PC = 9;
     // Ячейка памяти M(HL)
     private static final int M  = 6;
 
@@ -72,27 +117,106 @@ public final class CPUi8080 implements ClockedUnit {
         AF, BC, DE, HL, SP, PC
     }
 
-    // Фазы установки состояния "HOLD" CPU (здесь без enum - для скорости)
-    private static final int HOLD_IS_NOT_SET  = 0;
-    private static final int HOLD_IN_PROCESS  = 1;
-    private static final int HOLD_ACKNOWLEDGE = 2;
+    // Биты слова запросов к CPU (проверяется один раз за команду)
+    private static final int REQ_HOLD         = 0b001; // Запрошен режим "HOLD" (фаза установки)
+    private static final int REQ_HOLD_ACK     = 0b010; // Режим "HOLD" установлен
+    private static final int REQ_TRAPS        = 0b100; // Установлены ловушки
+    private static final int REQ_CODE_CHANGED = 0b1000; // Память изменена в обход CPU (нужно очистить кэш блоков кода и сбросить детектор холостого цикла)
+    private static final int REQ_WATCH        = 0b1_0000; // Установлены точки наблюдения
+    private static final int REQ_TRACE        = 0b10_0000; // Включена трассировка команд
+    private static final int REQ_PROFILE      = 0b100_0000; // Включено профилирование
+    private static final int REQ_COVERAGE     = 0b1000_0000; // Включен учет покрытия кода
+    private static final int REQ_HOLD_MASK    = REQ_HOLD | REQ_HOLD_ACK;
+    private static final int REQ_DEBUG_MASK   = REQ_TRAPS | REQ_WATCH; // Нужна проверка ловушек/точек наблюдения
+
+    // Количество страниц памяти в битовой карте ловушек (страницы RAM и ROM-диск)
+    private static final int TRAP_PAGES = MainMemory.ROM_DISK + 1;
+    // Количество команд в трассе
+    private static final int TRACE_RECORDS = 0x1_0000;
+
+    /**
+     * Класс "Точка наблюдения со скомпилированным условием".
+     */
+    private static final class WatchPoint {
+        private final Watch         fWatch    ;
+        private final TrapCondition fCondition; // null = без условия
+
+        WatchPoint(final Watch watch, final TrapCondition condition) {
+            fWatch     = watch    ;
+            fCondition = condition;
+        }
+    }
+
+    private static final AtomicIntegerFieldUpdater<CPUi8080> REQUESTS =
+            AtomicIntegerFieldUpdater.newUpdater(CPUi8080.class, "fRequests");
 
-    private final int[] fRegs;
-    private final Trap fCompareTrap;
+    // Компьютер (null = CPU работает без графического интерфейса, отладчик недоступен)
     private final SpecialistMX fSpMX;
-    private final AtomicInteger fCycles;
-    private final AtomicInteger fHoldPhase;
+    // Номер текущей страницы памяти и тактовый генератор
+    private final IntSupplier         fPages;
+    private final ClockSpeedGenerator fGen  ;
     private final AtomicBoolean fIsDebugRun;
 
     private final SortedSet<Trap> fTraps;
+    // Битовая карта ловушек: (страница << 11) | (адрес >> 5) -> биты адресов (проверяется одним обращением к массиву)
+    private final int[] fTrapMap;
+    // Условия ловушек: (страница << 16) | адрес -> условие
+    private final Map<Integer, TrapCondition> fTrapConditions;
     private final MemoryManager fMemManager;
     private final MemoryManager  fIoManager;
 
+    // Регистры CPU (обычные поля - изменяются только в потоке тактового генератора или при остановленном CPU,
+    // доступны в пределах пакета для обработчиков кэша блоков кода)
+    int fA ; // Аккумулятор
+    int fF ; // Флаги SZ0A_0P1C
+    int fBC; // Регистровая пара BC
+    int fDE; // Регистровая пара DE
+    int fHL; // Регистровая пара HL
+    int fSP; // Указатель стека
+    int fPC; // Регистр адреса
+
+    private int fCycles;
     private int fOpCode;
     private boolean fTestResult;
 
-    private volatile boolean fTrapsFlag;
+    // Слово запросов к CPU (HOLD/ловушки), изменяется только через REQUESTS
+    private volatile int fRequests;
+    // Кэш блоков кода (null = кэш отключен)
+    private volatile BlockCache fBlocks;
+    // Компиляция часто выполняемых блоков кода в классы JVM
+    private volatile boolean fCompile;
     private volatile Trap fTrapStepOver;
+    // Ловушка, на которой должен остановиться StepOver без проверки условия: (страница << 16) | адрес, -1 = нет
+    private volatile int  fStepOverKey = -1;
+    // Точки наблюдения (массив заменяется целиком)
+    private volatile WatchPoint[] fWatches = new WatchPoint[0];
+    // Обращения к наблюдаемым адресам в текущей команде (изменяются только потоком тактового генератора):
+    // биты типов обращений и адрес/байт последнего обращения каждого типа (индекс - тип обращения)
+    private       int   fWatchHit;
+    private final int[] fWatchAddress = new int[(Watch.READ | Watch.WRITE) + 1];
+    private final int[] fWatchValue   = new int[(Watch.READ | Watch.WRITE) + 1];
+    // Битовые карты адресов точек наблюдения (адрес >> 5 -> биты адресов, карты заменяются целиком)
+    private volatile int[] fWatchReadMap  = new int[0x800];
+    private volatile int[] fWatchWriteMap = new int[0x800];
+    // Детектор холостого цикла (null = пропуск холостых циклов отключен)
+    private volatile IdleDetector fIdle;
+    // Трасса выполнения команд (null = трассировка отключена)
+    private volatile TraceBuffer fTrace;
+    // Профилировщик (null = профилирование отключено)
+    private volatile GuestProfiler fProfiler;
+    // Адрес и такты выполняемой команды для профилировщика
+    private int fProfPC;
+    private int fProfCycles;
+    // Покрытие кода (null = учет покрытия отключен)
+    private volatile Coverage fCoverage;
+    // Перехват подпрограмм ПЗУ: включен ли перехват, имя профиля (ROM/MON-файла) и перехватчики (null = перехвата нет)
+    private volatile boolean  fHleMode;
+    private volatile String   fHleProfile = "";
+    private volatile HleHooks fHle;
+    // true = выполняемая команда прочитала порт клавиатуры
+    private boolean fIdleRead;
+    // Длительность итерации холостого цикла, на границе которой находится CPU (0 = CPU не в холостом цикле)
+    private int fIdleCycles;
 
     /**
      * Конструктор.
@@ -102,31 +226,57 @@ public final class CPUi8080 implements ClockedUnit {
      * @param ioManager ссылка на объект класса MemoryManager - "Быстрый диспетчер запоминающих устройств" (устройства ввода/вывода)
      */
     public CPUi8080(@NotNull SpecialistMX spMX, @NotNull MemoryManager memManager, MemoryManager ioManager) {
+        this(spMX, spMX::getPage, spMX.getGen(), memManager, ioManager);
+    }
+
+    /**
+     * Конструктор CPU без графического интерфейса (для инструментов проверки и измерения производительности).
+     * Ловушки не запускают отладчик.
+     *
+     * @param pages      источник номера текущей страницы памяти
+     * @param gen        тактовый генератор (счетчик тактов)
+     * @param memManager диспетчер запоминающих устройств
+     * @param ioManager  диспетчер устройств ввода/вывода (null = порты отображаются на память)
+     */
+    CPUi8080(@NotNull IntSupplier pages, @NotNull ClockSpeedGenerator gen, @NotNull MemoryManager memManager, MemoryManager ioManager) {
+        this(null, pages, gen, memManager, ioManager);
+    }
+
+    /**
+     * Конструктор.
+     *
+     * @param spMX       компьютер (null = без графического интерфейса)
+     * @param pages      источник номера текущей страницы памяти
+     * @param gen        тактовый генератор
+     * @param memManager диспетчер запоминающих устройств
+     * @param ioManager  диспетчер устройств ввода/вывода
+     */
+    private CPUi8080(final SpecialistMX spMX, @NotNull final IntSupplier pages, @NotNull final ClockSpeedGenerator gen,
+                     @NotNull final MemoryManager memManager, final MemoryManager ioManager) {
               fSpMX = spMX;
+             fPages = pages;
+               fGen = gen;
         fMemManager = memManager;
          fIoManager =  ioManager;
-                                // 0, 1, 2, 3, 4, 5, 6, 7,  8,  9
-        fRegs    = new int[10]; // B, C, D, E, H, L, F, A, SP, PC
-        fRegs[F] = 0b0000_0010; // Флаги по умолчанию SZ0A_0P1C
+        fF = 0b0000_0010; // Флаги по умолчанию SZ0A_0P1C
 
-             fCycles = new AtomicInteger();
            fIsDebugRun = new AtomicBoolean();
-          fHoldPhase = new AtomicInteger();
-        fCompareTrap = new Trap(0,0);
               fTraps = new ConcurrentSkipListSet<>();
+             fTrapMap = new int[TRAP_PAGES << 11];
+      fTrapConditions = new ConcurrentHashMap<>();
     }
 
     @Override
     public synchronized String toString() {
         return String.format("Значения регистров: SZ0A0P1C=%08d, A=%02X, B=%02X, C=%02X, D=%02X, E=%02X, H=%02X, L=%02X, SP=%04X, PC=%04X%n" +
                              "Память с адреса PC: %02X, %02X, %02X, %02X, %02X, ...",
-                Integer.parseInt(Integer.toBinaryString(fRegs[F])),
-                fRegs[A], fRegs[B], fRegs[C], fRegs[D], fRegs[E], fRegs[H], fRegs[L], fRegs[SP], fRegs[PC],
-                fMemManager.readByte((fRegs[PC]    ) & 0xFFFF),
-                fMemManager.readByte((fRegs[PC] + 1) & 0xFFFF),
-                fMemManager.readByte((fRegs[PC] + 2) & 0xFFFF),
-                fMemManager.readByte((fRegs[PC] + 3) & 0xFFFF),
-                fMemManager.readByte((fRegs[PC] + 4) & 0xFFFF));
+                Integer.parseInt(Integer.toBinaryString(fF)),
+                fA, fBC >> 8, fBC & 0xFF, fDE >> 8, fDE & 0xFF, fHL >> 8, fHL & 0xFF, fSP, fPC,
+                fMemManager.readByte((fPC    ) & 0xFFFF),
+                fMemManager.readByte((fPC + 1) & 0xFFFF),
+                fMemManager.readByte((fPC + 2) & 0xFFFF),
+                fMemManager.readByte((fPC + 3) & 0xFFFF),
+                fMemManager.readByte((fPC + 4) & 0xFFFF));
     }
 
     /**
@@ -135,8 +285,25 @@ public final class CPUi8080 implements ClockedUnit {
      * @param codeReg B = 0, C = 1, D = 2, E = 3, H = 4, L = 5, M = 6, A = 7
      * @return значение регистра
      */
-    private int getReg(int codeReg) {
-        return codeReg == M ? fMemManager.readByte(getRegPair(P_HL)) : fRegs[codeReg];
+    int getReg(int codeReg) {
+        switch (codeReg) {
+            case B:
+                return fBC >> 8;
+            case C:
+                return fBC & 0xFF;
+            case D:
+                return fDE >> 8;
+            case E:
+                return fDE & 0xFF;
+            case H:
+                return fHL >> 8;
+            case L:
+                return fHL & 0xFF;
+            case M:
+                return readByte(fHL);
+            default:
+                return fA;
+        }
     }
 
     /**
@@ -145,11 +312,32 @@ public final class CPUi8080 implements ClockedUnit {
      * @param codeReg B = 0, C = 1, D = 2, E = 3, H = 4, L = 5, M = 6, A = 7
      * @param value   значение регистра
      */
-    private void setReg(int codeReg, int value) {
-        if (codeReg == M) {
-            fMemManager.writeByte(getRegPair(P_HL), value);
-        } else {
-            fRegs[codeReg] = value & 0xFF;
+    void setReg(int codeReg, int value) {
+        switch (codeReg) {
+            case B:
+                fBC = (fBC & 0x00FF) | ((value & 0xFF) << 8);
+                break;
+            case C:
+                fBC = (fBC & 0xFF00) |  (value & 0xFF);
+                break;
+            case D:
+                fDE = (fDE & 0x00FF) | ((value & 0xFF) << 8);
+                break;
+            case E:
+                fDE = (fDE & 0xFF00) |  (value & 0xFF);
+                break;
+            case H:
+                fHL = (fHL & 0x00FF) | ((value & 0xFF) << 8);
+                break;
+            case L:
+                fHL = (fHL & 0xFF00) |  (value & 0xFF);
+                break;
+            case M:
+                writeByte(fHL, value);
+                break;
+            default:
+                fA  =   value & 0xFF;
+                break;
         }
     }
 
@@ -159,8 +347,17 @@ public final class CPUi8080 implements ClockedUnit {
      * @param codePair BC = 0, DE = 2, HL = 4, PSW = 6
      * @return значение
      */
-    private int getRegPair(int codePair) {
-        return codePair == P_PSW ? fRegs[codePair] | (fRegs[codePair + 1] << 8) : fRegs[codePair + 1] | (fRegs[codePair] << 8);
+    int getRegPair(int codePair) {
+        switch (codePair) {
+            case P_BC:
+                return fBC;
+            case P_DE:
+                return fDE;
+            case P_HL:
+                return fHL;
+            default:
+                return (fA << 8) | fF;
+        }
     }
 
     /**
@@ -169,13 +366,21 @@ public final class CPUi8080 implements ClockedUnit {
      * @param codePair BC = 0, DE = 2, HL = 4, PSW = 6
      * @param value    значение
      */
-    private void setRegPair(int codePair, int value) {
-        if (codePair == P_PSW) {
-            fRegs[codePair]     =  value & 0xFF;
-            fRegs[codePair + 1] = (value >> 8) & 0xFF;
-        } else {
-            fRegs[codePair]     = (value >> 8) & 0xFF;
-            fRegs[codePair + 1] =  value & 0xFF;
+    void setRegPair(int codePair, int value) {
+        switch (codePair) {
+            case P_BC:
+                fBC = value & 0xFFFF;
+                break;
+            case P_DE:
+                fDE = value & 0xFFFF;
+                break;
+            case P_HL:
+                fHL = value & 0xFFFF;
+                break;
+            default:
+                fA  = (value >> 8) & 0xFF;
+                fF  =  value & 0xFF;
+                break;
         }
     }
 
@@ -185,7 +390,7 @@ public final class CPUi8080 implements ClockedUnit {
      * @return значение
      */
     private boolean getFlagC() {
-        return (fRegs[F] & 1) != 0;
+        return (fF & 1) != 0;
     }
 
     /**
@@ -194,43 +399,7 @@ public final class CPUi8080 implements ClockedUnit {
      * @param value значение
      */
     private void setFlagC(boolean value) {
-        fRegs[F] = value ? fRegs[F] | 1 : fRegs[F] & 0b1111_1110;
-    }
-
-    /**
-     * Получает значение флага AC (Дополнительный перенос).
-     *
-     * @return значение
-     */
-    private boolean getFlagAC() {
-        return (fRegs[F] & 0b1_0000) != 0;
-    }
-
-    /**
-     * Устанавливает значение флага AC (Дополнительный перенос).
-     *
-     * @param value значение
-     */
-    private void setFlagAC(boolean value) {
-        fRegs[F] = value ? fRegs[F] | 0b1_0000 : fRegs[F] & 0b1110_1111;
-    }
-
-    /**
-     * Устанавливает флаги S (Знак), Z (Нуль) и P (Четность).
-     *
-     * @param r результат вычислений в формате Byte
-     */
-    private void setFlagsSZP(int r) {
-        fRegs[F] = (r & 0x80) != 0 ? fRegs[F] | 0b1000_0000 : fRegs[F] & 0b0111_1111; // S
-        fRegs[F] =  r         == 0 ? fRegs[F] | 0b0100_0000 : fRegs[F] & 0b1011_1111; // Z
-        fRegs[F] = (((       r & 1) ^
-                     ((r >> 1) & 1) ^
-                     ((r >> 2) & 1) ^
-                     ((r >> 3) & 1) ^
-                     ((r >> 4) & 1) ^
-                     ((r >> 5) & 1) ^
-                     ((r >> 6) & 1) ^
-                     ((r >> 7) & 1)) == 0) ? fRegs[F] | 0b100 : fRegs[F] & 0b1111_1011; // P
+        fF = value ? fF | 1 : fF & 0b1111_1110;
     }
 
     /**
@@ -241,13 +410,10 @@ public final class CPUi8080 implements ClockedUnit {
      * @param c третий байт
      * @return результат
      */
-    private int addByte(int a, int b, int c) {
-        int r = a + b + c;
-        setFlagC(r > 0xFF);
-        setFlagAC((a & 0xF) + (b & 0xF) + (c & 0xF) > 0xF);
-        r &= 0xFF;
-        setFlagsSZP(r);
-        return r;
+    int addByte(int a, int b, int c) {
+        final int r = a + b + c;
+        fF = FLAGS_SZP[r & 0xFF] | FLAGS_ADD_CA[((a ^ b ^ r) >> 4) & 0x11];
+        return r & 0xFF;
     }
 
     /**
@@ -258,12 +424,10 @@ public final class CPUi8080 implements ClockedUnit {
      * @param c третий байт
      * @return результат
      */
-    private int subByte(int a, int b, int c) {
-        int r = (a - b - c) & 0xFF;
-        setFlagC(a < b + c);
-        setFlagAC((a & 0xF) >= (b & 0xF) + (c & 0xF)); // Тут флаг взводится наоборот
-        setFlagsSZP(r);
-        return r;
+    int subByte(int a, int b, int c) {
+        final int r = a - b - c;
+        fF = FLAGS_SZP[r & 0xFF] | FLAGS_SUB_CA[((a ^ b ^ r) >> 4) & 0x11];
+        return r & 0xFF;
     }
 
     /**
@@ -273,11 +437,9 @@ public final class CPUi8080 implements ClockedUnit {
      * @param b второй байт
      * @return результат
      */
-    private int anaByte(int a, int b) {
-        int r = a & b;
-        setFlagC(false);
-        setFlagAC(((a | b) & 0b1000) != 0);
-        setFlagsSZP(r);
+    int anaByte(int a, int b) {
+        final int r = a & b;
+        fF = FLAGS_SZP[r] | (((a | b) & 0b1000) << 1);
         return r;
     }
 
@@ -285,19 +447,9 @@ public final class CPUi8080 implements ClockedUnit {
      * Реализует команду DAA CPU.
      */
     private void cmdDAA() {
-        int s = 0;
-        int a = getReg(A);
-        boolean fc = getFlagC();
-
-        if (getFlagAC() || (a & 0xF) > 9) {
-            s = 6;
-        }
-        if (fc || (a >> 4) > 9 || ((a >> 4) >= 9 && (a & 0xF) > 9)) {
-            s |= 0x60;
-            fc = true;
-        }
-        setReg(A, addByte(a, s, 0));
-        setFlagC(fc);
+        final int v = DAA_RESULTS[((fF & 1) << 9) | ((fF & 0b1_0000) << 4) | fA];
+        fA = v >> 8;
+        fF = v & 0xFF;
     }
 
     /**
@@ -306,8 +458,8 @@ public final class CPUi8080 implements ClockedUnit {
      * @param codeCondition код условия от 0 до 7
      * @return результат проверки
      */
-    private boolean testFlags(int codeCondition) {
-        int f = fRegs[F];
+    boolean testFlags(int codeCondition) {
+        int f = fF;
 
         switch (codeCondition) {
             case 0:         //SZ0A_0P1C
@@ -337,7 +489,7 @@ public final class CPUi8080 implements ClockedUnit {
      * @return значение
      */
     private int getSP() {
-        return fRegs[SP];
+        return fSP;
     }
 
     /**
@@ -346,7 +498,7 @@ public final class CPUi8080 implements ClockedUnit {
      * @param value значение
      */
     private void setSP(int value) {
-        fRegs[SP] = value & 0xFFFF;
+        fSP = value & 0xFFFF;
     }
 
     /**
@@ -355,7 +507,7 @@ public final class CPUi8080 implements ClockedUnit {
      * @return значение
      */
     private int getPC() {
-        return fRegs[PC];
+        return fPC;
     }
 
     /**
@@ -364,7 +516,7 @@ public final class CPUi8080 implements ClockedUnit {
      * @param value значение
      */
     private void setPC(int value) {
-        fRegs[PC] = value & 0xFFFF;
+        fPC = value & 0xFFFF;
     }
 
     /**
@@ -372,9 +524,9 @@ public final class CPUi8080 implements ClockedUnit {
      *
      * @param value значение
      */
-    private void pushWord(int value) {
-        fRegs[SP] = (fRegs[SP] - 2) & 0xFFFF;
-        fMemManager.writeWord(fRegs[SP], value);
+    void pushWord(int value) {
+        fSP = (fSP - 2) & 0xFFFF;
+        writeWord(fSP, value);
     }
 
     /**
@@ -382,9 +534,9 @@ public final class CPUi8080 implements ClockedUnit {
      *
      * @return значение
      */
-    private int popWord() {
-        int v = fMemManager.readWord(fRegs[SP]);
-        fRegs[SP] = (fRegs[SP] + 2) & 0xFFFF;
+    int popWord() {
+        int v = readWord(fSP);
+        fSP = (fSP + 2) & 0xFFFF;
         return v;
     }
 
@@ -395,8 +547,8 @@ public final class CPUi8080 implements ClockedUnit {
      * @return считанный из памяти байт
      */
     private int nextBytePC() {
-        int v = fMemManager.readByte(fRegs[PC]);
-        fRegs[PC] = (fRegs[PC] + 1) & 0xFFFF;
+        int v = readByte(fPC);
+        fPC = (fPC + 1) & 0xFFFF;
         return v;
     }
 
@@ -407,11 +559,82 @@ public final class CPUi8080 implements ClockedUnit {
      * @return считанное из памяти слово
      */
     private int nextWordPC() {
-        int v = fMemManager.readWord(fRegs[PC]);
-        fRegs[PC] = (fRegs[PC] + 2) & 0xFFFF;
+        int v = readWord(fPC);
+        fPC = (fPC + 2) & 0xFFFF;
         return v;
     }
 
+    /**
+     * Читает байт из памяти.
+     *
+     * @param address адрес
+     * @return байт
+     */
+    int readByte(int address) {
+        final int value = fMemManager.readByte(address);
+        if (address >= IdleDetector.KEYBOARD_PORT) {
+            final IdleDetector idle = fIdle;
+            if ((idle != null) && idle.read(address, value)) {
+                fIdleRead = true;
+            }
+        }
+        return value;
+    }
+
+    /**
+     * Читает слово из памяти.
+     *
+     * @param address адрес
+     * @return слово
+     */
+    int readWord(int address) {
+        if (address >= IdleDetector.KEYBOARD_PORT - 1) {
+            // Чтение из устройств ввода/вывода - побайтно, для учета детектором холостого цикла
+            return readByte(address) | (readByte(address + 1) << 8);
+        }
+        return fMemManager.readWord(address);
+    }
+
+    /**
+     * Записывает байт в память.
+     * (Все записи CPU в память выполняются через этот метод - для сброса устаревших блоков в кэше блоков кода)
+     *
+     * @param address адрес
+     * @param value   байт
+     */
+    void writeByte(int address, int value) {
+        final IdleDetector idle = fIdle;
+        if (idle != null) {
+            idle.write(address, value);
+        }
+        fMemManager.writeByte(address, value);
+        final BlockCache blocks = fBlocks;
+        if (blocks != null) {
+            blocks.written(address);
+        }
+    }
+
+    /**
+     * Записывает слово в память.
+     *
+     * @param address адрес
+     * @param value   слово
+     */
+    void writeWord(int address, int value) {
+        if (fIdle != null) {
+            // Детектор холостого цикла сравнивает каждый записываемый байт с памятью до записи
+            writeByte(address, value);
+            writeByte(address + 1, value >> 8);
+            return;
+        }
+        fMemManager.writeWord(address, value);
+        final BlockCache blocks = fBlocks;
+        if (blocks != null) {
+            blocks.written(address);
+            blocks.written(address + 1);
+        }
+    }
+
     /**
      * Начинает выполнение команды CPU.
      *
@@ -429,477 +652,310 @@ public final class CPUi8080 implements ClockedUnit {
 
     /**
      * Завершает выполнение команды CPU.
+     * (Команды разбиты на группы по двум старшим битам кода операции - каждый обработчик остается небольшим,
+     * что позволяет JIT-компилятору компилировать и встраивать его отдельно)
      */
     private void cmdFinish() {
-        int r;
-        int v;
-        boolean f;
-
-        switch (fOpCode) {
-            // NOP, 0x00, 00000000
-            case 0x00:
-            // Undocumented NOP.
-            case 0x08:
-            case 0x10:
-            case 0x18:
-            case 0x20:
-            case 0x28:
-            case 0x30:
-            case 0x38:
-                break;
-
-            // LXI, 0x01, 00rr0001
+        switch (fOpCode >> 6) {
+            case 0:
+                cmdGroupMisc(fOpCode);
+                break;
+            case 1:
+                cmdGroupMov (fOpCode);
+                break;
+            case 2:
+                cmdGroupAlu ((fOpCode >> 3) & 0b111, getReg(fOpCode & 0b111));
+                break;
+            default:
+                cmdGroupJump(fOpCode);
+                break;
+        }
+    }
+
+    /**
+     * Выполняет команды группы 00xxxxxx (загрузка, инкремент/декремент, сдвиги, DAA, работа с флагом C).
+     *
+     * @param opCode код операции
+     */
+    private void cmdGroupMisc(final int opCode) {
+        switch (opCode & 0b111) {
+            // NOP, 0x00, 00000000 (+ Undocumented NOP: 0x08, 0x10, 0x18, 0x20, 0x28, 0x30, 0x38)
+            case 0:
+                break;
+
+            // LXI, 0x01, 00rr0001 / DAD, 0x09, 00rr1001
             // rr - 00 (BC), 01 (DE), 10 (HL), 11 (SP)
-            case 0x01: // LXI  B, data16
-            case 0x11: // LXI  D, data16
-            case 0x21: // LXI  H, data16
-            case 0x31: // LXI SP, data16
-                r = fOpCode >> 3;
-                if (r == 6) // SP
-                {
-                    setSP(nextWordPC());
-                } else {
-                    setRegPair(r, nextWordPC());
-                }
+            case 1:
+                cmdLxiDad(opCode);
                 break;
 
-            // STAX, 0x02, 00rr0010
-            // rr - 00 (BC), 01 (DE)
-            case 0x02: // STAX B
-            case 0x12: // STAX D
-                fMemManager.writeByte(getRegPair(fOpCode >> 3), getReg(A));
+            // STAX, LDAX, SHLD, LHLD, STA, LDA, 00ccc010
+            case 2:
+                cmdLoadStore(opCode);
                 break;
 
-            // INX, 0x03, 00rr0011
+            // INX, 0x03, 00rr0011 / DCX, 0x0B, 00rr1011
             // rr - 00 (BC), 01 (DE), 10 (HL), 11 (SP)
-            case 0x03: // INX B
-            case 0x13: // INX D
-            case 0x23: // INX H
-            case 0x33: // INX SP
-                r = fOpCode >> 3;
-                if (r == 6) // SP
-                {
-                    setSP(getSP() + 1);
-                } else {
-                    setRegPair(r, getRegPair(r) + 1);
-                }
+            case 3:
+                cmdInxDcx(opCode);
                 break;
 
             // INR, 0x04, 00rrr100
             // rrr - B, C, D, E, H, L, M, A
-            case 0x04: // INR B
-            case 0x0C: // INR C
-            case 0x14: // INR D
-            case 0x1C: // INR E
-            case 0x24: // INR H
-            case 0x2C: // INR L
-            case 0x34: // INR M
-            case 0x3C: // INR A
-                r = fOpCode >> 3;
-                v = (getReg(r) + 1) & 0xFF;
-                setReg(r, v);
-                setFlagAC((v & 0xF) == 0);
-                setFlagsSZP(v);
+            case 4:
+                cmdInr((opCode >> 3) & 0b111);
                 break;
 
             // DCR, 0x05, 00rrr101
             // rrr - B, C, D, E, H, L, M, A
-            case 0x05: // DCR B
-            case 0x0D: // DCR C
-            case 0x15: // DCR D
-            case 0x1D: // DCR E
-            case 0x25: // DCR H
-            case 0x2D: // DCR L
-            case 0x35: // DCR M
-            case 0x3D: // DCR A
-                r = fOpCode >> 3;
-                v = (getReg(r) - 1) & 0xFF;
-                setReg(r, v);
-                setFlagAC((v & 0xF) != 0xF); // Тут флаг взводится наоборот
-                setFlagsSZP(v);
+            case 5:
+                cmdDcr((opCode >> 3) & 0b111);
                 break;
 
             // MVI, 0x06, 00rrr110
             // rrr - B, C, D, E, H, L, M, A
-            case 0x06: // MVI B, data8
-            case 0x0E: // MVI C, data8
-            case 0x16: // MVI D, data8
-            case 0x1E: // MVI E, data8
-            case 0x26: // MVI H, data8
-            case 0x2E: // MVI L, data8
-            case 0x36: // MVI M, data8
-            case 0x3E: // MVI A, data8
-                setReg(fOpCode >> 3, nextBytePC());
-                break;
-
-            case 0x07: // RLC
-                v = getReg(A);
-                f = (v & 0x80) != 0;
-                v = (v << 1) & 0xFF;
-                setFlagC(f);
-                if (f) {
-                    setReg(A, v | 1);
-                } else {
-                    setReg(A, v);
-                }
+            case 6:
+                setReg(opCode >> 3, nextBytePC());
                 break;
 
-            // DAD, 0x09, 00rr1001
-            // rr - 00 (BC), 01 (DE), 10 (HL), 11 (SP)
-            case 0x09: // DAD B
-            case 0x19: // DAD D
-            case 0x29: // DAD H
-            case 0x39: // DAD SP (код = 6)
-                r = (fOpCode & 0b0011_0000) >> 3;
-                v = getRegPair(P_HL) + (r == 6 ? getSP() : getRegPair(r));
-                setFlagC((v & 0x1_0000) != 0);
-                setRegPair(P_HL, v);
+            // RLC, RRC, RAL, RAR, DAA, CMA, STC, CMC, 00ccc111
+            default:
+                cmdRotateFlags((opCode >> 3) & 0b111);
                 break;
+        }
+    }
 
-            // LDAX, 0x0A, 00rr1010
-            // rr - 00 (BC), 01 (DE)
-            case 0x0A: // LDAX B
-            case 0x1A: // LDAX D
-                setReg(A, fMemManager.readByte(getRegPair((fOpCode & 0b0011_0000) >> 3)));
-                break;
+    /**
+     * Выполняет команды LXI и DAD.
+     *
+     * @param opCode код операции
+     */
+    void cmdLxiDad(final int opCode) {
+        final int r = (opCode & 0b0011_0000) >> 3;
+        if ((opCode & 0b1000) == 0) {
+            // LXI rp, data16
+            if (r == 6) { // SP
+                setSP(nextWordPC());
+            } else {
+                setRegPair(r, nextWordPC());
+            }
+        } else {
+            // DAD rp
+            final int v = fHL + (r == 6 ? fSP : getRegPair(r));
+            setFlagC((v & 0x1_0000) != 0);
+            fHL = v & 0xFFFF;
+        }
+    }
 
-            // DCX, 0x0B, 00rr1011
-            // rr - 00 (BC), 01 (DE), 10 (HL), 11 (SP)
-            case 0x0B: // DCX B
-            case 0x1B: // DCX D
-            case 0x2B: // DCX H
-            case 0x3B: // DCX SP
-                r = (fOpCode & 0b0011_0000) >> 3;
-                if (r == 6) // SP
-                {
-                    setSP(getSP() - 1);
-                } else {
-                    setRegPair(r, getRegPair(r) - 1);
-                }
+    /**
+     * Выполняет команды STAX, LDAX, SHLD, LHLD, STA, LDA.
+     *
+     * @param opCode код операции
+     */
+    private void cmdLoadStore(final int opCode) {
+        switch ((opCode >> 3) & 0b111) {
+            case 0: // STAX B
+                writeByte(fBC, fA);
+                break;
+            case 1: // LDAX B
+                setReg(A, readByte(fBC));
+                break;
+            case 2: // STAX D
+                writeByte(fDE, fA);
+                break;
+            case 3: // LDAX D
+                setReg(A, readByte(fDE));
+                break;
+            case 4: // SHLD addr
+                writeWord(nextWordPC(), fHL);
+                break;
+            case 5: // LHLD addr
+                setRegPair(P_HL, readWord(nextWordPC()));
+                break;
+            case 6: // STA addr
+                writeByte(nextWordPC(), fA);
+                break;
+            default: // LDA addr
+                setReg(A, readByte(nextWordPC()));
                 break;
+        }
+    }
 
-            case 0x0F: // RRC
-                v = getReg(A);
-                f = (v & 1) != 0;
-                v = (v >> 1) & 0xFF;
-                setFlagC(f);
-                if (f) {
-                    setReg(A, v | 0x80);
-                } else {
-                    setReg(A, v);
-                }
+    /**
+     * Выполняет команды INX и DCX.
+     *
+     * @param opCode код операции
+     */
+    void cmdInxDcx(final int opCode) {
+        final int d = (opCode & 0b1000) == 0 ? 1 : -1;
+        switch ((opCode >> 4) & 0b11) {
+            case 0:
+                fBC = (fBC + d) & 0xFFFF;
+                break;
+            case 1:
+                fDE = (fDE + d) & 0xFFFF;
+                break;
+            case 2:
+                fHL = (fHL + d) & 0xFFFF;
+                break;
+            default:
+                fSP = (fSP + d) & 0xFFFF;
                 break;
+        }
+    }
+
+    /**
+     * Выполняет команду INR.
+     *
+     * @param r код регистра
+     */
+    void cmdInr(final int r) {
+        final int v = (getReg(r) + 1) & 0xFF;
+        setReg(r, v);
+        fF = FLAGS_INR[v] | (fF & 1);
+    }
+
+    /**
+     * Выполняет команду DCR.
+     *
+     * @param r код регистра
+     */
+    void cmdDcr(final int r) {
+        final int v = (getReg(r) - 1) & 0xFF;
+        setReg(r, v);
+        fF = FLAGS_DCR[v] | (fF & 1);
+    }
 
-            case 0x17: // RAL
-                v = getReg(A);
-                f = getFlagC();
+    /**
+     * Выполняет команды RLC, RRC, RAL, RAR, DAA, CMA, STC, CMC.
+     *
+     * @param code код команды в группе (биты 3-5 кода операции)
+     */
+    void cmdRotateFlags(final int code) {
+        final int v = fA;
+        switch (code) {
+            case 0: // RLC
                 setFlagC((v & 0x80) != 0);
-                v = (v << 1) & 0xFF;
-                if (f) {
-                    setReg(A, v | 1);
-                } else {
-                    setReg(A, v);
-                }
+                fA = ((v << 1) | (v >> 7)) & 0xFF;
                 break;
-
-            case 0x1F: // RAR
-                v = getReg(A);
-                f = getFlagC();
+            case 1: // RRC
                 setFlagC((v & 1) != 0);
-                v = (v >> 1) & 0xFF;
-                if (f) {
-                    setReg(A, v | 0x80);
-                } else {
-                    setReg(A, v);
-                }
-                break;
-
-            case 0x22: // SHLD addr
-                fMemManager.writeWord(nextWordPC(), getRegPair(P_HL));
+                fA = ((v >> 1) | (v << 7)) & 0xFF;
                 break;
-
-            case 0x27: // DAA
-                cmdDAA();
+            case 2: // RAL
+                fA = ((v << 1) | (fF & 1)) & 0xFF;
+                setFlagC((v & 0x80) != 0);
                 break;
-
-            case 0x2A: // LHLD addr
-                setRegPair(P_HL, fMemManager.readWord(nextWordPC()));
+            case 3: // RAR
+                fA = (v >> 1) | ((fF & 1) << 7);
+                setFlagC((v & 1) != 0);
                 break;
-
-            case 0x2F: // CMA
-                setReg(A, getReg(A) ^ 0xFF);
+            case 4: // DAA
+                cmdDAA();
                 break;
-
-            case 0x32: // STA addr
-                fMemManager.writeByte(nextWordPC(), getReg(A));
+            case 5: // CMA
+                fA = v ^ 0xFF;
                 break;
-
-            case 0x37: // STC
+            case 6: // STC
                 setFlagC(true);
                 break;
-
-            case 0x3A: // LDA addr
-                setReg(A, fMemManager.readByte(nextWordPC()));
-                break;
-
-            case 0x3F: // CMC
+            default: // CMC
                 setFlagC(!getFlagC());
                 break;
+        }
+    }
 
+    /**
+     * Выполняет команды группы 01dddsss (MOV и HLT).
+     *
+     * @param opCode код операции
+     */
+    private void cmdGroupMov(final int opCode) {
+        if (opCode == 0x76) { // HLT
+            setPC(getPC() - 1);
+            startDebugger   ();
+        } else {
             // MOV, 0x40, 01dddsss
             // ddd, sss - B, C, D, E, H, L, M, A
-            case 0x40: // MOV B, B
-            case 0x41: // MOV B, C
-            case 0x42: // MOV B, D
-            case 0x43: // MOV B, E
-            case 0x44: // MOV B, H
-            case 0x45: // MOV B, L
-            case 0x46: // MOV B, M
-            case 0x47: // MOV B, A
-
-            case 0x48: // MOV C, B
-            case 0x49: // MOV C, C
-            case 0x4A: // MOV C, D
-            case 0x4B: // MOV C, E
-            case 0x4C: // MOV C, H
-            case 0x4D: // MOV C, L
-            case 0x4E: // MOV C, M
-            case 0x4F: // MOV C, A
-
-            case 0x50: // MOV D, B
-            case 0x51: // MOV D, C
-            case 0x52: // MOV D, D
-            case 0x53: // MOV D, E
-            case 0x54: // MOV D, H
-            case 0x55: // MOV D, L
-            case 0x56: // MOV D, M
-            case 0x57: // MOV D, A
-
-            case 0x58: // MOV E, B
-            case 0x59: // MOV E, C
-            case 0x5A: // MOV E, D
-            case 0x5B: // MOV E, E
-            case 0x5C: // MOV E, H
-            case 0x5D: // MOV E, L
-            case 0x5E: // MOV E, M
-            case 0x5F: // MOV E, A
-
-            case 0x60: // MOV H, B
-            case 0x61: // MOV H, C
-            case 0x62: // MOV H, D
-            case 0x63: // MOV H, E
-            case 0x64: // MOV H, H
-            case 0x65: // MOV H, L
-            case 0x66: // MOV H, M
-            case 0x67: // MOV H, A
-
-            case 0x68: // MOV L, B
-            case 0x69: // MOV L, C
-            case 0x6A: // MOV L, D
-            case 0x6B: // MOV L, E
-            case 0x6C: // MOV L, H
-            case 0x6D: // MOV L, L
-            case 0x6E: // MOV L, M
-            case 0x6F: // MOV L, A
-
-            case 0x70: // MOV M, B
-            case 0x71: // MOV M, C
-            case 0x72: // MOV M, D
-            case 0x73: // MOV M, E
-            case 0x74: // MOV M, H
-            case 0x75: // MOV M, L
-            case 0x77: // MOV M, A
-
-            case 0x78: // MOV A, B
-            case 0x79: // MOV A, C
-            case 0x7A: // MOV A, D
-            case 0x7B: // MOV A, E
-            case 0x7C: // MOV A, H
-            case 0x7D: // MOV A, L
-            case 0x7E: // MOV A, M
-            case 0x7F: // MOV A, A
-                setReg((fOpCode >> 3) & 0b111, getReg(fOpCode & 0b111));
-                break;
-
-            case 0x76: // HLT
-                setPC(getPC() - 1);
-                startDebugger   ();
-                break;
-
-            // ADD, 0x80, 10000rrr
-            // rrr - B, C, D, E, H, L, M, A
-            case 0x80: // ADD B
-            case 0x81: // ADD C
-            case 0x82: // ADD D
-            case 0x83: // ADD E
-            case 0x84: // ADD H
-            case 0x85: // ADD L
-            case 0x86: // ADD M
-            case 0x87: // ADD A
-                setReg(A, addByte(getReg(A), getReg(fOpCode & 0b111), 0));
-                break;
-
-            // ADC, 0x80, 10001rrr
-            // rrr - B, C, D, E, H, L, M, A
-            case 0x88: // ADC B
-            case 0x89: // ADC C
-            case 0x8A: // ADC D
-            case 0x8B: // ADC E
-            case 0x8C: // ADC H
-            case 0x8D: // ADC L
-            case 0x8E: // ADC M
-            case 0x8F: // ADC A
-                setReg(A, addByte(getReg(A), getReg(fOpCode & 0b111), getFlagC() ? 1 : 0));
-                break;
-
-            // SUB, 0x90, 10010rrr
-            // rrr - B, C, D, E, H, L, M, A
-            case 0x90: // SUB B
-            case 0x91: // SUB C
-            case 0x92: // SUB D
-            case 0x93: // SUB E
-            case 0x94: // SUB H
-            case 0x95: // SUB L
-            case 0x96: // SUB M
-            case 0x97: // SUB A
-                setReg(A, subByte(getReg(A), getReg(fOpCode & 0b111), 0));
-                break;
-
-            // SBB, 0x98, 10010rrr
-            // rrr - B, C, D, E, H, L, M, A
-            case 0x98: // SBB B
-            case 0x99: // SBB C
-            case 0x9A: // SBB D
-            case 0x9B: // SBB E
-            case 0x9C: // SBB H
-            case 0x9D: // SBB L
-            case 0x9E: // SBB M
-            case 0x9F: // SBB A
-                setReg(A, subByte(getReg(A), getReg(fOpCode & 0b111), getFlagC() ? 1 : 0));
-                break;
-
-            // ANA, 0xA0, 10100rrr
-            // rrr - B, C, D, E, H, L, M, A
-            case 0xA0: // ANA B
-            case 0xA1: // ANA C
-            case 0xA2: // ANA D
-            case 0xA3: // ANA E
-            case 0xA4: // ANA H
-            case 0xA5: // ANA L
-            case 0xA6: // ANA M
-            case 0xA7: // ANA A
-                setReg(A, anaByte(getReg(A), getReg(fOpCode & 0b111)));
-                break;
-
-            // XRA, 0xA0, 10101rrr
-            // rrr - B, C, D, E, H, L, M, A
-            case 0xA8: // XRA B
-            case 0xA9: // XRA C
-            case 0xAA: // XRA D
-            case 0xAB: // XRA E
-            case 0xAC: // XRA H
-            case 0xAD: // XRA L
-            case 0xAE: // XRA M
-            case 0xAF: // XRA A
-                v = getReg(A) ^ getReg(fOpCode & 0b111);
-                setReg(A, v);
-                setFlagsSZP(v);
-                setFlagC (false);
-                setFlagAC(false);
-                break;
-
-            // ORA, 0xB0, 10110rrr
-            // rrr - B, C, D, E, H, L, M, A
-            case 0xB0: // ORA B
-            case 0xB1: // ORA C
-            case 0xB2: // ORA D
-            case 0xB3: // ORA E
-            case 0xB4: // ORA H
-            case 0xB5: // ORA L
-            case 0xB6: // ORA M
-            case 0xB7: // ORA A
-                v = getReg(A) | getReg(fOpCode & 0b111);
-                setReg(A, v);
-                setFlagsSZP(v);
-                setFlagC (false);
-                setFlagAC(false);
-                break;
-
-            // CMP, 0xB0, 10111rrr
-            // rrr - B, C, D, E, H, L, M, A
-            case 0xB8: // CMP B
-            case 0xB9: // CMP C
-            case 0xBA: // CMP D
-            case 0xBB: // CMP E
-            case 0xBC: // CMP H
-            case 0xBD: // CMP L
-            case 0xBE: // CMP M
-            case 0xBF: // CMP A
-                subByte(getReg(A), getReg(fOpCode & 0b111), 0);
-                break;
-
-            // RNZ, RZ, RNC, RC, RPO, RPE, R, RM, 0xC0, 11ccc000
+            setReg((opCode >> 3) & 0b111, getReg(opCode & 0b111));
+        }
+    }
+
+    /**
+     * Выполняет арифметико-логическую операцию над аккумулятором (группа 10aaasss и команды с непосредственным операндом 11aaa110).
+     *
+     * @param operation ADD = 0, ADC = 1, SUB = 2, SBB = 3, ANA = 4, XRA = 5, ORA = 6, CMP = 7
+     * @param value     операнд
+     */
+    void cmdGroupAlu(final int operation, final int value) {
+        switch (operation) {
+            case 0: // ADD, ADI
+                fA = addByte(fA, value, 0);
+                break;
+            case 1: // ADC, ACI
+                fA = addByte(fA, value, fF & 1);
+                break;
+            case 2: // SUB, SUI
+                fA = subByte(fA, value, 0);
+                break;
+            case 3: // SBB, SBI
+                fA = subByte(fA, value, fF & 1);
+                break;
+            case 4: // ANA, ANI
+                fA = anaByte(fA, value);
+                break;
+            case 5: // XRA, XRI
+                fA = (fA ^ value) & 0xFF;
+                fF = FLAGS_SZP[fA];
+                break;
+            case 6: // ORA, ORI
+                fA = (fA | value) & 0xFF;
+                fF = FLAGS_SZP[fA];
+                break;
+            default: // CMP, CPI
+                subByte(fA, value, 0);
+                break;
+        }
+    }
+
+    /**
+     * Выполняет команды группы 11xxxxxx (переходы, вызовы, возвраты, работа со стеком, ввод/вывод).
+     *
+     * @param opCode код операции
+     */
+    private void cmdGroupJump(final int opCode) {
+        final int v;
+        switch (opCode & 0b111) {
+            // RNZ, RZ, RNC, RC, RPO, RPE, RP, RM, 0xC0, 11ccc000
             // ccc - NZ, Z, NC, C, PO, PE, P, M
-            case 0xC0: // RNZ
-            case 0xC8: // RZ
-            case 0xD0: // RNC
-            case 0xD8: // RC
-            case 0xE0: // RPO
-            case 0xE8: // RPE
-            case 0xF0: // R
-            case 0xF8: // RM
+            case 0:
                 if (fTestResult) {
                     setPC(popWord());
                 }
                 break;
 
-            // POP, 0xC1, 11rr0001
-            // rr - 00 (BC), 01 (DE), 10 (HL), 11 (PSW)
-            case 0xC1: // POP B
-            case 0xD1: // POP D
-            case 0xE1: // POP H
-            case 0xF1: // POP PSW
-                r = (fOpCode & 0b0011_0000) >> 3;
-                if (r == P_PSW) //                        PSW = SZ0A_0P1C
-                {
-                    setRegPair(r, popWord() & 0b1111_1111_1101_0111 | 0b10);
-                } else {
-                    setRegPair(r, popWord());
-                }
+            // POP, 0xC1, 11rr0001 / RET, PCHL, SPHL, 11rr1001
+            case 1:
+                cmdPopRet(opCode);
                 break;
 
             // JNZ, JZ, JNC, JC, JPO, JPE, JP, JM, 0xC2, 11ccc010
             // ccc - NZ, Z, NC, C, PO, PE, P, M
-            case 0xC2: // JNZ addr
-            case 0xCA: // JZ  addr
-            case 0xD2: // JNC addr
-            case 0xDA: // JC  addr
-            case 0xE2: // JPO addr
-            case 0xEA: // JPE addr
-            case 0xF2: // JP  addr
-            case 0xFA: // JM  addr
+            case 2:
                 v = nextWordPC();
                 if (fTestResult) {
                     setPC(v);
                 }
                 break;
 
-            // JMP, 0xc3, 1100r011
-            case 0xC3: // JMP addr
-            case 0xCB: // JMP addr, undocumented
-                setPC(nextWordPC());
+            // JMP, OUT, IN, XTHL, XCHG, DI, EI, 11ccc011
+            case 3:
+                cmdJmpMisc(opCode);
                 break;
 
             // CNZ, CZ, CNC, CC, CPO, CPE, CP, CM, 0xC4, 11ccc100
             // ccc - NZ, Z, NC, C, PO, PE, P, M
-            case 0xC4: // CNZ addr
-            case 0xCC: // CZ  addr
-            case 0xD4: // CNC addr
-            case 0xDC: // CC  addr
-            case 0xE4: // CPO addr
-            case 0xEC: // CPE addr
-            case 0xF4: // CP  addr
-            case 0xFC: // CM  addr
+            case 4:
                 v = nextWordPC();
                 if (fTestResult) {
                     pushWord(getPC());
@@ -907,176 +963,321 @@ public final class CPUi8080 implements ClockedUnit {
                 }
                 break;
 
-            // PUSH, 0xC5, 11rr0101
+            // PUSH, 0xC5, 11rr0101 / CALL, 0xCD, 11rr1101
             // rr - 00 (BC), 01 (DE), 10 (HL), 11 (PSW)
-            case 0xC5: //* PUSH B
-            case 0xD5: //* PUSH D
-            case 0xE5: //* PUSH H
-            case 0xF5: //* PUSH PSW
-                pushWord(getRegPair((fOpCode & 0b0011_0000) >> 3));
+            case 5:
+                if ((opCode & 0b1000) == 0) {
+                    pushWord(getRegPair((opCode & 0b0011_0000) >> 3));
+                } else {
+                    v = nextWordPC() ;
+                    pushWord(getPC());
+                    setPC(v);
+                }
                 break;
 
-            case 0xC6: // ADI data8
-                setReg(A, addByte(getReg(A), nextBytePC(), 0));
+            // ADI, ACI, SUI, SBI, ANI, XRI, ORI, CPI, 11aaa110
+            case 6:
+                cmdGroupAlu((opCode >> 3) & 0b111, nextBytePC());
                 break;
 
             // RST, 0xC7, 11aaa111
             // aaa - 000(0)-111(7), address = aaa*8 (0 to 0x38).
-            case 0xC7: //* RST 0
-            case 0xCF: //* RST 1
-            case 0xD7: //* RST 2
-            case 0xDF: //* RST 3
-            case 0xE7: //* RST 4
-            case 0xEF: //* RST 5
-            case 0xF7: //* RST 5
-            case 0xFF: //* RST 7
-                pushWord(getPC());
-                setPC(fOpCode & 0b0011_1000);
-                break;
-
-            // RET, 0xC9, 110r1001
-            case 0xC9: // RET
-            case 0xD9: // RET, undocumented
-                setPC(popWord());
-                break;
-
-            // CALL, 0xCD, 11rr1101
-            case 0xCD: // CALL addr
-            case 0xDD: // CALL, undocumented
-            case 0xED:
-            case 0xFD:
-                v = nextWordPC() ;
+            default:
                 pushWord(getPC());
-                setPC(v);
+                setPC(opCode & 0b0011_1000);
                 break;
+        }
+    }
 
-            case 0xCE: // ACI data8
-                setReg(A, addByte(getReg(A), nextBytePC(), getFlagC() ? 1 : 0));
-                break;
+    /**
+     * Выполняет команды POP, RET, PCHL, SPHL.
+     *
+     * @param opCode код операции
+     */
+    private void cmdPopRet(final int opCode) {
+        if ((opCode & 0b1000) == 0) {
+            // POP, 0xC1, 11rr0001
+            // rr - 00 (BC), 01 (DE), 10 (HL), 11 (PSW)
+            final int r = (opCode & 0b0011_0000) >> 3;
+            if (r == P_PSW) { //                        PSW = SZ0A_0P1C
+                setRegPair(r, popWord() & 0b1111_1111_1101_0111 | 0b10);
+            } else {
+                setRegPair(r, popWord());
+            }
+        } else {
+            switch ((opCode >> 4) & 0b11) {
+                case 2: // PCHL
+                    setPC(fHL);
+                    break;
+                case 3: // SPHL
+                    setSP(fHL);
+                    break;
+                default: // RET (0xC9, 0xD9 - undocumented)
+                    setPC(popWord());
+                    break;
+            }
+        }
+    }
 
-            case 0xD3: // OUT port8
+    /**
+     * Выполняет команды JMP, OUT, IN, XTHL, XCHG, DI, EI.
+     *
+     * @param opCode код операции
+     */
+    private void cmdJmpMisc(final int opCode) {
+        final int v;
+        switch ((opCode >> 3) & 0b111) {
+            case 0: // JMP addr
+            case 1: // JMP addr, undocumented
+                setPC(nextWordPC());
+                break;
+            case 2: // OUT port8
                 v = nextBytePC();
                 if ( fIoManager == null) {
-                    fMemManager.writeByte(v | (v << 8), getReg(A)); // На "Специалисте_MX" как запись по адресу (port, port)
+                    writeByte(v | (v << 8), fA); // На "Специалисте_MX" как запись по адресу (port, port)
                 } else {
-                     fIoManager.writeByte(v, getReg(A));
+                     fIoManager.writeByte(v, fA);
+                     idleDirty();
                 }
                 break;
-
-            case 0xD6: // SUI data8
-                setReg(A, subByte(getReg(A), nextBytePC(), 0));
-                break;
-
-            case 0xDB: // IN port8
+            case 3: // IN port8
                 v = nextBytePC();
                 if (fIoManager == null) {
-                    setReg(A, fMemManager.readByte(v | (v << 8))); // На "Специалисте_MX" как запись по адресу (port, port)
+                    setReg(A, readByte(v | (v << 8))); // На "Специалисте_MX" как запись по адресу (port, port)
                 } else {
                     setReg(A,  fIoManager.readByte(v));
+                    idleDirty();
                 }
                 break;
-
-            case 0xDE: // SBI data8
-                setReg(A, subByte(getReg(A), nextBytePC(), getFlagC() ? 1 : 0));
-                break;
-
-            case 0xE3: // XTHL
-                v = fMemManager.readWord(getSP());
-                fMemManager.writeWord(getSP(), getRegPair(P_HL));
+            case 4: // XTHL
+                v = readWord(fSP);
+                writeWord(fSP, fHL);
                 setRegPair(P_HL, v);
                 break;
-
-            case 0xE6: // ANI data8
-                setReg(A, anaByte(getReg(A), nextBytePC()));
-                break;
-
-            case 0xE9: // PCHL
-                setPC(getRegPair(P_HL));
+            case 5: // XCHG
+                v   = fDE;
+                fDE = fHL;
+                fHL = v  ;
                 break;
-
-            case 0xEB: // XCHG
-                r = getRegPair(P_DE);
-                setRegPair(P_DE, getRegPair(P_HL));
-                setRegPair(P_HL, r);
+            default: // DI/EI (6, 7)
                 break;
+        }
+    }
 
-            case 0xEE: // XRI data8
-                v = getReg(A) ^ nextBytePC();
-                setReg(A, v);
-                setFlagsSZP(v);
-                setFlagC (false);
-                setFlagAC(false);
-                break;
+    /**
+     * Проверяет ловушку для следующей команды CPU.
+     */
+    private void checkTrap() {
+        // Здесь без порождения новых объектов и обхода множества ловушек (для скорости)
+        final int page = fPages.getAsInt();
+        final int pc   = getPC();
+        boolean   stop = isTrap(page, pc) && testTrapCondition(page, pc);
+        if (fWatchHit != 0) {
+            stop |= testWatches();
+            fWatchHit = 0;
+        }
+        if (stop) {
+            startDebugger();
+        }
+    }
 
-            // DI/EI, 1111c011
-            // C - 0 (DI), 1 (EI)
-            case 0xF3: // DI
-            case 0xFB: // EI
-                break;
+    /**
+     * Проверяет условие сработавшей ловушки.
+     *
+     * @param page номер страницы памяти
+     * @param pc   адрес ловушки
+     * @return true = условия нет или оно выполнено
+     */
+    private boolean testTrapCondition(final int page, final int pc) {
+        if (fTrapConditions.isEmpty()) {
+            return true;
+        }
+        final int key = (page << 16) | pc;
+        if (key == fStepOverKey) {
+            return true;
+        }
+        final TrapCondition condition = fTrapConditions.get(key);
+        return (condition == null) || condition.test(this, pc, debugReadByte(pc));
+    }
 
-            case 0xF6: // ORI data8
-                v = getReg(A) | nextBytePC();
-                setReg(A, v);
-                setFlagsSZP(v);
-                setFlagC (false);
-                setFlagAC(false);
-                break;
+    /**
+     * Проверяет точки наблюдения по обращениям к наблюдаемым адресам в только что выполненной команде.
+     *
+     * @return true = сработала хотя бы одна точка наблюдения
+     */
+    private boolean testWatches() {
+        boolean result = false;
+        for (WatchPoint point : fWatches) {
+            final Watch watch = point.fWatch;
+            for (int type = Watch.READ; type <= Watch.WRITE; type <<= 1) {
+                final int address = fWatchAddress[type];
+                if (((fWatchHit & watch.getType() & type) != 0) && (address >= watch.getStart()) && (address <= watch.getEnd())
+                        && ((point.fCondition == null) || point.fCondition.test(this, address, fWatchValue[type]))) {
+                    result = true;
+                }
+            }
+        }
+        return result;
+    }
 
-            case 0xF9: // SPHL
-                setSP(getRegPair(P_HL));
-                break;
+    /**
+     * Запоминает обращение CPU к наблюдаемому адресу (вызывается диспетчером запоминающих устройств).
+     * Точки наблюдения проверяются после завершения команды - в ее конечном состоянии.
+     *
+     * @param address адрес
+     * @param value   прочитанный/записанный байт
+     * @param write   true = запись, false = чтение
+     */
+    private void watchAccess(final int address, final int value, final boolean write) {
+        // Обращения из других потоков (загрузка файлов, отладчик) не учитываются
+        // (сравнивается ссылка на поток-владелец памяти, а не имя потока - метод вызывается при каждом обращении)
+        if (fMemManager.isOwner()) {
+            final int type = write ? Watch.WRITE : Watch.READ;
+            fWatchHit          |= type ;
+            fWatchAddress[type] = address;
+            fWatchValue  [type] = value  ;
+        }
+    }
 
-            case 0xFE: // CPI data8
-                subByte(getReg(A), nextBytePC(), 0);
-                break;
+    /**
+     * Учитывает обращение к памяти в покрытии кода и передает обращения к наблюдаемым адресам точкам наблюдения
+     * (вызывается диспетчером запоминающих устройств, пока включен учет покрытия кода).
+     *
+     * @param address адрес
+     * @param value   прочитанный/записанный байт
+     * @param write   true = запись, false = чтение
+     */
+    private void memoryAccess(final int address, final int value, final boolean write) {
+        final Coverage coverage = fCoverage;
+        if (coverage != null) {
+            coverage.access(address, write);
+        }
+        final int[] map = write ? fWatchWriteMap : fWatchReadMap;
+        if ((map[address >> 5] & (1 << address)) != 0) {
+            watchAccess(address, value, write);
+        }
+    }
 
-            default:
-                break;
+    /**
+     * Подключает к диспетчеру запоминающих устройств слушателя обращений: при учете покрытия кода - ко всем адресам,
+     * иначе - только к адресам точек наблюдения (без них слушатель отключается).
+     */
+    private synchronized void updateAccessHook() {
+        if (fCoverage != null) {
+            final int[] all = new int[0x800];
+            Arrays.fill(all, -1);
+            fMemManager.setWatches(all, all, this::memoryAccess);
+        } else {
+            fMemManager.setWatches(fWatchReadMap, fWatchWriteMap, (fWatches.length > 0) ? this::watchAccess : null);
         }
-        // Проверям ловушку для следующей команды CPU
-        if (fTrapsFlag) {
-            // Здесь без порождения новых объектов (для скорости)
-            fCompareTrap.change(fSpMX.getPage(), getPC());
-            if (fTraps.contains(fCompareTrap)) {
-                startDebugger();
+    }
+
+    /**
+     * Читает байт из памяти без влияния на устройства (для вычисления условий ловушек).
+     *
+     * @param address адрес
+     * @return байт
+     */
+    int debugReadByte(final int address) {
+        return fMemManager.debugReadByte(address & 0xFFFF);
+    }
+
+    /**
+     * Проверяет по битовой карте ловушек, установлена ли ловушка по заданному адресу.
+     * (Используется также кэшем блоков кода - блоки не включают в себя команды по адресам ловушек)
+     *
+     * @param page    номер страницы памяти
+     * @param address адрес
+     * @return true = ловушка установлена
+     */
+    boolean isTrap(final int page, final int address) {
+        return (page >= 0) && (page < TRAP_PAGES) && ((fTrapMap[(page << 11) | (address >> 5)] & (1 << address)) != 0);
+    }
+
+    /**
+     * Обновляет бит ловушки в битовой карте ловушек по множеству ловушек.
+     *
+     * @param trap ловушка
+     */
+    private synchronized void updateTrapMap(@NotNull final Trap trap) {
+        final int page    = trap.getPage   ();
+        final int address = trap.getAddress();
+        if ((page >= 0) && (page < TRAP_PAGES)) {
+            final int index = (page << 11) | (address >> 5);
+            if (fTraps.contains(trap)) {
+                fTrapMap[index] |=   1 << address;
+            } else {
+                fTrapMap[index] &= ~(1 << address);
             }
         }
     }
 
+    /**
+     * Обновляет признак установленных ловушек в слове запросов к CPU.
+     * (Кэш блоков кода сбрасывается - блоки должны заканчиваться перед адресами ловушек)
+     */
+    private void updateTraps() {
+        invalidateCode();
+        updateRequests(REQ_TRAPS, fTraps.isEmpty() ? 0 : REQ_TRAPS);
+    }
+
     /**
      * Переводит CPU в режим ожидания (выполняется захват "HOLD").
      *
      * @param mode true/false = установить/снять режим "HOLD"
      */
     public void hold(boolean mode) {
-        if ((fHoldPhase.get() == HOLD_IS_NOT_SET) == mode) {
+        if (((fRequests & REQ_HOLD_MASK) == 0) == mode) {
             if (mode) {
                 if (Thread.currentThread().getName().equals(ClockSpeedGenerator.THREAD_NAME)) {
-                    // Для потока тактового генератора останавливаем CPU сразу конечным значением HOLD_ACKNOWLEDGE,
+                    // Для потока тактового генератора останавливаем CPU сразу конечным значением REQ_HOLD_ACK,
                     // т.к. здесь вызов всегда происходит в последней фазе работы цикла CPU (из метода cmdFinish())
-                    fHoldPhase.getAndSet(HOLD_ACKNOWLEDGE);
+                    updateRequests(REQ_HOLD_MASK, REQ_HOLD_ACK);
                 } else {
                     // Для других потоков устанавливаем промежуточную фазу остановки CPU и ожидаем её завершения
-                    fHoldPhase.getAndSet(HOLD_IN_PROCESS);
+                    updateRequests(REQ_HOLD_MASK, REQ_HOLD);
                     // noinspection StatementWithEmptyBody
-                    while (!fSpMX.isPaused() && (fHoldPhase.get() == HOLD_IN_PROCESS)) {
+                    while (!fGen.isPaused() && ((fRequests & REQ_HOLD) != 0)) {
                         //
                     }
                 }
             } else {
                 // Запускаем CPU
-                fHoldPhase.getAndSet(HOLD_IS_NOT_SET);
+                updateRequests(REQ_HOLD_MASK, 0);
             }
         }
     }
 
+    /**
+     * Атомарно изменяет биты слова запросов к CPU.
+     *
+     * @param mask  маска изменяемых битов
+     * @param value новое значение битов
+     */
+    private void updateRequests(final int mask, final int value) {
+        int prev;
+        do {
+            prev = fRequests;
+        } while (!REQUESTS.compareAndSet(this, prev, (prev & ~mask) | (value & mask)));
+    }
+
     /**
      * Показывает установлен ли режим "HOLD" для CPU.
      *
      * @return true = установлен режим "HOLD"
      */
     boolean isHoldAcknowledge() {
-        return fHoldPhase.get() == HOLD_ACKNOWLEDGE;
+        return (fRequests & REQ_HOLD_ACK) != 0;
+    }
+
+    /**
+     * Показывает, находится ли CPU между командами (предыдущая команда завершена, следующая не начата).
+     * (Используется тактовым генератором в точном режиме)
+     *
+     * @return true = CPU между командами
+     */
+    boolean isCmdBoundary() {
+        return fCycles <= 1;
     }
 
     /**
@@ -1122,9 +1323,11 @@ public final class CPUi8080 implements ClockedUnit {
      */
     private void startDebugger() {
         // Вызов возможен только для потока тактового генератора (блокирует вызов из потока FX/Swing)
-        if (!fIsDebugRun.get() && Thread.currentThread().getName().equals(ClockSpeedGenerator.THREAD_NAME)) {
+        if ((fSpMX != null) && !fIsDebugRun.get() && Thread.currentThread().getName().equals(ClockSpeedGenerator.THREAD_NAME)) {
             // Блокируем возможность одновременного запуска нескольких копий отладчика
              fIsDebugRun.getAndSet(true);
+            // Остановка завершает StepOver
+            fStepOverKey = -1;
             // Останавливаем CPU и запоминающие устройства
                         hold(true);
             pauseMemoryUnits(true);
@@ -1139,7 +1342,7 @@ public final class CPUi8080 implements ClockedUnit {
                     // Отменяем режим "Пауза" только для CPU
                     hold(false);
                     // Удаляем StepOver ловушку, если она вызвала отладчик
-                    final int page    = fSpMX.getPage();
+                    final int page    = fPages.getAsInt();
                     final int address = debugGetValRegPair(DebugRegPair.PC);
                     if (debugIsStepOverTrap(page, address)) {
                                debugRemTrap(page, address);
@@ -1173,17 +1376,17 @@ public final class CPUi8080 implements ClockedUnit {
     public synchronized int debugGetValRegPair(final DebugRegPair regPair) {
         switch (regPair) {
             case AF:
-                return (fRegs[A] << 8) | fRegs[F];
+                return (fA << 8) | fF;
             case BC:
-                return (fRegs[B] << 8) | fRegs[C];
+                return fBC;
             case DE:
-                return (fRegs[D] << 8) | fRegs[E];
+                return fDE;
             case HL:
-                return (fRegs[H] << 8) | fRegs[L];
+                return fHL;
             case SP:
-                return fRegs[SP];
+                return fSP;
             case PC:
-                return fRegs[PC];
+                return fPC;
         }
         return -1;
     }
@@ -1198,26 +1401,23 @@ public final class CPUi8080 implements ClockedUnit {
     public synchronized void debugSetValRegPair(final DebugRegPair regPair, final int value) {
         switch (regPair) {
             case AF:
-                fRegs[A]  = (value >> 8) & 0xFF;
-                fRegs[F]  =  value & 0b1101_0111 | 0b10;
+                fA  = (value >> 8) & 0xFF;
+                fF  =  value & 0b1101_0111 | 0b10;
                 break;
             case BC:
-                fRegs[B]  = (value >> 8) & 0xFF;
-                fRegs[C]  =  value & 0xFF;
+                fBC =  value & 0xFFFF;
                 break;
             case DE:
-                fRegs[D]  = (value >> 8) & 0xFF;
-                fRegs[E]  =  value & 0xFF;
+                fDE =  value & 0xFFFF;
                 break;
             case HL:
-                fRegs[H]  = (value >> 8) & 0xFF;
-                fRegs[L]  =  value & 0xFF;
+                fHL =  value & 0xFFFF;
                 break;
             case SP:
-                fRegs[SP] = value & 0xFFFF;
+                fSP =  value & 0xFFFF;
                 break;
             case PC:
-                fRegs[PC] = value & 0xFFFF;
+                fPC =  value & 0xFFFF;
                 break;
         }
     }
@@ -1232,19 +1432,25 @@ public final class CPUi8080 implements ClockedUnit {
      */
     public void debugAddTrap(final int page, final int address, final boolean stepOver) {
         final Trap trap = new Trap(page, address);
+        if (stepOver) {
+            fStepOverKey = (page << 16) | address;
+        }
         if (!stepOver && trap.equals(fTrapStepOver)) {
             fTrapStepOver = null;
         }
         if (!fTraps.contains(trap)) {
             if (stepOver) {
-                if (fTrapStepOver != null) {
-                    fTraps.remove(fTrapStepOver);
+                final Trap oldTrap = fTrapStepOver;
+                if (oldTrap != null) {
+                    fTraps.remove(oldTrap);
+                    updateTrapMap(oldTrap);
                 }
                 fTrapStepOver = trap;
             }
             fTraps.add(trap);
+            updateTrapMap(trap);
         }
-        fTrapsFlag = !fTraps.isEmpty();
+        updateTraps();
     }
 
     /**
@@ -1259,8 +1465,13 @@ public final class CPUi8080 implements ClockedUnit {
         if (trap.equals(fTrapStepOver)) {
             fTrapStepOver = null;
         }
+        if (fStepOverKey == ((page << 16) | address)) {
+            fStepOverKey = -1;
+        }
         fTraps.remove(trap);
-        fTrapsFlag = !fTraps.isEmpty();
+        fTrapConditions.remove((page << 16) | address);
+        updateTrapMap(trap);
+        updateTraps();
     }
 
     /**
@@ -1269,8 +1480,13 @@ public final class CPUi8080 implements ClockedUnit {
      */
     public void debugClearTraps() {
         fTraps.clear();
-        fTrapStepOver =  null;
-        fTrapsFlag    = false;
+        fTrapConditions.clear();
+        fTrapStepOver = null;
+        fStepOverKey  = -1;
+        synchronized (this) {
+            Arrays.fill(fTrapMap, 0);
+        }
+        updateTraps();
     }
 
     /**
@@ -1283,7 +1499,7 @@ public final class CPUi8080 implements ClockedUnit {
      */
     private boolean debugIsStepOverTrap(final int page, final int address) {
         final Trap trap = new Trap(page, address);
-        return fTrapsFlag && trap.equals(fTrapStepOver) && (fTraps.contains(trap));
+        return ((fRequests & REQ_TRAPS) != 0) && trap.equals(fTrapStepOver) && (fTraps.contains(trap));
     }
 
     /**
@@ -1296,7 +1512,7 @@ public final class CPUi8080 implements ClockedUnit {
      */
     public boolean debugIsTrap(final int page, final int address) {
         final Trap trap = new Trap(page, address);
-        return fTrapsFlag && !trap.equals(fTrapStepOver) && (fTraps.contains(trap));
+        return ((fRequests & REQ_TRAPS) != 0) && !trap.equals(fTrapStepOver) && (fTraps.contains(trap));
     }
 
     /**
@@ -1330,40 +1546,559 @@ public final class CPUi8080 implements ClockedUnit {
     public int debugGetTrapIndex(final Trap trap) {
         return new ArrayList<>(fTraps).indexOf(trap);
     }
+
+    /**
+     * Устанавливает условие для установленной ловушки (ловушка срабатывает, только если условие выполнено).
+     * Условие компилируется один раз, счетчик срабатываний HITS начинается заново.
+     * (Метод для вызова из отладчика)
+     *
+     * @param page      номер страницы памяти
+     * @param address   адрес ловушки
+     * @param condition условие (null или пустая строка = без условия)
+     * @throws IllegalArgumentException при ошибке в условии
+     */
+    public void debugSetTrapCondition(final int page, final int address, final String condition) {
+        final int key = (page << 16) | address;
+        if ((condition == null) || condition.trim().isEmpty()) {
+            fTrapConditions.remove(key);
+        } else if (fTraps.contains(new Trap(page, address))) {
+            fTrapConditions.put(key, TrapCondition.compile(condition));
+        }
+    }
+
+    /**
+     * Возвращает условие ловушки.
+     * (Метод для вызова из отладчика)
+     *
+     * @param page    номер страницы памяти
+     * @param address адрес ловушки
+     * @return условие (пустая строка = без условия)
+     */
+    public String debugGetTrapCondition(final int page, final int address) {
+        final TrapCondition condition = fTrapConditions.get((page << 16) | address);
+        return (condition != null) ? condition.toString() : "";
+    }
+
+    /**
+     * Устанавливает точки наблюдения (заменяет все установленные).
+     * Пока точки наблюдения установлены, кэш блоков кода не используется, а устройства с наблюдаемыми адресами
+     * заменяются в диспетчере запоминающих устройств обертками, сообщающими об обращениях к ним.
+     * (Метод для вызова из отладчика)
+     *
+     * @param watches точки наблюдения (пустой список = снять все точки наблюдения)
+     * @throws IllegalArgumentException при ошибке в условии (точки наблюдения при этом не изменяются)
+     */
+    public void debugSetWatches(@NotNull final List<Watch> watches) {
+        final WatchPoint[] points   = new WatchPoint[watches.size()];
+        final int[]        readMap  = new int[0x800];
+        final int[]        writeMap = new int[0x800];
+        for (int i = 0; i < points.length; i++) {
+            final Watch watch = watches.get(i);
+            points[i] = new WatchPoint(watch, watch.getCondition().isEmpty() ? null : TrapCondition.compile(watch.getCondition()));
+            for (int address = watch.getStart(); address <= watch.getEnd(); address++) {
+                if ((watch.getType() & Watch.READ ) != 0) {
+                     readMap[address >> 5] |= 1 << address;
+                }
+                if ((watch.getType() & Watch.WRITE) != 0) {
+                    writeMap[address >> 5] |= 1 << address;
+                }
+            }
+        }
+        fWatches       = points  ;
+        fWatchReadMap  = readMap ;
+        fWatchWriteMap = writeMap;
+        updateAccessHook();
+        updateRequests(REQ_WATCH, (points.length > 0) ? REQ_WATCH : 0);
+    }
+
+    /**
+     * Возвращает установленные точки наблюдения.
+     * (Метод для вызова из отладчика)
+     *
+     * @return точки наблюдения
+     */
+    public List<Watch> debugGetWatches() {
+        final List<Watch> result = new ArrayList<>();
+        for (WatchPoint point : fWatches) {
+            result.add(point.fWatch);
+        }
+        return result;
+    }
     //~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
 
     @Override
     public boolean cycle() {
-        if (fCycles.get() <= 1)  {
-            switch (fHoldPhase.get()) {
-                case HOLD_IS_NOT_SET:
-                    fCycles.set(cmdStart());
-                    return false;
-                case HOLD_IN_PROCESS:
-                    fHoldPhase.getAndSet(HOLD_ACKNOWLEDGE);
-                    return true;
-                case HOLD_ACKNOWLEDGE:
-                    return true;
-                default:
-                    // Если была установлена некорректная фаза
-                    fHoldPhase.getAndSet(HOLD_IS_NOT_SET);
-                    fCycles.set(cmdStart());
-                    return false;
-            }
-        } else {
-            if (fCycles.decrementAndGet() == 1) {
+        if (fCycles > 1) {
+            if (--fCycles == 1) {
                 cmdFinish();
+                final int requests = fRequests;
+                if ((requests & REQ_PROFILE) != 0) {
+                    profileCmd(fProfCycles);
+                }
+                if ((requests & REQ_DEBUG_MASK) != 0) {
+                    checkTrap();
+                }
                 return true;
             }
+            return false;
+        }
+        final int requests = fRequests;
+        if ((requests & REQ_HOLD_MASK) != 0) {
+            if ((requests & REQ_HOLD) != 0) {
+                updateRequests(REQ_HOLD_MASK, REQ_HOLD_ACK);
+            }
+            return true;
+        }
+        if ((requests & REQ_TRACE) != 0) {
+            traceCmd();
+        }
+        if ((requests & REQ_COVERAGE) != 0) {
+            coverCmd();
+        }
+        if ((requests & REQ_PROFILE) != 0) {
+            fProfPC     = fPC;
+            fProfCycles = fCycles = cmdStart();
+        } else {
+            fCycles = cmdStart();
         }
         return false;
     }
 
+    /**
+     * Выполняет команду CPU целиком (без разбиения на такты), а при включенном кэше блоков кода - сразу весь блок.
+     * (Метод для вызова из тактового генератора в быстром режиме)
+     *
+     * @return количество тактов выполненных команд (0 = CPU находится в режиме "HOLD")
+     */
+    int execCmd() {
+        fIdleCycles = 0;
+        final BlockCache blocks   = fBlocks;
+        final int        requests = fRequests;
+        // Подпрограммы ПЗУ перехватываются только без запросов - отладка, трассировка и т.п. требуют выполнения всех команд
+        // (изменение кода в обход CPU не мешает - перехватчик сам сверяет код подпрограммы)
+        final HleHooks   hle      = fHle;
+        if ((hle != null) && ((requests & ~REQ_CODE_CHANGED) == 0) && (fCycles <= 1) && hle.isHook(fPC)) {
+            final int cycles = hle.exec(fPages.getAsInt());
+            if (cycles > 0) {
+                return cycles;
+            }
+        }
+        // Ловушки не мешают выполнению блоков - блоки заканчиваются перед адресами ловушек
+        if ((blocks != null) && ((requests & ~REQ_TRAPS) == 0) && (fCycles <= 1)) {
+            final int cycles = blocks.exec();
+            if (cycles > 0) {
+                if (requests != 0) {
+                    checkTrap();
+                }
+                return cycles;
+            }
+        }
+        return execOneCmd();
+    }
+
+    /**
+     * Выполняет одну команду CPU целиком (без разбиения на такты).
+     * (Метод для вызова из тактового генератора - в быстром режиме и при пошаговом выполнении из отладчика)
+     *
+     * @return количество тактов выполненной команды (0 = CPU находится в режиме "HOLD")
+     */
+    int execOneCmd() {
+        final int cycles;
+        // Слово запросов читается один раз за команду, при отсутствии запросов выполняется быстрый путь
+        final int requests = fRequests;
+        if ((requests == 0) && (fCycles <= 1)) {
+            cycles = cmdStart();
+            cmdFinish();
+            if (fIdleRead) {
+                fIdleRead = false;
+                final IdleDetector idle = fIdle;
+                if (idle != null) {
+                    fIdleCycles = idle.boundary();
+                }
+            }
+            return cycles;
+        }
+        fIdleRead = false;
+        if ((requests & REQ_CODE_CHANGED) != 0) {
+            final BlockCache blocks = fBlocks;
+            if (blocks != null) {
+                blocks.clear();
+            }
+            final IdleDetector idle = fIdle;
+            if (idle != null) {
+                idle.reset();
+            }
+            updateRequests(REQ_CODE_CHANGED, 0);
+        }
+        if (fCycles > 1) {
+            // Завершаем команду, начатую в точном (потактовом) режиме
+            cycles  = fCycles - 1;
+            fCycles = 1;
+        } else if ((requests & REQ_HOLD_MASK) != 0) {
+            if ((requests & REQ_HOLD) != 0) {
+                updateRequests(REQ_HOLD_MASK, REQ_HOLD_ACK);
+            }
+            return 0;
+        } else {
+            if ((requests & REQ_TRACE) != 0) {
+                traceCmd();
+            }
+            if ((requests & REQ_COVERAGE) != 0) {
+                coverCmd();
+            }
+            fProfPC = fPC;
+            cycles  = cmdStart();
+        }
+        cmdFinish();
+        fIdleRead = false;
+        if ((requests & REQ_PROFILE) != 0) {
+            profileCmd(cycles);
+        }
+        if ((requests & REQ_DEBUG_MASK) != 0) {
+            checkTrap();
+        }
+        return cycles;
+    }
+
+    /**
+     * Пропускает итерации холостого цикла (цикла опроса клавиатуры), если последняя команда завершила его итерацию,
+     * а итерация оказалась холостой. Пропущенные итерации не выполняются - их такты тактовый генератор только передает
+     * остальным устройствам, видимое программе состояние при этом не изменяется.
+     * (Метод для вызова из тактового генератора в быстром режиме сразу после метода execCmd())
+     *
+     * @param limit максимальное количество пропускаемых тактов
+     * @return количество пропущенных тактов (кратно длительности итерации, 0 = итерации не пропущены)
+     */
+    int skipIdle(final int limit) {
+        final int cycles = fIdleCycles;
+        if ((cycles > 0) && (limit >= cycles) && (fRequests == 0)) {
+            final IdleDetector idle = fIdle;
+            if ((idle != null) && idle.isStable()) {
+                final int skipped = limit - limit % cycles;
+                idle.skipped(skipped);
+                return skipped;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Сообщает детектору холостого цикла об изменении памяти или обращении к устройствам в обход метода writeByte().
+     */
+    void idleDirty() {
+        final IdleDetector idle = fIdle;
+        if (idle != null) {
+            idle.dirty();
+        }
+    }
+
+    /**
+     * Показывает включен ли пропуск холостых циклов (циклов опроса клавиатуры).
+     *
+     * @return true = пропуск холостых циклов включен
+     */
+    public boolean isIdleDetection() {
+        return fIdle != null;
+    }
+
+    /**
+     * Включает/выключает пропуск холостых циклов (циклов опроса клавиатуры, используется только в быстром режиме
+     * тактового генератора).
+     *
+     * @param keyboard порт клавиатуры (null = выключить пропуск холостых циклов)
+     */
+    public void setIdleDetection(final KeyboardPort keyboard) {
+        if ((keyboard != null) != (fIdle != null)) {
+            fIdle = (keyboard != null) ? new IdleDetector(this, fMemManager, keyboard, fGen) : null;
+        }
+    }
+
+    /**
+     * Записывает в трассу состояние CPU перед выполнением команды.
+     */
+    private void traceCmd() {
+        final TraceBuffer trace = fTrace;
+        if (trace != null) {
+            trace.record(this, fPages.getAsInt());
+        }
+    }
+
+    /**
+     * Отмечает в покрытии кода команду перед ее выполнением.
+     */
+    private void coverCmd() {
+        final Coverage coverage = fCoverage;
+        if (coverage != null) {
+            coverage.exec(fPages.getAsInt(), fPC);
+        }
+    }
+
+    /**
+     * Учитывает в профилировщике только что выполненную команду.
+     *
+     * @param cycles количество тактов команды
+     */
+    private void profileCmd(final int cycles) {
+        final GuestProfiler profiler = fProfiler;
+        if (profiler != null) {
+            profiler.account(fPages.getAsInt(), fProfPC, fOpCode, fTestResult, fPC, cycles);
+        }
+    }
+
+    /**
+     * Показывает включено ли профилирование.
+     *
+     * @return true = профилирование включено
+     */
+    public boolean isProfiler() {
+        return fProfiler != null;
+    }
+
+    /**
+     * Включает/выключает профилирование - учет тактов по адресам команд и подпрограммам
+     * (при включении результаты предыдущего профилирования сбрасываются).
+     * Пока профилирование включено, команды выполняются без кэша блоков кода и пропуска холостых циклов.
+     *
+     * @param mode true = включить профилирование
+     */
+    public void setProfiler(final boolean mode) {
+        if (mode != (fProfiler != null)) {
+            if (mode) {
+                fProfiler = new GuestProfiler();
+                updateRequests(REQ_PROFILE, REQ_PROFILE);
+            } else {
+                updateRequests(REQ_PROFILE, 0);
+                fProfiler = null;
+            }
+        }
+    }
+
+    /**
+     * Возвращает профилировщик.
+     *
+     * @return профилировщик (null = профилирование отключено)
+     */
+    public GuestProfiler getProfiler() {
+        return fProfiler;
+    }
+
+    /**
+     * Показывает включен ли учет покрытия кода.
+     *
+     * @return true = учет покрытия кода включен
+     */
+    public boolean isCoverage() {
+        return fCoverage != null;
+    }
+
+    /**
+     * Включает/выключает учет покрытия кода - отметку выполненных команд и прочитанных/записанных CPU адресов
+     * (при включении предыдущее покрытие сбрасывается).
+     * Пока учет покрытия включен, команды выполняются без кэша блоков кода и пропуска холостых циклов,
+     * а все устройства в диспетчере запоминающих устройств заменяются обертками.
+     *
+     * @param mode true = включить учет покрытия кода
+     */
+    public void setCoverage(final boolean mode) {
+        if (mode != (fCoverage != null)) {
+            if (mode) {
+                fCoverage = new Coverage();
+                updateAccessHook();
+                updateRequests(REQ_COVERAGE, REQ_COVERAGE);
+            } else {
+                updateRequests(REQ_COVERAGE, 0);
+                fCoverage = null;
+                updateAccessHook();
+            }
+        }
+    }
+
+    /**
+     * Возвращает покрытие кода.
+     *
+     * @return покрытие кода (null = учет покрытия отключен)
+     */
+    public Coverage getCoverage() {
+        return fCoverage;
+    }
+
+    /**
+     * Проверяет, есть ли по заданному адресу перехватчик подпрограммы ПЗУ (на любой странице памяти).
+     * (Используется кэшем блоков кода - блоки заканчиваются перед адресами перехватчиков)
+     *
+     * @param address адрес
+     * @return true = перехватчик есть
+     */
+    boolean isHleHook(final int address) {
+        final HleHooks hle = fHle;
+        return (hle != null) && hle.isHook(address);
+    }
+
+    /**
+     * Показывает включен ли перехват подпрограмм ПЗУ.
+     *
+     * @return true = перехват включен
+     */
+    public boolean isHle() {
+        return fHleMode;
+    }
+
+    /**
+     * Включает/выключает перехват подпрограмм ПЗУ - выполнение известных подпрограмм монитора их реализациями на Java
+     * (выключается для проверки точности эмуляции).
+     *
+     * @param mode true = включить перехват
+     */
+    public synchronized void setHle(final boolean mode) {
+        fHleMode = mode;
+        updateHle();
+    }
+
+    /**
+     * Выбирает профиль перехватчиков подпрограмм ПЗУ по имени загруженного ROM/MON-файла.
+     *
+     * @param name имя ROM/MON-файла
+     */
+    public synchronized void setHleProfile(@NotNull final String name) {
+        fHleProfile = name;
+        updateHle();
+    }
+
+    /**
+     * Создает перехватчики по режиму и профилю.
+     * (Кэш блоков кода сбрасывается - блоки должны заканчиваться перед адресами перехватчиков)
+     */
+    private void updateHle() {
+        fHle = fHleMode ? HleHooks.create(this, fMemManager, fHleProfile) : null;
+        invalidateCode();
+    }
+
+    /**
+     * Показывает включена ли трассировка команд.
+     *
+     * @return true = трассировка включена
+     */
+    public boolean isTrace() {
+        return fTrace != null;
+    }
+
+    /**
+     * Включает/выключает трассировку команд - запись состояния CPU перед каждой командой в кольцевой буфер
+     * (при выключении трассировки прекращается и потоковая запись трассы в файл).
+     * Пока трассировка включена, команды выполняются без кэша блоков кода и пропуска холостых циклов.
+     *
+     * @param mode true = включить трассировку
+     */
+    public void setTrace(final boolean mode) {
+        final TraceBuffer trace = fTrace;
+        if (mode != (trace != null)) {
+            if (mode) {
+                fTrace = new TraceBuffer(fGen, TRACE_RECORDS);
+                updateRequests(REQ_TRACE, REQ_TRACE);
+            } else {
+                updateRequests(REQ_TRACE, 0);
+                fTrace = null;
+                try {
+                    trace.stopStreaming();
+                } catch (IOException e) {
+                    // Трасса больше не нужна - ошибку записи ее файла сообщать некому
+                }
+            }
+        }
+    }
+
+    /**
+     * Возвращает трассу выполнения команд.
+     * (Метод для вызова из отладчика)
+     *
+     * @return трасса (null = трассировка отключена)
+     */
+    public TraceBuffer getTrace() {
+        return fTrace;
+    }
+
+    /**
+     * Возвращает диспетчер запоминающих устройств CPU (для тактового генератора - владельца памяти).
+     *
+     * @return диспетчер запоминающих устройств
+     */
+    MemoryManager getMemoryManager() {
+        return fMemManager;
+    }
+
+    /**
+     * Показывает включен ли кэш блоков кода.
+     *
+     * @return true = кэш блоков кода включен
+     */
+    public boolean isBlockCache() {
+        return fBlocks != null;
+    }
+
+    /**
+     * Включает/выключает кэш блоков кода (используется только в быстром режиме тактового генератора).
+     *
+     * @param mode true = включить кэш блоков кода
+     */
+    public void setBlockCache(final boolean mode) {
+        if (mode != (fBlocks != null)) {
+            final BlockCache blocks = mode ? new BlockCache(this, fPages, fMemManager) : null;
+            if (blocks != null) {
+                blocks.setCompile(fCompile);
+            }
+            fBlocks = blocks;
+        }
+    }
+
+    /**
+     * Показывает включена ли компиляция часто выполняемых блоков кода в классы JVM.
+     *
+     * @return true = компиляция включена
+     */
+    public boolean isBlockCompiler() {
+        return fCompile;
+    }
+
+    /**
+     * Включает/выключает компиляцию часто выполняемых блоков кода в классы JVM
+     * (действует только при включенном кэше блоков кода).
+     *
+     * @param mode true = включить компиляцию
+     */
+    public void setBlockCompiler(final boolean mode) {
+        fCompile = mode;
+        final BlockCache blocks = fBlocks;
+        if (blocks != null) {
+            blocks.setCompile(mode);
+        }
+    }
+
+    /**
+     * Возвращает статистику выполнений слитых команд кэша блоков кода (для настройки таблицы слияния).
+     *
+     * @return имя последовательности команд -> количество выполнений (пустая, если кэш блоков кода выключен)
+     */
+    public Map<String, Long> getFusionStatistics() {
+        final BlockCache blocks = fBlocks;
+        return (blocks != null) ? blocks.getFusionStatistics() : Collections.emptyMap();
+    }
+
+    /**
+     * Сообщает CPU об изменении памяти в обход CPU (отладчик, загрузка файлов).
+     * Кэш блоков кода будет очищен (а детектор холостого цикла - сброшен) перед выполнением следующей команды.
+     */
+    public void invalidateCode() {
+        if ((fBlocks != null) || (fIdle != null)) {
+            updateRequests(REQ_CODE_CHANGED, REQ_CODE_CHANGED);
+        }
+    }
+
     @Override
     public void reset(boolean clear) {
+        invalidateCode();
         if (clear) {
-            Arrays.fill(fRegs, 0);
-            fRegs[F] = 0b0000_0010; // по умолчанию SZ0A_0P1C
+            fA  = fBC = fDE = fHL = fSP = fPC = 0;
+            fF  = 0b0000_0010; // по умолчанию SZ0A_0P1C
         } else {
             setPC(0);
         }
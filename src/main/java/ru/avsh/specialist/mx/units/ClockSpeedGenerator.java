@@ -1,8 +1,10 @@
 package ru.avsh.specialist.mx.units;
 
+import ru.avsh.specialist.mx.units.memory.MemoryManager;
 import ru.avsh.specialist.mx.units.types.ClockedUnit;
 
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
 
 /**
  * Класс "Тактовый генератор".
@@ -17,8 +19,10 @@ public final class ClockSpeedGenerator implements Runnable {
     private final Object        fMutex;
     private final AtomicLong    fCyclesCounter;
     private final ClockedUnit[] fClockedUnits ;
+    private final ClockedUnit[] fOtherUnits   ; // Тактируемые устройства кроме CPU (для быстрого режима)
 
-    private int fSize; // Тут не нужен volatile, т.к. используется синхронизация
+    private int fSize     ; // Тут не нужен volatile, т.к. используется синхронизация
+    private int fOtherSize; // Тут не нужен volatile, т.к. используется синхронизация
 
     private volatile CPUi8080 fCPU;
     private volatile int      fIndexCPU  ;
@@ -27,6 +31,7 @@ public final class ClockSpeedGenerator implements Runnable {
     private volatile int      fClockSpeed;
     private volatile int      fIterationCycles;
     private volatile boolean  fPrevCpuHoldMode;
+    private volatile boolean  fExactMode;
 
     /**
      * Конструктор.
@@ -35,6 +40,7 @@ public final class ClockSpeedGenerator implements Runnable {
         fMutex          = new Object();
         fCyclesCounter  = new AtomicLong();
         fClockedUnits   = new ClockedUnit[MAX_UNITS];
+        fOtherUnits     = new ClockedUnit[MAX_UNITS];
         fIndexCPU       =   -1;
         fPauseFlag      = true;
         setClockSpeed(CLOCK_SPEED);
@@ -51,10 +57,16 @@ public final class ClockSpeedGenerator implements Runnable {
         long nanos;
         long endTime;
         long startTime = System.nanoTime();
+        boolean idle;
 
         // Присваиваем имя потоку
         Thread.currentThread().setName(THREAD_NAME);
 
+        // Пока генератор работает, память CPU принадлежит его потоку (обращения других потоков - через почтовый ящик)
+        final MemoryManager memory = (fCPU != null) ? fCPU.getMemoryManager() : null;
+        if (memory != null) {
+            memory.acquire();
+        }
         try {
             // Основной цикл работы тактового генератора
             for (; ; ) {
@@ -62,6 +74,10 @@ public final class ClockSpeedGenerator implements Runnable {
                 if (fPauseFlag) {
                     // завершаем команду CPU
                     execOneCmdCPU();
+                    // освобождаем память (на время паузы другие потоки обращаются к ней напрямую)
+                    if (memory != null) {
+                        memory.release();
+                    }
                     // переводим поток генератора в состояние ожидания
                     synchronized (fMutex) {
                         // Здесь выполняем присвоение fWaitFlag = fPauseFlag с одновременной проверкой
@@ -69,21 +85,55 @@ public final class ClockSpeedGenerator implements Runnable {
                             fMutex.wait();
                         }
                     }
+                    if (memory != null) {
+                        memory.acquire();
+                    }
                     // после завершения ожидания, замеряем начальное время
                     startTime = System.nanoTime();
                 }
 
                 // Рассчитываем конечное время выполнения импульса генератора (подгонка из-за погрешности System.nanoTime())
                 endTime = startTime + TIME_OF_PULSE - 100_000L;
+                idle    = false;
                 // Выполняем заданное количество тактов генератора без задержек
                 synchronized (this) {
-                    for (long end = fCyclesCounter.get() + fIterationCycles; !fPauseFlag && (fCyclesCounter.get() < end); ) {
-                        // Выполняем один такт у тактируемых устройств
-                        for (index = 0; index < fSize; index++) {
-                            fClockedUnits[index].cycle();
+                    final CPUi8080 cpu = fCPU;
+                    if (fExactMode || (cpu == null)) {
+                        // Точный режим - все устройства тактируются потактово
+                        for (long end = fCyclesCounter.get() + fIterationCycles; !fPauseFlag && (fCyclesCounter.get() < end); ) {
+                            // Выполняем один такт у тактируемых устройств
+                            for (index = 0; index < fSize; index++) {
+                                fClockedUnits[index].cycle();
+                            }
+                            // Между командами CPU выполняем действия других потоков с памятью
+                            if ((memory != null) && (cpu != null) && cpu.isCmdBoundary()) {
+                                memory.processMailbox();
+                            }
+                            // Увеличиваем счетчик циклов (тактов) генератора
+                            fCyclesCounter.getAndIncrement();
+                        }
+                    } else {
+                        // Быстрый режим - CPU выполняет команду целиком, остальные устройства догоняют его пакетом тактов
+                        for (long counter = fCyclesCounter.get(), end = counter + fIterationCycles; !fPauseFlag && (counter < end); ) {
+                            // Выполняем команду CPU (в режиме "HOLD" проходит один такт)
+                            int cycles = Math.max(cpu.execCmd(), 1);
+                            // Если CPU в холостом цикле - пропускаем его итерации до конца импульса
+                            final int skipped = cpu.skipIdle((int) (end - counter) - cycles);
+                            if (skipped > 0) {
+                                cycles += skipped;
+                                idle    = true;
+                            }
+                            // Выполняем столько же тактов у остальных тактируемых устройств
+                            for (index = 0; index < fOtherSize; index++) {
+                                fOtherUnits[index].cycles(cycles);
+                            }
+                            // Между командами CPU выполняем действия других потоков с памятью
+                            if (memory != null) {
+                                memory.processMailbox();
+                            }
+                            // Увеличиваем счетчик циклов (тактов) генератора (запись выполняет только этот поток)
+                            fCyclesCounter.lazySet(counter += cycles);
                         }
-                        // Увеличиваем счетчик циклов (тактов) генератора
-                        fCyclesCounter.getAndIncrement();
                     }
                 }
 
@@ -92,6 +142,14 @@ public final class ClockSpeedGenerator implements Runnable {
                     if (Thread.currentThread().isInterrupted()) {
                         break;
                     }
+                    if (idle) {
+                        // CPU ожидал нажатия клавиши - точная подгонка не нужна, просто паркуем поток
+                        if ((nanos = endTime - System.nanoTime()) > 0L) {
+                            LockSupport.parkNanos(this, nanos);
+                        }
+                        startTime = Math.max(endTime, System.nanoTime());
+                        continue;
+                    }
                     // Усыпляем поток на оставшееся время импульса
                     if ((nanos = endTime - System.nanoTime()) >= 1_000_000L) {
                         Thread.sleep(nanos / 1_000_000L);
@@ -106,6 +164,10 @@ public final class ClockSpeedGenerator implements Runnable {
         } catch (InterruptedException e) {
             // Restore the interrupted status
             Thread.currentThread().interrupt();
+        } finally {
+            if (memory != null) {
+                memory.release();
+            }
         }
     }
 
@@ -128,6 +190,8 @@ public final class ClockSpeedGenerator implements Runnable {
                 if (clockedUnit instanceof CPUi8080) {
                          fCPU = (CPUi8080) clockedUnit;
                     fIndexCPU = fSize;
+                } else {
+                    fOtherUnits[fOtherSize++] = clockedUnit;
                 }
                 fClockedUnits[fSize++] = clockedUnit; // fClockedUnits и fSize изменяются только тут
             }
@@ -162,6 +226,26 @@ public final class ClockSpeedGenerator implements Runnable {
         fIterationCycles = (int) Math.round(TIME_OF_PULSE * clockSpeed / 1_000_000_000.0);
     }
 
+    /**
+     * Показывает включен ли точный (потактовый) режим работы тактового генератора.
+     *
+     * @return true = точный режим, false = быстрый режим (CPU выполняет команду целиком)
+     */
+    public boolean isExactMode() {
+        return fExactMode;
+    }
+
+    /**
+     * Включает/выключает точный (потактовый) режим работы тактового генератора.
+     * В точном режиме все тактируемые устройства тактируются по одному такту, в быстром режиме CPU выполняет
+     * команду целиком, а остальные устройства затем выполняют такое же количество тактов пакетом.
+     *
+     * @param mode true = точный режим, false = быстрый режим
+     */
+    public void setExactMode(final boolean mode) {
+        fExactMode = mode;
+    }
+
     /**
      * Показывает приостановлен тактовый генератор или нет.
      *
@@ -226,6 +310,14 @@ public final class ClockSpeedGenerator implements Runnable {
      */
     public synchronized boolean execOneCmdCPU() {
         if (fPauseFlag && (fIndexCPU >= 0) && !fCPU.isHoldAcknowledge()) {
+            if (!fExactMode) {
+                // Выполняем команду CPU целиком и такое же количество тактов у остальных тактируемых устройств
+                final int cycles = Math.max(fCPU.execOneCmd(), 1);
+                for (int index = 0; index < fOtherSize; index++) {
+                    fOtherUnits[index].cycles(cycles);
+                }
+                return true;
+            }
             boolean flag = true;
             do {
                 // Выполняем один такт у тактируемых устройств
@@ -0,0 +1,203 @@
+package ru.avsh.specialist.mx.units;
+
+import org.jetbrains.annotations.NotNull;
+
+import static ru.avsh.specialist.mx.units.CPUi8080.*;
+
+/**
+ * Абстрактный класс "Скомпилированный блок кода".
+ * <p>
+ * Базовый класс для классов, генерируемых компилятором блоков кода (BlockCompiler). Сгенерированные классы
+ * загружаются отдельными загрузчиками классов и поэтому не имеют доступа к членам пакета - регистры CPU
+ * передаются им через защищенные поля, а обращения к памяти и вычисление флагов выполняются защищенными методами
+ * этого класса. Метод run() сгенерированного класса копирует регистры в локальные переменные, выполняет команды
+ * блока и возвращает регистры обратно в поля.
+ *
+ * @author -=AVSh=-
+ */
+public abstract class CompiledBlock {
+    // Регистры CPU на время выполнения блока
+    protected int fA ;
+    protected int fF ;
+    protected int fBC;
+    protected int fDE;
+    protected int fHL;
+    protected int fSP;
+    protected int fPC;
+
+    private CPUi8080         fCPU  ;
+    private BlockCache.Block fBlock;
+
+    /**
+     * Связывает скомпилированный блок с CPU и исходным блоком.
+     *
+     * @param cpu   CPU
+     * @param block исходный блок (по нему определяется, не изменен ли код блока во время выполнения)
+     */
+    final void bind(@NotNull final CPUi8080 cpu, @NotNull final BlockCache.Block block) {
+        fCPU   = cpu  ;
+        fBlock = block;
+    }
+
+    /**
+     * Выполняет блок.
+     *
+     * @return количество тактов выполненных команд (0 = ни одна команда не выполнена)
+     */
+    final int exec() {
+        final CPUi8080 cpu = fCPU;
+        fA  = cpu.fA ;
+        fF  = cpu.fF ;
+        fBC = cpu.fBC;
+        fDE = cpu.fDE;
+        fHL = cpu.fHL;
+        fSP = cpu.fSP;
+        final int cycles = run();
+        cpu.fA  = fA ;
+        cpu.fF  = fF ;
+        cpu.fBC = fBC;
+        cpu.fDE = fDE;
+        cpu.fHL = fHL;
+        cpu.fSP = fSP;
+        cpu.fPC = fPC;
+        return cycles;
+    }
+
+    /**
+     * Выполняет команды блока (реализуется сгенерированным классом).
+     * Перед выходом метод должен записать в поля значения всех регистров, включая PC.
+     *
+     * @return количество тактов выполненных команд
+     */
+    protected abstract int run();
+
+    /**
+     * Читает байт из памяти.
+     *
+     * @param address адрес
+     * @return байт
+     */
+    protected final int readByte(final int address) {
+        return fCPU.readByte(address);
+    }
+
+    /**
+     * Читает слово из памяти.
+     *
+     * @param address адрес
+     * @return слово
+     */
+    protected final int readWord(final int address) {
+        return fCPU.readWord(address);
+    }
+
+    /**
+     * Записывает байт в память.
+     *
+     * @param address адрес
+     * @param value   байт
+     * @return true = код блока не изменился (false = выполнение блока нужно прервать)
+     */
+    protected final boolean writeByte(final int address, final int value) {
+        fCPU.writeByte(address, value);
+        return fBlock.fValid;
+    }
+
+    /**
+     * Записывает слово в память.
+     *
+     * @param address адрес
+     * @param value   слово
+     * @return true = код блока не изменился (false = выполнение блока нужно прервать)
+     */
+    protected final boolean writeWord(final int address, final int value) {
+        fCPU.writeWord(address, value);
+        return fBlock.fValid;
+    }
+
+    /**
+     * Выполняет арифметико-логическую операцию над аккумулятором.
+     *
+     * @param operation ADD = 0, ADC = 1, SUB = 2, SBB = 3, ANA = 4, XRA = 5, ORA = 6, CMP = 7
+     * @param a         аккумулятор
+     * @param f         флаги
+     * @param value     операнд
+     * @return (A << 8) | F
+     */
+    protected static int alu(final int operation, final int a, final int f, final int value) {
+        final int r;
+        switch (operation) {
+            case 0: // ADD
+            case 1: // ADC
+                r = a + value + ((operation == 1) ? f & 1 : 0);
+                return ((r & 0xFF) << 8) | FLAGS_SZP[r & 0xFF] | FLAGS_ADD_CA[((a ^ value ^ r) >> 4) & 0x11];
+            case 2: // SUB
+            case 3: // SBB
+            case 7: // CMP
+                r = a - value - ((operation == 3) ? f & 1 : 0);
+                return (((operation == 7) ? a : r & 0xFF) << 8) | FLAGS_SZP[r & 0xFF] | FLAGS_SUB_CA[((a ^ value ^ r) >> 4) & 0x11];
+            case 4: // ANA
+                r = a & value;
+                return (r << 8) | FLAGS_SZP[r] | (((a | value) & 0b1000) << 1);
+            case 5: // XRA
+                r = (a ^ value) & 0xFF;
+                return (r << 8) | FLAGS_SZP[r];
+            default: // ORA
+                r = (a | value) & 0xFF;
+                return (r << 8) | FLAGS_SZP[r];
+        }
+    }
+
+    /**
+     * Выполняет команду INR.
+     *
+     * @param value значение регистра
+     * @param f     флаги
+     * @return (результат << 8) | F
+     */
+    protected static int inr(final int value, final int f) {
+        final int r = (value + 1) & 0xFF;
+        return (r << 8) | FLAGS_INR[r] | (f & 1);
+    }
+
+    /**
+     * Выполняет команду DCR.
+     *
+     * @param value значение регистра
+     * @param f     флаги
+     * @return (результат << 8) | F
+     */
+    protected static int dcr(final int value, final int f) {
+        final int r = (value - 1) & 0xFF;
+        return (r << 8) | FLAGS_DCR[r] | (f & 1);
+    }
+
+    /**
+     * Выполняет команды RLC, RRC, RAL, RAR, DAA, CMA, STC, CMC.
+     *
+     * @param code код команды в группе (биты 3-5 кода операции)
+     * @param a    аккумулятор
+     * @param f    флаги
+     * @return (A << 8) | F
+     */
+    protected static int rotate(final int code, final int a, final int f) {
+        switch (code) {
+            case 0: // RLC
+                return ((((a << 1) | (a >> 7)) & 0xFF) << 8) | (f & 0b1111_1110) | (a >> 7);
+            case 1: // RRC
+                return ((((a >> 1) | (a << 7)) & 0xFF) << 8) | (f & 0b1111_1110) | (a & 1);
+            case 2: // RAL
+                return ((((a << 1) | (f & 1)) & 0xFF) << 8) | (f & 0b1111_1110) | (a >> 7);
+            case 3: // RAR
+                return (((a >> 1) | ((f & 1) << 7)) << 8) | (f & 0b1111_1110) | (a & 1);
+            case 4: // DAA
+                return DAA_RESULTS[((f & 1) << 9) | ((f & 0b1_0000) << 4) | a];
+            case 5: // CMA
+                return ((a ^ 0xFF) << 8) | f;
+            case 6: // STC
+                return (a << 8) | f | 1;
+            default: // CMC
+                return (a << 8) | (f ^ 1);
+        }
+    }
+}
@@ -0,0 +1,341 @@
+package ru.avsh.specialist.mx.units;
+
+import org.jetbrains.annotations.NotNull;
+import ru.avsh.specialist.mx.helpers.Disassembler;
+import ru.avsh.specialist.mx.units.memory.units.MainMemory;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.IntBinaryOperator;
+
+/**
+ * Класс "Покрытие кода" - битовые карты выполненных команд и прочитанных/записанных адресов по страницам памяти.
+ * <p>
+ * Адреса команд отмечает CPU, обращения к памяти и портам - диспетчер запоминающих устройств
+ * (учитываются только обращения CPU). Адреса ROM-диска >= 0xC000 и адреса устройств ввода/вывода
+ * относятся к странице 0, т.к. не зависят от выбранной страницы.
+ * <p>
+ * Карта покрытия сохраняется в текстовый файл строками "страница:начало-конец флаги" (флаги - X, R, W), файлы
+ * карт двух прогонов можно сравнить методом {@link #diff(Coverage)}.
+ *
+ * @author -=AVSh=-
+ */
+public final class Coverage {
+    // Флаги покрытия адреса
+    public static final int EXEC  = 0b001; // Начало выполненной команды
+    public static final int READ  = 0b010; // Чтение
+    public static final int WRITE = 0b100; // Запись
+
+    // Количество страниц памяти (RAM + RAM-диск + ROM-диск)
+    private static final int    PAGES      = MainMemory.ROM_DISK + 1;
+    // Начало области ROM-диска, отображаемой на страницу 0, и начало области устройств ввода/вывода
+    private static final int    ROM_SHARED = 0xC000;
+    private static final int    IO_AREA    = 0xFFC0;
+    private static final String FLAGS      = "XRW";
+
+    // Битовые карты: (страница << 11) | (адрес >> 5) -> биты адресов
+    private final int[] fExec ;
+    private final int[] fRead ;
+    private final int[] fWrite;
+
+    // Страница памяти выполняемой команды и поток CPU (изменяются только потоком тактового генератора)
+    private int    fPage  ;
+    private Thread fThread;
+
+    /**
+     * Конструктор.
+     */
+    public Coverage() {
+        fExec  = new int[PAGES << 11];
+        fRead  = new int[PAGES << 11];
+        fWrite = new int[PAGES << 11];
+    }
+
+    /**
+     * Отмечает выполняемую команду.
+     * (Метод для вызова из потока тактового генератора)
+     *
+     * @param page номер страницы памяти
+     * @param pc   адрес команды
+     */
+    void exec(final int page, final int pc) {
+        fPage   = page;
+        fThread = Thread.currentThread();
+        final int index = index(page, pc);
+        fExec[index] |= 1 << pc;
+    }
+
+    /**
+     * Отмечает обращение к памяти или порту.
+     * (Вызывается диспетчером запоминающих устройств, обращения из других потоков не учитываются)
+     *
+     * @param address адрес
+     * @param write   true = запись, false = чтение
+     */
+    void access(final int address, final boolean write) {
+        if (Thread.currentThread() == fThread) {
+            final int index = index(fPage, address);
+            if (write) {
+                fWrite[index] |= 1 << address;
+            } else {
+                 fRead[index] |= 1 << address;
+            }
+        }
+    }
+
+    /**
+     * Возвращает индекс в битовых картах.
+     *
+     * @param page    номер страницы памяти
+     * @param address адрес
+     * @return индекс
+     */
+    private static int index(final int page, final int address) {
+        final int p = ((page < PAGES) && (address < IO_AREA) && ((page != MainMemory.ROM_DISK) || (address < ROM_SHARED))) ? page : 0;
+        return (p << 11) | (address >> 5);
+    }
+
+    /**
+     * Возвращает флаги покрытия адреса.
+     *
+     * @param page    номер страницы памяти
+     * @param address адрес
+     * @return флаги EXEC, READ, WRITE
+     */
+    public int get(final int page, final int address) {
+        final int index = index(page, address);
+        final int bit   = 1 << address;
+        return (((fExec[index] & bit) != 0) ? EXEC  : 0) |
+               (((fRead[index] & bit) != 0) ? READ  : 0) |
+               (((fWrite[index] & bit) != 0) ? WRITE : 0);
+    }
+
+    /**
+     * Возвращает флаги покрытия по ключу (page << 16) | адрес (без переноса на страницу 0).
+     *
+     * @param key ключ
+     * @return флаги
+     */
+    private int getRaw(final int key) {
+        final int index = key >> 5;
+        final int bit   = 1 << key;
+        return (((fExec[index] & bit) != 0) ? EXEC  : 0) |
+               (((fRead[index] & bit) != 0) ? READ  : 0) |
+               (((fWrite[index] & bit) != 0) ? WRITE : 0);
+    }
+
+    /**
+     * Устанавливает флаги покрытия по ключу (page << 16) | адрес.
+     *
+     * @param key   ключ
+     * @param flags флаги
+     */
+    private void setRaw(final int key, final int flags) {
+        final int index = key >> 5;
+        final int bit   = 1 << key;
+        if ((flags & EXEC ) != 0) {
+            fExec [index] |= bit;
+        }
+        if ((flags & READ ) != 0) {
+            fRead [index] |= bit;
+        }
+        if ((flags & WRITE) != 0) {
+            fWrite[index] |= bit;
+        }
+    }
+
+    /**
+     * Сохраняет карту покрытия (строки "страница:начало-конец флаги" для диапазонов с одинаковыми флагами).
+     *
+     * @param file файл
+     * @throws IOException исключение при ошибке записи
+     */
+    public void saveMap(@NotNull final Path file) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            for (String line : ranges(this, null, "")) {
+                writer.write(line);
+                writer.newLine();
+            }
+        }
+    }
+
+    /**
+     * Загружает карту покрытия, сохраненную методом saveMap().
+     *
+     * @param file файл
+     * @return покрытие
+     * @throws IOException исключение при ошибке чтения или формата файла
+     */
+    public static Coverage loadMap(@NotNull final Path file) throws IOException {
+        final Coverage coverage = new Coverage();
+        int number = 0;
+        for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+            number++;
+            if (line.trim().isEmpty()) {
+                continue;
+            }
+            try {
+                final String[] parts = line.trim().split("[:\\-\\s]+");
+                final int page  = Integer.parseInt(parts[0], 16);
+                final int start = Integer.parseInt(parts[1], 16);
+                final int end   = Integer.parseInt(parts[2], 16);
+                int flags = 0;
+                for (char ch : parts[3].toCharArray()) {
+                    final int bit = FLAGS.indexOf(ch);
+                    if (bit < 0) {
+                        throw new NumberFormatException(parts[3]);
+                    }
+                    flags |= 1 << bit;
+                }
+                if ((page >= PAGES) || (start > end) || (end > 0xFFFF)) {
+                    throw new NumberFormatException(line);
+                }
+                for (int address = start; address <= end; address++) {
+                    coverage.setRaw((page << 16) | address, flags);
+                }
+            } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+                throw new IOException(String.format("Ошибка в строке %d файла покрытия \"%s\": %s", number, file.getFileName(), line), e);
+            }
+        }
+        return coverage;
+    }
+
+    /**
+     * Сравнивает покрытие с покрытием другого прогона.
+     * Строки вида "+страница:начало-конец флаги" - флаги, появившиеся в этом прогоне,
+     * "-страница:начало-конец флаги" - флаги, которые были только в другом прогоне.
+     *
+     * @param base покрытие другого (предыдущего) прогона
+     * @return строки различий (пустой список = покрытие совпадает)
+     */
+    public List<String> diff(@NotNull final Coverage base) {
+        final List<String> result = ranges(this, base, "+");
+        result.addAll(ranges(base, this, "-"));
+        return result;
+    }
+
+    /**
+     * Формирует диапазоны адресов с одинаковыми флагами покрытия (флаги, которых нет в исключаемом покрытии).
+     *
+     * @param coverage покрытие
+     * @param exclude  исключаемое покрытие (null = нет)
+     * @param prefix   префикс строк
+     * @return строки диапазонов
+     */
+    private static List<String> ranges(final Coverage coverage, final Coverage exclude, final String prefix) {
+        final List<String> result = new ArrayList<>();
+        for (int page = 0; page < PAGES; page++) {
+            int start = 0;
+            int flags = 0;
+            for (int address = 0; address <= 0x1_0000; address++) {
+                int cur = 0;
+                if (address <= 0xFFFF) {
+                    final int key = (page << 16) | address;
+                    cur = coverage.getRaw(key) & ~((exclude != null) ? exclude.getRaw(key) : 0);
+                }
+                if (cur != flags) {
+                    if (flags != 0) {
+                        result.add(String.format("%s%X:%04X-%04X %s", prefix, page, start, address - 1, flagsToString(flags)));
+                    }
+                    start = address;
+                    flags = cur;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Сохраняет дизассемблированный листинг с отметками покрытия. Выводятся только страницы, на которых выполнялись
+     * команды, участки без обращений пропускаются.
+     *
+     * @param file   файл
+     * @param reader функция чтения байта памяти (страница, адрес) -> байт
+     * @throws IOException исключение при ошибке записи
+     */
+    public void saveListing(@NotNull final Path file, @NotNull final IntBinaryOperator reader) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            for (int page = 0; page < PAGES; page++) {
+                if (!hasExec(page)) {
+                    continue;
+                }
+                writer.write(String.format("; === Страница %X ===", page));
+                writer.newLine();
+                int skipped = -1;
+                for (int address = 0; address <= 0xFFFF; ) {
+                    final int flags = getRaw((page << 16) | address);
+                    if (flags == 0) {
+                        if (skipped < 0) {
+                            skipped = address;
+                        }
+                        address++;
+                        continue;
+                    }
+                    if (skipped >= 0) {
+                        writer.write(String.format(";      %04X-%04X не используется", skipped, address - 1));
+                        writer.newLine();
+                        skipped = -1;
+                    }
+                    final int cmd = reader.applyAsInt(page, address);
+                    final String line;
+                    int length = 1;
+                    if ((flags & EXEC) != 0) {
+                        length = Math.min(BlockCache.LENGTHS[cmd], 0x1_0000 - address);
+                        final int bt1 = (length > 1) ? reader.applyAsInt(page, address + 1) : 0;
+                        final int bt2 = (length > 2) ? reader.applyAsInt(page, address + 2) : 0;
+                        line = Disassembler.disAsm(cmd, bt1, bt2);
+                    } else {
+                        line = String.format("DB   %02X", cmd);
+                    }
+                    int all = 0;
+                    for (int i = 0; i < length; i++) {
+                        all |= getRaw((page << 16) | (address + i));
+                    }
+                    writer.write(String.format("%-3s %X:%04X  %s", flagsToString(all), page, address, line));
+                    writer.newLine();
+                    address += length;
+                }
+                if (skipped >= 0) {
+                    writer.write(String.format(";      %04X-FFFF не используется", skipped));
+                    writer.newLine();
+                }
+            }
+        }
+    }
+
+    /**
+     * Проверяет, выполнялись ли команды на странице.
+     *
+     * @param page номер страницы памяти
+     * @return true = выполнялись
+     */
+    private boolean hasExec(final int page) {
+        for (int index = page << 11, end = index + 0x800; index < end; index++) {
+            if (fExec[index] != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Преобразует флаги покрытия в строку (например, "XR").
+     *
+     * @param flags флаги
+     * @return строка
+     */
+    private static String flagsToString(final int flags) {
+        final StringBuilder result = new StringBuilder();
+        for (int bit = 0; bit < FLAGS.length(); bit++) {
+            if ((flags & (1 << bit)) != 0) {
+                result.append(FLAGS.charAt(bit));
+            }
+        }
+        return result.toString();
+    }
+}
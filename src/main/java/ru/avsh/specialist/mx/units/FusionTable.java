@@ -0,0 +1,202 @@
+package ru.avsh.specialist.mx.units;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import ru.avsh.specialist.mx.units.BlockCache.Op;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static ru.avsh.specialist.mx.units.BlockCache.IO_AREA;
+
+/**
+ * Класс "Таблица слияния команд" для кэша блоков кода.
+ * <p>
+ * Часто встречающиеся последовательности команд (MOV A,M; INX H / DCR C; JNZ / LDAX D; STAX B и т.п.) при
+ * декодировании блока заменяются одним обработчиком с суммарным количеством тактов. Последовательности задаются
+ * таблицей шаблонов (маска и значение для каждого кода операции) - новые последовательности добавляются в таблицу
+ * без изменения кода кэша. Для каждого шаблона подсчитывается количество выполнений слитых обработчиков.
+ * <p>
+ * Слитый обработчик либо выполняет все команды последовательности, либо (при обращении к области устройств
+ * ввода/вывода или при записи в код самой последовательности) не выполняет ни одной и возвращает -1 - тогда
+ * команды выполнит интерпретатор. Ловушки отладчика на результат не влияют: блок заканчивается перед адресом
+ * ловушки (установка и удаление ловушки сбрасывают кэш блоков), поэтому ни блок, ни слитая последовательность
+ * не захватывают команду с ловушкой - ловушка на второй команде последовательности срабатывает так же, как
+ * в интерпретаторе.
+ *
+ * @author -=AVSh=-
+ */
+final class FusionTable {
+    /**
+     * Интерфейс "Фабрика слитого обработчика".
+     */
+    @FunctionalInterface
+    private interface Factory {
+        /**
+         * Создает слитый обработчик.
+         *
+         * @param codes   команды последовательности: код операции | (операнд << 8)
+         * @param address адрес первой команды
+         * @param next    адрес команды, следующей за последовательностью
+         * @param hits    счетчики выполнений шаблонов
+         * @param index   индекс шаблона (счетчика)
+         * @return обработчик или null, если последовательность не подходит (например, операнд M)
+         */
+        @Nullable
+        Op create(int[] codes, int address, int next, long[] hits, int index);
+    }
+
+    /**
+     * Класс "Шаблон последовательности команд".
+     */
+    private static final class Pattern {
+        private final String  fName  ;
+        private final int[]   fMasks ;
+        private final int[]   fValues;
+        private final Factory fFactory;
+
+        private Pattern(final String name, final int[] masks, final int[] values, final Factory factory) {
+            fName    = name   ;
+            fMasks   = masks  ;
+            fValues  = values ;
+            fFactory = factory;
+        }
+    }
+
+    // Маски кодов операций для шаблонов
+    private static final int ANY_REG  = 0b1100_0111; // 00rrr... / 01rrr... - любой регистр в битах 3-5
+    private static final int ANY_SRC  = 0b1111_1000; // ...sss - любой регистр в битах 0-2
+    private static final int ANY_PAIR = 0b1110_1111; // BC/DE в бите 4
+    private static final int EXACT    = 0xFF;
+
+    private static final Pattern[] PATTERNS = {
+            new Pattern("MOV r,M; INX H", new int[]{ANY_REG, EXACT}, new int[]{0x46, 0x23}, (codes, address, next, hits, index) -> {
+                final int r = (codes[0] >> 3) & 0b111;
+                return (r == 6) ? null : cpu -> {
+                    final int a = cpu.fHL;
+                    if (a >= IO_AREA) {
+                        return -1;
+                    }
+                    cpu.setReg(r, cpu.readByte(a));
+                    cpu.fHL = (cpu.fHL + 1) & 0xFFFF;
+                    hits[index]++;
+                    return 7 + 5;
+                };
+            }),
+            new Pattern("MOV M,r; INX H", new int[]{ANY_SRC, EXACT}, new int[]{0x70, 0x23}, (codes, address, next, hits, index) -> {
+                final int s    = codes[0] & 0b111;
+                final int inxH = address + 1;
+                return (s == 6) ? null : cpu -> {
+                    final int a = cpu.fHL;
+                    // Запись в саму команду INX H выполнит интерпретатор
+                    if ((a >= IO_AREA) || (a == inxH)) {
+                        return -1;
+                    }
+                    cpu.writeByte(a, cpu.getReg(s));
+                    cpu.fHL = (a + 1) & 0xFFFF;
+                    hits[index]++;
+                    return 7 + 5;
+                };
+            }),
+            new Pattern("DCR r; JNZ", new int[]{ANY_REG, EXACT}, new int[]{0x05, 0xC2}, (codes, address, next, hits, index) -> {
+                final int r    = (codes[0] >> 3) & 0b111;
+                final int addr = codes[1] >>> 8;
+                return (r == 6) ? null : cpu -> {
+                    cpu.cmdDcr(r);
+                    cpu.fPC = ((cpu.fF & 0b0100_0000) == 0) ? addr : next;
+                    hits[index]++;
+                    return 5 + 10;
+                };
+            }),
+            new Pattern("LDAX rp; STAX rp", new int[]{ANY_PAIR, ANY_PAIR}, new int[]{0x0A, 0x02}, (codes, address, next, hits, index) -> {
+                final boolean srcDE = (codes[0] & 0b1_0000) != 0;
+                final boolean dstDE = (codes[1] & 0b1_0000) != 0;
+                return cpu -> {
+                    final int src = srcDE ? cpu.fDE : cpu.fBC;
+                    final int dst = dstDE ? cpu.fDE : cpu.fBC;
+                    if ((src >= IO_AREA) || (dst >= IO_AREA)) {
+                        return -1;
+                    }
+                    cpu.fA = cpu.readByte(src);
+                    cpu.writeByte(dst, cpu.fA);
+                    hits[index]++;
+                    return 7 + 7;
+                };
+            }),
+            new Pattern("MOV A,r; ORA r", new int[]{ANY_SRC, ANY_SRC}, new int[]{0x78, 0xB0}, (codes, address, next, hits, index) -> {
+                final int r = codes[0] & 0b111;
+                final int s = codes[1] & 0b111;
+                return ((r == 6) || (s == 6)) ? null : cpu -> {
+                    cpu.fA = cpu.getReg(r);
+                    cpu.cmdGroupAlu(6, cpu.getReg(s));
+                    hits[index]++;
+                    return 5 + 4;
+                };
+            })
+    };
+
+    // Счетчики выполнений слитых обработчиков по шаблонам
+    private final long[] fHits = new long[PATTERNS.length];
+
+    /**
+     * Ищет шаблон для последовательности команд и создает для нее слитый обработчик.
+     *
+     * @param codes     команды блока: код операции | (операнд << 8)
+     * @param addresses адреса команд блока
+     * @param from      индекс первой команды последовательности
+     * @param count     количество команд в блоке
+     * @param end       адрес, следующий за блоком
+     * @return слитый обработчик или null, если подходящий шаблон не найден
+     */
+    @Nullable
+    Fused fuse(@NotNull final int[] codes, @NotNull final int[] addresses, final int from, final int count, final int end) {
+        for (int index = 0; index < PATTERNS.length; index++) {
+            final Pattern pattern = PATTERNS[index];
+            final int     length  = pattern.fMasks.length;
+            if (from + length > count) {
+                continue;
+            }
+            boolean match = true;
+            for (int k = 0; match && (k < length); k++) {
+                match = ((codes[from + k] & 0xFF & pattern.fMasks[k]) == pattern.fValues[k]);
+            }
+            if (match) {
+                final int[] sequence = Arrays.copyOfRange(codes, from, from + length);
+                final int   next     = (from + length < count) ? addresses[from + length] : end;
+                final Op    op       = pattern.fFactory.create(sequence, addresses[from], next, fHits, index);
+                if (op != null) {
+                    return new Fused(op, length);
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Возвращает статистику выполнений слитых обработчиков.
+     *
+     * @return имя шаблона -> количество выполнений
+     */
+    @NotNull
+    Map<String, Long> getStatistics() {
+        final Map<String, Long> result = new LinkedHashMap<>();
+        for (int index = 0; index < PATTERNS.length; index++) {
+            result.put(PATTERNS[index].fName, fHits[index]);
+        }
+        return result;
+    }
+
+    /**
+     * Класс "Слитый обработчик" (результат поиска шаблона).
+     */
+    static final class Fused {
+        final Op  fOp    ;
+        final int fLength; // Количество слитых команд
+
+        private Fused(final Op op, final int length) {
+            fOp     = op    ;
+            fLength = length;
+        }
+    }
+}
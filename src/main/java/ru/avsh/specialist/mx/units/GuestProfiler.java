@@ -0,0 +1,332 @@
+package ru.avsh.specialist.mx.units;
+
+import org.jetbrains.annotations.NotNull;
+import ru.avsh.specialist.mx.units.memory.units.MainMemory;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Класс "Профилировщик программ CPU" - учет тактов, затраченных на выполнение каждой команды (без выборок).
+ * <p>
+ * Такты накапливаются в массивах примитивов: по адресам команд (страница, PC) и по узлам дерева вызовов.
+ * Команды CALL/Ccc/RST и RET/Rcc отслеживаются в теневом стеке, что дает собственные (exclusive) и полные
+ * (inclusive) такты каждой подпрограммы. Подпрограмма идентифицируется страницей и адресом входа.
+ * Возврат RET снимает со стека кадры до кадра с совпавшим адресом возврата, RET без такого кадра
+ * (переход через стек) дерево вызовов не изменяет.
+ * <p>
+ * Результаты выводятся в виде свернутых стеков (folded stacks) для построения flame graph и таблицы
+ * самых "горячих" подпрограмм и адресов.
+ *
+ * @author -=AVSh=-
+ */
+public final class GuestProfiler {
+    // Количество страниц памяти (RAM + RAM-диск + ROM-диск)
+    private static final int PAGES     = MainMemory.ROM_DISK + 1;
+    // Максимальная глубина теневого стека
+    private static final int MAX_DEPTH = 256;
+    // Максимальное количество узлов дерева вызовов (степень 2)
+    private static final int MAX_NODES = 0x1_0000;
+    // Ключ корня дерева вызовов (код вне подпрограмм)
+    private static final int ROOT      = -1;
+
+    // Такты по адресам команд: (страница << 16) | адрес -> такты
+    private final long[] fSelf;
+    // Полные такты подпрограмм и количество их вызовов: (страница << 16) | адрес входа -> значение
+    private final long[] fTotal;
+    private final int [] fCalls;
+
+    // Дерево вызовов: узел -> родитель, ключ подпрограммы, собственные такты
+    private final int [] fNodeParent;
+    private final int [] fNodeKey   ;
+    private final long[] fNodeSelf  ;
+    // Хэш-таблица дочерних узлов: (родитель << 32) | ключ -> узел + 1 (открытая адресация)
+    private final long[] fChildKeys ;
+    private final int [] fChildNodes;
+    private int fNodes;
+
+    // Теневой стек: узел вызывающей подпрограммы, узел вызванной, адрес возврата, такт входа
+    private final int [] fStackCaller = new int [MAX_DEPTH];
+    private final int [] fStackCallee = new int [MAX_DEPTH];
+    private final int [] fStackRet    = new int [MAX_DEPTH];
+    private final long[] fStackStart  = new long[MAX_DEPTH];
+    private int fDepth;
+
+    // Текущий узел дерева вызовов
+    private int  fNode;
+    // Общее количество тактов
+    private long fCycles;
+
+    // (Все поля изменяются только потоком тактового генератора)
+
+    /**
+     * Конструктор.
+     */
+    GuestProfiler() {
+        fSelf  = new long[PAGES << 16];
+        fTotal = new long[PAGES << 16];
+        fCalls = new int [PAGES << 16];
+
+        fNodeParent = new int [MAX_NODES];
+        fNodeKey    = new int [MAX_NODES];
+        fNodeSelf   = new long[MAX_NODES];
+        fChildKeys  = new long[MAX_NODES << 1];
+        fChildNodes = new int [MAX_NODES << 1];
+
+        fNodeParent[0] = -1;
+        fNodeKey   [0] = ROOT;
+        fNodes         = 1;
+    }
+
+    /**
+     * Учитывает выполненную команду.
+     * (Метод для вызова из потока тактового генератора)
+     *
+     * @param page   номер страницы памяти
+     * @param pc     адрес команды
+     * @param opCode код команды
+     * @param taken  результат проверки условия (для условных команд)
+     * @param nextPC адрес следующей команды (после выполнения)
+     * @param cycles количество тактов команды
+     */
+    void account(final int page, final int pc, final int opCode, final boolean taken, final int nextPC, final int cycles) {
+        final int base = ((page < PAGES) ? page : 0) << 16;
+        fSelf    [base | pc] += cycles;
+        fNodeSelf[fNode    ] += cycles;
+        fCycles              += cycles;
+
+        switch (opCode & 0b1100_0111) {
+            case 0b1100_0100: // Ccc
+                if (taken) {
+                    enter(base | nextPC, (pc + 3) & 0xFFFF);
+                }
+                break;
+            case 0b1100_0101: // CALL (0xCD, 0xDD, 0xED, 0xFD)
+                if ((opCode & 0b1000) != 0) {
+                    enter(base | nextPC, (pc + 3) & 0xFFFF);
+                }
+                break;
+            case 0b1100_0111: // RST
+                enter(base | nextPC, (pc + 1) & 0xFFFF);
+                break;
+            case 0b1100_0000: // Rcc
+                if (taken) {
+                    leave(nextPC);
+                }
+                break;
+            case 0b1100_0001: // RET (0xC9, 0xD9)
+                if ((opCode & 0b0010_1000) == 0b1000) {
+                    leave(nextPC);
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Входит в подпрограмму.
+     *
+     * @param key       ключ подпрограммы
+     * @param retAddress адрес возврата
+     */
+    private void enter(final int key, final int retAddress) {
+        fCalls[key]++;
+        if (fDepth < MAX_DEPTH) {
+            final int callee = child(fNode, key);
+            fStackCaller[fDepth] = fNode;
+            fStackCallee[fDepth] = callee;
+            fStackRet   [fDepth] = retAddress;
+            fStackStart [fDepth] = fCycles;
+            fDepth++;
+            fNode = callee;
+        }
+    }
+
+    /**
+     * Выходит из подпрограммы (из нескольких, если подпрограммы покидаются без RET).
+     *
+     * @param retAddress адрес возврата
+     */
+    private void leave(final int retAddress) {
+        for (int depth = fDepth - 1; depth >= 0; depth--) {
+            if (fStackRet[depth] == retAddress) {
+                for (int d = fDepth - 1; d >= depth; d--) {
+                    final int key = fNodeKey[fStackCallee[d]];
+                    // При рекурсии полные такты учитываются только для внешнего вызова
+                    if (!isActive(key, d)) {
+                        fTotal[key] += fCycles - fStackStart[d];
+                    }
+                }
+                fNode  = fStackCaller[depth];
+                fDepth = depth;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Проверяет, есть ли подпрограмма в теневом стеке ниже заданной глубины.
+     *
+     * @param key   ключ подпрограммы
+     * @param depth глубина
+     * @return true = подпрограмма уже выполняется
+     */
+    private boolean isActive(final int key, final int depth) {
+        for (int d = 0; d < depth; d++) {
+            if (fNodeKey[fStackCallee[d]] == key) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Возвращает дочерний узел дерева вызовов (создает его при необходимости).
+     *
+     * @param parent родительский узел
+     * @param key    ключ подпрограммы
+     * @return узел (родительский, если дерево заполнено)
+     */
+    private int child(final int parent, final int key) {
+        final long hash = ((long) parent << 32) | key;
+        final int  mask = fChildKeys.length - 1;
+        for (int i = (int) ((hash * 0x9E37_79B9_7F4A_7C15L) >>> 47) & mask; ; i = (i + 1) & mask) {
+            final int node = fChildNodes[i] - 1;
+            if (node < 0) {
+                if (fNodes == MAX_NODES) {
+                    return parent;
+                }
+                final int created = fNodes++;
+                fNodeParent[created] = parent;
+                fNodeKey   [created] = key;
+                fChildKeys [i]       = hash;
+                fChildNodes[i]       = created + 1;
+                return created;
+            }
+            if (fChildKeys[i] == hash) {
+                return node;
+            }
+        }
+    }
+
+    /**
+     * Возвращает общее количество учтенных тактов.
+     *
+     * @return такты
+     */
+    public long getCycles() {
+        return fCycles;
+    }
+
+    /**
+     * Сохраняет свернутые стеки вызовов (строки "корень;подпрограмма;...;подпрограмма такты") для flame graph.
+     * (Метод для вызова при остановленном CPU)
+     *
+     * @param file файл
+     * @throws IOException исключение при ошибке записи
+     */
+    public void saveFolded(@NotNull final Path file) throws IOException {
+        final StringBuilder stack = new StringBuilder();
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            for (int node = 0; node < fNodes; node++) {
+                if (fNodeSelf[node] > 0) {
+                    stack.setLength(0);
+                    for (int n = node; n >= 0; n = fNodeParent[n]) {
+                        stack.insert(0, (stack.length() > 0) ? ";" : "").insert(0, keyToString(fNodeKey[n]));
+                    }
+                    writer.write(stack.append(' ').append(fNodeSelf[node]).toString());
+                    writer.newLine();
+                }
+            }
+        }
+    }
+
+    /**
+     * Возвращает таблицу самых "горячих" подпрограмм (по собственным тактам) и адресов команд.
+     * (Метод для вызова при остановленном CPU)
+     *
+     * @param count количество строк в каждой таблице
+     * @return строки таблиц
+     */
+    public List<String> getHotSpots(final int count) {
+        // Собственные такты подпрограмм - сумма по узлам дерева, полные - с учетом еще не завершенных вызовов
+        final long[] routineSelf  = new long[fTotal.length + 1];
+        final long[] routineTotal = Arrays.copyOf(fTotal, fTotal.length + 1);
+        for (int node = 0; node < fNodes; node++) {
+            routineSelf[index(fNodeKey[node])] += fNodeSelf[node];
+        }
+        for (int d = 0; d < fDepth; d++) {
+            final int key = fNodeKey[fStackCallee[d]];
+            if (!isActive(key, d)) {
+                routineTotal[index(key)] += fCycles - fStackStart[d];
+            }
+        }
+        routineTotal[index(ROOT)] = fCycles;
+
+        final long         all    = Math.max(fCycles, 1L);
+        final List<String> result = new ArrayList<>();
+        result.add(String.format("%-9s %10s %16s %7s %16s %7s", "Подпрогр.", "Вызовов", "Собств. такты", "%", "Полные такты", "%"));
+        for (int i : top(routineSelf, count)) {
+            final int key = (i == fTotal.length) ? ROOT : i;
+            result.add(String.format("%-9s %10d %16d %6.2f%% %16d %6.2f%%", keyToString(key), (key == ROOT) ? 0 : fCalls[key],
+                    routineSelf[i], routineSelf[i] * 100.0 / all, routineTotal[i], routineTotal[i] * 100.0 / all));
+        }
+        result.add("");
+        result.add(String.format("%-9s %16s %7s", "Адрес", "Такты", "%"));
+        for (int i : top(fSelf, count)) {
+            result.add(String.format("%-9s %16d %6.2f%%", keyToString(i), fSelf[i], fSelf[i] * 100.0 / all));
+        }
+        return result;
+    }
+
+    /**
+     * Возвращает индексы наибольших ненулевых значений массива (по убыванию значений).
+     *
+     * @param values массив
+     * @param count  количество индексов
+     * @return индексы
+     */
+    private static List<Integer> top(final long[] values, final int count) {
+        final PriorityQueue<Integer> queue = new PriorityQueue<>(Comparator.comparingLong(i -> values[i]));
+        for (int i = 0; i < values.length; i++) {
+            if ((values[i] > 0) && ((queue.size() < count) || (values[i] > values[queue.peek()]))) {
+                queue.add(i);
+                if (queue.size() > count) {
+                    queue.poll();
+                }
+            }
+        }
+        final List<Integer> result = new ArrayList<>(queue);
+        result.sort(Comparator.comparingLong((Integer i) -> values[i]).reversed());
+        return result;
+    }
+
+    /**
+     * Возвращает индекс подпрограммы в массивах для таблиц (корень - после всех подпрограмм).
+     *
+     * @param key ключ подпрограммы
+     * @return индекс
+     */
+    private int index(final int key) {
+        return (key == ROOT) ? fTotal.length : key;
+    }
+
+    /**
+     * Преобразует ключ подпрограммы/адреса в строку вида "страница:адрес".
+     *
+     * @param key ключ
+     * @return строка
+     */
+    private static String keyToString(final int key) {
+        return (key == ROOT) ? "(root)" : String.format("%X:%04X", key >> 16, key & 0xFFFF);
+    }
+}
@@ -0,0 +1,251 @@
+package ru.avsh.specialist.mx.units;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import ru.avsh.specialist.mx.units.memory.MemoryManager;
+import ru.avsh.specialist.mx.units.memory.units.MainMemory;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static ru.avsh.specialist.mx.units.BlockCache.IO_AREA;
+
+/**
+ * Класс "Перехватчики подпрограмм ПЗУ" (высокоуровневая эмуляция).
+ * <p>
+ * Когда CPU доходит до адреса перехватчика (страница, адрес), вместо команд подпрограммы выполняется ее реализация
+ * на Java: она за один шаг устанавливает регистры, флаги, SP, PC, память (включая экран и стек) и возвращает такты
+ * такими, какими они были бы после выполнения команд подпрограммы до ее завершающего RET включительно.
+ * <p>
+ * Перехватчики собраны в профили по именам ROM/MON-файлов, т.к. у разных мониторов подпрограммы расположены
+ * по разным адресам. Монитор работает из RAM и может быть изменен программой, поэтому перед каждым выполнением
+ * перехватчик сверяет код подпрограммы с сигнатурой - при несовпадении подпрограмму выполняет интерпретатор.
+ *
+ * @author -=AVSh=-
+ */
+final class HleHooks {
+    // Начало области ROM-диска, отображаемой на страницу 0
+    private static final int ROM_BOUNDARY = 0xC000;
+
+    /**
+     * Интерфейс "Реализация подпрограммы".
+     */
+    @FunctionalInterface
+    interface Routine {
+        /**
+         * Выполняет подпрограмму с адреса перехватчика до завершающего RET включительно.
+         *
+         * @param cpu  CPU
+         * @param base адрес перехватчика
+         * @return количество тактов
+         */
+        int exec(CPUi8080 cpu, int base);
+    }
+
+    /**
+     * Класс "Перехватчик подпрограммы".
+     */
+    private static final class Hook {
+        private final int     fPage     ;
+        private final int     fAddress  ;
+        private final byte[]  fSignature; // Код подпрограммы с адреса перехватчика
+        private final Routine fRoutine  ;
+        private final int     fStack    ; // Глубина использования стека подпрограммой (в байтах)
+
+        Hook(final int page, final int address, final String signature, final int stack, final Routine routine) {
+            fPage      = page   ;
+            fAddress   = address;
+            fSignature = new byte[signature.length() >> 1];
+            for (int i = 0; i < fSignature.length; i++) {
+                fSignature[i] = (byte) Integer.parseInt(signature.substring(i << 1, (i << 1) + 2), 16);
+            }
+            fStack     = stack  ;
+            fRoutine   = routine;
+        }
+    }
+
+    // Профили перехватчиков: имя ROM/MON-файла (в нижнем регистре) -> перехватчики
+    private static final Map<String, Hook[]> PROFILES;
+
+    static {
+        final Map<String, Hook[]> profiles = new HashMap<>();
+        // Встроенный ROM-файл: монитор копируется загрузчиком в RAM (0xC600-0xD1EF, 0xF800-0xFFDF)
+        profiles.put("spmx.rom", new Hook[]{
+                // Вывод символа в знакоместо: очистка знакоместа по маске и наложение образа символа (XOR)
+                new Hook(0, 0xCC04,
+                        "E5213F007929293DC209CCC50608CD3CCCC1E178FE7FC8FE20C81C0608E56E26" +
+                        "007929293DC226CC1AAC12141AAD12151CE12305C221CCC93A5CC6B7C257CC7C" +
+                        "2F677D2F6F1AA412141AA512151D05C249CCC91AB412141AB512151D05C257CC" +
+                        "C9", 6, HleHooks::spmxPutChar)});
+        PROFILES = Collections.unmodifiableMap(profiles);
+    }
+
+    private final CPUi8080      fCPU;
+    private final MemoryManager fMemManager;
+    private final Hook[]        fHooks;
+    // Битовая карта адресов перехватчиков (на любой странице памяти)
+    private final int[]         fMap;
+    // Буфер для сверки кода подпрограмм с сигнатурами (используется только в потоке CPU)
+    private final byte[]        fBuffer;
+
+    /**
+     * Конструктор.
+     *
+     * @param cpu        CPU
+     * @param memManager диспетчер запоминающих устройств CPU
+     * @param hooks      перехватчики
+     */
+    private HleHooks(@NotNull final CPUi8080 cpu, @NotNull final MemoryManager memManager, @NotNull final Hook[] hooks) {
+        fCPU        = cpu;
+        fMemManager = memManager;
+        fHooks      = hooks;
+        fMap        = new int[0x800];
+        int length  = 0;
+        for (Hook hook : hooks) {
+            fMap[hook.fAddress >> 5] |= 1 << hook.fAddress;
+            length = Math.max(length, hook.fSignature.length);
+        }
+        fBuffer = new byte[length];
+    }
+
+    /**
+     * Создает перехватчики по профилю ROM/MON-файла.
+     *
+     * @param cpu        CPU
+     * @param memManager диспетчер запоминающих устройств CPU
+     * @param name       имя ROM/MON-файла
+     * @return перехватчики или null, если для файла нет профиля
+     */
+    @Nullable
+    static HleHooks create(@NotNull final CPUi8080 cpu, @NotNull final MemoryManager memManager, @NotNull final String name) {
+        final Hook[] hooks = PROFILES.get(name.toLowerCase());
+        return (hooks != null) ? new HleHooks(cpu, memManager, hooks) : null;
+    }
+
+    /**
+     * Проверяет по битовой карте, есть ли перехватчик по заданному адресу (на любой странице памяти).
+     * (Используется также кэшем блоков кода - блоки заканчиваются перед адресами перехватчиков)
+     *
+     * @param address адрес
+     * @return true = перехватчик есть
+     */
+    boolean isHook(final int address) {
+        return (fMap[address >> 5] & (1 << address)) != 0;
+    }
+
+    /**
+     * Выполняет подпрограмму по адресу из регистра PC, если для нее есть перехватчик.
+     *
+     * @param page текущая страница памяти
+     * @return количество тактов (0 = перехватчика нет или код подпрограммы изменен - команду выполнит интерпретатор)
+     */
+    int exec(final int page) {
+        final int address = fCPU.fPC;
+        final int keyPage = ((page == MainMemory.ROM_DISK) && (address >= ROM_BOUNDARY)) ? 0 : page;
+        for (Hook hook : fHooks) {
+            if ((hook.fAddress == address) && (hook.fPage == keyPage)) {
+                // Стек подпрограммы не должен заходить в область устройств ввода/вывода или переходить через 0
+                final int sp = fCPU.fSP;
+                if ((sp < hook.fStack) || (sp + 2 > IO_AREA)) {
+                    return 0;
+                }
+                final int length = hook.fSignature.length;
+                fMemManager.readBlock(address, fBuffer, 0, length);
+                for (int i = 0; i < length; i++) {
+                    if (fBuffer[i] != hook.fSignature[i]) {
+                        return 0;
+                    }
+                }
+                return hook.fRoutine.exec(fCPU, address);
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Вывод символа в знакоместо монитора встроенного ROM-файла (адрес перехватчика 0xCC04).
+     * <p>
+     * Вход: HL - адрес образа символа (8 байт), DE - адрес нижней строки знакоместа в экранной области,
+     * B - код символа, C - сдвиг образа (в парах точек). Знакоместо (8 строк в двух соседних столбцах экрана)
+     * очищается по маске 0x3F, сдвинутой на C пар точек (при инверсии - заполняется), затем для всех символов,
+     * кроме пробела и 0x7F, на него накладывается образ символа (XOR).
+     *
+     * @param cpu  CPU
+     * @param base адрес перехватчика
+     * @return количество тактов
+     */
+    private static int spmxPutChar(final CPUi8080 cpu, final int base) {
+        final int font  = cpu.fHL;
+        final int code  = cpu.fBC >> 8;
+        final int shift = cpu.fBC & 0xFF;
+        final int d     = cpu.fDE >> 8;
+        final int d1    = (d + 1) & 0xFF;
+        int       e     = cpu.fDE & 0xFF;
+        // Цикл сдвига "DAD H; DAD H; DCR A; JNZ" выполняется C раз (256 раз при C = 0)
+        final int count = (shift == 0) ? 256 : shift;
+        final int bits  = count << 1;
+
+        // PUSH H; LXI H,003F; MOV A,C; сдвиг; PUSH B; MVI B,08; CALL
+        cpu.pushWord(font);
+        cpu.pushWord(cpu.fBC);
+        cpu.pushWord(base + 0x11);
+        int cycles = 61 + 35 * count;
+
+        // Подпрограмма очистки знакоместа: LDA; ORA A; JNZ; (инверсия маски); 8 x (LDAX/ANA или ORA/STAX для двух столбцов)
+        final boolean fill = cpu.readByte(0xC65C) != 0;
+        final int     mask = (bits < 16) ? (0x3F << bits) & 0xFFFF : 0;
+        final int     h    = fill ? mask >> 8   : (~mask >> 8) & 0xFF;
+        final int     l    = fill ? mask & 0xFF : ~mask & 0xFF;
+        int a = 0;
+        for (int row = 0; row < 8; row++) {
+            final int left  = (d  << 8) | e;
+            final int right = (d1 << 8) | e;
+            a = fill ? cpu.readByte(left ) | h : cpu.readByte(left ) & h;
+            cpu.writeByte(left , a);
+            a = fill ? cpu.readByte(right) | l : cpu.readByte(right) & l;
+            cpu.writeByte(right, a);
+            e = (e - 1) & 0xFF;
+        }
+        cycles += (fill ? 27 : 55) + (8 * 66) + 10;
+        cpu.popWord(); // RET
+        cpu.fBC = cpu.popWord();
+        cpu.fHL = cpu.popWord();
+        cycles += 20;
+
+        // MOV A,B; CPI 7F; RZ; CPI 20; RZ
+        cpu.fA = code;
+        if ((code == 0x7F) || (code == 0x20)) {
+            cpu.fDE = (d << 8) | e;
+            cpu.cmdGroupAlu(7, code);
+            cpu.fPC = cpu.popWord();
+            return cycles + ((code == 0x7F) ? 23 : 35);
+        }
+
+        // INR E; MVI B,08; 8 x (PUSH H; MOV L,M; MVI H,00; MOV A,C; сдвиг; LDAX/XRA/STAX для двух столбцов; INR E; POP H; INX H)
+        e = (e + 1) & 0xFF;
+        int pointer = font;
+        for (int row = 0; row < 8; row++) {
+            cpu.pushWord(pointer);
+            final int image = (bits < 16) ? (cpu.readByte(pointer) << bits) & 0xFFFF : 0;
+            final int left  = (d  << 8) | e;
+            final int right = (d1 << 8) | e;
+            a = cpu.readByte(left ) ^ (image >> 8);
+            cpu.writeByte(left , a);
+            a = cpu.readByte(right) ^ (image & 0xFF);
+            cpu.writeByte(right, a);
+            e = (e + 1) & 0xFF;
+            pointer = (cpu.popWord() + 1) & 0xFFFF;
+        }
+        cycles += 41 + 8 * (111 + 35 * count);
+
+        // Последние команды, изменяющие флаги: XRA L (сбрасывает C) и DCR B (1 -> 0); RET
+        cpu.fA  = a;
+        cpu.fF  = CPUi8080.FLAGS_DCR[0];
+        cpu.fBC = shift;
+        cpu.fDE = (d << 8) | e;
+        cpu.fHL = pointer;
+        cpu.fPC = cpu.popWord();
+        return cycles + 10;
+    }
+}
@@ -0,0 +1,235 @@
+package ru.avsh.specialist.mx.units;
+
+import org.jetbrains.annotations.NotNull;
+import ru.avsh.specialist.mx.units.memory.MemoryManager;
+import ru.avsh.specialist.mx.units.memory.units.KeyboardPort;
+
+/**
+ * Класс "Детектор холостого цикла" (цикла опроса клавиатуры) для CPU i8080.
+ * <p>
+ * В ожидании нажатия клавиши монитор и большинство программ непрерывно опрашивают порт клавиатуры (0xFFE0-0xFFE3).
+ * Итерацией такого цикла считается участок между двумя чтениями порта клавиатуры, после которых PC принимает одно и то
+ * же значение (граница итераций). Итерация считается холостой, если:
+ * <ul>
+ * <li>на ее границах совпадают все регистры CPU;</li>
+ * <li>она не изменила память (записи в память допускаются, если записываемое значение совпадает с прежним);</li>
+ * <li>из устройств ввода/вывода она обращалась только к порту клавиатуры, и последовательность этих обращений
+ * (адреса, записанные и прочитанные значения) и количество тактов совпадают с предыдущей итерацией;</li>
+ * <li>за время итерации не изменилось состояние клавиатуры.</li>
+ * </ul>
+ * Записи в порт клавиатуры только устанавливают значения его регистров, поэтому повтор той же последовательности
+ * записей оставляет порт в том же состоянии (итерации, записывающие в один регистр порта разные значения, например,
+ * выводящие звук через динамик, холостыми не считаются). Значит, следующие итерации в точности повторяют холостую итерацию,
+ * пока не изменится состояние клавиатуры, и тактовый генератор может не выполнять их, а только передать
+ * их такты остальным устройствам - видимое программе состояние при этом не отличается от честного выполнения.
+ *
+ * @author -=AVSh=-
+ */
+final class IdleDetector {
+    // Порт клавиатуры (адреса 0xFFC0-0xFFDF ниже порта - ОЗУ, записи в них проверяются как записи в память)
+    static final int KEYBOARD_PORT     = 0xFFE0;
+    static final int KEYBOARD_PORT_END = 0xFFE3;
+    // Максимальное количество обращений к порту клавиатуры за итерацию
+    private static final int MAX_ACCESSES = 64;
+    // Максимальное количество записей в память за итерацию
+    private static final int MAX_WRITES   = 64;
+    // Максимальная длительность итерации в тактах (более длинные циклы холостыми не считаются)
+    private static final int MAX_CYCLES   = 20_000;
+    // Признак записи в последовательности обращений к порту клавиатуры
+    private static final int WRITE_FLAG   = 1 << 24;
+
+    private final CPUi8080            fCPU;
+    private final MemoryManager       fMemManager;
+    private final KeyboardPort        fKeyboard;
+    private final ClockSpeedGenerator fGen;
+
+    // Обращения к порту клавиатуры в текущей и предыдущей итерациях: (запись << 24) | (адрес << 8) | значение
+    private final int[] fAccesses     = new int[MAX_ACCESSES];
+    private final int[] fPrevAccesses = new int[MAX_ACCESSES];
+    private int fCount    ;
+    private int fPrevCount;
+    private int fWrites   ;
+
+    // Граница итераций (значение PC после чтения порта клавиатуры, -1 = граница не выбрана)
+    private int  fAnchor = -1;
+    // Значение счетчика тактов в начале текущей итерации
+    private long fStart;
+    // Длительность предыдущей итерации в тактах (-1 = предыдущей итерации нет)
+    private int  fPrevCycles = -1;
+    // Версия состояния клавиатуры в начале текущей итерации
+    private int  fKeyVersion;
+    // true = текущая итерация не изменила память и не обращалась к устройствам, кроме порта клавиатуры
+    private boolean fClean;
+
+    // Регистры CPU на границе итераций
+    private int fA ;
+    private int fF ;
+    private int fBC;
+    private int fDE;
+    private int fHL;
+    private int fSP;
+
+    /**
+     * Конструктор.
+     *
+     * @param cpu        CPU
+     * @param memManager диспетчер запоминающих устройств CPU
+     * @param keyboard   порт клавиатуры
+     * @param gen        тактовый генератор (его счетчик тактов используется для измерения длительности итераций)
+     */
+    IdleDetector(@NotNull final CPUi8080 cpu, @NotNull final MemoryManager memManager,
+                 @NotNull final KeyboardPort keyboard, @NotNull final ClockSpeedGenerator gen) {
+        fCPU        = cpu       ;
+        fMemManager = memManager;
+        fKeyboard   = keyboard  ;
+        fGen        = gen       ;
+    }
+
+    /**
+     * Сообщает детектору о чтении CPU из устройств ввода/вывода (адрес >= KEYBOARD_PORT).
+     *
+     * @param address адрес
+     * @param value   прочитанное значение
+     * @return true = прочитан порт клавиатуры (после команды нужно вызвать метод boundary())
+     */
+    boolean read(final int address, final int value) {
+        if (address > KEYBOARD_PORT_END) {
+            fClean = false;
+            return false;
+        }
+        access((address << 8) | value);
+        return true;
+    }
+
+    /**
+     * Сообщает детектору о записи CPU в память (вызывается до записи).
+     *
+     * @param address адрес
+     * @param value   записываемое значение
+     */
+    void write(final int address, final int value) {
+        if (fClean) {
+            if (address < KEYBOARD_PORT) {
+                if ((++fWrites > MAX_WRITES) || (fMemManager.debugReadByte(address) != (value & 0xFF))) {
+                    fClean = false;
+                }
+            } else if (address <= KEYBOARD_PORT_END) {
+                final int access = WRITE_FLAG | (address << 8) | (value & 0xFF);
+                // Разные значения в один регистр порта за итерацию (например, вывод звука через динамик) - не холостой цикл
+                for (int i = fCount - 1; i >= 0; i--) {
+                    if ((fAccesses[i] >> 8) == (access >> 8)) {
+                        fClean = (fAccesses[i] == access);
+                        break;
+                    }
+                }
+                access(access);
+            } else {
+                fClean = false;
+            }
+        }
+    }
+
+    /**
+     * Сообщает детектору об изменении памяти или обращении к устройствам, которые детектор не отслеживает
+     * (блочные операции с памятью, команды IN/OUT).
+     */
+    void dirty() {
+        fClean = false;
+    }
+
+    /**
+     * Сбрасывает детектор (память изменена в обход CPU).
+     */
+    void reset() {
+        fAnchor     = -1;
+        fPrevCycles = -1;
+        fClean      = false;
+    }
+
+    /**
+     * Запоминает обращение к порту клавиатуры.
+     *
+     * @param access (запись << 24) | (адрес << 8) | значение
+     */
+    private void access(final int access) {
+        if (fCount < MAX_ACCESSES) {
+            fAccesses[fCount++] = access;
+        } else {
+            fClean = false;
+        }
+    }
+
+    /**
+     * Обрабатывает завершение команды, прочитавшей порт клавиатуры.
+     *
+     * @return длительность итерации в тактах, если итерация оказалась холостой, иначе 0
+     */
+    int boundary() {
+        final CPUi8080 cpu = fCPU;
+        final int      pc  = cpu.fPC;
+        final long     now = fGen.getCyclesCounter();
+        final int  cycles  = (int) Math.min(now - fStart, Integer.MAX_VALUE);
+        if (pc != fAnchor) {
+            // Другое чтение порта внутри итерации - продолжаем ее, иначе переносим границу сюда
+            if (fClean && (cycles < MAX_CYCLES)) {
+                return 0;
+            }
+            fAnchor     = pc;
+            fPrevCycles = -1;
+            start(now);
+            return 0;
+        }
+
+        boolean idle = fClean && (cycles < MAX_CYCLES) && (cycles == fPrevCycles) && (fCount == fPrevCount)
+                && (fKeyVersion == fKeyboard.getVersion())
+                && (cpu.fA  == fA ) && (cpu.fF  == fF ) && (cpu.fBC == fBC)
+                && (cpu.fDE == fDE) && (cpu.fHL == fHL) && (cpu.fSP == fSP);
+        for (int i = 0; idle && (i < fCount); i++) {
+            idle = (fAccesses[i] == fPrevAccesses[i]);
+        }
+
+        System.arraycopy(fAccesses, 0, fPrevAccesses, 0, fCount);
+        fPrevCount  = fCount;
+        fPrevCycles = cycles;
+        start(now);
+        return idle ? cycles : 0;
+    }
+
+    /**
+     * Начинает новую итерацию на границе итераций.
+     *
+     * @param now значение счетчика тактов
+     */
+    private void start(final long now) {
+        final CPUi8080 cpu = fCPU;
+        fCount      = 0;
+        fWrites     = 0;
+        fClean      = true;
+        fStart      = now;
+        fKeyVersion = fKeyboard.getVersion();
+        fA  = cpu.fA ;
+        fF  = cpu.fF ;
+        fBC = cpu.fBC;
+        fDE = cpu.fDE;
+        fHL = cpu.fHL;
+        fSP = cpu.fSP;
+    }
+
+    /**
+     * Проверяет, можно ли пропустить следующие итерации холостого цикла (состояние клавиатуры не изменилось).
+     *
+     * @return true = итерации можно пропустить
+     */
+    boolean isStable() {
+        return fKeyVersion == fKeyboard.getVersion();
+    }
+
+    /**
+     * Сообщает детектору о пропуске итераций холостого цикла.
+     *
+     * @param cycles количество пропущенных тактов
+     */
+    void skipped(final int cycles) {
+        fStart += cycles;
+    }
+}
@@ -0,0 +1,473 @@
+package ru.avsh.specialist.mx.units;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import ru.avsh.specialist.mx.units.BlockCache.Op;
+import ru.avsh.specialist.mx.units.memory.MemoryManager;
+
+import java.util.Arrays;
+
+import static ru.avsh.specialist.mx.units.BlockCache.IO_AREA;
+
+/**
+ * Класс "Распознаватель циклов обработки блоков памяти" для кэша блоков кода.
+ * <p>
+ * В системе команд i8080 нет команд пересылки блоков, поэтому программы копируют, заполняют и сравнивают память
+ * циклами вида "MOV A,M; STAX D; INX H; INX D; DCX B; MOV A,B; ORA C; JNZ start". Блок, целиком состоящий из такого
+ * цикла, выполняется одним обработчиком: за один вызов он выполняет до MAX_BULK_CYCLES тактов итераций одной блочной
+ * операцией диспетчера памяти (экран получает одно обновление на весь блок) и устанавливает регистры, флаги и PC
+ * такими, какими они были бы после этих итераций.
+ * <p>
+ * Распознаются циклы из трех частей:
+ * <ul>
+ * <li>пересылка: копирование (MOV r,M / LDAX rp, затем MOV M,r / STAX rp), заполнение (MOV M,r / STAX rp / MVI M,d),
+ * сравнение (LDAX rp; CMP M) или поиск (MOV A,M / LDAX rp, затем CMP r / CPI d);</li>
+ * <li>шаг указателей: INX/DCX каждого указателя (в одном направлении) и DCX счетчика в любом порядке;</li>
+ * <li>условие: "MOV A,rh; ORA rl; JNZ start" (счетчик - пара), "DCR r; JNZ start" (счетчик - регистр),
+ * "MOV A,r; CPI d / CMP r; JNZ start" (граница указателя) - для копирования и заполнения, "JZ/JNZ start" - для
+ * сравнения и поиска.</li>
+ * </ul>
+ * Итерации, обращающиеся к области устройств ввода/вывода или пишущие в память, занятую блоками кода, обработчик
+ * не выполняет - их выполнит интерпретатор. При перекрытии источника и приемника копирования за один вызов
+ * выполняется не больше итераций, чем расстояние между ними, поэтому результат совпадает с побайтным копированием.
+ *
+ * @author -=AVSh=-
+ */
+final class MemoryIdioms {
+    // Максимальное количество тактов, выполняемых циклом за один вызов обработчика
+    // (ограничивает задержку реакции CPU на запросы HOLD/паузы и размер пакета тактов для остальных устройств)
+    private static final int MAX_BULK_CYCLES = 32_768;
+    // Размер буферов блочных операций (итерация цикла занимает не меньше 16 тактов)
+    private static final int BUFFER_SIZE     = MAX_BULK_CYCLES / 16;
+
+    // Виды циклов
+    private static final int COPY    = 0;
+    private static final int FILL    = 1;
+    private static final int COMPARE = 2;
+    private static final int SCAN    = 3;
+
+    // Коды регистров и регистровых пар (как в CPUi8080)
+    private static final int REG_M   = 6;
+    private static final int REG_A   = 7;
+    private static final int PAIR_HL = 4;
+    private static final int PAIR_SP = 6;
+
+    private static final int JNZ = 0xC2;
+    private static final int JZ  = 0xCA;
+
+    private final MemoryManager fMemManager;
+    private final int[]         fCodeMap   ;
+
+    // Буферы блочных операций (используются только в потоке CPU)
+    private final byte[] fSource = new byte[BUFFER_SIZE];
+    private final byte[] fTarget = new byte[BUFFER_SIZE];
+
+    /**
+     * Конструктор.
+     *
+     * @param memManager диспетчер запоминающих устройств CPU
+     * @param codeMap    битовая карта адресов, занятых блоками кода
+     */
+    MemoryIdioms(@NotNull final MemoryManager memManager, @NotNull final int[] codeMap) {
+        fMemManager = memManager;
+        fCodeMap    = codeMap   ;
+    }
+
+    /**
+     * Распознает цикл обработки блока памяти.
+     *
+     * @param start начальный адрес блока
+     * @param codes команды блока: код операции | (операнд << 8)
+     * @param count количество команд в блоке
+     * @param end   адрес, следующий за блоком
+     * @return обработчик цикла или null, если блок не является циклом обработки блока памяти
+     */
+    @Nullable
+    Op decode(final int start, @NotNull final int[] codes, final int count, final int end) {
+        if ((count < 3) || ((codes[count - 1] >>> 8) != start)) {
+            return null;
+        }
+        final Loop loop = new Loop(start, end);
+        loop.fJump = codes[count - 1] & 0xFF;
+        if ((loop.fJump != JNZ) && (loop.fJump != JZ)) {
+            return null;
+        }
+        for (int index = 0; index < count; index++) {
+            loop.fCycles += CPUi8080.CYCLES[codes[index] & 0xFF] & 0xFF; // Для Jcc такты одинаковы при любом условии
+        }
+
+        // Пересылка
+        int index  = 0;
+        int opCode = codes[index] & 0xFF;
+        if (isLoad(opCode)) {
+            loop.fSrc   = loadPair(opCode);
+            loop.fValue = ((opCode & 0b1100_0000) != 0) ? (opCode >> 3) & 0b111 : REG_A;
+            opCode = codes[++index] & 0xFF;
+            if (isStore(opCode) && (storeReg(opCode) == loop.fValue)) {
+                loop.fKind = COPY;
+                loop.fDst  = storePair(opCode);
+            } else if (loop.fValue != REG_A) {
+                return null;
+            } else if (opCode == 0xBE) { // CMP M
+                loop.fKind = COMPARE;
+                loop.fDst  = PAIR_HL;
+            } else if (((opCode & 0b1111_1000) == 0xB8) && (opCode != 0xBF)) { // CMP r
+                loop.fKind  = SCAN;
+                loop.fLimit = opCode & 0b111;
+            } else if (opCode == 0xFE) { // CPI d
+                loop.fKind  = SCAN;
+                loop.fConst = (codes[index] >>> 8) & 0xFF;
+            } else {
+                return null;
+            }
+            index++;
+        } else if (isStore(opCode)) {
+            loop.fKind  = FILL;
+            loop.fDst   = storePair(opCode);
+            loop.fValue = storeReg (opCode);
+            if (opCode == 0x36) { // MVI M,d
+                loop.fData = (codes[index] >>> 8) & 0xFF;
+            }
+            index++;
+        } else {
+            return null;
+        }
+        if (loop.fSrc == loop.fDst) {
+            return null;
+        }
+
+        // Шаг указателей (и счетчика - пары)
+        for (; (index < count - 1) && ((codes[index] & 0b1100_0111) == 0b0000_0011); index++) {
+            final int pair = (codes[index] >> 3) & 0b110;
+            final int step = ((codes[index] & 0b1000) == 0) ? 1 : -1;
+            if (pair == PAIR_SP) {
+                return null;
+            } else if ((pair == loop.fSrc) && (loop.fSrcStep == 0)) {
+                loop.fSrcStep = step;
+            } else if ((pair == loop.fDst) && (loop.fDstStep == 0)) {
+                loop.fDstStep = step;
+            } else if ((step < 0) && (loop.fCounter < 0) && (pair != loop.fSrc) && (pair != loop.fDst)
+                    && ((loop.fKind == COPY) || (loop.fKind == FILL))) {
+                loop.fCounter = pair;
+            } else {
+                return null;
+            }
+        }
+        if (((loop.fSrc >= 0) && (loop.fSrcStep == 0)) || ((loop.fDst >= 0) && (loop.fDstStep == 0))
+                || ((loop.fSrc >= 0) && (loop.fDst >= 0) && (loop.fSrcStep != loop.fDstStep))) {
+            return null;
+        }
+        loop.fStep = (loop.fSrc >= 0) ? loop.fSrcStep : loop.fDstStep;
+
+        // Условие выхода из цикла
+        final int rest = count - 1 - index;
+        if ((loop.fKind == COMPARE) || (loop.fKind == SCAN)) {
+            if ((rest != 0) || loop.uses(loop.fLimit)) {
+                return null;
+            }
+        } else if (loop.fJump != JNZ) {
+            return null;
+        } else if (loop.fCounter >= 0) {
+            // MOV A,rh; ORA rl (регистры пары в любом порядке)
+            if ((rest != 2) || ((codes[index] & 0b1111_1000) != 0x78) || ((codes[index + 1] & 0b1111_1000) != 0xB0)) {
+                return null;
+            }
+            final int x = codes[index    ] & 0b111;
+            final int y = codes[index + 1] & 0b111;
+            if (((x != loop.fCounter) || (y != loop.fCounter + 1)) && ((x != loop.fCounter + 1) || (y != loop.fCounter))) {
+                return null;
+            }
+            loop.fTest  = x;
+            loop.fLimit = y;
+        } else if ((rest == 1) && ((codes[index] & 0b1100_0111) == 0b0000_0101)) {
+            // DCR r
+            final int r = (codes[index] >> 3) & 0b111;
+            if ((r == REG_M) || (r == REG_A) || loop.uses(r)) {
+                return null;
+            }
+            loop.fCount8 = r;
+        } else if ((rest == 2) && ((codes[index] & 0b1111_1000) == 0x78)) {
+            // MOV A,r; CPI d / CMP r - r из пары указателя
+            loop.fTest = codes[index] & 0b111;
+            final int cmp = codes[index + 1] & 0xFF;
+            if (cmp == 0xFE) {
+                loop.fConst = (codes[index + 1] >>> 8) & 0xFF;
+            } else if (((cmp & 0b1111_1000) == 0xB8) && (cmp != 0xBE) && (cmp != 0xBF)) {
+                loop.fLimit = cmp & 0b111;
+                if (loop.uses(loop.fLimit) || ((loop.fKind == COPY) && (loop.fLimit == loop.fValue))) {
+                    return null;
+                }
+            } else {
+                return null;
+            }
+            loop.fBound = ((loop.fTest & 0b110) == loop.fSrc) ? loop.fSrc : loop.fDst;
+            if ((loop.fTest == REG_M) || ((loop.fTest & 0b110) != loop.fBound)) {
+                return null;
+            }
+        } else {
+            return null;
+        }
+
+        // Значение заполнения в регистре не должно изменяться циклом
+        if ((loop.fKind == FILL) && (loop.fValue != REG_M)
+                && (loop.uses(loop.fValue) || ((loop.fValue == REG_A) && (loop.fTest >= 0)))) {
+            return null;
+        }
+        // Пересылаемое значение не должно попадать в указатели и счетчик
+        if ((loop.fKind == COPY) && loop.uses(loop.fValue)) {
+            return null;
+        }
+        return loop;
+    }
+
+    /**
+     * Проверяет, является ли команда загрузкой из памяти по указателю: MOV r,M или LDAX B/D.
+     *
+     * @param opCode код операции
+     * @return true = команда загрузки
+     */
+    private static boolean isLoad(final int opCode) {
+        return (((opCode & 0b1100_0111) == 0x46) && (opCode != 0x76)) || (opCode == 0x0A) || (opCode == 0x1A);
+    }
+
+    /**
+     * Возвращает пару-указатель команды загрузки.
+     *
+     * @param opCode код операции
+     * @return BC = 0, DE = 2, HL = 4
+     */
+    private static int loadPair(final int opCode) {
+        return ((opCode & 0b1100_0000) != 0) ? PAIR_HL : (opCode >> 3) & 0b110;
+    }
+
+    /**
+     * Проверяет, является ли команда записью в память по указателю: MOV M,r, MVI M,d или STAX B/D.
+     *
+     * @param opCode код операции
+     * @return true = команда записи
+     */
+    private static boolean isStore(final int opCode) {
+        return (((opCode & 0b1111_1000) == 0x70) && (opCode != 0x76)) || (opCode == 0x36) || (opCode == 0x02) || (opCode == 0x12);
+    }
+
+    /**
+     * Возвращает пару-указатель команды записи.
+     *
+     * @param opCode код операции
+     * @return BC = 0, DE = 2, HL = 4
+     */
+    private static int storePair(final int opCode) {
+        return ((opCode == 0x02) || (opCode == 0x12)) ? (opCode >> 3) & 0b110 : PAIR_HL;
+    }
+
+    /**
+     * Возвращает регистр-источник команды записи.
+     *
+     * @param opCode код операции
+     * @return код регистра (M = 6 - непосредственный операнд команды MVI M,d)
+     */
+    private static int storeReg(final int opCode) {
+        return ((opCode == 0x02) || (opCode == 0x12)) ? REG_A : (opCode == 0x36) ? REG_M : opCode & 0b111;
+    }
+
+    /**
+     * Ищет в диапазоне адресов первый адрес, занятый блоками кода.
+     *
+     * @param from начальный адрес
+     * @param to   конечный адрес (включительно)
+     * @param step направление поиска (+1 - от начального адреса, -1 - от конечного)
+     * @return количество свободных адресов до первого занятого или -1, если занятых адресов нет
+     */
+    private int findCode(final int from, final int to, final int step) {
+        for (int i = 0, a = (step > 0) ? from : to, n = to - from + 1; i < n; i++, a += step) {
+            if ((fCodeMap[a >> 5] & (1 << a)) != 0) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Класс "Обработчик цикла обработки блока памяти".
+     */
+    private final class Loop implements Op {
+        private final int fStart;
+        private final int fEnd  ;
+
+        private int fKind    ;
+        private int fJump    ;      // JNZ/JZ start
+        private int fCycles  ;      // Тактов на итерацию
+        private int fSrc     = -1;  // Пара-указатель источника
+        private int fDst     = -1;  // Пара-указатель приемника (для сравнения - второго операнда)
+        private int fSrcStep ;
+        private int fDstStep ;
+        private int fStep    ;      // Шаг указателей (+1/-1)
+        private int fValue   = -1;  // Регистр пересылаемого значения (M = 6 - операнд команды MVI M,d)
+        private int fData    ;      // Операнд команды MVI M,d
+        private int fConst   = -1;  // Операнд команды CPI d
+        private int fCounter = -1;  // Счетчик - пара
+        private int fCount8  = -1;  // Счетчик - регистр
+        private int fTest    = -1;  // Регистр, загружаемый в A перед проверкой условия
+        private int fLimit   = -1;  // Регистр, с которым сравнивается A (для пары-счетчика - второй регистр пары)
+        private int fBound   = -1;  // Пара-указатель, байт которой проверяется условием
+
+        private Loop(final int start, final int end) {
+            fStart = start;
+            fEnd   = end  ;
+        }
+
+        /**
+         * Проверяет, изменяется ли регистр циклом (входит в указатель или счетчик).
+         *
+         * @param reg код регистра
+         * @return true = регистр изменяется циклом
+         */
+        private boolean uses(final int reg) {
+            if (reg < 0) {
+                return false;
+            }
+            final int pair = reg & 0b110;
+            return (reg != REG_M) && (reg != REG_A)
+                    && ((pair == fSrc) || (pair == fDst) || (pair == fCounter) || (reg == fCount8));
+        }
+
+        /**
+         * Ограничивает количество итераций так, чтобы диапазон адресов указателя не выходил за область RAM.
+         *
+         * @param pointer значение указателя
+         * @param limit   количество итераций
+         * @return ограниченное количество итераций
+         */
+        private int fit(final int pointer, final int limit) {
+            if (pointer >= IO_AREA) {
+                return 0;
+            }
+            return Math.min(limit, (fStep > 0) ? IO_AREA - pointer : pointer + 1);
+        }
+
+        /**
+         * Возвращает младший адрес диапазона из k итераций.
+         *
+         * @param pointer начальное значение указателя
+         * @param k       количество итераций
+         * @return младший адрес
+         */
+        private int low(final int pointer, final int k) {
+            return (fStep > 0) ? pointer : pointer - k + 1;
+        }
+
+        @Override
+        public int exec(final CPUi8080 cpu) {
+            int k = Math.min(BUFFER_SIZE, MAX_BULK_CYCLES / fCycles);
+            int n = Integer.MAX_VALUE; // Итераций до выхода из цикла (если известно заранее)
+            if (fCounter >= 0) {
+                final int v = cpu.getRegPair(fCounter);
+                n = (v == 0) ? 0x1_0000 : v;
+            } else if (fCount8 >= 0) {
+                final int v = cpu.getReg(fCount8);
+                n = (v == 0) ? 0x100 : v;
+            }
+            k = Math.min(k, n);
+
+            final int src = (fSrc >= 0) ? cpu.getRegPair(fSrc) : 0;
+            final int dst = (fDst >= 0) ? cpu.getRegPair(fDst) : 0;
+            if (fSrc >= 0) {
+                k = fit(src, k);
+            }
+            if (fDst >= 0) {
+                k = fit(dst, k);
+            }
+            if ((k > 0) && ((fKind == COPY) || (fKind == FILL))) {
+                // Запись в код выполнит интерпретатор (кэш сбросит измененные блоки)
+                final int code = findCode(low(dst, k), low(dst, k) + k - 1, fStep);
+                if (code >= 0) {
+                    k = code;
+                }
+                // Приемник впереди источника - копируем не дальше расстояния между ними
+                final int distance = (dst - src) * fStep;
+                if ((fKind == COPY) && (distance > 0)) {
+                    k = Math.min(k, distance);
+                }
+            }
+            if (k <= 0) {
+                return -1;
+            }
+
+            boolean done = (k == n);
+            if (fBound >= 0) {
+                // Граница указателя: выход после итерации, на которой байт указателя стал равен операнду
+                final int pointer = (fBound == fSrc) ? src : dst;
+                final int shift   = ((fTest & 1) == 0) ? 8 : 0;
+                final int target  = (fLimit >= 0) ? cpu.getReg(fLimit) : fConst;
+                for (int i = 1; i <= k; i++) {
+                    if ((((pointer + fStep * i) >> shift) & 0xFF) == target) {
+                        k    = i;
+                        done = true;
+                        break;
+                    }
+                }
+            }
+
+            int a = -1; // Значение A и операнд сравнения последней итерации (для сравнения/поиска)
+            int w = -1;
+            switch (fKind) {
+                case COPY:
+                    fMemManager.readBlock (low(src, k), fSource, 0, k);
+                    fMemManager.writeBlock(low(dst, k), fSource, 0, k);
+                    cpu.idleDirty();
+                    cpu.setReg(fValue, fSource[(fStep > 0) ? k - 1 : 0]);
+                    break;
+                case FILL:
+                    Arrays.fill(fTarget, 0, k, (byte) ((fValue == REG_M) ? fData : cpu.getReg(fValue)));
+                    fMemManager.writeBlock(low(dst, k), fTarget, 0, k);
+                    cpu.idleDirty();
+                    break;
+                default:
+                    // Сравнение/поиск: выход после итерации, на которой результат сравнения изменил условие перехода
+                    fMemManager.readBlock(low(src, k), fSource, 0, k);
+                    if (fKind == COMPARE) {
+                        fMemManager.readBlock(low(dst, k), fTarget, 0, k);
+                    }
+                    final boolean whileEqual = (fJump == JZ);
+                    final int     operand    = (fLimit >= 0) ? cpu.getReg(fLimit) : fConst;
+                    int i = 0;
+                    for (int idx = (fStep > 0) ? 0 : k - 1; i < k; i++, idx += fStep) {
+                        a = fSource[idx] & 0xFF;
+                        w = (fKind == COMPARE) ? fTarget[idx] & 0xFF : operand;
+                        if ((a == w) != whileEqual) {
+                            done = true;
+                            break;
+                        }
+                    }
+                    if (done) {
+                        k = i + 1;
+                    }
+                    break;
+            }
+
+            // Регистры и флаги после k итераций
+            if (fSrc >= 0) {
+                cpu.setRegPair(fSrc, src + fStep * k);
+            }
+            if (fDst >= 0) {
+                cpu.setRegPair(fDst, dst + fStep * k);
+            }
+            if (fCounter >= 0) {
+                cpu.setRegPair(fCounter, cpu.getRegPair(fCounter) - k);
+                cpu.fA = cpu.getReg(fTest);
+                cpu.cmdGroupAlu(6, cpu.getReg(fLimit)); // ORA
+            } else if (fCount8 >= 0) {
+                cpu.setReg(fCount8, cpu.getReg(fCount8) - k + 1);
+                cpu.cmdDcr(fCount8);
+            } else if (fBound >= 0) {
+                cpu.fA = cpu.getReg(fTest);
+                cpu.cmdGroupAlu(7, (fLimit >= 0) ? cpu.getReg(fLimit) : fConst); // CMP/CPI
+            } else {
+                cpu.fA = a;
+                cpu.cmdGroupAlu(7, w); // CMP
+            }
+            cpu.fPC = done ? fEnd : fStart;
+            return k * fCycles;
+        }
+    }
+}
@@ -0,0 +1,332 @@
+package ru.avsh.specialist.mx.units;
+
+import org.jetbrains.annotations.NotNull;
+import ru.avsh.specialist.mx.helpers.Disassembler;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * Класс "Трасса выполнения команд CPU" - кольцевой буфер записей фиксированного размера вне кучи JVM.
+ * <p>
+ * Запись делается перед выполнением каждой команды без порождения объектов. Формат записи (RECORD_SIZE байт,
+ * порядок байт little-endian):
+ * <pre>
+ *  0: long  - такт тактового генератора
+ *  8: short - PC
+ * 10: byte  - номер страницы памяти
+ * 11: byte  - код команды
+ * 12: byte  - 1-й байт операнда (только для команд длиной 2 и 3 байта)
+ * 13: byte  - 2-й байт операнда (только для команд длиной 3 байта)
+ * 14: byte  - A
+ * 15: byte  - F
+ * 16: short - BC, 18: short - DE, 20: short - HL, 22: short - SP
+ * </pre>
+ * Двоичный файл трассы - последовательность таких записей от старой к новой. При потоковой записи в файл буфер
+ * делится на сегменты, каждый заполненный сегмент записывается в файл позиционной записью канала (без отображения
+ * файла в память: отображения не освобождаются до сборки мусора и блокируют файл после закрытия канала).
+ *
+ * @author -=AVSh=-
+ */
+public final class TraceBuffer {
+    // Размер записи в байтах
+    public  static final int RECORD_SIZE = 24;
+    // Количество сегментов буфера (для потоковой записи в файл)
+    private static final int SEGMENTS    =  4;
+
+    private static final int OFS_PC   =  8;
+    private static final int OFS_PAGE = 10;
+    private static final int OFS_CMD  = 11;
+    private static final int OFS_BT1  = 12;
+    private static final int OFS_BT2  = 13;
+    private static final int OFS_A    = 14;
+    private static final int OFS_F    = 15;
+    private static final int OFS_BC   = 16;
+    private static final int OFS_DE   = 18;
+    private static final int OFS_HL   = 20;
+    private static final int OFS_SP   = 22;
+
+    private final ClockSpeedGenerator fGen;
+    private final ByteBuffer   fBuffer  ;
+    private final ByteBuffer[] fSegments; // Части буфера, соответствующие сегментам (созданы заранее)
+    private final int fMask    ; // Маска индекса записи (количество записей - степень 2)
+    private final int fSegMask ; // Маска индекса записи внутри сегмента
+
+    // Общее количество записей (изменяется только потоком тактового генератора)
+    private long fCount;
+
+    // Потоковая запись в файл
+    private FileChannel fStream     ;
+    private long        fStreamPos  ; // Позиция следующего сегмента в файле
+    private long        fStreamCount; // Количество записей, записанных в файл
+    private IOException fStreamError; // Ошибка записи в потоке тактового генератора
+
+    /**
+     * Конструктор.
+     *
+     * @param gen      тактовый генератор (счетчик тактов)
+     * @param capacity количество записей (округляется вверх до степени 2, не менее SEGMENTS)
+     */
+    TraceBuffer(@NotNull final ClockSpeedGenerator gen, final int capacity) {
+        final int records = Integer.highestOneBit(Math.max(capacity, SEGMENTS) - 1) << 1;
+        fGen     = gen;
+        fBuffer  = ByteBuffer.allocateDirect(records * RECORD_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        fMask    = records - 1;
+        fSegMask = records / SEGMENTS - 1;
+
+        fSegments = new ByteBuffer[SEGMENTS];
+        final int size = (fSegMask + 1) * RECORD_SIZE;
+        for (int i = 0; i < SEGMENTS; i++) {
+            final ByteBuffer segment = fBuffer.duplicate();
+            segment.position(i * size).limit((i + 1) * size);
+            fSegments[i] = segment.slice();
+        }
+    }
+
+    /**
+     * Записывает в трассу состояние CPU перед выполнением команды.
+     * (Метод для вызова из потока тактового генератора)
+     *
+     * @param cpu  CPU
+     * @param page номер страницы памяти
+     */
+    void record(final CPUi8080 cpu, final int page) {
+        final ByteBuffer buf = fBuffer;
+        final int        pc  = cpu.fPC;
+        final int        ofs = ((int) fCount & fMask) * RECORD_SIZE;
+        buf.putLong (ofs           , fGen.getCyclesCounter());
+        buf.putShort(ofs + OFS_PC  , (short) pc);
+        buf.put     (ofs + OFS_PAGE, (byte ) page);
+        // Байты операнда читаются только при их наличии (в остальных записях не используются)
+        final int cmd = cpu.debugReadByte(pc);
+        final int len = BlockCache.LENGTHS[cmd];
+        buf.put     (ofs + OFS_CMD , (byte ) cmd);
+        if (len > 1) {
+            buf.put (ofs + OFS_BT1 , (byte ) cpu.debugReadByte(pc + 1));
+            if (len > 2) {
+                buf.put(ofs + OFS_BT2, (byte) cpu.debugReadByte(pc + 2));
+            }
+        }
+        buf.put     (ofs + OFS_A   , (byte ) cpu.fA);
+        buf.put     (ofs + OFS_F   , (byte ) cpu.fF);
+        buf.putShort(ofs + OFS_BC  , (short) cpu.fBC);
+        buf.putShort(ofs + OFS_DE  , (short) cpu.fDE);
+        buf.putShort(ofs + OFS_HL  , (short) cpu.fHL);
+        buf.putShort(ofs + OFS_SP  , (short) cpu.fSP);
+        if (((int) ++fCount & fSegMask) == 0) {
+            segmentFilled();
+        }
+    }
+
+    /**
+     * Копирует заполненный сегмент в файл, если включена потоковая запись.
+     */
+    private synchronized void segmentFilled() {
+        if (fStream != null) {
+            try {
+                writeStream();
+            } catch (IOException e) {
+                // Ошибка будет передана при остановке потоковой записи
+                fStreamError = e;
+                closeStream();
+            }
+        }
+    }
+
+    /**
+     * Записывает в файл записи, добавленные в буфер после предыдущей записи в файл
+     * (все они находятся в одном сегменте).
+     *
+     * @throws IOException исключение при ошибке записи
+     */
+    private void writeStream() throws IOException {
+        final int records = (int) (fCount - fStreamCount);
+        if (records > 0) {
+            final int        size = records * RECORD_SIZE;
+            final int        from = ((int) fStreamCount & fSegMask) * RECORD_SIZE;
+            final ByteBuffer src  = fSegments[((int) fStreamCount & fMask) / (fSegMask + 1)].duplicate();
+            src.limit(from + size).position(from);
+            while (src.hasRemaining()) {
+                fStream.write(src, fStreamPos + src.position() - from);
+            }
+            fStreamPos   += size;
+            fStreamCount += records;
+        }
+    }
+
+    /**
+     * Закрывает файл потоковой записи.
+     */
+    private void closeStream() {
+        try {
+            fStream.close();
+        } catch (IOException e) {
+            if (fStreamError == null) {
+                fStreamError = e;
+            }
+        }
+        fStream = null;
+    }
+
+    /**
+     * Возвращает количество записей в буфере.
+     *
+     * @return количество записей
+     */
+    public synchronized int size() {
+        return (int) Math.min(fCount, fMask + 1);
+    }
+
+    /**
+     * Возвращает текст последних команд трассы (от старой к новой).
+     * (Метод для вызова при остановленном CPU)
+     *
+     * @param count максимальное количество команд
+     * @return строки дизассемблированных команд
+     */
+    public synchronized List<String> getLast(final int count) {
+        final int          size   = Math.min(count, size());
+        final List<String> result = new ArrayList<>(size);
+        for (long index = fCount - size; index < fCount; index++) {
+            result.add(format(index));
+        }
+        return result;
+    }
+
+    /**
+     * Сохраняет трассу в двоичный файл (записи от старой к новой).
+     * (Метод для вызова при остановленном CPU)
+     *
+     * @param file файл
+     * @throws IOException исключение при ошибке записи
+     */
+    public synchronized void saveBinary(@NotNull final Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, CREATE, TRUNCATE_EXISTING, WRITE)) {
+            final int        first = ((int) (fCount - size()) & fMask) * RECORD_SIZE;
+            final int        end   = first + size() * RECORD_SIZE;
+            final ByteBuffer buf   = fBuffer.duplicate();
+            // Записи в буфере могут переходить через его конец
+            buf.limit(Math.min(end, buf.capacity())).position(first);
+            writeFully(channel, buf);
+            if (end > buf.capacity()) {
+                buf.limit(end - buf.capacity()).position(0);
+                writeFully(channel, buf);
+            }
+        }
+    }
+
+    /**
+     * Сохраняет трассу в текстовый файл с дизассемблированными командами (от старой к новой).
+     * (Метод для вызова при остановленном CPU)
+     *
+     * @param file файл
+     * @throws IOException исключение при ошибке записи
+     */
+    public synchronized void saveText(@NotNull final Path file) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            for (long index = fCount - size(); index < fCount; index++) {
+                writer.write(format(index));
+                writer.newLine();
+            }
+        }
+    }
+
+    /**
+     * Включает потоковую запись трассы в файл (записываются все последующие команды).
+     *
+     * @param file файл
+     * @throws IOException исключение при ошибке открытия файла
+     */
+    public synchronized void startStreaming(@NotNull final Path file) throws IOException {
+        stopStreaming();
+        fStream      = FileChannel.open(file, CREATE, TRUNCATE_EXISTING, WRITE);
+        fStreamPos   = 0;
+        fStreamCount = fCount;
+    }
+
+    /**
+     * Выключает потоковую запись трассы в файл, дописывая в файл незаполненный сегмент.
+     *
+     * @throws IOException исключение при ошибке записи (в том числе - возникшей ранее в потоке тактового генератора)
+     */
+    public synchronized void stopStreaming() throws IOException {
+        if (fStream != null) {
+            try {
+                writeStream();
+            } finally {
+                closeStream();
+            }
+        }
+        final IOException error = fStreamError;
+        fStreamError = null;
+        if (error != null) {
+            throw error;
+        }
+    }
+
+    /**
+     * Показывает, включена ли потоковая запись трассы в файл.
+     *
+     * @return true = потоковая запись включена
+     */
+    public synchronized boolean isStreaming() {
+        return fStream != null;
+    }
+
+    /**
+     * Записывает в канал все оставшиеся байты буфера.
+     *
+     * @param channel канал
+     * @param buf     буфер
+     * @throws IOException исключение при ошибке записи
+     */
+    private static void writeFully(final FileChannel channel, final ByteBuffer buf) throws IOException {
+        while (buf.hasRemaining()) {
+            channel.write(buf);
+        }
+    }
+
+    /**
+     * Форматирует запись трассы в строку дизассемблера.
+     *
+     * @param index общий номер записи
+     * @return строка
+     */
+    private String format(final long index) {
+        final ByteBuffer buf = fBuffer;
+        final int ofs = ((int) index & fMask) * RECORD_SIZE;
+        final int cmd = buf.get(ofs + OFS_CMD) & 0xFF;
+        final int bt1 = buf.get(ofs + OFS_BT1) & 0xFF;
+        final int bt2 = buf.get(ofs + OFS_BT2) & 0xFF;
+        final String bytes;
+        switch (BlockCache.LENGTHS[cmd]) {
+            case 2:
+                bytes = String.format("%02X %02X"     , cmd, bt1);
+                break;
+            case 3:
+                bytes = String.format("%02X %02X %02X", cmd, bt1, bt2);
+                break;
+            default:
+                bytes = String.format("%02X"          , cmd);
+                break;
+        }
+        return String.format("%12d %X:%04X  %-8s  %-13s  A=%02X F=%02X BC=%04X DE=%04X HL=%04X SP=%04X",
+                buf.getLong(ofs), buf.get(ofs + OFS_PAGE) & 0xFF, buf.getShort(ofs + OFS_PC) & 0xFFFF,
+                bytes, Disassembler.disAsm(cmd, bt1, bt2),
+                buf.get(ofs + OFS_A) & 0xFF, buf.get(ofs + OFS_F) & 0xFF,
+                buf.getShort(ofs + OFS_BC) & 0xFFFF, buf.getShort(ofs + OFS_DE) & 0xFFFF,
+                buf.getShort(ofs + OFS_HL) & 0xFFFF, buf.getShort(ofs + OFS_SP) & 0xFFFF);
+    }
+}
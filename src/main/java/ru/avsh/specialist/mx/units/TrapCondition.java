@@ -0,0 +1,336 @@
+package ru.avsh.specialist.mx.units;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Locale;
+
+/**
+ * Класс "Условие остановки" для ловушек и точек наблюдения отладчика.
+ * <p>
+ * Условие - выражение над регистрами CPU и памятью. Текст разбирается один раз при установке условия
+ * и компилируется в дерево лямбда-выражений, при срабатывании ловушки выражение только вычисляется.
+ * Условие выполнено, если значение выражения не равно 0.
+ * <ul>
+ * <li>числа - шестнадцатеричные, начинаются с цифры: 0FF, 0FFh, 0x0FF;</li>
+ * <li>регистры A, F, B, C, D, E, H, L, регистровые пары AF, BC, DE, HL, SP, PC, M - байт по адресу HL;</li>
+ * <li>[выражение] - байт памяти по адресу;</li>
+ * <li>HITS - номер срабатывания ловушки/точки наблюдения (начиная с 1);</li>
+ * <li>ADDR, VAL - адрес и байт обращения для точки наблюдения (для ловушки - PC и байт по адресу PC);</li>
+ * <li>операции по убыванию приоритета: унарные ! ~ -; + -; &amp;; ^; |; == != &lt; &lt;= &gt; &gt;=; &amp;&amp;; ||.</li>
+ * </ul>
+ * Пример: "B == 0 &amp;&amp; [HL+1] != 0FF || HITS &gt; 10".
+ *
+ * @author -=AVSh=-
+ */
+public final class TrapCondition {
+    /**
+     * Интерфейс "Скомпилированное выражение".
+     */
+    @FunctionalInterface
+    private interface Operand {
+        int get(CPUi8080 cpu, int address, int value, int hits);
+    }
+
+    private final String  fText   ;
+    private final Operand fOperand;
+
+    // Количество срабатываний (изменяется только потоком тактового генератора)
+    private int fHits;
+
+    /**
+     * Конструктор.
+     *
+     * @param text    текст условия
+     * @param operand скомпилированное выражение
+     */
+    private TrapCondition(final String text, final Operand operand) {
+        fText    = text   ;
+        fOperand = operand;
+    }
+
+    /**
+     * Компилирует условие.
+     *
+     * @param text текст условия
+     * @return условие
+     * @throws IllegalArgumentException при ошибке в тексте условия
+     */
+    public static TrapCondition compile(@NotNull final String text) {
+        return new TrapCondition(text.trim(), new Parser(text).parse());
+    }
+
+    /**
+     * Учитывает срабатывание и проверяет условие.
+     *
+     * @param cpu     CPU
+     * @param address адрес обращения
+     * @param value   байт обращения
+     * @return true = условие выполнено
+     */
+    boolean test(final CPUi8080 cpu, final int address, final int value) {
+        return fOperand.get(cpu, address, value, ++fHits) != 0;
+    }
+
+    @Override
+    public String toString() {
+        return fText;
+    }
+
+    //~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+    /**
+     * Класс "Разборщик условия" (рекурсивный спуск, каждое правило возвращает скомпилированное выражение).
+     */
+    private static final class Parser {
+        private final String fText;
+        private int fPos;
+
+        Parser(final String text) {
+            fText = text;
+        }
+
+        Operand parse() {
+            final Operand result = or();
+            skipSpaces();
+            if (fPos < fText.length()) {
+                throw error("лишние символы");
+            }
+            return result;
+        }
+
+        private Operand or() {
+            Operand left = and();
+            while (accept("||", null)) {
+                final Operand l = left, r = and();
+                left = (cpu, a, v, h) -> ((l.get(cpu, a, v, h) != 0) || (r.get(cpu, a, v, h) != 0)) ? 1 : 0;
+            }
+            return left;
+        }
+
+        private Operand and() {
+            Operand left = compare();
+            while (accept("&&", null)) {
+                final Operand l = left, r = compare();
+                left = (cpu, a, v, h) -> ((l.get(cpu, a, v, h) != 0) && (r.get(cpu, a, v, h) != 0)) ? 1 : 0;
+            }
+            return left;
+        }
+
+        private Operand compare() {
+            final Operand l = bitOr();
+            if (accept("==", null)) {
+                final Operand r = bitOr();
+                return (cpu, a, v, h) -> (l.get(cpu, a, v, h) == r.get(cpu, a, v, h)) ? 1 : 0;
+            }
+            if (accept("!=", null)) {
+                final Operand r = bitOr();
+                return (cpu, a, v, h) -> (l.get(cpu, a, v, h) != r.get(cpu, a, v, h)) ? 1 : 0;
+            }
+            if (accept("<=", null)) {
+                final Operand r = bitOr();
+                return (cpu, a, v, h) -> (l.get(cpu, a, v, h) <= r.get(cpu, a, v, h)) ? 1 : 0;
+            }
+            if (accept(">=", null)) {
+                final Operand r = bitOr();
+                return (cpu, a, v, h) -> (l.get(cpu, a, v, h) >= r.get(cpu, a, v, h)) ? 1 : 0;
+            }
+            if (accept("<", null)) {
+                final Operand r = bitOr();
+                return (cpu, a, v, h) -> (l.get(cpu, a, v, h) <  r.get(cpu, a, v, h)) ? 1 : 0;
+            }
+            if (accept(">", null)) {
+                final Operand r = bitOr();
+                return (cpu, a, v, h) -> (l.get(cpu, a, v, h) >  r.get(cpu, a, v, h)) ? 1 : 0;
+            }
+            return l;
+        }
+
+        private Operand bitOr() {
+            Operand left = bitXor();
+            while (accept("|", "|")) {
+                final Operand l = left, r = bitXor();
+                left = (cpu, a, v, h) -> l.get(cpu, a, v, h) | r.get(cpu, a, v, h);
+            }
+            return left;
+        }
+
+        private Operand bitXor() {
+            Operand left = bitAnd();
+            while (accept("^", null)) {
+                final Operand l = left, r = bitAnd();
+                left = (cpu, a, v, h) -> l.get(cpu, a, v, h) ^ r.get(cpu, a, v, h);
+            }
+            return left;
+        }
+
+        private Operand bitAnd() {
+            Operand left = sum();
+            while (accept("&", "&")) {
+                final Operand l = left, r = sum();
+                left = (cpu, a, v, h) -> l.get(cpu, a, v, h) & r.get(cpu, a, v, h);
+            }
+            return left;
+        }
+
+        private Operand sum() {
+            Operand left = unary();
+            for (; ; ) {
+                if (accept("+", null)) {
+                    final Operand l = left, r = unary();
+                    left = (cpu, a, v, h) -> l.get(cpu, a, v, h) + r.get(cpu, a, v, h);
+                } else if (accept("-", null)) {
+                    final Operand l = left, r = unary();
+                    left = (cpu, a, v, h) -> l.get(cpu, a, v, h) - r.get(cpu, a, v, h);
+                } else {
+                    return left;
+                }
+            }
+        }
+
+        private Operand unary() {
+            if (accept("!", "=")) {
+                final Operand o = unary();
+                return (cpu, a, v, h) -> (o.get(cpu, a, v, h) == 0) ? 1 : 0;
+            }
+            if (accept("~", null)) {
+                final Operand o = unary();
+                return (cpu, a, v, h) -> ~o.get(cpu, a, v, h);
+            }
+            if (accept("-", null)) {
+                final Operand o = unary();
+                return (cpu, a, v, h) -> -o.get(cpu, a, v, h);
+            }
+            return primary();
+        }
+
+        private Operand primary() {
+            if (accept("(", null)) {
+                final Operand o = or();
+                expect(")");
+                return o;
+            }
+            if (accept("[", null)) {
+                final Operand o = or();
+                expect("]");
+                return (cpu, a, v, h) -> cpu.debugReadByte(o.get(cpu, a, v, h));
+            }
+            skipSpaces();
+            if (fPos >= fText.length()) {
+                throw error("ожидается операнд");
+            }
+            final char ch = fText.charAt(fPos);
+            if (Character.isDigit(ch)) {
+                return number();
+            }
+            if (Character.isLetter(ch)) {
+                return name();
+            }
+            throw error("ожидается операнд");
+        }
+
+        private Operand number() {
+            if (fText.startsWith("0x", fPos) || fText.startsWith("0X", fPos)) {
+                fPos += 2;
+            }
+            final int start = fPos;
+            while ((fPos < fText.length()) && (Character.digit(fText.charAt(fPos), 16) != -1)) {
+                fPos++;
+            }
+            if ((fPos == start) || (fPos - start > 8)) {
+                throw error("неверное число");
+            }
+            final int value = (int) Long.parseLong(fText.substring(start, fPos), 16);
+            if ((fPos < fText.length()) && (Character.toUpperCase(fText.charAt(fPos)) == 'H')) {
+                fPos++;
+            }
+            if ((fPos < fText.length()) && Character.isLetterOrDigit(fText.charAt(fPos))) {
+                throw error("неверное число");
+            }
+            return (cpu, a, v, h) -> value;
+        }
+
+        private Operand name() {
+            final int start = fPos;
+            while ((fPos < fText.length()) && Character.isLetterOrDigit(fText.charAt(fPos))) {
+                fPos++;
+            }
+            final String name = fText.substring(start, fPos).toUpperCase(Locale.ROOT);
+            switch (name) {
+                case "A":
+                    return (cpu, a, v, h) -> cpu.fA;
+                case "F":
+                    return (cpu, a, v, h) -> cpu.fF;
+                case "B":
+                    return (cpu, a, v, h) -> cpu.fBC >> 8;
+                case "C":
+                    return (cpu, a, v, h) -> cpu.fBC & 0xFF;
+                case "D":
+                    return (cpu, a, v, h) -> cpu.fDE >> 8;
+                case "E":
+                    return (cpu, a, v, h) -> cpu.fDE & 0xFF;
+                case "H":
+                    return (cpu, a, v, h) -> cpu.fHL >> 8;
+                case "L":
+                    return (cpu, a, v, h) -> cpu.fHL & 0xFF;
+                case "M":
+                    return (cpu, a, v, h) -> cpu.debugReadByte(cpu.fHL);
+                case "AF":
+                case "PSW":
+                    return (cpu, a, v, h) -> (cpu.fA << 8) | cpu.fF;
+                case "BC":
+                    return (cpu, a, v, h) -> cpu.fBC;
+                case "DE":
+                    return (cpu, a, v, h) -> cpu.fDE;
+                case "HL":
+                    return (cpu, a, v, h) -> cpu.fHL;
+                case "SP":
+                    return (cpu, a, v, h) -> cpu.fSP;
+                case "PC":
+                    return (cpu, a, v, h) -> cpu.fPC;
+                case "HITS":
+                    return (cpu, a, v, h) -> h;
+                case "ADDR":
+                    return (cpu, a, v, h) -> a;
+                case "VAL":
+                    return (cpu, a, v, h) -> v;
+                default:
+                    fPos = start;
+                    throw error("неизвестное имя ".concat(name));
+            }
+        }
+
+        /**
+         * Пропускает пробелы и принимает заданную операцию.
+         *
+         * @param op       операция
+         * @param notFirst символы, которые не могут следовать за операцией (например, "|" для "|", чтобы не принять "||")
+         * @return true = операция принята
+         */
+        private boolean accept(final String op, final String notFirst) {
+            skipSpaces();
+            if (fText.startsWith(op, fPos)) {
+                final int next = fPos + op.length();
+                if ((notFirst == null) || (next >= fText.length()) || (notFirst.indexOf(fText.charAt(next)) == -1)) {
+                    fPos = next;
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private void expect(final String op) {
+            if (!accept(op, null)) {
+                throw error("ожидается ".concat(op));
+            }
+        }
+
+        private void skipSpaces() {
+            while ((fPos < fText.length()) && Character.isWhitespace(fText.charAt(fPos))) {
+                fPos++;
+            }
+        }
+
+        private IllegalArgumentException error(final String message) {
+            return new IllegalArgumentException(String.format("Ошибка в условии \"%s\" (позиция %d): %s", fText.trim(), fPos + 1, message));
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package ru.avsh.specialist.mx.units.memory;
+
+import java.util.Arrays;
+
+/**
+ * Класс "Измененные страницы" - отслеживание записи в массив запоминающего устройства страницами по 256 байт.
+ * <p>
+ * Вместо одного набора битов, который сбрасывал бы изменения сразу для всех потребителей, каждая страница помечается
+ * номером поколения, в котором в нее была запись. Потребитель (отладчик, снимок состояния и т.п.) хранит свой номер
+ * поколения: метод advance() начинает новое поколение (сбрасывает изменения для вызвавшего), а метод collect()
+ * возвращает набор битов страниц, измененных начиная с заданного поколения. Поколение 0 означает "изменено все".
+ * <p>
+ * Пометка страниц выполняется в потоке-владельце памяти без выделения памяти; методы advance() и collect() также
+ * нужно вызывать в потоке-владельце памяти (см. MemoryManager.call()) - тогда они атомарны относительно записи.
+ *
+ * @author -=AVSh=-
+ */
+public final class DirtyPages {
+    public  static final int PAGE_SHIFT = 8;
+    public  static final int PAGE_SIZE  = 1 << PAGE_SHIFT;
+
+    // Номера поколений, в которых была запись в страницы массива
+    private final int[] fStamps;
+    // Текущее поколение
+    private int fGeneration;
+
+    /**
+     * Конструктор.
+     *
+     * @param size размер отслеживаемого массива
+     */
+    public DirtyPages(int size) {
+        fStamps     = new int[(size + PAGE_SIZE - 1) >> PAGE_SHIFT];
+        fGeneration = 1;
+    }
+
+    /**
+     * Помечает страницу с заданным байтом массива как измененную.
+     *
+     * @param index индекс байта в массиве
+     */
+    public void mark(int index) {
+        fStamps[index >> PAGE_SHIFT] = fGeneration;
+    }
+
+    /**
+     * Помечает страницы с заданным диапазоном байт массива как измененные.
+     *
+     * @param index  индекс первого байта в массиве
+     * @param length количество байт
+     */
+    public void mark(int index, int length) {
+        if (length > 0) {
+            Arrays.fill(fStamps, index >> PAGE_SHIFT, ((index + length - 1) >> PAGE_SHIFT) + 1, fGeneration);
+        }
+    }
+
+    /**
+     * Помечает все страницы как измененные.
+     */
+    public void markAll() {
+        Arrays.fill(fStamps, fGeneration);
+    }
+
+    /**
+     * Начинает новое поколение: запись до вызова метода относится к поколениям меньше возвращаемого номера.
+     *
+     * @return номер нового поколения (потребитель запоминает его для следующего вызова collect())
+     */
+    public int advance() {
+        return ++fGeneration;
+    }
+
+    /**
+     * Формирует набор битов страниц диапазона массива, измененных начиная с заданного поколения.
+     * Бит i соответствует байтам диапазона [index + i * 256, index + (i + 1) * 256) - диапазон может начинаться
+     * не на границе страницы массива, тогда его страница захватывает две страницы массива.
+     *
+     * @param since  номер поколения (0 = все страницы считаются измененными)
+     * @param index  индекс первого байта диапазона в массиве
+     * @param length длина диапазона
+     * @param bits   набор битов (не менее (length + 255) / 256 бит), заполняется полностью
+     * @return true = есть измененные страницы
+     */
+    public boolean collect(int since, int index, int length, long[] bits) {
+        Arrays.fill(bits, 0L);
+        boolean result = false;
+        for (int page = 0, start = index, end = index + length; start < end; page++, start += PAGE_SIZE) {
+            final int last = (Math.min(start + PAGE_SIZE, end) - 1) >> PAGE_SHIFT;
+            for (int i = start >> PAGE_SHIFT; i <= last; i++) {
+                if (fStamps[i] >= since) {
+                    bits[page >> 6] |= 1L << page;
+                    result = true;
+                    break;
+                }
+            }
+        }
+        return result;
+    }
+}
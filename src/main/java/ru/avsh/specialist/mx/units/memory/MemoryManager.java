@@ -1,9 +1,37 @@
 package ru.avsh.specialist.mx.units.memory;
 
+import ru.avsh.specialist.mx.units.types.DirectMemoryUnit;
 import ru.avsh.specialist.mx.units.types.MemoryUnit;
 
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.function.Supplier;
+
 /**
  * Класс "Быстрый диспетчер запоминающих устройств".
+ * <p>
+ * Карта памяти при каждом ее изменении (добавление устройства, установка/снятие точек наблюдения) компилируется
+ * в таблицу страниц по 256 байт. Элемент таблицы содержит устройства, размещенные по адресам страницы, в порядке
+ * их начальных адресов, и их начальные адреса, поэтому чтение/запись байта не просматривают список устройств.
+ * Страницы, на которых устройства начинаются или заканчиваются не на границе страницы (например, область
+ * устройств ввода/вывода 0xFFC0-0xFFFF), содержат таблицу элементов для каждого адреса.
+ * <p>
+ * Чтение/запись выполняются без блокировок: пока тактовый генератор работает, память принадлежит его потоку
+ * (владельцу). Другие потоки обращаются к памяти через методы call()/execute(): при работающем владельце действие
+ * помещается в почтовый ящик, который владелец разбирает между командами CPU, а при остановленном тактовом
+ * генераторе (владельца нет) действие выполняется сразу.
+ * <p>
+ * Для страниц, целиком занятых первым устройством с прямым доступом (основная память), ведутся таблицы прямого
+ * доступа: байты таких страниц читаются (и пишутся, если на странице нет других устройств) прямо в массиве
+ * устройства, без вызова его методов (измененные страницы массива диспетчер помечает сам - см. DirtyPages).
+ * Таблицы обновляются при компиляции таблицы страниц и при смене страницы памяти устройством. Обертки точек
+ * наблюдения не являются устройствами с прямым доступом, поэтому наблюдаемые устройства всегда читаются/пишутся
+ * через свои методы.
  *
  * @author -=AVSh=-
  */
@@ -11,11 +39,194 @@ public final class MemoryManager implements MemoryUnit {
     private static final int STORAGE_SIZE      = 0x1_0000;
     // Максимальное количество запоминающих устройств
     private static final int MAX_STORAGE_UNITS = 50;
+    // Размер страницы таблицы страниц и количество страниц
+    private static final int PAGE_SHIFT        = 8;
+    private static final int PAGE_SIZE         = 1 << PAGE_SHIFT;
+    private static final int NUMBER_PAGES      = STORAGE_SIZE >> PAGE_SHIFT;
+    // Признак страницы без прямого доступа в таблицах прямого доступа
+    private static final int NO_DIRECT         = Integer.MIN_VALUE;
 
     private final      int[][] fAddresses   = new     int[2][MAX_STORAGE_UNITS];
     private final MemoryUnit[] fMemoryUnits = new MemoryUnit[MAX_STORAGE_UNITS];
+    // Почтовый ящик действий других потоков (его монитор защищает и смену владельца)
+    private final Queue<Runnable> fMailbox  = new ConcurrentLinkedQueue<>();
+
+    // Таблица страниц (компилируется из массивов устройств и заменяется целиком)
+    private volatile Entry[] fPages;
+    // Поток-владелец памяти (null = тактовый генератор остановлен) и признак непустого почтового ящика
+    private volatile Thread  fOwner;
+    private volatile boolean fMail ;
+
+    // Таблицы прямого доступа: страница -> (индекс в массиве устройства - адрес) или NO_DIRECT
+    private final      int[]   fDirectRead  = new int[NUMBER_PAGES];
+    private final      int[]   fDirectWrite = new int[NUMBER_PAGES];
+    // Устройство с прямым доступом, его массив и измененные страницы массива
+    private DirectMemoryUnit   fDirectUnit;
+    private byte[]             fDirectMemory;
+    private DirtyPages         fDirectDirty;
+
+    private int fSize; // Изменяется только при добавлении устройств (до старта тактового генератора)
+
+    {
+        fPages = new Entry[NUMBER_PAGES];
+        Arrays.fill(fPages      , Entry.EMPTY);
+        Arrays.fill(fDirectRead , NO_DIRECT  );
+        Arrays.fill(fDirectWrite, NO_DIRECT  );
+    }
+
+    /**
+     * Класс "Элемент таблицы страниц" - устройства, размещенные по адресу (странице) в порядке их начальных адресов.
+     * Чтение выполняется из первого устройства, отвечающего на чтение, запись - во все устройства.
+     */
+    private static final class Entry {
+        // Заглушка первого устройства пустого элемента (не отвечает на чтение, запись игнорирует)
+        private static final MemoryUnit NO_UNIT = new MemoryUnit() {
+            @Override
+            public int storageSize() {
+                return 0;
+            }
+
+            @Override
+            public void writeByte(int address, int value) {
+                // Устройства нет
+            }
+        };
+        // Пустой элемент - по адресам нет устройств
+        private static final Entry      EMPTY   = new Entry(new MemoryUnit[0], new int[0]);
+
+        private final MemoryUnit   fUnit ; // Первое устройство
+        private final int          fBase ; // Начальный адрес первого устройства
+        private final MemoryUnit[] fUnits; // Все устройства
+        private final int[]        fBases; // Начальные адреса всех устройств
+        private final Entry[]      fFine ; // Элементы для каждого адреса страницы (null = страница однородна)
+
+        Entry(final MemoryUnit[] units, final int[] bases) {
+            fUnit  = (units.length > 0) ? units[0] : NO_UNIT;
+            fBase  = (bases.length > 0) ? bases[0] : 0;
+            fUnits = units;
+            fBases = bases;
+            fFine  = null ;
+        }
+
+        Entry(final Entry[] fine) {
+            fUnit  = null;
+            fBase  = 0   ;
+            fUnits = null;
+            fBases = null;
+            fFine  = fine;
+        }
+
+        /**
+         * Читает байт из устройств, следующих за первым (первое устройство не ответило на чтение).
+         *
+         * @param address адрес
+         * @param debug   true = чтение для отладчика
+         * @return считанный байт или 0xFF, если ни одно устройство не ответило
+         */
+        int readRest(final int address, final boolean debug) {
+            for (int i = 1; i < fUnits.length; i++) {
+                final int value = debug ? fUnits[i].debugReadByte(address - fBases[i])
+                                        : fUnits[i].     readByte(address - fBases[i]);
+                if (value != -1) {
+                    return value & 0xFF;
+                }
+            }
+            return 0xFF;
+        }
+    }
+
+    /**
+     * Интерфейс "Слушатель обращений к наблюдаемым адресам" (точки наблюдения отладчика).
+     */
+    @FunctionalInterface
+    public interface AccessListener {
+        /**
+         * Вызывается при чтении/записи по наблюдаемому адресу.
+         *
+         * @param address адрес
+         * @param value   прочитанный/записанный байт
+         * @param write   true = запись, false = чтение
+         */
+        void accessed(int address, int value, boolean write);
+    }
+
+    /**
+     * Класс "Наблюдаемое запоминающее устройство" - обертка, сообщающая слушателю об обращениях к наблюдаемым адресам.
+     * Обертки подставляются в массив устройств только на время действия точек наблюдения, поэтому без них
+     * чтение/запись не выполняют никаких дополнительных проверок.
+     */
+    private static final class WatchedUnit implements MemoryUnit {
+        private final MemoryUnit     fUnit;
+        private final int            fStartAddress;
+        private final int[]          fReadMap;
+        private final int[]          fWriteMap;
+        private final AccessListener fListener;
+
+        WatchedUnit(final MemoryUnit unit, final int startAddress,
+                    final int[] readMap, final int[] writeMap, final AccessListener listener) {
+            fUnit         = unit;
+            fStartAddress = startAddress;
+            fReadMap      = readMap;
+            fWriteMap     = writeMap;
+            fListener     = listener;
+        }
+
+        @Override
+        public int storageSize() {
+            return fUnit.storageSize();
+        }
+
+        @Override
+        public int readByte(int address) {
+            final int value = fUnit.readByte(address);
+            final int a     = fStartAddress + address;
+            if ((value != -1) && ((fReadMap[a >> 5] & (1 << a)) != 0)) {
+                fListener.accessed(a, value & 0xFF, false);
+            }
+            return value;
+        }
+
+        @Override
+        public boolean readBlock(int address, byte[] buffer, int offset, int length) {
+            // Блок читается диспетчером побайтно: иначе при отказе устройства от блочного чтения
+            // уже прочитанные наблюдаемые адреса были бы сообщены слушателю дважды
+            return false;
+        }
+
+        @Override
+        public int debugReadByte(int address) {
+            return fUnit.debugReadByte(address);
+        }
+
+        @Override
+        public boolean debugReadBlock(int address, byte[] buffer, int offset, int length) {
+            return fUnit.debugReadBlock(address, buffer, offset, length);
+        }
+
+        @Override
+        public void writeByte(int address, int value) {
+            fUnit.writeByte(address, value);
+            final int a = fStartAddress + address;
+            if ((fWriteMap[a >> 5] & (1 << a)) != 0) {
+                fListener.accessed(a, value & 0xFF, true);
+            }
+        }
+
+        @Override
+        public void reset(boolean clear) {
+            fUnit.reset(clear);
+        }
+
+        @Override
+        public void pause(boolean mode) {
+            fUnit.pause(mode);
+        }
 
-    private int fSize; // Тут не нужен volatile, т.к. используется синхронизация
+        @Override
+        public void close() {
+            fUnit.close();
+        }
+    }
 
     /**
      * Добавляет запоминающее устройство в массивы с сортировкой по startAddress.
@@ -47,8 +258,102 @@ public final class MemoryManager implements MemoryUnit {
                 fAddresses[1][index] =   endAddress;
                 fMemoryUnits [index] =   memoryUnit;
                 fSize++;
+                // Прямой доступ - только к массиву первого добавленного устройства с прямым доступом
+                if ((fDirectUnit == null) && (memoryUnit instanceof DirectMemoryUnit)) {
+                    fDirectUnit   = (DirectMemoryUnit) memoryUnit;
+                    fDirectMemory = fDirectUnit.getDirectMemory();
+                    // Если устройство не отслеживает изменения - пометки уходят в собственный объект (без проверки на null)
+                    final DirtyPages dirty = fDirectUnit.getDirtyPages();
+                    fDirectDirty  = (dirty != null) ? dirty : new DirtyPages(fDirectMemory.length);
+                    fDirectUnit.setMappingListener(this::updateDirect);
+                }
+            }
+        }
+    }
+
+    /**
+     * Компилирует массивы устройств в таблицу страниц.
+     */
+    private void compile() {
+        final Map<Long, Entry> entries = new HashMap<>();
+        final Entry[]          fine    = new Entry[PAGE_SIZE];
+        final Entry[]          pages   = new Entry[NUMBER_PAGES];
+        for (int page = 0; page < NUMBER_PAGES; page++) {
+            boolean uniform = true;
+            for (int i = 0, address = page << PAGE_SHIFT; i < PAGE_SIZE; i++, address++) {
+                fine[i] = compileEntry(address, entries);
+                uniform &= (fine[i] == fine[0]);
+            }
+            pages[page] = uniform ? fine[0] : new Entry(fine.clone());
+        }
+        fPages = pages;
+        updateDirect();
+    }
+
+    /**
+     * Обновляет таблицы прямого доступа по таблице страниц и текущему отображению адресов устройства
+     * с прямым доступом (вызывается владельцем памяти или при остановленном тактовом генераторе).
+     */
+    private void updateDirect() {
+        final DirectMemoryUnit unit  = fDirectUnit;
+        final Entry[]          pages = fPages;
+        for (int page = 0; page < NUMBER_PAGES; page++) {
+            final Entry entry = pages[page];
+            int offset = NO_DIRECT;
+            if ((unit != null) && (entry.fFine == null) && (entry.fUnit == unit)) {
+                final int address = page << PAGE_SHIFT;
+                final int index   = unit.getDirectIndex(address - entry.fBase, PAGE_SIZE);
+                if (index >= 0) {
+                    offset = index - address;
+                }
+            }
+            // Запись - только если на странице нет других устройств (например, экрана)
+            fDirectRead [page] = offset;
+            fDirectWrite[page] = ((offset != NO_DIRECT) && (entry.fUnits.length == 1)) ? offset : NO_DIRECT;
+        }
+    }
+
+    /**
+     * Возвращает элемент таблицы страниц для заданного адреса (одинаковые элементы используются повторно).
+     *
+     * @param address адрес
+     * @param entries уже созданные элементы (битовая маска индексов устройств -> элемент)
+     * @return элемент таблицы страниц
+     */
+    private Entry compileEntry(final int address, final Map<Long, Entry> entries) {
+        long mask = 0L;
+        for (int i = 0; (i < fSize) && (fAddresses[0][i] <= address); i++) {
+            if (fAddresses[1][i] >= address) {
+                mask |= 1L << i;
             }
         }
+        if (mask == 0L) {
+            return Entry.EMPTY;
+        }
+        return entries.computeIfAbsent(mask, key -> {
+            final int          count = Long.bitCount(key);
+            final MemoryUnit[] units = new MemoryUnit[count];
+            final int[]        bases = new int[count];
+            for (int i = 0, j = 0; j < count; i++) {
+                if ((key & (1L << i)) != 0) {
+                    units[j] = fMemoryUnits [i];
+                    bases[j] = fAddresses[0][i];
+                    j++;
+                }
+            }
+            return new Entry(units, bases);
+        });
+    }
+
+    /**
+     * Возвращает элемент таблицы страниц для заданного адреса.
+     *
+     * @param address адрес (0x0000-0xFFFF)
+     * @return элемент таблицы страниц
+     */
+    private Entry entry(final int address) {
+        final Entry entry = fPages[address >> PAGE_SHIFT];
+        return (entry.fFine == null) ? entry : entry.fFine[address & (PAGE_SIZE - 1)];
     }
 
     /**
@@ -65,10 +370,164 @@ public final class MemoryManager implements MemoryUnit {
             if ((endAddress >= startAddress) && (endAddress < STORAGE_SIZE)) {
                 // Добавляем запоминающее устройство
                 add(startAddress, endAddress, memoryUnit);
+                compile();
             }
         }
     }
 
+    /**
+     * Устанавливает/снимает точки наблюдения за чтением/записью памяти и устройств ввода/вывода.
+     * Устройства, в адресах которых есть наблюдаемые адреса, заменяются обертками, сообщающими слушателю
+     * об обращениях (блочные операции для них выполняются побайтно). Без точек наблюдения используются
+     * сами устройства.
+     *
+     * @param readMap  битовая карта адресов, наблюдаемых при чтении (адрес >> 5 -> биты адресов)
+     * @param writeMap битовая карта адресов, наблюдаемых при записи
+     * @param listener слушатель обращений (null = снять точки наблюдения)
+     */
+    public void setWatches(final int[] readMap, final int[] writeMap, final AccessListener listener) {
+        // Устройства заменяются между командами CPU
+        execute(() -> swapWatchedUnits(readMap, writeMap, listener));
+    }
+
+    /**
+     * Заменяет устройства с наблюдаемыми адресами обертками (или обертки - самими устройствами).
+     *
+     * @param readMap  битовая карта адресов, наблюдаемых при чтении
+     * @param writeMap битовая карта адресов, наблюдаемых при записи
+     * @param listener слушатель обращений (null = снять точки наблюдения)
+     */
+    private synchronized void swapWatchedUnits(final int[] readMap, final int[] writeMap, final AccessListener listener) {
+        for (int i = 0; i < fSize; i++) {
+            MemoryUnit unit = fMemoryUnits[i];
+            if (unit instanceof WatchedUnit) {
+                unit = ((WatchedUnit) unit).fUnit;
+            }
+            if ((listener != null) && (isWatched(readMap , fAddresses[0][i], fAddresses[1][i]) ||
+                                       isWatched(writeMap, fAddresses[0][i], fAddresses[1][i]))) {
+                unit = new WatchedUnit(unit, fAddresses[0][i], readMap, writeMap, listener);
+            }
+            fMemoryUnits[i] = unit;
+        }
+        compile();
+    }
+
+    /**
+     * Проверяет, есть ли в заданном диапазоне адресов наблюдаемые адреса.
+     *
+     * @param map          битовая карта наблюдаемых адресов
+     * @param startAddress начальный адрес
+     * @param endAddress   конечный адрес
+     * @return true = наблюдаемые адреса есть
+     */
+    private static boolean isWatched(final int[] map, final int startAddress, final int endAddress) {
+        for (int address = startAddress; address <= endAddress; address++) {
+            if ((map[address >> 5] & (1 << address)) != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Делает текущий поток владельцем памяти (вызывается потоком тактового генератора перед выполнением команд CPU).
+     */
+    public void acquire() {
+        synchronized (fMailbox) {
+            fOwner = Thread.currentThread();
+        }
+    }
+
+    /**
+     * Освобождает память (вызывается владельцем перед остановкой) и выполняет оставшиеся в почтовом ящике действия.
+     */
+    public void release() {
+        synchronized (fMailbox) {
+            fOwner = null;
+        }
+        processMailbox();
+    }
+
+    /**
+     * Показывает, является ли текущий поток владельцем памяти (потоком работающего тактового генератора).
+     *
+     * @return true = текущий поток - владелец памяти
+     */
+    public boolean isOwner() {
+        return fOwner == Thread.currentThread();
+    }
+
+    /**
+     * Выполняет действия из почтового ящика (вызывается владельцем между командами CPU).
+     */
+    public void processMailbox() {
+        if (fMail) {
+            fMail = false;
+            for (Runnable action; (action = fMailbox.poll()) != null; ) {
+                action.run();
+            }
+        }
+    }
+
+    /**
+     * Выполняет действие с памятью и возвращает его результат.
+     * Действие выполняется сразу, если память не имеет владельца или вызов сделан из потока владельца,
+     * иначе - владельцем между командами CPU (вызывающий поток ждет завершения действия).
+     *
+     * @param action действие
+     * @param <T>    тип результата
+     * @return результат действия
+     */
+    public <T> T call(final Supplier<T> action) {
+        final FutureTask<T> task;
+        synchronized (fMailbox) {
+            final Thread owner = fOwner;
+            if ((owner == null) || (owner == Thread.currentThread())) {
+                return action.get();
+            }
+            task  = new FutureTask<>(action::get);
+            fMailbox.add(task);
+            fMail = true;
+        }
+        boolean interrupted = false;
+        try {
+            for (; ; ) {
+                try {
+                    return task.get();
+                } catch (InterruptedException e) {
+                    // Действие уже в почтовом ящике - дожидаемся его выполнения
+                    interrupted = true;
+                } catch (ExecutionException e) {
+                    final Throwable cause = e.getCause();
+                    if (cause instanceof RuntimeException) {
+                        throw (RuntimeException) cause;
+                    }
+                    if (cause instanceof Error) {
+                        throw (Error) cause;
+                    }
+                    throw new IllegalStateException(cause);
+                }
+            }
+        } finally {
+            if (interrupted) {
+                // Restore the interrupted status
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Выполняет действие с памятью (см. call()).
+     *
+     * @param action действие
+     */
+    public void execute(final Runnable action) {
+        call(() -> {
+            action.run();
+            return null;
+        });
+    }
+
     @Override
     public int storageSize() {
         return STORAGE_SIZE;
@@ -83,14 +542,15 @@ public final class MemoryManager implements MemoryUnit {
      * @return считанный из запоминающего устройства байт (байт представлен как int)
      */
     @Override
-    public synchronized int readByte(int address) {
-        for (int i = 0, startAddress; (i < fSize) && ((startAddress = fAddresses[0][i]) <= address); i++) {
-            if (fAddresses[1][i] >= address) {
-                int value  = fMemoryUnits[i].readByte(address - startAddress);
-                if (value != -1) {
-                    return value & 0xFF;
-                }
+    public int readByte(int address) {
+        if ((address & ~(STORAGE_SIZE - 1)) == 0) {
+            final int offset = fDirectRead[address >> PAGE_SHIFT];
+            if (offset != NO_DIRECT) {
+                return fDirectMemory[offset + address] & 0xFF;
             }
+            final Entry entry = entry(address);
+            final int   value = entry.fUnit.readByte(address - entry.fBase);
+            return (value != -1) ? value & 0xFF : entry.readRest(address, false);
         }
         return 0xFF;
     }
@@ -105,14 +565,15 @@ public final class MemoryManager implements MemoryUnit {
      * @return считанный из запоминающего устройства байт (байт представлен как int)
      */
     @Override
-    public synchronized int debugReadByte(int address) {
-        for (int i = 0, startAddress; (i < fSize) && ((startAddress = fAddresses[0][i]) <= address); i++) {
-            if (fAddresses[1][i] >= address) {
-                int value  = fMemoryUnits[i].debugReadByte(address - startAddress);
-                if (value != -1) {
-                    return value & 0xFF;
-                }
+    public int debugReadByte(int address) {
+        if ((address & ~(STORAGE_SIZE - 1)) == 0) {
+            final int offset = fDirectRead[address >> PAGE_SHIFT];
+            if (offset != NO_DIRECT) {
+                return fDirectMemory[offset + address] & 0xFF;
             }
+            final Entry entry = entry(address);
+            final int   value = entry.fUnit.debugReadByte(address - entry.fBase);
+            return (value != -1) ? value & 0xFF : entry.readRest(address, true);
         }
         return 0xFF;
     }
@@ -124,6 +585,15 @@ public final class MemoryManager implements MemoryUnit {
      * @return считанное из запоминающего устройства слово
      */
     public int readWord(int address) {
+        // Слово внутри страницы прямого доступа читается из массива сразу
+        if (((address & ~(STORAGE_SIZE - 1)) == 0) && ((address & (PAGE_SIZE - 1)) != PAGE_SIZE - 1)) {
+            final int offset = fDirectRead[address >> PAGE_SHIFT];
+            if (offset != NO_DIRECT) {
+                final byte[] memory = fDirectMemory;
+                final int    index  = offset + address;
+                return (memory[index] & 0xFF) | ((memory[index + 1] & 0xFF) << 8);
+            }
+        }
         return readByte(address) | (readByte(address + 1) << 8);
     }
 
@@ -134,10 +604,19 @@ public final class MemoryManager implements MemoryUnit {
      * @param value   записываемый байт (байт представлен как int)
      */
     @Override
-    public synchronized void writeByte(int address, int value) {
-        for (int i = 0, startAddress; (i < fSize) && ((startAddress = fAddresses[0][i]) <= address); i++) {
-            if (fAddresses[1][i] >= address) {
-                fMemoryUnits[i].writeByte(address - startAddress, value & 0xFF);
+    public void writeByte(int address, int value) {
+        if ((address & ~(STORAGE_SIZE - 1)) == 0) {
+            final int offset = fDirectWrite[address >> PAGE_SHIFT];
+            if (offset != NO_DIRECT) {
+                fDirectMemory[offset + address] = (byte) value;
+                fDirectDirty .mark(offset + address);
+                return;
+            }
+            final Entry        entry = entry(address);
+            final MemoryUnit[] units = entry.fUnits;
+            final int[]        bases = entry.fBases;
+            for (int i = 0; i < units.length; i++) {
+                units[i].writeByte(address - bases[i], value & 0xFF);
             }
         }
     }
@@ -149,10 +628,112 @@ public final class MemoryManager implements MemoryUnit {
      * @param word    записываемое слово
      */
     public void writeWord(int address, int word) {
+        // Слово внутри страницы прямого доступа пишется в массив сразу
+        if (((address & ~(STORAGE_SIZE - 1)) == 0) && ((address & (PAGE_SIZE - 1)) != PAGE_SIZE - 1)) {
+            final int offset = fDirectWrite[address >> PAGE_SHIFT];
+            if (offset != NO_DIRECT) {
+                final byte[] memory = fDirectMemory;
+                final int    index  = offset + address;
+                memory[index    ] = (byte)  word;
+                memory[index + 1] = (byte) (word >> 8);
+                fDirectDirty.mark(index, 2);
+                return;
+            }
+        }
         writeByte(address, word);
         writeByte(address + 1, word >> 8);
     }
 
+    /**
+     * Читает блок байт, начиная с заданного адреса (блок не должен выходить за границу диапазона адресов 64K).
+     * Блок разбивается на участки с одинаковым набором устройств (по таблице страниц). Участок читается целиком
+     * из первого устройства, если оно отвечает на чтение всех его адресов, иначе - побайтно, как методом readByte()
+     * (устройства ввода/вывода без блочного чтения читаются побайтно).
+     *
+     * @param address заданный адрес
+     * @param buffer  буфер для считанных байт
+     * @param offset  смещение в буфере
+     * @param length  количество байт
+     * @return всегда true (на адреса без устройств возвращается 0xFF)
+     */
+    @Override
+    public boolean readBlock(int address, byte[] buffer, int offset, int length) {
+        readRange(address, buffer, offset, length, false);
+        return true;
+    }
+
+    /**
+     * Читает блок байт, начиная с заданного адреса, как методом readBlock(), но без влияния на устройства
+     * (как методом debugReadByte()).
+     * (Метод для вызова из отладчика и при сохранении памяти)
+     *
+     * @param address заданный адрес
+     * @param buffer  буфер для считанных байт
+     * @param offset  смещение в буфере
+     * @param length  количество байт
+     * @return всегда true (на адреса без устройств возвращается 0xFF)
+     */
+    @Override
+    public boolean debugReadBlock(int address, byte[] buffer, int offset, int length) {
+        readRange(address, buffer, offset, length, true);
+        return true;
+    }
+
+    /**
+     * Читает блок байт по участкам с одинаковым набором устройств.
+     *
+     * @param address заданный адрес
+     * @param buffer  буфер для считанных байт
+     * @param offset  смещение в буфере
+     * @param length  количество байт
+     * @param debug   true = чтение без влияния на устройства
+     */
+    private void readRange(int address, final byte[] buffer, int offset, final int length, final boolean debug) {
+        final Entry[] pages = fPages;
+        for (int end = Math.min(address + length, STORAGE_SIZE); address < end; ) {
+            final Entry entry = entry(address);
+            // Конец участка: однородные страницы проходятся целиком, остальные - по адресам
+            int next = address;
+            do {
+                next = (pages[next >> PAGE_SHIFT].fFine == null) ? (next | (PAGE_SIZE - 1)) + 1 : next + 1;
+            } while ((next < end) && (entry(next) == entry));
+            next = Math.min(next, end);
+
+            final int count = next - address;
+            final int unitAddress = address - entry.fBase;
+            if (!(debug ? entry.fUnit.debugReadBlock(unitAddress, buffer, offset, count)
+                        : entry.fUnit.     readBlock(unitAddress, buffer, offset, count))) {
+                for (int i = 0; i < count; i++) {
+                    buffer[offset + i] = (byte) (debug ? debugReadByte(address + i) : readByte(address + i));
+                }
+            }
+            offset += count;
+            address = next;
+        }
+    }
+
+    /**
+     * Записывает блок байт, начиная с заданного адреса, в запоминающее устройство/устройства
+     * (блок не должен выходить за границу диапазона адресов 64K).
+     * Каждое устройство получает одним вызовом свою часть блока.
+     *
+     * @param address заданный адрес
+     * @param buffer  буфер с записываемыми байтами
+     * @param offset  смещение в буфере
+     * @param length  количество байт
+     */
+    @Override
+    public void writeBlock(int address, byte[] buffer, int offset, int length) {
+        final int endAddress = address + length - 1;
+        for (int i = 0, startAddress; (i < fSize) && ((startAddress = fAddresses[0][i]) <= endAddress); i++) {
+            if (fAddresses[1][i] >= address) {
+                final int from = Math.max(address   , startAddress     );
+                final int to   = Math.min(endAddress, fAddresses[1][i]);
+                fMemoryUnits[i].writeBlock(from - startAddress, buffer, offset + from - address, to - from + 1);
+            }
+        }
+    }
+
     /**
      * Сбрасывает запоминающие устройства в начальное состояние.
      *
@@ -10,6 +10,7 @@ import java.util.Map;
 import java.util.Objects;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Адресуемое устройство "Порт клавиатуры Specialist_MX на базе КР580ВВ55А (i8255A)".
@@ -255,6 +256,8 @@ public final class KeyboardPort implements MemoryUnit {
 
     private final AtomicBoolean fShiftKey;
     private final AtomicBoolean fKeyboardMode;
+    // Версия состояния клавиатуры (увеличивается при каждом изменении нажатых клавиш)
+    private final AtomicInteger fVersion;
 
     /**
      * Конструктор.
@@ -268,6 +271,7 @@ public final class KeyboardPort implements MemoryUnit {
 
         fShiftKey     = new AtomicBoolean(false);
         fKeyboardMode = new AtomicBoolean(false);
+        fVersion      = new AtomicInteger();
     }
 
     @Override
@@ -418,6 +422,7 @@ public final class KeyboardPort implements MemoryUnit {
         fPA = fPB = fPC = 0;
         fPR =   0b1001_1011; // режим 0, все порты на ввод
         fShiftKey.getAndSet(false);
+        fVersion.getAndIncrement();
         if (clear) {
             clearKeyBuffer();
         }
@@ -451,6 +456,7 @@ public final class KeyboardPort implements MemoryUnit {
      */
     public synchronized void setDefaultMode() {
         fPR = 0b1000_0010; // порт А - вывод, порт B - ввод, порт С3-С0 - вывод
+        fVersion.getAndIncrement();
     }
 
     /**
@@ -477,9 +483,21 @@ public final class KeyboardPort implements MemoryUnit {
     public void clearKeyBuffer() {
         if (!fKeyBuffer.isEmpty()) {
              fKeyBuffer.clear();
+               fVersion.getAndIncrement();
         }
     }
 
+    /**
+     * Возвращает версию состояния клавиатуры.
+     * Версия изменяется при каждом нажатии/отпускании клавиши (по ней детектор холостого цикла CPU определяет,
+     * что результаты чтения порта клавиатуры могли измениться).
+     *
+     * @return версия состояния клавиатуры
+     */
+    public int getVersion() {
+        return fVersion.get();
+    }
+
     /**
      * Принимает коды клавиш.
      *
@@ -490,7 +508,9 @@ public final class KeyboardPort implements MemoryUnit {
     public boolean keyCodeReceiver(final boolean flagKeyPressed, final KeyCode keyCode) {
         // Обработка клавиши Shift
         if (KeyCode.SHIFT.equals(keyCode)) {
-            fShiftKey.getAndSet(flagKeyPressed);
+            if (fShiftKey.getAndSet(flagKeyPressed) != flagKeyPressed) {
+                fVersion.getAndIncrement();
+            }
             return true;
         }
         // Обработка остальных клавиш
@@ -501,9 +521,10 @@ public final class KeyboardPort implements MemoryUnit {
         if (flagKeyPressed) {
             if (fKeyBuffer.indexOf(bitMask) == -1) {
                 fKeyBuffer.add    (bitMask);
+                  fVersion.getAndIncrement();
             }
-        } else {
-                fKeyBuffer.remove (bitMask);
+        } else if (fKeyBuffer.remove(bitMask)) {
+                  fVersion.getAndIncrement();
         }
         return true;
     }
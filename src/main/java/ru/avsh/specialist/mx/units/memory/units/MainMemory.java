@@ -1,17 +1,25 @@
 package ru.avsh.specialist.mx.units.memory.units;
 
-import ru.avsh.specialist.mx.units.types.MemoryUnit;
+import ru.avsh.specialist.mx.units.memory.DirtyPages;
+import ru.avsh.specialist.mx.units.types.DirectMemoryUnit;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
 import java.util.Arrays;
 import java.util.Objects;
 import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Адресуемое запоминающее устройство "Оперативная память 'Специалист MX'".
+ * <p>
+ * Страницы RAM-диска можно сохранять между сеансами в файле (см. setRamDiskFile()): файл загружается в RAM-диск
+ * при подключении, а при выходе из эмулятора в файл записываются только 256-байтные страницы RAM-диска,
+ * измененные с прошлого сохранения (см. saveRamDisk() и DirtyPages).
  *
  * @author -=AVSh=-
  */
-public final class MainMemory implements MemoryUnit {
+public final class MainMemory implements DirectMemoryUnit {
     private static final int STORAGE_SIZE     = 0xFFC0;
     private static final int ROM_DISK_SIZE    = 0xC000;
     private static final int MIN_NUMBER_PAGES =      2; // Минимальное  число страниц памяти: 0 - основная, 1   - RAM-диск (не считая ROM-диск)
@@ -20,13 +28,22 @@ public final class MainMemory implements MemoryUnit {
     // Номер ROM-диска для использования в методах getPage()/setPage()
     public static final int ROM_DISK = MAX_NUMBER_PAGES;
 
-    private final byte[] fRAM;
-    private final Screen fScreen;
-    private final int    fNumberPages;
+    private final byte[]     fRAM;
+    private final DirtyPages fDirty;
+    private final Screen     fScreen;
+    private final int        fNumberPages;
 
     private final AtomicInteger fCurrentPage;
     private final AtomicInteger fCurrentOffset;
 
+    // Файл, в который сохраняется RAM-диск (null = RAM-диск не сохраняется)
+    private File fRamDiskFile;
+    // Поколение измененных страниц, с которого RAM-диск не сохранен в файл (0 = не сохранен весь RAM-диск)
+    private int  fRamDiskGen;
+
+    // Слушатель смены страницы (диспетчер запоминающих устройств с прямым доступом к памяти)
+    private Runnable fMappingListener;
+
     /**
      * Конструктор.
      *
@@ -38,6 +55,7 @@ public final class MainMemory implements MemoryUnit {
         fNumberPages = numberPages;
              fScreen = screen;
                 fRAM = new byte[STORAGE_SIZE * numberPages + ROM_DISK_SIZE];
+              fDirty = new DirtyPages(fRAM.length);
 
         fCurrentPage   = new AtomicInteger(0);
         fCurrentOffset = new AtomicInteger(0);
@@ -66,16 +84,172 @@ public final class MainMemory implements MemoryUnit {
                 address += fCurrentOffset.get();
             }
             fRAM[address] = (byte) value;
+            fDirty.mark(address);
+        }
+    }
+
+    @Override
+    public boolean readBlock(int address, byte[] buffer, int offset, int length) {
+        final int ramOffset = fCurrentOffset.get();
+        if ((ramOffset < 0) || (address < 0) || (address + length > STORAGE_SIZE)) {
+            return DirectMemoryUnit.super.readBlock(address, buffer, offset, length);
+        }
+        // На странице ROM-диска адреса >= ROM_DISK_SIZE отображаются на страницу 0
+        final int split = (fCurrentPage.get() < fNumberPages) ? length : Math.max(Math.min(ROM_DISK_SIZE - address, length), 0);
+        if (split > 0) {
+            System.arraycopy(fRAM, address + ramOffset, buffer, offset, split);
+        }
+        if (split < length) {
+            System.arraycopy(fRAM, address + split, buffer, offset + split, length - split);
+        }
+        return true;
+    }
+
+    @Override
+    public boolean debugReadBlock(int address, byte[] buffer, int offset, int length) {
+        // Чтение памяти не имеет побочных эффектов
+        return readBlock(address, buffer, offset, length);
+    }
+
+    @Override
+    public void writeBlock(int address, byte[] buffer, int offset, int length) {
+        final int ramOffset = fCurrentOffset.get();
+        if ((ramOffset < 0) || (address < 0) || (address + length > STORAGE_SIZE)) {
+            DirectMemoryUnit.super.writeBlock(address, buffer, offset, length);
+            return;
+        }
+        // На странице ROM-диска адреса >= ROM_DISK_SIZE отображаются на страницу 0
+        final int split = (fCurrentPage.get() < fNumberPages) ? length : Math.max(Math.min(ROM_DISK_SIZE - address, length), 0);
+        if (split > 0) {
+            System.arraycopy(buffer, offset, fRAM, address + ramOffset, split);
+            fDirty.mark(address + ramOffset, split);
+        }
+        if (split < length) {
+            System.arraycopy(buffer, offset + split, fRAM, address + split, length - split);
+            fDirty.mark(address + split, length - split);
         }
     }
 
+    @Override
+    public byte[] getDirectMemory() {
+        return fRAM;
+    }
+
+    @Override
+    public int getDirectIndex(int address, int length) {
+        final int ramOffset = fCurrentOffset.get();
+        if ((ramOffset < 0) || (address < 0) || (address + length > STORAGE_SIZE)) {
+            return -1;
+        }
+        // На странице ROM-диска адреса >= ROM_DISK_SIZE отображаются на страницу 0
+        if ((fCurrentPage.get() < fNumberPages) || (address + length <= ROM_DISK_SIZE)) {
+            return ramOffset + address;
+        }
+        return (address >= ROM_DISK_SIZE) ? address : -1;
+    }
+
+    @Override
+    public DirtyPages getDirtyPages() {
+        return fDirty;
+    }
+
+    @Override
+    public void setMappingListener(Runnable listener) {
+        fMappingListener = listener;
+    }
+
     @Override
     public void reset(boolean clear) {
           fCurrentPage.getAndSet(0);
         fCurrentOffset.getAndSet(0);
         if (clear) {
-            Arrays.fill(fRAM, (byte) 0);
+            if (fRamDiskFile == null) {
+                Arrays.fill(fRAM, (byte) 0);
+                fDirty.markAll();
+            } else {
+                // Сохраняемый RAM-диск не очищается (и не помечается измененным)
+                final int romDisk = STORAGE_SIZE * fNumberPages;
+                Arrays.fill(fRAM, 0, STORAGE_SIZE, (byte) 0);
+                Arrays.fill(fRAM, romDisk, fRAM.length, (byte) 0);
+                fDirty.mark(0, STORAGE_SIZE);
+                fDirty.mark(romDisk, fRAM.length - romDisk);
+            }
+        }
+        mappingChanged();
+    }
+
+    /**
+     * Задает файл для сохранения страниц RAM-диска между сеансами. Содержимое файла загружается в RAM-диск
+     * (недостающая часть файла дополняется нулями). При ошибке чтения RAM-диск не сохраняется.
+     * (Метод нужно вызывать до запуска эмулятора)
+     *
+     * @param file файл RAM-диска
+     * @throws IOException исключение, возникающее при чтении файла
+     */
+    public synchronized void setRamDiskFile(File file) throws IOException {
+        fRamDiskFile = null;
+        final int length = getRamDiskSize();
+        Arrays.fill(fRAM, STORAGE_SIZE, STORAGE_SIZE + length, (byte) 0);
+        fDirty.mark(STORAGE_SIZE, length);
+        // Файл, не содержащий весь RAM-диск, при сохранении записывается целиком
+        fRamDiskGen = 0;
+        if (file.exists()) {
+            try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+                final long fileLength = raf.length();
+                raf.readFully(fRAM, STORAGE_SIZE, (int) Math.min(fileLength, length));
+                if (fileLength >= length) {
+                    fRamDiskGen = fDirty.advance();
+                }
+            }
         }
+        fRamDiskFile = file;
+    }
+
+    /**
+     * Записывает в файл RAM-диска страницы RAM-диска, измененные с прошлого сохранения (если файл задан).
+     * При ошибке записи страницы остаются несохраненными - их запишет следующий вызов метода.
+     * (Метод нужно вызывать в потоке-владельце памяти - см. MemoryManager.call())
+     *
+     * @throws IOException исключение, возникающее при записи файла
+     */
+    public synchronized void saveRamDisk() throws IOException {
+        final File file = fRamDiskFile;
+        if (file == null) {
+            return;
+        }
+        final int    length = getRamDiskSize();
+        final long[] bits   = new long[(((length + DirtyPages.PAGE_SIZE - 1) >> DirtyPages.PAGE_SHIFT) + 63) >> 6];
+        if (!fDirty.collect(fRamDiskGen, STORAGE_SIZE, length, bits)) {
+            return;
+        }
+        final int generation = fDirty.advance();
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            // Смежные измененные страницы записываются одним блоком
+            for (int page = 0, pages = bits.length << 6; page < pages; ) {
+                if ((bits[page >> 6] & (1L << page)) == 0) {
+                    page++;
+                    continue;
+                }
+                final int start = page;
+                do {
+                    page++;
+                } while ((page < pages) && ((bits[page >> 6] & (1L << page)) != 0));
+                final int offset = start << DirtyPages.PAGE_SHIFT;
+                final int count  = Math.min(page << DirtyPages.PAGE_SHIFT, length) - offset;
+                raf.seek (offset);
+                raf.write(fRAM, STORAGE_SIZE + offset, count);
+            }
+        }
+        fRamDiskGen = generation;
+    }
+
+    /**
+     * Возвращает размер RAM-диска (всех страниц памяти, кроме основной).
+     *
+     * @return размер RAM-диска в байтах
+     */
+    private int getRamDiskSize() {
+        return STORAGE_SIZE * (fNumberPages - 1);
     }
 
     @Override
@@ -121,6 +295,38 @@ public final class MainMemory implements MemoryUnit {
         if (fScreen != null) {
             fScreen.setEnable(fCurrentPage.get() == 0);
         }
+        mappingChanged();
+    }
+
+    /**
+     * Сообщает слушателю о смене страницы.
+     */
+    private void mappingChanged() {
+        final Runnable listener = fMappingListener;
+        if (listener != null) {
+            listener.run();
+        }
+    }
+
+    /**
+     * Формирует набор битов измененных 256-байтных страниц заданной страницы памяти (см. DirtyPages.collect()).
+     * Страница ROM-диска содержит только сам ROM-диск (адреса >= ROM_DISK_SIZE относятся к странице 0).
+     *
+     * @param pageNumber от 0-8 - страницы RAM, 9 или больше - страница ROM
+     * @param since      номер поколения (0 = все страницы считаются измененными)
+     * @param bits       набор битов (не менее 256 бит)
+     * @return true = есть измененные страницы
+     */
+    public boolean collectDirtyPages(int pageNumber, int since, long[] bits) {
+        if (pageNumber >= MAX_NUMBER_PAGES) {
+            return fDirty.collect(since, STORAGE_SIZE * fNumberPages, ROM_DISK_SIZE, bits);
+        }
+        if (pageNumber >= fNumberPages) {
+            // Страница отсутствует
+            Arrays.fill(bits, 0L);
+            return false;
+        }
+        return fDirty.collect(since, STORAGE_SIZE * Math.max(pageNumber, 0), STORAGE_SIZE, bits);
     }
 
     /**
@@ -549,6 +549,15 @@ public final class ProgrammableTimer implements MemoryUnit, ClockedUnit {
         return true;
     }
 
+    @Override
+    public void cycles(int count) {
+        if (!fPause) {
+            for (; count > 0; count--) {
+                cycle();
+            }
+        }
+    }
+
     @Override
     public int storageSize() {
         return STORAGE_SIZE;
@@ -85,6 +85,27 @@ public class Screen extends WritableImage implements MemoryUnit {
         }
     }
 
+    @Override
+    public void writeBlock(int address, byte[] buffer, int offset, int length) {
+        if (fEnable.get() && (address >= 0) && (address + length <= STORAGE_SIZE)) {
+            // Блок выводится одним обновлением - цвета и флаг изменений читаются один раз на весь блок
+            final byte fgColor = (byte) fFgColor.get();
+            final byte bgColor = (byte) fBgColor.get();
+            for (int i = 0; i < length; i++) {
+                final int value = buffer[offset + i];
+                final int addr  = address + i;
+                for (int idx  = (SCREEN_WIDTH * (addr & 0xFF)) + ((addr >> 5) & 0xFFFFFFF8),
+                         end  = idx + 8,
+                         mask = 0x80; idx < end; idx++, mask >>= 1) {
+                    fImageBuffer[idx] = ((value & mask) != 0) ? fgColor : bgColor;
+                }
+            }
+            fChanges.getAndSet(true);
+        } else {
+            MemoryUnit.super.writeBlock(address, buffer, offset, length);
+        }
+    }
+
     @Override
     public void reset(boolean clear) {
         setColor(DEFAULT_COLOR);
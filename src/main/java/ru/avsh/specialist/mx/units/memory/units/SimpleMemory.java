@@ -1,6 +1,7 @@
 package ru.avsh.specialist.mx.units.memory.units;
 
-import ru.avsh.specialist.mx.units.types.MemoryUnit;
+import ru.avsh.specialist.mx.units.memory.DirtyPages;
+import ru.avsh.specialist.mx.units.types.DirectMemoryUnit;
 
 import java.util.Arrays;
 import java.util.Objects;
@@ -10,9 +11,10 @@ import java.util.Objects;
  *
  * @author -=AVSh=-
  */
-public final class SimpleMemory implements MemoryUnit {
-    private final int fStorageSize;
-    private final byte[]      fRAM;
+public final class SimpleMemory implements DirectMemoryUnit {
+    private final int        fStorageSize;
+    private final byte[]     fRAM;
+    private final DirtyPages fDirty;
 
     /**
      * Конструктор.
@@ -20,8 +22,9 @@ public final class SimpleMemory implements MemoryUnit {
      * @param length длина
      */
     public SimpleMemory(int length) {
-        fStorageSize =  length;
-        fRAM = new byte[length];
+        fStorageSize = length;
+        fRAM         = new byte[length];
+        fDirty       = new DirtyPages(length);
     }
 
     @Override
@@ -41,13 +44,54 @@ public final class SimpleMemory implements MemoryUnit {
     public void writeByte(int address, int value) {
         if (address >= 0 && address < fStorageSize) {
             fRAM[address] = (byte) value;
+            fDirty.mark(address);
         }
     }
 
+    @Override
+    public boolean readBlock(int address, byte[] buffer, int offset, int length) {
+        if ((address >= 0) && (address + length <= fStorageSize)) {
+            System.arraycopy(fRAM, address, buffer, offset, length);
+            return true;
+        }
+        return DirectMemoryUnit.super.readBlock(address, buffer, offset, length);
+    }
+
+    @Override
+    public boolean debugReadBlock(int address, byte[] buffer, int offset, int length) {
+        return readBlock(address, buffer, offset, length);
+    }
+
+    @Override
+    public void writeBlock(int address, byte[] buffer, int offset, int length) {
+        if ((address >= 0) && (address + length <= fStorageSize)) {
+            System.arraycopy(buffer, offset, fRAM, address, length);
+            fDirty.mark(address, length);
+        } else {
+            DirectMemoryUnit.super.writeBlock(address, buffer, offset, length);
+        }
+    }
+
+    @Override
+    public byte[] getDirectMemory() {
+        return fRAM;
+    }
+
+    @Override
+    public int getDirectIndex(int address, int length) {
+        return ((address >= 0) && (address + length <= fStorageSize)) ? address : -1;
+    }
+
+    @Override
+    public DirtyPages getDirtyPages() {
+        return fDirty;
+    }
+
     @Override
     public void reset(boolean clear) {
         if (clear) {
             Arrays.fill(fRAM, (byte) 0);
+            fDirty.markAll();
         }
     }
 
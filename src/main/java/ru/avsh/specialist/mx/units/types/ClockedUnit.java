@@ -12,4 +12,16 @@ public interface ClockedUnit extends Unit {
      * @return true/false - конечное/промежуточное состояние устройства
      */
     boolean cycle();
+
+    /**
+     * Выполняет заданное количество тактов подряд.
+     * (Используется тактовым генератором в быстром режиме, когда CPU выполняет команду целиком)
+     *
+     * @param count количество тактов
+     */
+    default void cycles(int count) {
+        for (; count > 0; count--) {
+            cycle();
+        }
+    }
 }
@@ -0,0 +1,49 @@
+package ru.avsh.specialist.mx.units.types;
+
+import ru.avsh.specialist.mx.units.memory.DirtyPages;
+
+/**
+ * Интерфейс "Запоминающее устройство с прямым доступом" - устройство, байты которого хранятся в массиве.
+ * Диспетчер запоминающих устройств читает/пишет такие байты прямо в массиве, минуя вызовы методов устройства,
+ * поэтому устройство должно сообщать ему об изменении отображения адресов на массив (например, о смене страницы).
+ *
+ * @author -=AVSh=-
+ */
+public interface DirectMemoryUnit extends MemoryUnit {
+    /**
+     * Возвращает массив, в котором хранятся байты устройства.
+     *
+     * @return массив
+     */
+    byte[] getDirectMemory();
+
+    /**
+     * Возвращает индекс в массиве для заданного диапазона адресов при текущем отображении адресов
+     * (адрес всегда относительный). Диапазон должен отображаться на массив непрерывно, а чтение/запись
+     * его байт не должны иметь побочных эффектов.
+     *
+     * @param address относительный адрес начала диапазона
+     * @param length  длина диапазона
+     * @return индекс байта по адресу address (-1 = диапазон не отображается на массив непрерывно)
+     */
+    int getDirectIndex(int address, int length);
+
+    /**
+     * Возвращает отслеживание измененных страниц массива. При прямой записи в массив диспетчер запоминающих
+     * устройств помечает страницы сам.
+     *
+     * @return измененные страницы (null = изменения не отслеживаются)
+     */
+    default DirtyPages getDirtyPages() {
+        return null;
+    }
+
+    /**
+     * Устанавливает слушателя изменений отображения адресов на массив.
+     *
+     * @param listener слушатель (null = нет слушателя)
+     */
+    default void setMappingListener(Runnable listener) {
+        // Отображение адресов не изменяется
+    }
+}
@@ -41,4 +41,63 @@ public interface MemoryUnit extends Unit {
      * @param value   записываемый байт (байт представлен как int)
      */
     void writeByte(int address, int value);
+
+    /**
+     * Читает блок байт из запоминающего устройства (адрес всегда относительный).
+     * Реализация по умолчанию читает байты по одному - устройства с непрерывным буфером памяти могут ее переопределить.
+     *
+     * @param address относительный адрес начала блока
+     * @param buffer  буфер для считанных байт
+     * @param offset  смещение в буфере
+     * @param length  количество байт
+     * @return true - прочитаны все байты блока, false - устройство не отвечает на чтение хотя бы одного адреса блока
+     */
+    default boolean readBlock(int address, byte[] buffer, int offset, int length) {
+        for (int i = 0; i < length; i++) {
+            int value  = readByte(address + i);
+            if (value == -1) {
+                return false;
+            }
+            buffer[offset + i] = (byte) value;
+        }
+        return true;
+    }
+
+    /**
+     * Читает блок байт из запоминающего устройства (адрес всегда относительный).
+     * (Метод для вызова из отладчика и при сохранении памяти - минимизирует влияние на работу запоминающего устройства)
+     * Реализация по умолчанию читает байты по одному методом debugReadByte().
+     *
+     * @param address относительный адрес начала блока
+     * @param buffer  буфер для считанных байт
+     * @param offset  смещение в буфере
+     * @param length  количество байт
+     * @return true - прочитаны все байты блока, false - устройство не отвечает на чтение хотя бы одного адреса блока
+     */
+    default boolean debugReadBlock(int address, byte[] buffer, int offset, int length) {
+        for (int i = 0; i < length; i++) {
+            int value  = debugReadByte(address + i);
+            if (value == -1) {
+                return false;
+            }
+            buffer[offset + i] = (byte) value;
+        }
+        return true;
+    }
+
+    /**
+     * Записывает блок байт в запоминающее устройство (адрес всегда относительный).
+     * Реализация по умолчанию записывает байты по одному - устройства могут ее переопределить
+     * (например, для однократного обновления изображения на весь блок).
+     *
+     * @param address относительный адрес начала блока
+     * @param buffer  буфер с записываемыми байтами
+     * @param offset  смещение в буфере
+     * @param length  количество байт
+     */
+    default void writeBlock(int address, byte[] buffer, int offset, int length) {
+        for (int i = 0; i < length; i++) {
+            writeByte(address + i, buffer[offset + i] & 0xFF);
+        }
+    }
 }
\ No newline at end of file
@@ -0,0 +1,181 @@
+package ru.avsh.specialist.mx;
+
+import org.jetbrains.annotations.NotNull;
+import org.junit.Test;
+import ru.avsh.specialist.mx.units.CPUi8080;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+
+/**
+ * Тест "Проверка размера байт-кода методов".
+ * Проверяет class-файлы эмулятора (target/classes) и не проходит, если размер байт-кода какого-либо метода
+ * превышает предел. Методы больше 8000 байт (-XX:HugeMethodLimit) HotSpot не компилирует вовсе,
+ * поэтому такой метод в цикле эмуляции CPU навсегда остается в интерпретаторе.
+ *
+ * @author -=AVSh=-
+ */
+public class MethodSizeCheckTest {
+    // Предел размера байт-кода метода (-XX:HugeMethodLimit)
+    private static final int LIMIT = 8000;
+
+    // Теги элементов пула констант class-файла
+    private static final int CONSTANT_UTF8                = 1;
+    private static final int CONSTANT_INTEGER             = 3;
+    private static final int CONSTANT_FLOAT               = 4;
+    private static final int CONSTANT_LONG                = 5;
+    private static final int CONSTANT_DOUBLE              = 6;
+    private static final int CONSTANT_CLASS               = 7;
+    private static final int CONSTANT_STRING              = 8;
+    private static final int CONSTANT_FIELD_REF           = 9;
+    private static final int CONSTANT_METHOD_REF          = 10;
+    private static final int CONSTANT_INTERFACE_REF       = 11;
+    private static final int CONSTANT_NAME_AND_TYPE       = 12;
+    private static final int CONSTANT_METHOD_HANDLE       = 15;
+    private static final int CONSTANT_METHOD_TYPE         = 16;
+    private static final int CONSTANT_DYNAMIC             = 17;
+    private static final int CONSTANT_INVOKE_DYNAMIC      = 18;
+    private static final int CONSTANT_MODULE              = 19;
+    private static final int CONSTANT_PACKAGE             = 20;
+
+    @Test
+    public void methodsFitHugeMethodLimit() throws IOException, URISyntaxException {
+        // Каталог class-файлов эмулятора (не тестов) - там, откуда загружен класс CPU
+        final Path dir = Paths.get(CPUi8080.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+
+        final List<Path> classFiles;
+        try (Stream<Path> stream = Files.walk(dir)) {
+            classFiles = stream.filter(path -> path.toString().endsWith(".class")).collect(Collectors.toList());
+        }
+
+        final List<String> violations = new ArrayList<>();
+        for (Path path : classFiles) {
+            try (InputStream is = new BufferedInputStream(Files.newInputStream(path))) {
+                violations.addAll(check(dir.relativize(path).toString(), is, LIMIT));
+            }
+        }
+
+        assertFalse("Не найдены class-файлы в каталоге: " + dir, classFiles.isEmpty());
+        if (!violations.isEmpty()) {
+            fail(String.format("Размер байт-кода превышает %d байт:%n%s",
+                    LIMIT, String.join(System.lineSeparator(), violations)));
+        }
+    }
+
+    /**
+     * Проверяет размер байт-кода методов одного class-файла.
+     *
+     * @param name  имя class-файла (для сообщений)
+     * @param is    поток class-файла
+     * @param limit предел размера байт-кода метода
+     * @return список методов, превышающих предел
+     * @throws IOException при ошибке чтения
+     */
+    @NotNull
+    private static List<String> check(final String name, final InputStream is, final int limit) throws IOException {
+        final List<String>    result = new ArrayList<>();
+        final DataInputStream in     = new DataInputStream(is);
+
+        if (in.readInt() != 0xCAFEBABE) {
+            throw new IOException(name.concat(" - не является class-файлом"));
+        }
+        in.readUnsignedShort(); // minor_version
+        in.readUnsignedShort(); // major_version
+
+        // Пул констант (нужны только строки UTF8 для имен методов и атрибутов)
+        final int      count = in.readUnsignedShort();
+        final String[] utf8  = new String[count];
+        for (int index = 1; index < count; index++) {
+            final int tag = in.readUnsignedByte();
+            switch (tag) {
+                case CONSTANT_UTF8:
+                    utf8[index] = in.readUTF();
+                    break;
+                case CONSTANT_LONG:
+                case CONSTANT_DOUBLE:
+                    in.skipBytes(8);
+                    index++; // Занимают два элемента пула
+                    break;
+                case CONSTANT_INTEGER:
+                case CONSTANT_FLOAT:
+                case CONSTANT_FIELD_REF:
+                case CONSTANT_METHOD_REF:
+                case CONSTANT_INTERFACE_REF:
+                case CONSTANT_NAME_AND_TYPE:
+                case CONSTANT_DYNAMIC:
+                case CONSTANT_INVOKE_DYNAMIC:
+                    in.skipBytes(4);
+                    break;
+                case CONSTANT_METHOD_HANDLE:
+                    in.skipBytes(3);
+                    break;
+                case CONSTANT_CLASS:
+                case CONSTANT_STRING:
+                case CONSTANT_METHOD_TYPE:
+                case CONSTANT_MODULE:
+                case CONSTANT_PACKAGE:
+                    in.skipBytes(2);
+                    break;
+                default:
+                    throw new IOException(String.format("%s - неизвестный тег пула констант: %d", name, tag));
+            }
+        }
+
+        in.skipBytes(6); // access_flags, this_class, super_class
+        in.skipBytes(in.readUnsignedShort() * 2); // interfaces
+
+        // Поля
+        for (int fields = in.readUnsignedShort(); fields > 0; fields--) {
+            in.skipBytes(6);
+            skipAttributes(in);
+        }
+
+        // Методы
+        for (int methods = in.readUnsignedShort(); methods > 0; methods--) {
+            in.skipBytes(2);
+            final String methodName = utf8[in.readUnsignedShort()];
+            final String descriptor = utf8[in.readUnsignedShort()];
+            for (int attributes = in.readUnsignedShort(); attributes > 0; attributes--) {
+                final String attrName   = utf8[in.readUnsignedShort()];
+                final int    attrLength = in.readInt();
+                if ("Code".equals(attrName)) {
+                    in.skipBytes(4); // max_stack, max_locals
+                    final int codeLength = in.readInt();
+                    if (codeLength > limit) {
+                        result.add(String.format("  %s: %s%s - %d байт", name, methodName, descriptor, codeLength));
+                    }
+                    in.skipBytes(attrLength - 8);
+                } else {
+                    in.skipBytes(attrLength);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Пропускает таблицу атрибутов.
+     *
+     * @param in поток class-файла
+     * @throws IOException при ошибке чтения
+     */
+    private static void skipAttributes(final DataInputStream in) throws IOException {
+        for (int attributes = in.readUnsignedShort(); attributes > 0; attributes--) {
+            in.skipBytes(2);
+            in.skipBytes(in.readInt());
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package ru.avsh.specialist.mx.units;
+
+import org.junit.Before;
+import org.junit.Test;
+import ru.avsh.specialist.mx.units.memory.MemoryManager;
+import ru.avsh.specialist.mx.units.memory.units.SimpleMemory;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Тест "Битовая карта адресов, занятых блоками кода" - снятие пометки при сбросе блоков.
+ * <p>
+ * Программа "NOP; NOP; NOP; NOP; JMP 0100" декодируется кэшем блоков кода с разных адресов и на разных страницах
+ * памяти. После записи в блок адреса сброшенных блоков перестают считаться кодом, кроме адресов, занятых
+ * оставшимися блоками той же или другой страницы (карта общая для всех страниц).
+ *
+ * @author -=AVSh=-
+ */
+public class BlockCacheTest {
+    // Адрес программы и адрес, следующий за ней
+    private static final int ORIGIN = 0x0100;
+    private static final int END    = ORIGIN + 7;
+
+    private final int[] fPage = new int[1];
+
+    private CPUi8080   fCPU  ;
+    private BlockCache fCache;
+
+    @Before
+    public void setUp() {
+        final MemoryManager memManager = new MemoryManager();
+        final SimpleMemory  memory     = new SimpleMemory(0x1_0000);
+        memManager.addMemoryUnit(0x0000, memory);
+        final int[] program = {0x00, 0x00, 0x00, 0x00, 0xC3, ORIGIN & 0xFF, ORIGIN >> 8};
+        for (int i = 0; i < program.length; i++) {
+            memory.writeByte(ORIGIN + i, program[i]);
+        }
+        fCPU   = new CPUi8080(() -> fPage[0], new ClockSpeedGenerator(), memManager, null);
+        fCache = new BlockCache(fCPU, () -> fPage[0], memManager);
+    }
+
+    /**
+     * Декодирует (и выполняет) блок с заданного адреса на заданной странице памяти.
+     *
+     * @param page    номер страницы памяти
+     * @param address начальный адрес блока
+     */
+    private void decode(final int page, final int address) {
+        fPage[0] = page;
+        fCPU.fPC = address;
+        fCache.exec();
+    }
+
+    /**
+     * Записывает в память (сообщает кэшу о записи) на заданной странице памяти.
+     *
+     * @param page    номер страницы памяти
+     * @param address адрес записи
+     */
+    private void written(final int page, final int address) {
+        fPage[0] = page;
+        fCache.written(address);
+    }
+
+    /**
+     * Возвращает адреса программы, занятые блоками кода, в виде строки ("+" - занят, "." - свободен).
+     *
+     * @return строка
+     */
+    private String code() {
+        final StringBuilder result = new StringBuilder();
+        for (int address = ORIGIN - 1; address <= END; address++) {
+            result.append(fCache.isCode(address) ? '+' : '.');
+        }
+        return result.toString();
+    }
+
+    /**
+     * Сброс блока оставляет помеченными адреса соседнего блока той же страницы.
+     */
+    @Test
+    public void neighbourOnSamePage() {
+        decode(0, ORIGIN    );
+        decode(0, ORIGIN + 4);
+        assertEquals(".+++++++.", code());
+
+        // Запись в первые команды сбрасывает только первый блок
+        written(0, ORIGIN + 1);
+        assertEquals(".....+++.", code());
+
+        written(0, ORIGIN + 5);
+        assertEquals(".........", code());
+    }
+
+    /**
+     * Сброс блока оставляет помеченными адреса блока другой страницы, а запись в свободный адрес ничего не меняет.
+     */
+    @Test
+    public void blockOnOtherPage() {
+        decode(0, ORIGIN    );
+        decode(1, ORIGIN + 2);
+        assertEquals(".+++++++.", code());
+
+        written(0, ORIGIN);
+        assertEquals("...+++++.", code());
+
+        // На странице 0 блоков больше нет - карта не меняется
+        written(0, ORIGIN + 3);
+        assertEquals("...+++++.", code());
+
+        written(1, ORIGIN + 6);
+        assertEquals(".........", code());
+    }
+}
@@ -0,0 +1,377 @@
+package ru.avsh.specialist.mx.units;
+
+import org.junit.Test;
+import ru.avsh.specialist.mx.units.memory.MemoryManager;
+import ru.avsh.specialist.mx.units.types.MemoryUnit;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Тест "Компилятор блоков кода" - сверка скомпилированных блоков с интерпретатором.
+ * <p>
+ * Каждая программа выполняется кандидатом (кэш блоков кода с компиляцией) больше HOT_THRESHOLD раз, чтобы ее блоки
+ * были скомпилированы, и эталоном (интерпретатор). После каждого вызова кандидата эталон догоняет его по тактам,
+ * в этой точке сверяются регистры и флаги, в конце прогона - вся память. Программы нацелены на анализ живости флагов:
+ * флаги, определенные до выхода из блока по Jcc/Ccc/Rcc/JMP, до выхода интерпретатору перед обращением к области
+ * устройств ввода/вывода (по M, стеку или постоянному адресу) и флаги, частично переопределенные командами INR/DCR.
+ * <p>
+ * Случайные блоки проверяет короткий прогон дифференциального фаззера CPU (полный прогон - профиль fuzz).
+ *
+ * @author -=AVSh=-
+ */
+public class BlockCompilerTest {
+    // Адрес загрузки программ
+    private static final int    ORIGIN       = 0x0100;
+    // Прогонов программы: до компиляции блоков и после нее
+    private static final int    RUNS         = BlockCache.HOT_THRESHOLD + 50;
+    // Предел тактов одного прогона (защита от зацикливания)
+    private static final int    MAX_CYCLES   = 100_000;
+    // Флаги по умолчанию SZ0A_0P1C и маска изменяемых флагов
+    private static final int    FLAGS_DEFAULT = 0b0000_0010;
+    private static final int    FLAGS_MASK    = 0b1101_0101;
+    // Префикс имен классов скомпилированных блоков
+    private static final String COMPILED     = "ru.avsh.specialist.mx.units.CompiledBlock_";
+
+    /**
+     * Класс "Память теста" - RAM 64 Кб, отмечающая обращения из скомпилированных блоков.
+     */
+    private static final class Ram implements MemoryUnit {
+        private final byte[] fData = new byte[0x1_0000];
+        // true = проверять, выполняется ли обращение из скомпилированного блока
+        private boolean fProbe;
+        // true = было обращение из скомпилированного блока
+        private boolean fCompiled;
+
+        @Override
+        public int storageSize() {
+            return fData.length;
+        }
+
+        @Override
+        public int readByte(final int address) {
+            probe();
+            return fData[address] & 0xFF;
+        }
+
+        @Override
+        public void writeByte(final int address, final int value) {
+            probe();
+            fData[address] = (byte) value;
+        }
+
+        private void probe() {
+            if (fProbe && !fCompiled) {
+                for (StackTraceElement element : new Throwable().getStackTrace()) {
+                    if (element.getClassName().startsWith(COMPILED)) {
+                        fCompiled = true;
+                        break;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Класс "Машина теста" - CPU и память без графического интерфейса.
+     */
+    private static final class Machine {
+        private final Ram      fRam;
+        private final CPUi8080 fCPU;
+
+        /**
+         * Конструктор.
+         *
+         * @param gen     тактовый генератор (только счетчик тактов, не запускается)
+         * @param program программа
+         * @param compile true = кэш блоков кода с компиляцией, false = интерпретатор
+         */
+        Machine(final ClockSpeedGenerator gen, final int[] program, final boolean compile) {
+            final MemoryManager memManager = new MemoryManager();
+            fRam = new Ram();
+            for (int i = 0; i < program.length; i++) {
+                fRam.fData[ORIGIN + i] = (byte) program[i];
+            }
+            memManager.addMemoryUnit(0x0000, fRam);
+            fCPU = new CPUi8080(() -> 0, gen, memManager, null);
+            if (compile) {
+                fCPU.setBlockCompiler(true);
+                fCPU.setBlockCache   (true);
+            }
+        }
+
+        void set(final int[] regs) {
+            fCPU.fA  = regs[0];
+            fCPU.fF  = regs[1];
+            fCPU.fBC = regs[2];
+            fCPU.fDE = regs[3];
+            fCPU.fHL = regs[4];
+            fCPU.fSP = regs[5];
+            fCPU.fPC = regs[6];
+        }
+
+        int[] get() {
+            return new int[]{fCPU.fA, fCPU.fF, fCPU.fBC, fCPU.fDE, fCPU.fHL, fCPU.fSP, fCPU.fPC};
+        }
+    }
+
+    /**
+     * Флаги арифметики определены до JMP, читаются в следующем блоке (INR сохраняет C, PUSH PSW читает все).
+     */
+    @Test
+    public void flagsLiveAfterJmp() {
+        check("JMP", 0x010B,
+                0x31, 0x00, 0x02,   // 0100 LXI SP,0200
+                0x80,               // 0103 ADD B
+                0x4F,               // 0104 MOV C,A
+                0xC3, 0x09, 0x01,   // 0105 JMP 0109
+                0x00,               // 0108 NOP
+                0x0C,               // 0109 INR C
+                0xF5,               // 010A PUSH PSW
+                0x76);              // 010B HLT
+    }
+
+    /**
+     * Jcc на выходе из блока читает флаг C, определенный до DCR (DCR переопределяет только S, Z, AC, P).
+     */
+    @Test
+    public void jccAfterPartialDefinition() {
+        check("Jcc", 0x010E,
+                0x31, 0x00, 0x02,   // 0100 LXI SP,0200
+                0x91,               // 0103 SUB C
+                0x15,               // 0104 DCR D
+                0xDA, 0x0C, 0x01,   // 0105 JC 010C
+                0x3C,               // 0108 INR A
+                0xC3, 0x0C, 0x01,   // 0109 JMP 010C
+                0x17,               // 010C RAL
+                0xF5,               // 010D PUSH PSW
+                0x76);              // 010E HLT
+    }
+
+    /**
+     * Rcc на выходе из блока: при возврате флаги CMP живы до RAR вызывающего блока, иначе переопределяются.
+     */
+    @Test
+    public void rccAtBlockExit() {
+        check("Rcc", 0x0108,
+                0x31, 0x00, 0x02,   // 0100 LXI SP,0200
+                0xCD, 0x0B, 0x01,   // 0103 CALL 010B
+                0x1F,               // 0106 RAR
+                0xF5,               // 0107 PUSH PSW
+                0x76,               // 0108 HLT
+                0x00, 0x00,         // 0109
+                0xB8,               // 010B CMP B
+                0xC0,               // 010C RNZ
+                0xA9,               // 010D XRA C
+                0x37,               // 010E STC
+                0xC9);              // 010F RET
+    }
+
+    /**
+     * Ccc на выходе из блока, флаги CMP читаются после возврата.
+     */
+    @Test
+    public void cccAtBlockExit() {
+        check("Ccc", 0x0109,
+                0x31, 0x00, 0x02,   // 0100 LXI SP,0200
+                0xB9,               // 0103 CMP C
+                0xDC, 0x0B, 0x01,   // 0104 CC 010B
+                0x9F,               // 0107 SBB A
+                0xF5,               // 0108 PUSH PSW
+                0x76,               // 0109 HLT
+                0x00,               // 010A
+                0x04,               // 010B INR B
+                0xC9);              // 010C RET
+    }
+
+    /**
+     * Выход интерпретатору перед MOV E,M, если HL указывает в область устройств ввода/вывода: флаги ADD и INR
+     * после выхода переопределяет SUB E, поэтому вычислять их к выходу требует только возможность выхода.
+     */
+    @Test
+    public void bailOutOnMemory() {
+        check("M", 0x010B,
+                0x31, 0x00, 0x02,   // 0100 LXI SP,0200
+                0x80,               // 0103 ADD B
+                0x26, 0xFF,         // 0104 MVI H,FF
+                0x6A,               // 0106 MOV L,D
+                0x3C,               // 0107 INR A
+                0x5E,               // 0108 MOV E,M
+                0x93,               // 0109 SUB E
+                0xF5,               // 010A PUSH PSW
+                0x76);              // 010B HLT
+    }
+
+    /**
+     * Выход интерпретатору перед PUSH, если стек попадает в область устройств ввода/вывода
+     * (флаги SUB после выхода переопределяет XRA).
+     */
+    @Test
+    public void bailOutOnPush() {
+        check("PUSH", 0x0109,
+                0x26, 0xFF,         // 0100 MVI H,FF
+                0x6A,               // 0102 MOV L,D
+                0xF9,               // 0103 SPHL
+                0x90,               // 0104 SUB B
+                0xC5,               // 0105 PUSH B
+                0xAF,               // 0106 XRA A
+                0xF5,               // 0107 PUSH PSW
+                0xE1,               // 0108 POP H
+                0x76);              // 0109 HLT
+    }
+
+    /**
+     * Выход интерпретатору перед POP, если стек находится в области устройств ввода/вывода
+     * (флаги ANA после выхода переопределяет ORA).
+     */
+    @Test
+    public void bailOutOnPop() {
+        check("POP", 0x0109,
+                0x26, 0xFF,         // 0100 MVI H,FF
+                0x6A,               // 0102 MOV L,D
+                0xF9,               // 0103 SPHL
+                0xA0,               // 0104 ANA B
+                0xE1,               // 0105 POP H
+                0xB4,               // 0106 ORA H
+                0xF5,               // 0107 PUSH PSW
+                0xD1,               // 0108 POP D
+                0x76);              // 0109 HLT
+    }
+
+    /**
+     * RET на выходе из блока со стеком в области устройств ввода/вывода (выход интерпретатору перед RET).
+     */
+    @Test
+    public void bailOutOnRet() {
+        check("RET", 0x010E,
+                0x26, 0xFF,         // 0100 MVI H,FF
+                0x6A,               // 0102 MOV L,D
+                0xF9,               // 0103 SPHL
+                0x21, 0x0C, 0x01,   // 0104 LXI H,010C
+                0xE5,               // 0107 PUSH H
+                0xA0,               // 0108 ANA B
+                0xC9,               // 0109 RET
+                0x00, 0x00,         // 010A
+                0x9F,               // 010C SBB A
+                0xF5,               // 010D PUSH PSW
+                0x76);              // 010E HLT
+    }
+
+    /**
+     * Блок заканчивается перед записью по постоянному адресу в области устройств ввода/вывода.
+     */
+    @Test
+    public void blockEndsBeforeIoAddress() {
+        check("STA", 0x0109,
+                0x31, 0x00, 0x02,   // 0100 LXI SP,0200
+                0x88,               // 0103 ADC B
+                0x32, 0xC5, 0xFF,   // 0104 STA FFC5
+                0x1F,               // 0107 RAR
+                0xF5,               // 0108 PUSH PSW
+                0x76);              // 0109 HLT
+    }
+
+    /**
+     * Мертвые флаги (переопределяются следующей командой) и флаги, читаемые ADC, SBB, DAA, CMC, RAL.
+     */
+    @Test
+    public void deadAndReadFlags() {
+        check("DAA", 0x010E,
+                0x31, 0x00, 0x02,   // 0100 LXI SP,0200
+                0x80,               // 0103 ADD B
+                0x91,               // 0104 SUB C
+                0xA2,               // 0105 ANA D
+                0xB3,               // 0106 ORA E
+                0x8A,               // 0107 ADC D
+                0x27,               // 0108 DAA
+                0x9B,               // 0109 SBB E
+                0x27,               // 010A DAA
+                0x3F,               // 010B CMC
+                0x17,               // 010C RAL
+                0xF5,               // 010D PUSH PSW
+                0x76);              // 010E HLT
+    }
+
+    /**
+     * Цикл (не сворачиваемый в идиому): флаги DCR на JNZ, флаг C - через итерации цикла.
+     */
+    @Test
+    public void loopBack() {
+        check("JNZ", 0x010D,
+                0x31, 0x00, 0x02,   // 0100 LXI SP,0200
+                0x16, 0x08,         // 0103 MVI D,8
+                0x81,               // 0105 ADD C
+                0x1F,               // 0106 RAR
+                0xA8,               // 0107 XRA B
+                0x15,               // 0108 DCR D
+                0xC2, 0x05, 0x01,   // 0109 JNZ 0105
+                0xF5,               // 010C PUSH PSW
+                0x76);              // 010D HLT
+    }
+
+    /**
+     * Случайные блоки - короткий прогон дифференциального фаззера CPU.
+     */
+    @Test
+    public void randomBlocks() {
+        CpuFuzzer.main(new String[]{"100", "1", "compiler"});
+    }
+
+    /**
+     * Выполняет программу на эталоне и кандидате со случайными регистрами и сверяет их состояние.
+     *
+     * @param name    имя программы
+     * @param stop    адрес завершения программы
+     * @param program программа
+     */
+    private static void check(final String name, final int stop, final int... program) {
+        final ClockSpeedGenerator gen  = new ClockSpeedGenerator();
+        final Machine             ref  = new Machine(gen, program, false);
+        final Machine             cand = new Machine(gen, program, true );
+        for (int run = 0; run < RUNS; run++) {
+            final Random random = new Random(run);
+            final int[]  regs   = {random.nextInt(0x100), (random.nextInt(0x100) & FLAGS_MASK) | FLAGS_DEFAULT,
+                    random.nextInt(0x1_0000), random.nextInt(0x1_0000), random.nextInt(0x1_0000), 0x0200, ORIGIN};
+            ref .set(regs);
+            cand.set(regs);
+            cand.fRam.fProbe = run >= BlockCache.HOT_THRESHOLD;
+
+            long refCycles  = 0;
+            long candCycles = 0;
+            while (cand.fCPU.fPC != stop) {
+                final int pc     = cand.fCPU.fPC;
+                final int cycles = cand.fCPU.execCmd();
+                if ((cycles <= 0) || (candCycles += cycles) > MAX_CYCLES) {
+                    fail(String.format("%s, прогон %d: кандидат не завершил программу (PC=%04X)", name, run, pc));
+                }
+                while (refCycles < candCycles) {
+                    refCycles += ref.fCPU.execOneCmd();
+                }
+                final int[] refRegs  = ref .get();
+                final int[] candRegs = cand.get();
+                if ((refCycles != candCycles) || !Arrays.equals(refRegs, candRegs)) {
+                    fail(String.format("%s, прогон %d, блок %04X: эталон %s (тактов %d), кандидат %s (тактов %d)",
+                            name, run, pc, toString(refRegs), refCycles, toString(candRegs), candCycles));
+                }
+            }
+            if (!Arrays.equals(ref.fRam.fData, cand.fRam.fData)) {
+                fail(String.format("%s, прогон %d: память эталона и кандидата различается", name, run));
+            }
+        }
+        assertTrue(String.format("%s: блоки не были скомпилированы", name), cand.fRam.fCompiled);
+    }
+
+    /**
+     * Формирует строку регистров.
+     *
+     * @param regs регистры A, F, BC, DE, HL, SP, PC
+     * @return строка регистров
+     */
+    private static String toString(final int[] regs) {
+        return String.format("A=%02X F=%02X BC=%04X DE=%04X HL=%04X SP=%04X PC=%04X",
+                regs[0], regs[1], regs[2], regs[3], regs[4], regs[5], regs[6]);
+    }
+}
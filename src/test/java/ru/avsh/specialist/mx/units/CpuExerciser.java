@@ -0,0 +1,275 @@
+package ru.avsh.specialist.mx.units;
+
+import org.jetbrains.annotations.NotNull;
+import ru.avsh.specialist.mx.units.memory.MemoryManager;
+import ru.avsh.specialist.mx.units.memory.units.SimpleMemory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Класс "Прогон тестов CPU" - выполнение тестовых программ CP/M (8080PRE, 8080EXM, CPUTEST, TST8080 и т.п.)
+ * на CPU без графического интерфейса.
+ * <p>
+ * Программа загружается с адреса 0x0100 в 64 Кб RAM, вызовы BDOS (CALL 0x0005) обслуживаются заглушкой:
+ * функция 2 выводит символ из регистра E, функция 9 - строку с адреса DE до символа '$', остальные функции
+ * игнорируются. Переход на адрес 0x0000 (или функция 0) завершает программу.
+ * <p>
+ * Строки вывода с признаками результата ("PASSED", "OK", "complete" / "ERROR", "FAIL") считаются итогами групп тестов.
+ * По каждой группе и по программе в целом выводятся результат, эмулированные такты, время и эффективная частота CPU,
+ * т.е. прогон служит и проверкой точности эмуляции, и длительным замером производительности на всех командах.
+ * Ошибка в любой группе прерывает работу исключением (ненулевой код завершения).
+ * <p>
+ * Прогон находится в тестовых исходниках рядом с фаззером CPU (в jar эмулятора не попадает).
+ * <p>
+ * Запуск: {@code mvn -Pexerciser test -Dexerciser.args="[interp|blocks|compiler] файл.com ..."}
+ * или {@code java -cp <классы;тестовые классы> ru.avsh.specialist.mx.units.CpuExerciser [interp|blocks|compiler] файл.com ...}
+ *
+ * @author -=AVSh=-
+ */
+public final class CpuExerciser {
+    // Адреса CP/M: вход BDOS, начало программы, вершина памяти программы (адрес заглушки BDOS)
+    private static final int    BDOS           = 0x0005;
+    private static final int    TPA            = 0x0100;
+    private static final int    TOP            = 0xFE00;
+    // Предел эмулированных тактов одной программы (защита от зацикливания)
+    private static final long   MAX_CYCLES     = 200_000_000_000L;
+    // Механизмы выполнения и механизм по умолчанию
+    private static final String[] ENGINES      = {"interp", "blocks", "compiler"};
+    private static final String DEFAULT_ENGINE = "blocks";
+
+    // Признаки результата группы тестов
+    private static final Pattern FAILED = Pattern.compile("(?i)\\b(error|fail\\w*)\\b");
+    private static final Pattern PASSED = Pattern.compile("(?i)\\b(passed|ok|complete|operational)\\b");
+    // Имя группы - текст до заполнителя из точек или до признака результата
+    private static final Pattern GROUP  = Pattern.compile("^\\s*(.*?)\\s*(\\.{2,}|\\b(?i:passed|ok|error|fail\\w*)\\b)");
+
+    /**
+     * Класс "Итог группы тестов".
+     */
+    private static final class Group {
+        private final String  fName  ;
+        private final boolean fPassed;
+        private final long    fCycles;
+        private final long    fNanos ;
+
+        Group(final String name, final boolean passed, final long cycles, final long nanos) {
+            fName   = name  ;
+            fPassed = passed;
+            fCycles = cycles;
+            fNanos  = nanos ;
+        }
+    }
+
+    /**
+     * Класс "Машина CP/M" - CPU, RAM и заглушка BDOS.
+     */
+    private static final class Machine {
+        private final MemoryManager fMemManager;
+        private final CPUi8080      fCPU;
+        private final StringBuilder fLine   = new StringBuilder();
+        private final List<Group>   fGroups = new ArrayList<>();
+
+        private long fCycles;
+        private long fGroupCycles;
+        private long fGroupStart;
+
+        /**
+         * Конструктор.
+         *
+         * @param program образ программы
+         * @param engine  механизм выполнения
+         */
+        Machine(final byte[] program, final String engine) {
+            fMemManager = new MemoryManager();
+            fMemManager.addMemoryUnit(0x0000, new SimpleMemory(0x1_0000));
+            fCPU = new CPUi8080(() -> 0, new ClockSpeedGenerator(), fMemManager, null);
+            fCPU.setBlockCompiler("compiler".equals(engine));
+            fCPU.setBlockCache(!"interp".equals(engine));
+
+            // JMP TOP по адресу BDOS (слово по адресу 0x0006 - вершина памяти программы), RET по адресу TOP
+            fMemManager.writeByte (BDOS, 0xC3);
+            fMemManager.writeWord (BDOS + 1, TOP);
+            fMemManager.writeByte (TOP , 0xC9);
+            fMemManager.writeBlock(TPA , program, 0, Math.min(program.length, TOP - TPA));
+
+            // Возврат из программы - на адрес 0x0000
+            fCPU.fSP = TOP;
+            fCPU.pushWord(0x0000);
+            fCPU.fPC = TPA;
+        }
+
+        /**
+         * Выполняет программу до перехода на адрес 0x0000.
+         *
+         * @return true = программа завершилась, false = превышен предел тактов
+         */
+        boolean run() {
+            fGroupStart = System.nanoTime();
+            final CPUi8080 cpu = fCPU;
+            while (fCycles < MAX_CYCLES) {
+                final int pc = cpu.fPC;
+                if (pc == 0x0000) {
+                    endLine();
+                    return true;
+                }
+                if ((pc == BDOS) && !bdos()) {
+                    endLine();
+                    return true;
+                }
+                fCycles += cpu.execCmd();
+            }
+            endLine();
+            return false;
+        }
+
+        /**
+         * Обслуживает вызов BDOS (команду RET выполняет CPU - по адресу TOP).
+         *
+         * @return false = программа завершена функцией 0
+         */
+        private boolean bdos() {
+            switch (fCPU.fBC & 0xFF) {
+                case 0:
+                    return false;
+                case 2:
+                    print(fCPU.fDE & 0xFF);
+                    break;
+                case 9:
+                    for (int address = fCPU.fDE, count = 0; count < 0x1_0000; address = (address + 1) & 0xFFFF, count++) {
+                        final int ch = fMemManager.debugReadByte(address);
+                        if (ch == '$') {
+                            break;
+                        }
+                        print(ch);
+                    }
+                    break;
+                default:
+                    break;
+            }
+            return true;
+        }
+
+        /**
+         * Выводит символ и по концу строки определяет итог группы тестов.
+         *
+         * @param ch символ
+         */
+        private void print(final int ch) {
+            System.out.print((char) ch);
+            if (ch == '\n') {
+                System.out.flush();
+                endLine();
+            } else if (ch != '\r') {
+                fLine.append((char) ch);
+            }
+        }
+
+        /**
+         * Завершает строку вывода.
+         */
+        private void endLine() {
+            final String line = fLine.toString();
+            fLine.setLength(0);
+            final boolean failed = FAILED.matcher(line).find();
+            if (failed || PASSED.matcher(line).find()) {
+                final Matcher matcher = GROUP.matcher(line);
+                final String  name    = (matcher.find() && !matcher.group(1).isEmpty()) ? matcher.group(1) : line.trim();
+                final long    now     = System.nanoTime();
+                fGroups.add(new Group(name, !failed, fCycles - fGroupCycles, now - fGroupStart));
+                fGroupCycles = fCycles;
+                fGroupStart  = now;
+            }
+        }
+    }
+
+    private CpuExerciser() {
+    }
+
+    /**
+     * Точка входа.
+     *
+     * @param args [0] - механизм выполнения: interp, blocks или compiler (необязательно, по умолчанию blocks),
+     *             далее - файлы тестовых программ CP/M
+     * @throws IOException при ошибке чтения файлов
+     */
+    public static void main(String[] args) throws IOException {
+        int    first  = 0;
+        String engine = DEFAULT_ENGINE;
+        if ((args.length > 0) && Arrays.asList(ENGINES).contains(args[0])) {
+            engine = args[first++];
+        }
+        if (first >= args.length) {
+            throw new IllegalArgumentException("Не заданы файлы тестовых программ CP/M");
+        }
+
+        final List<String> failures = new ArrayList<>();
+        for (int index = first; index < args.length; index++) {
+            final Path file = Paths.get(args[index]);
+            if (!exercise(file, engine)) {
+                failures.add(file.getFileName().toString());
+            }
+        }
+        if (!failures.isEmpty()) {
+            throw new IllegalStateException(String.format("Тесты CPU не пройдены: %s", String.join(", ", failures)));
+        }
+    }
+
+    /**
+     * Выполняет тестовую программу и выводит итоги.
+     *
+     * @param file   файл программы
+     * @param engine механизм выполнения
+     * @return true = все группы тестов пройдены
+     * @throws IOException при ошибке чтения файла
+     */
+    private static boolean exercise(@NotNull final Path file, @NotNull final String engine) throws IOException {
+        System.out.printf("=== %s (механизм \"%s\") ===%n", file.getFileName(), engine);
+        final Machine machine  = new Machine(Files.readAllBytes(file), engine);
+        final long    start    = System.nanoTime();
+        final boolean finished = machine.run();
+        final long    nanos    = System.nanoTime() - start;
+
+        System.out.printf("%n%-40s %-9s %16s %10s %10s%n", "Группа", "Результат", "Такты", "Время, с", "МГц");
+        int passed = 0;
+        for (Group group : machine.fGroups) {
+            System.out.printf("%-40s %-9s %16d %10.3f %10.1f%n", abbreviate(group.fName), group.fPassed ? "пройдена" : "ОШИБКА",
+                    group.fCycles, group.fNanos / 1e9, mhz(group.fCycles, group.fNanos));
+            passed += group.fPassed ? 1 : 0;
+        }
+        final int failed = machine.fGroups.size() - passed;
+        System.out.printf("Итого: групп %d, пройдено %d, ошибок %d, тактов %d, время %.3f с, %.1f МГц (x%.1f от %d МГц)%s%n",
+                machine.fGroups.size(), passed, failed, machine.fCycles, nanos / 1e9, mhz(machine.fCycles, nanos),
+                mhz(machine.fCycles, nanos) * 1_000_000 / ClockSpeedGenerator.CLOCK_SPEED, ClockSpeedGenerator.CLOCK_SPEED / 1_000_000,
+                finished ? "" : String.format(", превышен предел %d тактов", MAX_CYCLES));
+        return finished && (failed == 0);
+    }
+
+    /**
+     * Вычисляет эффективную частоту эмулированного CPU.
+     *
+     * @param cycles такты
+     * @param nanos  время в наносекундах
+     * @return частота в МГц
+     */
+    private static double mhz(final long cycles, final long nanos) {
+        return (nanos > 0) ? cycles * 1_000.0 / nanos : 0;
+    }
+
+    /**
+     * Сокращает имя группы до ширины колонки.
+     *
+     * @param name имя группы
+     * @return имя не длиннее 40 символов
+     */
+    private static String abbreviate(final String name) {
+        return (name.length() > 40) ? name.substring(0, 37) + "..." : name;
+    }
+}
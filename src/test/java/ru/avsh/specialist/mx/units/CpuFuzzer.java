@@ -0,0 +1,695 @@
+package ru.avsh.specialist.mx.units;
+
+import org.jetbrains.annotations.NotNull;
+import ru.avsh.specialist.mx.helpers.Disassembler;
+import ru.avsh.specialist.mx.units.memory.MemoryManager;
+import ru.avsh.specialist.mx.units.types.MemoryUnit;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static ru.avsh.specialist.mx.units.BlockCache.IO_AREA;
+
+/**
+ * Класс "Дифференциальный фаззер CPU" - сверка механизмов выполнения команд с эталонным интерпретатором.
+ * <p>
+ * Для каждого случая генерируется случайное состояние регистров и памяти и случайный поток команд (с вкраплениями
+ * циклов задержки и пересылки блоков памяти, которые сворачивает кэш блоков кода). Случай выполняется на двух машинах
+ * без графического интерфейса: эталон выполняет команды по одной интерпретатором, кандидат - кэшем блоков кода
+ * (с компиляцией блоков или без нее). После каждого вызова кандидата эталон догоняет его по тактам, и в этой точке
+ * сверяются такты, регистры, флаги и память по адресам, записанным с предыдущей точки сверки.
+ * <p>
+ * Первое расхождение сокращается до минимального случая (укорачивается прогон, команды заменяются на NOP, память
+ * и регистры обнуляются, пока расхождение сохраняется), минимальный случай выводится вместе с командами эталона
+ * с последней точки сверки. Найденное расхождение прерывает работу исключением (ненулевой код завершения).
+ * <p>
+ * Фаззер находится в тестовых исходниках (в jar эмулятора не попадает), профиль fuzz запускает его с тестовым
+ * classpath после тестов сборки.
+ * <p>
+ * Запуск: {@code mvn -Pfuzz test} или {@code java -cp <классы;тестовые классы> ru.avsh.specialist.mx.units.CpuFuzzer [случаев [зерно [blocks|compiler|all]]]}
+ *
+ * @author -=AVSh=-
+ */
+public final class CpuFuzzer {
+    // Количество случаев и механизм выполнения по умолчанию
+    private static final int    DEFAULT_CASES   = 2_000;
+    private static final String DEFAULT_ENGINE  = "all";
+    // Количество тактов одного прогона случая
+    private static final int    BUDGET          = 10_000;
+    // Максимальное количество команд в потоке
+    private static final int    MAX_COMMANDS    = 64;
+    // Количество команд эталона, выводимых перед точкой расхождения
+    private static final int    HISTORY         = 48;
+    // Флаги по умолчанию SZ0A_0P1C и маска изменяемых флагов
+    private static final int    FLAGS_DEFAULT   = 0b0000_0010;
+    private static final int    FLAGS_MASK      = 0b1101_0101;
+    // Имена сверяемых регистров
+    private static final String[] REGISTERS     = {"A", "F", "BC", "DE", "HL", "SP", "PC"};
+
+    /**
+     * Перечисление "Механизм выполнения команд" (кандидат для сверки с интерпретатором).
+     */
+    private enum Engine {
+        BLOCKS  ("blocks"  , false, 1, 1),
+        // Прогон повторяется, пока блоки не станут "горячими" и не будут скомпилированы,
+        // поэтому компилятор проверяется на каждом 20-м случае
+        COMPILER("compiler", true , BlockCache.HOT_THRESHOLD + 1, 20);
+
+        private final String  fName;
+        private final boolean fCompile;
+        private final int     fRuns;
+        private final int     fStep; // Шаг по номерам случаев
+
+        Engine(final String name, final boolean compile, final int runs, final int step) {
+            fName    = name   ;
+            fCompile = compile;
+            fRuns    = runs   ;
+            fStep    = step   ;
+        }
+    }
+
+    /**
+     * Класс "Память машины фаззера" - RAM 0x0000-0xFFBF с журналом записей и картой чтений.
+     */
+    private static final class Ram implements MemoryUnit {
+        private final byte[] fData;
+        // Журнал адресов, записанных с последней точки сверки
+        private int[] fJournal = new int[256];
+        private int   fJournalSize;
+        // Адреса, записанные за прогон (для восстановления исходного образа)
+        private final boolean[] fWritten = new boolean[IO_AREA];
+        private int[] fWrittenList = new int[256];
+        private int   fWrittenSize;
+        // Адреса, прочитанные хотя бы раз (для сокращения случая)
+        private final boolean[] fRead = new boolean[IO_AREA];
+
+        Ram(final byte[] image) {
+            fData = image.clone();
+        }
+
+        @Override
+        public int storageSize() {
+            return IO_AREA;
+        }
+
+        @Override
+        public int readByte(final int address) {
+            fRead[address] = true;
+            return fData[address] & 0xFF;
+        }
+
+        @Override
+        public void writeByte(final int address, final int value) {
+            fData[address] = (byte) value;
+            if (fJournalSize == fJournal.length) {
+                fJournal = Arrays.copyOf(fJournal, fJournalSize << 1);
+            }
+            fJournal[fJournalSize++] = address;
+            if (!fWritten[address]) {
+                fWritten[address] = true;
+                if (fWrittenSize == fWrittenList.length) {
+                    fWrittenList = Arrays.copyOf(fWrittenList, fWrittenSize << 1);
+                }
+                fWrittenList[fWrittenSize++] = address;
+            }
+        }
+    }
+
+    /**
+     * Класс "Машина фаззера" - CPU и память без графического интерфейса.
+     */
+    private static final class Machine {
+        private final Ram      fRam;
+        private final CPUi8080 fCPU;
+
+        /**
+         * Конструктор.
+         *
+         * @param gen    тактовый генератор (только счетчик тактов, не запускается)
+         * @param image  образ памяти
+         * @param engine механизм выполнения (null = эталонный интерпретатор)
+         */
+        Machine(final ClockSpeedGenerator gen, final byte[] image, final Engine engine) {
+            final MemoryManager memManager = new MemoryManager();
+            fRam = new Ram(image);
+            memManager.addMemoryUnit(0x0000, fRam);
+            fCPU = new CPUi8080(() -> 0, gen, memManager, null);
+            if (engine != null) {
+                fCPU.setBlockCompiler(engine.fCompile);
+                fCPU.setBlockCache(true);
+            }
+        }
+
+        /**
+         * Восстанавливает исходное состояние перед очередным прогоном.
+         * Память восстанавливается записями CPU, чтобы кэш блоков кода сбросил только измененные блоки.
+         *
+         * @param image образ памяти
+         * @param regs  регистры
+         */
+        void restore(final byte[] image, final int[] regs) {
+            final Ram ram = fRam;
+            for (int i = 0; i < ram.fWrittenSize; i++) {
+                final int address = ram.fWrittenList[i];
+                if (ram.fData[address] != image[address]) {
+                    fCPU.writeByte(address, image[address] & 0xFF);
+                }
+            }
+            for (int i = 0; i < ram.fWrittenSize; i++) {
+                ram.fWritten[ram.fWrittenList[i]] = false;
+            }
+            ram.fWrittenSize = 0;
+            ram.fJournalSize = 0;
+            set(regs);
+        }
+
+        /**
+         * Устанавливает регистры.
+         *
+         * @param regs регистры A, F, BC, DE, HL, SP, PC
+         */
+        void set(final int[] regs) {
+            fCPU.fA  = regs[0];
+            fCPU.fF  = regs[1];
+            fCPU.fBC = regs[2];
+            fCPU.fDE = regs[3];
+            fCPU.fHL = regs[4];
+            fCPU.fSP = regs[5];
+            fCPU.fPC = regs[6];
+        }
+
+        /**
+         * Возвращает регистры.
+         *
+         * @return регистры A, F, BC, DE, HL, SP, PC
+         */
+        int[] get() {
+            return new int[]{fCPU.fA, fCPU.fF, fCPU.fBC, fCPU.fDE, fCPU.fHL, fCPU.fSP, fCPU.fPC};
+        }
+    }
+
+    /**
+     * Класс "Случай" - начальное состояние регистров и памяти.
+     */
+    private static final class Case {
+        private final long   fSeed  ;
+        private final int[]  fRegs  ;
+        private final byte[] fImage ;
+        private final int    fOrigin; // Начало потока команд
+        private final int    fLength; // Длина потока команд в байтах
+        private       int    fBudget = BUDGET;
+        private       int    fRuns  ;
+
+        Case(final long seed, final int[] regs, final byte[] image, final int origin, final int length, final int runs) {
+            fSeed   = seed  ;
+            fRegs   = regs  ;
+            fImage  = image ;
+            fOrigin = origin;
+            fLength = length;
+            fRuns   = runs  ;
+        }
+
+        Case copy() {
+            final Case result = new Case(fSeed, fRegs.clone(), fImage.clone(), fOrigin, fLength, fRuns);
+            result.fBudget = fBudget;
+            return result;
+        }
+    }
+
+    /**
+     * Класс "Расхождение" эталона и кандидата.
+     */
+    private static final class Divergence {
+        private final int          fRun    ; // Номер прогона
+        private final long         fCycles ; // Такты кандидата в точке сверки
+        private final List<String> fDetails;
+        private final boolean[]    fRead   ; // Прочитанные адреса (объединение эталона и кандидата)
+
+        Divergence(final int run, final long cycles, final List<String> details, final boolean[] read) {
+            fRun     = run    ;
+            fCycles  = cycles ;
+            fDetails = details;
+            fRead    = read   ;
+        }
+    }
+
+    private CpuFuzzer() {
+    }
+
+    /**
+     * Точка входа.
+     *
+     * @param args [0] - количество случаев, [1] - начальное зерно генератора случайных чисел,
+     *             [2] - механизм выполнения: blocks, compiler или all (по умолчанию все)
+     */
+    public static void main(String[] args) {
+        final int    cases  = (args.length > 0) ? Integer.parseInt(args[0]) : DEFAULT_CASES;
+        final long   seed   = (args.length > 1) ? Long.parseLong (args[1]) : System.nanoTime();
+        final String name   = (args.length > 2) ? args[2] : DEFAULT_ENGINE;
+
+        final List<Engine> engines = new ArrayList<>();
+        for (Engine engine : Engine.values()) {
+            if (DEFAULT_ENGINE.equals(name) || engine.fName.equals(name)) {
+                engines.add(engine);
+            }
+        }
+        if (engines.isEmpty()) {
+            throw new IllegalArgumentException(String.format("Неизвестный механизм выполнения: \"%s\"", name));
+        }
+
+        final ClockSpeedGenerator gen = new ClockSpeedGenerator();
+        final long start = System.nanoTime();
+        for (Engine engine : engines) {
+            int count = 0;
+            for (int index = 0; index < cases; index += engine.fStep, count++) {
+                final Case       c          = generate(seed + index, engine.fRuns);
+                final Divergence divergence = run(gen, c, engine);
+                if (divergence != null) {
+                    report(gen, c, engine, divergence);
+                    throw new IllegalStateException(String.format(
+                            "Механизм \"%s\" расходится с интерпретатором (зерно случая %d)", engine.fName, c.fSeed));
+                }
+            }
+            System.out.printf("Механизм \"%s\": случаев %d (зерно %d, прогонов случая %d) - расхождений нет%n",
+                    engine.fName, count, seed, engine.fRuns);
+        }
+        System.out.printf("Время: %.1f с%n", (System.nanoTime() - start) / 1e9);
+    }
+
+    /**
+     * Генерирует случай.
+     *
+     * @param seed зерно генератора случайных чисел
+     * @param runs количество прогонов
+     * @return случай
+     */
+    private static Case generate(final long seed, final int runs) {
+        final Random random = new Random(seed);
+        final byte[] image  = new byte[IO_AREA];
+        random.nextBytes(image);
+
+        final int    origin  = random.nextInt(IO_AREA - MAX_COMMANDS * 16);
+        final byte[] program = new byte[MAX_COMMANDS * 16];
+        int length = 0;
+        for (int count = random.nextInt(MAX_COMMANDS) + 1; count > 0; count--) {
+            length = (random.nextInt(8) == 0) ? idiom(random, program, length, origin)
+                                              : command(random, program, length, origin);
+        }
+        System.arraycopy(program, 0, image, origin, length);
+
+        final int[] regs = new int[REGISTERS.length];
+        regs[0] = random.nextInt(0x100);
+        regs[1] = (random.nextInt(0x100) & FLAGS_MASK) | FLAGS_DEFAULT;
+        for (int i = 2; i < 5; i++) {
+            // Регистровые пары часто указывают на поток команд (самомодифицирующийся код)
+            regs[i] = random.nextBoolean() ? origin + random.nextInt(length + 16) : random.nextInt(0x1_0000);
+        }
+        regs[5] = random.nextInt(0x1_0000);
+        regs[6] = origin;
+        return new Case(seed, regs, image, origin, length, runs);
+    }
+
+    /**
+     * Добавляет в поток случайную команду. Переходы чаще всего направляются внутрь потока.
+     *
+     * @param random генератор случайных чисел
+     * @param code   поток команд
+     * @param length текущая длина потока
+     * @param origin начало потока
+     * @return новая длина потока
+     */
+    private static int command(final Random random, final byte[] code, int length, final int origin) {
+        int opCode = random.nextInt(0x100);
+        if (opCode == 0x76) { // HLT - реже (CPU на нем зацикливается)
+            opCode = random.nextInt(0x100);
+        }
+        code[length++] = (byte) opCode;
+        final int operands = BlockCache.LENGTHS[opCode] - 1;
+        int value = random.nextInt(0x1_0000);
+        if ((operands == 2) && random.nextInt(4) != 0) {
+            value = origin + random.nextInt(Math.max(length + 8, 1));
+        }
+        for (int i = 0; i < operands; i++, value >>= 8) {
+            code[length++] = (byte) value;
+        }
+        return length;
+    }
+
+    /**
+     * Добавляет в поток цикл задержки или обработки блока памяти (такие циклы кэш блоков кода сворачивает).
+     *
+     * @param random генератор случайных чисел
+     * @param code   поток команд
+     * @param length текущая длина потока
+     * @param origin начало потока
+     * @return новая длина потока
+     */
+    private static int idiom(final Random random, final byte[] code, int length, final int origin) {
+        final int count = random.nextInt(64) + 1;
+        // Указатели: случайные, на поток команд или рядом с областью устройств ввода/вывода
+        final int[] pointers = new int[2];
+        for (int i = 0; i < pointers.length; i++) {
+            switch (random.nextInt(3)) {
+                case 0:
+                    pointers[i] = origin + random.nextInt(length + 16);
+                    break;
+                case 1:
+                    pointers[i] = IO_AREA - random.nextInt(128);
+                    break;
+                default:
+                    pointers[i] = random.nextInt(0x1_0000);
+                    break;
+            }
+        }
+        final int[] body;
+        final int   r = random.nextInt(8) & 0b110 | 1; // C, E, L или A
+        switch (random.nextInt(6)) {
+            case 0: // MVI r,n; L: DCR r; JNZ L
+                body = new int[]{0x06 | (r << 3), count, -1, 0x05 | (r << 3), 0xC2};
+                break;
+            case 1: // LXI B,n; L: DCX B; MOV A,B; ORA C; JNZ L
+                body = new int[]{0x01, count, 0, -1, 0x0B, 0x78, 0xB1, 0xC2};
+                break;
+            case 2: // Копирование: LXI H; LXI D; LXI B; L: MOV A,M; STAX D; INX H; INX D; DCX B; MOV A,B; ORA C; JNZ L
+                body = new int[]{0x21, pointers[0], pointers[0] >> 8, 0x11, pointers[1], pointers[1] >> 8, 0x01, count, 0,
+                        -1, 0x7E, 0x12, 0x23, 0x13, 0x0B, 0x78, 0xB1, 0xC2};
+                break;
+            case 3: // Заполнение: LXI H; MVI C,n; L: MOV M,A; INX H; DCR C; JNZ L
+                body = new int[]{0x21, pointers[0], pointers[0] >> 8, 0x0E, count, -1, 0x77, 0x23, 0x0D, 0xC2};
+                break;
+            case 4: // Сравнение: LXI H; LXI D; L: LDAX D; CMP M; INX H; INX D; JZ/JNZ L
+                body = new int[]{0x21, pointers[0], pointers[0] >> 8, 0x11, pointers[1], pointers[1] >> 8,
+                        -1, 0x1A, 0xBE, 0x23, 0x13, random.nextBoolean() ? 0xCA : 0xC2};
+                break;
+            default: // Поиск: LXI H; L: MOV A,M; CPI n; INX H; JZ/JNZ L
+                body = new int[]{0x21, pointers[0], pointers[0] >> 8,
+                        -1, 0x7E, 0xFE, random.nextInt(0x100), 0x23, random.nextBoolean() ? 0xCA : 0xC2};
+                break;
+        }
+        int loop = origin + length;
+        for (int value : body) {
+            if (value < 0) {
+                loop = origin + length;
+            } else {
+                code[length++] = (byte) value;
+            }
+        }
+        // Адрес перехода в начало цикла
+        code[length++] = (byte)  loop;
+        code[length++] = (byte) (loop >> 8);
+        return length;
+    }
+
+    /**
+     * Выполняет случай на эталоне и кандидате.
+     *
+     * @param gen    тактовый генератор
+     * @param c      случай
+     * @param engine механизм выполнения кандидата
+     * @return первое расхождение (null = расхождений нет)
+     */
+    private static Divergence run(final ClockSpeedGenerator gen, final Case c, final Engine engine) {
+        final Machine ref  = new Machine(gen, c.fImage, null  );
+        final Machine cand = new Machine(gen, c.fImage, engine);
+        final int[]   history = new int[HISTORY];
+        for (int run = 0; run < c.fRuns; run++) {
+            ref .restore(c.fImage, c.fRegs);
+            cand.restore(c.fImage, c.fRegs);
+            long refCycles  = 0;
+            long candCycles = 0;
+            long commands   = 0;
+            while (candCycles < c.fBudget) {
+                final List<String> details = new ArrayList<>();
+                final long         sync    = commands;
+                try {
+                    final int cycles = cand.fCPU.execCmd();
+                    if (cycles <= 0) {
+                        details.add("Кандидат не выполнил ни одной команды");
+                    }
+                    candCycles += cycles;
+                } catch (RuntimeException e) {
+                    details.add(String.format("Исключение кандидата: %s", e));
+                }
+                try {
+                    while (details.isEmpty() && (refCycles < candCycles)) {
+                        history[(int) (commands++ % HISTORY)] = ref.fCPU.fPC;
+                        refCycles += ref.fCPU.execOneCmd();
+                    }
+                } catch (RuntimeException e) {
+                    details.add(String.format("Исключение эталона: %s", e));
+                }
+                if (details.isEmpty()) {
+                    compare(ref, cand, refCycles, candCycles, details);
+                }
+                if (!details.isEmpty()) {
+                    details.add(0, String.format("Прогон %d, такт %d, команд эталона %d", run + 1, candCycles, commands));
+                    history(ref, history, commands, (int) Math.min(commands - sync, HISTORY), details);
+                    final boolean[] read = ref.fRam.fRead.clone();
+                    for (int i = 0; i < read.length; i++) {
+                        read[i] |= cand.fRam.fRead[i];
+                    }
+                    return new Divergence(run, candCycles, details, read);
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Сверяет такты, регистры и записанную память эталона и кандидата.
+     *
+     * @param ref        эталон
+     * @param cand       кандидат
+     * @param refCycles  такты эталона
+     * @param candCycles такты кандидата
+     * @param details    строки расхождений
+     */
+    private static void compare(final Machine ref, final Machine cand, final long refCycles, final long candCycles,
+                                final List<String> details) {
+        if (refCycles != candCycles) {
+            details.add(String.format("Такты: эталон %d, кандидат %d", refCycles, candCycles));
+        }
+        final int[] refRegs  = ref .get();
+        final int[] candRegs = cand.get();
+        for (int i = 0; i < REGISTERS.length; i++) {
+            if (refRegs[i] != candRegs[i]) {
+                details.add((i == 1) ? String.format("Флаги SZ0A0P1C: эталон %8s, кандидат %8s",
+                                Integer.toBinaryString(refRegs[i] | 0x100).substring(1),
+                                Integer.toBinaryString(candRegs[i] | 0x100).substring(1))
+                        : String.format("Регистр %s: эталон %04X, кандидат %04X", REGISTERS[i], refRegs[i], candRegs[i]));
+            }
+        }
+        for (Ram ram : new Ram[]{ref.fRam, cand.fRam}) {
+            for (int i = 0; i < ram.fJournalSize; i++) {
+                final int address = ram.fJournal[i];
+                if (ref.fRam.fData[address] != cand.fRam.fData[address]) {
+                    final String line = String.format("Память %04X: эталон %02X, кандидат %02X", address,
+                            ref.fRam.fData[address] & 0xFF, cand.fRam.fData[address] & 0xFF);
+                    if (!details.contains(line)) {
+                        details.add(line);
+                    }
+                }
+            }
+        }
+        ref .fRam.fJournalSize = 0;
+        cand.fRam.fJournalSize = 0;
+    }
+
+    /**
+     * Добавляет к строкам расхождений команды эталона с последней точки сверки.
+     *
+     * @param ref      эталон
+     * @param history  кольцевой буфер адресов команд
+     * @param commands количество выполненных команд
+     * @param count    количество выводимых команд
+     * @param details  строки расхождений
+     */
+    private static void history(final Machine ref, final int[] history, final long commands, final int count,
+                                final List<String> details) {
+        details.add("Команды эталона с последней точки сверки:");
+        for (long i = commands - Math.max(count, 1); i < commands; i++) {
+            if (i >= 0) {
+                details.add("  " + disAsm(ref.fRam.fData, history[(int) (i % HISTORY)]));
+            }
+        }
+    }
+
+    /**
+     * Дизассемблирует команду из образа памяти.
+     *
+     * @param image   образ памяти
+     * @param address адрес команды
+     * @return строка "адрес  мнемоника"
+     */
+    private static String disAsm(final byte[] image, final int address) {
+        final int[] bytes = new int[3];
+        for (int i = 0; i < bytes.length; i++) {
+            final int a = (address + i) & 0xFFFF;
+            bytes[i] = (a < IO_AREA) ? image[a] & 0xFF : 0xFF;
+        }
+        return String.format("%04X  %s", address, Disassembler.disAsm(bytes[0], bytes[1], bytes[2]));
+    }
+
+    /**
+     * Сокращает случай до минимального и выводит расхождение.
+     *
+     * @param gen        тактовый генератор
+     * @param c          случай
+     * @param engine     механизм выполнения кандидата
+     * @param divergence первое расхождение
+     */
+    private static void report(final ClockSpeedGenerator gen, final Case c, final Engine engine,
+                               @NotNull final Divergence divergence) {
+        System.out.printf("Расхождение механизма \"%s\" с интерпретатором (зерно случая %d):%n", engine.fName, c.fSeed);
+        divergence.fDetails.forEach(line -> System.out.println("  " + line));
+
+        final Case       min    = c.copy();
+        final Divergence result = shrink(gen, min, engine, divergence);
+        System.out.println("Минимальный случай:");
+        System.out.printf("  A=%02X F=%02X BC=%04X DE=%04X HL=%04X SP=%04X PC=%04X, тактов %d, прогонов %d%n",
+                min.fRegs[0], min.fRegs[1], min.fRegs[2], min.fRegs[3], min.fRegs[4], min.fRegs[5], min.fRegs[6],
+                min.fBudget, min.fRuns);
+        System.out.println("  Ненулевая память:");
+        for (int line = 0; line < IO_AREA; line += 16) {
+            final StringBuilder sb = new StringBuilder();
+            boolean nonZero = false;
+            for (int i = line; i < line + 16; i++) {
+                sb.append(String.format(" %02X", min.fImage[i] & 0xFF));
+                nonZero |= min.fImage[i] != 0;
+            }
+            if (nonZero) {
+                System.out.printf("    %04X:%s%n", line, sb);
+            }
+        }
+        System.out.println("  Поток команд:");
+        for (int address = min.fOrigin, end = min.fOrigin + min.fLength; address < end; ) {
+            if (min.fImage[address] != 0) {
+                System.out.println("    " + disAsm(min.fImage, address));
+            }
+            address += BlockCache.LENGTHS[min.fImage[address] & 0xFF];
+        }
+        System.out.println("  Расхождение минимального случая:");
+        result.fDetails.forEach(line -> System.out.println("    " + line));
+    }
+
+    /**
+     * Сокращает случай, пока расхождение сохраняется.
+     *
+     * @param gen        тактовый генератор
+     * @param c          случай (изменяется)
+     * @param engine     механизм выполнения кандидата
+     * @param divergence первое расхождение
+     * @return расхождение сокращенного случая
+     */
+    private static Divergence shrink(final ClockSpeedGenerator gen, final Case c, final Engine engine,
+                                     @NotNull Divergence divergence) {
+        // Прогоны и такты - до точки расхождения
+        c.fRuns   = divergence.fRun + 1;
+        c.fBudget = (int) Math.min(divergence.fCycles, BUDGET);
+        Divergence d = run(gen, c, engine);
+        if (d == null) {
+            c.fRuns   = divergence.fRun + 1;
+            c.fBudget = BUDGET;
+            d = run(gen, c, engine);
+        }
+        if (d == null) {
+            return divergence;
+        }
+        divergence = d;
+
+        // Память, которую не читали ни эталон, ни кандидат, на выполнение не влияет
+        final byte[] saved = c.fImage.clone();
+        for (int address = 0; address < IO_AREA; address++) {
+            if (!divergence.fRead[address]) {
+                c.fImage[address] = 0;
+            }
+        }
+        divergence = accept(gen, c, engine, divergence, saved, null);
+
+        for (boolean changed = true; changed; ) {
+            changed = false;
+            // Команды потока заменяются на NOP
+            for (int address = c.fOrigin, end = c.fOrigin + c.fLength; address < end; ) {
+                final int length = BlockCache.LENGTHS[c.fImage[address] & 0xFF];
+                if (c.fImage[address] != 0) {
+                    final byte[] prev = c.fImage.clone();
+                    Arrays.fill(c.fImage, address, Math.min(address + length, IO_AREA), (byte) 0);
+                    final Divergence next = accept(gen, c, engine, divergence, prev, null);
+                    changed |= next != divergence;
+                    divergence = next;
+                }
+                address += length;
+            }
+            // Память обнуляется участками все меньшего размера
+            for (int size = 0x1000; size > 0; size >>= 4) {
+                for (int start = 0; start < IO_AREA; start += size) {
+                    final int end = Math.min(start + size, IO_AREA);
+                    if (!isZero(c.fImage, start, end)) {
+                        final byte[] prev = c.fImage.clone();
+                        Arrays.fill(c.fImage, start, end, (byte) 0);
+                        final Divergence next = accept(gen, c, engine, divergence, prev, null);
+                        changed |= next != divergence;
+                        divergence = next;
+                    }
+                }
+            }
+            // Регистры обнуляются (кроме SP и PC)
+            for (int i = 0; i < 5; i++) {
+                final int zero = (i == 1) ? FLAGS_DEFAULT : 0;
+                if (c.fRegs[i] != zero) {
+                    final int[] prev = c.fRegs.clone();
+                    c.fRegs[i] = zero;
+                    final Divergence next = accept(gen, c, engine, divergence, null, prev);
+                    changed |= next != divergence;
+                    divergence = next;
+                }
+            }
+        }
+        return divergence;
+    }
+
+    /**
+     * Проверяет, сохраняется ли расхождение после изменения случая, и отменяет изменение, если нет.
+     *
+     * @param gen        тактовый генератор
+     * @param c          измененный случай
+     * @param engine     механизм выполнения кандидата
+     * @param divergence текущее расхождение
+     * @param image      образ памяти до изменения (null = не изменялся)
+     * @param regs       регистры до изменения (null = не изменялись)
+     * @return новое расхождение или текущее, если изменение отменено
+     */
+    private static Divergence accept(final ClockSpeedGenerator gen, final Case c, final Engine engine,
+                                     final Divergence divergence, final byte[] image, final int[] regs) {
+        final Divergence next = run(gen, c, engine);
+        if (next != null) {
+            return next;
+        }
+        if (image != null) {
+            System.arraycopy(image, 0, c.fImage, 0, image.length);
+        }
+        if (regs != null) {
+            System.arraycopy(regs, 0, c.fRegs, 0, regs.length);
+        }
+        return divergence;
+    }
+
+    /**
+     * Проверяет, что участок образа памяти заполнен нулями.
+     *
+     * @param image образ памяти
+     * @param start начало участка
+     * @param end   конец участка (не включая)
+     * @return true = участок нулевой
+     */
+    private static boolean isZero(final byte[] image, final int start, final int end) {
+        for (int i = start; i < end; i++) {
+            if (image[i] != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
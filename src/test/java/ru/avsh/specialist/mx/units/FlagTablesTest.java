@@ -0,0 +1,327 @@
+package ru.avsh.specialist.mx.units;
+
+import org.junit.Before;
+import org.junit.Test;
+import ru.avsh.specialist.mx.units.memory.MemoryManager;
+import ru.avsh.specialist.mx.units.memory.units.SimpleMemory;
+
+import static org.junit.Assert.fail;
+
+/**
+ * Тест "Таблицы флагов CPU" - полная сверка табличного вычисления флагов (FLAGS_SZP, FLAGS_ADD_CA, FLAGS_SUB_CA,
+ * FLAGS_INR, FLAGS_DCR, DAA_RESULTS) с прежними формулами на сдвигах и XOR (эталон - копия прежнего кода в классе
+ * Reference).
+ * <p>
+ * Команды выполняются CPU по одной для всех сочетаний (код операции, A, операнд, C, AC). Флаги S, Z, P на входе
+ * перебираются вместе с операндом, биты 1, 3, 5 регистра флагов всегда 1, 0, 0 (POP PSW и отладчик их нормализуют).
+ *
+ * @author -=AVSh=-
+ */
+public class FlagTablesTest {
+    // Адрес команды, адрес операнда M(HL)
+    private static final int CODE_ADDRESS = 0x0000;
+    private static final int M_ADDRESS    = 0x0100;
+    // Коды регистров CPU
+    private static final int REG_M        = 6;
+    private static final int REG_A        = 7;
+    // Биты флагов C, AC и флагов S, Z, P
+    private static final int FLAG_C       = 0b0000_0001;
+    private static final int FLAG_AC      = 0b0001_0000;
+    private static final int FLAGS_SZP    = 0b1100_0100;
+
+    private MemoryManager fMemManager;
+    private CPUi8080      fCPU;
+
+    /**
+     * Класс "Эталонное вычисление флагов" - прежние формулы CPUi8080 (до перехода на таблицы).
+     */
+    private static final class Reference {
+        private int fA;
+        private int fF;
+
+        private void setFlagC(final boolean value) {
+            fF = value ? fF | 1 : fF & 0b1111_1110;
+        }
+
+        private boolean getFlagC() {
+            return (fF & 1) != 0;
+        }
+
+        private void setFlagAC(final boolean value) {
+            fF = value ? fF | 0b1_0000 : fF & 0b1110_1111;
+        }
+
+        private boolean getFlagAC() {
+            return (fF & 0b1_0000) != 0;
+        }
+
+        private void setFlagsSZP(final int r) {
+            fF = (r & 0x80) != 0 ? fF | 0b1000_0000 : fF & 0b0111_1111; // S
+            fF =  r         == 0 ? fF | 0b0100_0000 : fF & 0b1011_1111; // Z
+            fF = (((       r & 1) ^
+                         ((r >> 1) & 1) ^
+                         ((r >> 2) & 1) ^
+                         ((r >> 3) & 1) ^
+                         ((r >> 4) & 1) ^
+                         ((r >> 5) & 1) ^
+                         ((r >> 6) & 1) ^
+                         ((r >> 7) & 1)) == 0) ? fF | 0b100 : fF & 0b1111_1011; // P
+        }
+
+        private int addByte(final int a, final int b, final int c) {
+            int r = a + b + c;
+            setFlagC(r > 0xFF);
+            setFlagAC((a & 0xF) + (b & 0xF) + (c & 0xF) > 0xF);
+            r &= 0xFF;
+            setFlagsSZP(r);
+            return r;
+        }
+
+        private int subByte(final int a, final int b, final int c) {
+            final int r = (a - b - c) & 0xFF;
+            setFlagC(a < b + c);
+            setFlagAC((a & 0xF) >= (b & 0xF) + (c & 0xF)); // Тут флаг взводится наоборот
+            setFlagsSZP(r);
+            return r;
+        }
+
+        private int anaByte(final int a, final int b) {
+            final int r = a & b;
+            setFlagC(false);
+            setFlagAC(((a | b) & 0b1000) != 0);
+            setFlagsSZP(r);
+            return r;
+        }
+
+        private void alu(final int operation, final int value) {
+            switch (operation) {
+                case 0: // ADD, ADI
+                    fA = addByte(fA, value, 0);
+                    break;
+                case 1: // ADC, ACI
+                    fA = addByte(fA, value, fF & 1);
+                    break;
+                case 2: // SUB, SUI
+                    fA = subByte(fA, value, 0);
+                    break;
+                case 3: // SBB, SBI
+                    fA = subByte(fA, value, fF & 1);
+                    break;
+                case 4: // ANA, ANI
+                    fA = anaByte(fA, value);
+                    break;
+                case 5: // XRA, XRI
+                    fA = (fA ^ value) & 0xFF;
+                    setFlagsSZP(fA);
+                    setFlagC (false);
+                    setFlagAC(false);
+                    break;
+                case 6: // ORA, ORI
+                    fA = (fA | value) & 0xFF;
+                    setFlagsSZP(fA);
+                    setFlagC (false);
+                    setFlagAC(false);
+                    break;
+                default: // CMP, CPI
+                    subByte(fA, value, 0);
+                    break;
+            }
+        }
+
+        private int inr(final int value) {
+            final int v = (value + 1) & 0xFF;
+            setFlagAC((v & 0xF) == 0);
+            setFlagsSZP(v);
+            return v;
+        }
+
+        private int dcr(final int value) {
+            final int v = (value - 1) & 0xFF;
+            setFlagAC((v & 0xF) != 0xF); // Тут флаг взводится наоборот
+            setFlagsSZP(v);
+            return v;
+        }
+
+        private void daa() {
+            int s = 0;
+            final int a = fA;
+            boolean fc = getFlagC();
+
+            if (getFlagAC() || (a & 0xF) > 9) {
+                s = 6;
+            }
+            if (fc || (a >> 4) > 9 || ((a >> 4) >= 9 && (a & 0xF) > 9)) {
+                s |= 0x60;
+                fc = true;
+            }
+            fA = addByte(a, s, 0);
+            setFlagC(fc);
+        }
+    }
+
+    @Before
+    public void setUp() {
+        fMemManager = new MemoryManager();
+        fMemManager.addMemoryUnit(0x0000, new SimpleMemory(0x200));
+        fCPU = new CPUi8080(() -> 0, new ClockSpeedGenerator(), fMemManager, null);
+    }
+
+    /**
+     * ADD..CMP (10aaasss) для всех регистров-источников, включая M(HL) и сам аккумулятор.
+     */
+    @Test
+    public void aluRegister() {
+        final Reference ref = new Reference();
+        for (int opCode = 0x80; opCode <= 0xBF; opCode++) {
+            final int src = opCode & 0b111;
+            fMemManager.writeByte(CODE_ADDRESS, opCode);
+            for (int operand = 0; operand < 256; operand++) {
+                for (int a = 0; a < 256; a++) {
+                    if ((src == REG_A) && (a != operand)) {
+                        continue;
+                    }
+                    for (int flags = 0; flags < 4; flags++) {
+                        final int f = inputFlags(operand ^ a, flags);
+                        setUpCmd(a, f);
+                        if (src == REG_M) {
+                            fCPU.fHL = M_ADDRESS;
+                            fMemManager.writeByte(M_ADDRESS, operand);
+                        } else if (src != REG_A) {
+                            fCPU.fHL = M_ADDRESS;
+                            fCPU.setReg(src, operand);
+                        }
+                        final int hl = fCPU.fHL;
+                        fCPU.execOneCmd();
+
+                        ref.fA = a;
+                        ref.fF = f;
+                        ref.alu((opCode >> 3) & 0b111, operand);
+                        check(opCode, a, operand, f, ref);
+                        if (fCPU.fHL != hl) {
+                            fail(String.format("%02X: изменен HL", opCode));
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * ADI..CPI (11aaa110).
+     */
+    @Test
+    public void aluImmediate() {
+        final Reference ref = new Reference();
+        for (int operation = 0; operation < 8; operation++) {
+            final int opCode = 0b1100_0110 | (operation << 3);
+            fMemManager.writeByte(CODE_ADDRESS, opCode);
+            for (int operand = 0; operand < 256; operand++) {
+                fMemManager.writeByte(CODE_ADDRESS + 1, operand);
+                for (int a = 0; a < 256; a++) {
+                    for (int flags = 0; flags < 4; flags++) {
+                        final int f = inputFlags(operand ^ a, flags);
+                        setUpCmd(a, f);
+                        fCPU.execOneCmd();
+
+                        ref.fA = a;
+                        ref.fF = f;
+                        ref.alu(operation, operand);
+                        check(opCode, a, operand, f, ref);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * INR/DCR (00rrr100/00rrr101) для всех регистров, включая M(HL).
+     */
+    @Test
+    public void inrDcr() {
+        final Reference ref = new Reference();
+        for (int r = 0; r < 8; r++) {
+            for (int dcr = 0; dcr < 2; dcr++) {
+                final int opCode = 0b0000_0100 | (r << 3) | dcr;
+                fMemManager.writeByte(CODE_ADDRESS, opCode);
+                for (int value = 0; value < 256; value++) {
+                    for (int flags = 0; flags < 8; flags++) {
+                        final int f = inputFlags(value * 3 + flags, flags);
+                        setUpCmd(0x5A, f);
+                        fCPU.fHL = M_ADDRESS;
+                        fCPU.setReg(r, value);
+                        fCPU.execOneCmd();
+
+                        ref.fA = 0;
+                        ref.fF = f;
+                        final int expected = (dcr == 0) ? ref.inr(value) : ref.dcr(value);
+                        final int actual   = fCPU.getReg(r);
+                        if ((actual != expected) || (fCPU.fF != ref.fF)) {
+                            fail(String.format("%02X: R=%02X F=%02X -> R=%02X F=%02X, ожидалось R=%02X F=%02X",
+                                    opCode, value, f, actual, fCPU.fF, expected, ref.fF));
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * DAA (0x27) для всех значений A и сочетаний C, AC.
+     */
+    @Test
+    public void daa() {
+        final Reference ref = new Reference();
+        fMemManager.writeByte(CODE_ADDRESS, 0x27);
+        for (int a = 0; a < 256; a++) {
+            for (int flags = 0; flags < 32; flags++) {
+                final int f = inputFlags(flags >> 2, flags);
+                setUpCmd(a, f);
+                fCPU.execOneCmd();
+
+                ref.fA = a;
+                ref.fF = f;
+                ref.daa();
+                check(0x27, a, 0, f, ref);
+            }
+        }
+    }
+
+    /**
+     * Формирует входные флаги: C и AC - из битов 0, 1 номера сочетания, S, Z, P - из заданного значения.
+     *
+     * @param szp   значение для флагов S, Z, P
+     * @param flags номер сочетания флагов C, AC
+     * @return флаги SZ0A_0P1C
+     */
+    private static int inputFlags(final int szp, final int flags) {
+        return (((szp * 0x25) >> 1) & FLAGS_SZP) | ((flags & 1) != 0 ? FLAG_C : 0) | ((flags & 2) != 0 ? FLAG_AC : 0) | 0b10;
+    }
+
+    /**
+     * Готовит CPU к выполнению команды по адресу CODE_ADDRESS.
+     *
+     * @param a значение аккумулятора
+     * @param f значение флагов
+     */
+    private void setUpCmd(final int a, final int f) {
+        fCPU.fPC = CODE_ADDRESS;
+        fCPU.fA  = a;
+        fCPU.fF  = f;
+    }
+
+    /**
+     * Сверяет аккумулятор и флаги CPU с эталоном.
+     *
+     * @param opCode  код операции
+     * @param a       аккумулятор на входе
+     * @param operand операнд
+     * @param f       флаги на входе
+     * @param ref     эталон после выполнения команды
+     */
+    private void check(final int opCode, final int a, final int operand, final int f, final Reference ref) {
+        if ((fCPU.fA != ref.fA) || (fCPU.fF != ref.fF)) {
+            fail(String.format("%02X: A=%02X op=%02X F=%02X -> A=%02X F=%02X, ожидалось A=%02X F=%02X",
+                    opCode, a, operand, f, fCPU.fA, fCPU.fF, ref.fA, ref.fF));
+        }
+    }
+}
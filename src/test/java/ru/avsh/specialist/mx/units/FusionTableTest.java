@@ -0,0 +1,154 @@
+package ru.avsh.specialist.mx.units;
+
+import org.junit.Before;
+import org.junit.Test;
+import ru.avsh.specialist.mx.units.memory.MemoryManager;
+import ru.avsh.specialist.mx.units.memory.units.SimpleMemory;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+/**
+ * Тест "Таблица слияния команд" - ловушка на второй команде слитой последовательности.
+ * <p>
+ * Для каждого шаблона таблицы слияния программа "NOP; первая команда; вторая команда" выполняется кэшем блоков кода.
+ * Без ловушки последовательность выполняется слитым обработчиком. С ловушкой на второй команде блок должен
+ * закончиться перед ней (слитый обработчик не выполняется) с тем же состоянием, что и у интерпретатора после двух
+ * команд. Ловушка устанавливается после декодирования блока - кэш блоков должен быть сброшен.
+ * Ловушки срабатывают без отладчика (CPU без SpecialistMX), проверяется только граница блока.
+ *
+ * @author -=AVSh=-
+ */
+public class FusionTableTest {
+    // Адрес программы и адрес второй команды последовательности
+    private static final int ORIGIN = 0x0100;
+    private static final int SECOND = ORIGIN + 2;
+
+    // Программы по шаблонам таблицы слияния: NOP; первая команда; вторая команда; HLT
+    private static final Map<String, int[]> PROGRAMS = new LinkedHashMap<>();
+
+    static {
+        PROGRAMS.put("MOV r,M; INX H"  , new int[]{0x00, 0x7E, 0x23, 0x76            }); // MOV A,M; INX H
+        PROGRAMS.put("MOV M,r; INX H"  , new int[]{0x00, 0x77, 0x23, 0x76            }); // MOV M,A; INX H
+        PROGRAMS.put("DCR r; JNZ"      , new int[]{0x00, 0x0D, 0xC2, 0x06, 0x01, 0x76}); // DCR C; JNZ 0106
+        PROGRAMS.put("LDAX rp; STAX rp", new int[]{0x00, 0x1A, 0x02, 0x76            }); // LDAX D; STAX B
+        PROGRAMS.put("MOV A,r; ORA r"  , new int[]{0x00, 0x78, 0xB1, 0x76            }); // MOV A,B; ORA C
+    }
+
+    // Регистры A, F, BC, DE, HL, SP, PC на входе программ
+    private static final int[] REGS = {0x5A, 0b0000_0010, 0x0305, 0x0400, 0x0200, 0x1000, ORIGIN};
+
+    private SimpleMemory fMemory;
+    private CPUi8080     fCPU;
+    private CPUi8080     fRef;
+
+    @Before
+    public void setUp() {
+        final ClockSpeedGenerator gen        = new ClockSpeedGenerator();
+        final MemoryManager       memManager = new MemoryManager();
+        fMemory = new SimpleMemory(0x1_0000);
+        memManager.addMemoryUnit(0x0000, fMemory);
+        fCPU = new CPUi8080(() -> 0, gen, memManager, null);
+        fCPU.setBlockCache(true);
+        fRef = new CPUi8080(() -> 0, gen, memManager, null);
+    }
+
+    /**
+     * Таблица слияния и программы теста содержат одни и те же шаблоны.
+     */
+    @Test
+    public void allPatternsCovered() {
+        assertEquals(PROGRAMS.keySet(), fCPU.getFusionStatistics().keySet());
+    }
+
+    /**
+     * Ловушка на второй команде каждого шаблона останавливает блок перед ней.
+     */
+    @Test
+    public void trapOnSecondCommand() {
+        for (Map.Entry<String, int[]> entry : PROGRAMS.entrySet()) {
+            final String name    = entry.getKey();
+            final int[]  program = entry.getValue();
+            for (int i = 0; i < program.length; i++) {
+                fCPU.writeByte(ORIGIN + i, program[i]);
+            }
+
+            // Эталон - интерпретатор после NOP и первой команды
+            prepare(fRef);
+            final int   refCycles = fRef.execOneCmd() + fRef.execOneCmd();
+            final int[] refRegs   = getRegs(fRef);
+            final int[] refData   = getData();
+            assertEquals(name, SECOND, fRef.fPC);
+
+            // Без ловушки последовательность выполняется слитым обработчиком
+            prepare(fCPU);
+            execute();
+            assertEquals   (name, 1L, (long) fCPU.getFusionStatistics().get(name));
+            assertNotEquals(name, SECOND, fCPU.fPC);
+
+            // С ловушкой на второй команде блок заканчивается перед ней
+            fCPU.debugAddTrap(0, SECOND, false);
+            prepare(fCPU);
+            final int cycles = execute();
+            fCPU.debugRemTrap(0, SECOND);
+            assertEquals     (name, 1L, (long) fCPU.getFusionStatistics().get(name));
+            assertEquals     (name, refCycles, cycles);
+            assertArrayEquals(name, refRegs, getRegs(fCPU));
+            assertArrayEquals(name, refData, getData());
+
+            // После удаления ловушки последовательность снова сливается
+            prepare(fCPU);
+            execute();
+            assertEquals(name, 2L, (long) fCPU.getFusionStatistics().get(name));
+        }
+    }
+
+    /**
+     * Выполняет программу кэшем блоков кода, пока не будет выполнена вторая команда или CPU не остановится на ней.
+     * (Первая команда после установки/удаления ловушки выполняется интерпретатором - кэш блоков сбрасывается)
+     *
+     * @return количество тактов выполненных команд
+     */
+    private int execute() {
+        int cycles = 0;
+        do {
+            cycles += fCPU.execCmd();
+        } while (fCPU.fPC < SECOND);
+        return cycles;
+    }
+
+    /**
+     * Устанавливает исходные регистры CPU и данные по адресам из регистровых пар BC, DE, HL.
+     *
+     * @param cpu CPU
+     */
+    private void prepare(final CPUi8080 cpu) {
+        fMemory.writeByte(REGS[2], 0x11);
+        fMemory.writeByte(REGS[3], 0x22);
+        fMemory.writeByte(REGS[4], 0x33);
+        cpu.fA  = REGS[0];
+        cpu.fF  = REGS[1];
+        cpu.fBC = REGS[2];
+        cpu.fDE = REGS[3];
+        cpu.fHL = REGS[4];
+        cpu.fSP = REGS[5];
+        cpu.fPC = REGS[6];
+    }
+
+    /**
+     * Возвращает данные по адресам из регистровых пар BC, DE, HL на входе программ.
+     *
+     * @return данные
+     */
+    private int[] getData() {
+        return new int[]{fMemory.readByte(REGS[2]), fMemory.readByte(REGS[3]), fMemory.readByte(REGS[4])};
+    }
+
+    private static int[] getRegs(final CPUi8080 cpu) {
+        return new int[]{cpu.fA, cpu.fF, cpu.fBC, cpu.fDE, cpu.fHL, cpu.fSP, cpu.fPC};
+    }
+}
@@ -0,0 +1,189 @@
+package ru.avsh.specialist.mx.units.memory;
+
+import org.junit.Test;
+import ru.avsh.specialist.mx.units.memory.units.MainMemory;
+import ru.avsh.specialist.mx.units.memory.units.MainMemoryPort;
+import ru.avsh.specialist.mx.units.types.MemoryUnit;
+
+import java.util.Arrays;
+import java.util.Set;
+import java.util.TreeSet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Тест "Измененные страницы" - поколения, несколько потребителей, диапазоны не на границе страницы
+ * и пометка страниц диспетчером запоминающих устройств при записи.
+ *
+ * @author -=AVSh=-
+ */
+public class DirtyPagesTest {
+    // Размер отслеживаемого массива в тестах DirtyPages (16 страниц)
+    private static final int SIZE = 16 * DirtyPages.PAGE_SIZE;
+
+    /**
+     * Поколение 0 означает "изменено все" - и до первой записи, и после advance().
+     */
+    @Test
+    public void sinceZeroMeansEverything() {
+        final DirtyPages dirty = new DirtyPages(SIZE);
+        final long[]     bits  = new long[1];
+        assertTrue  (dirty.collect(0, 0, SIZE, bits));
+        assertEquals(range(0, 16), pages(bits));
+
+        final int since = dirty.advance();
+        assertFalse (dirty.collect(since, 0, SIZE, bits));
+        assertEquals(0L, bits[0]);
+        assertTrue  (dirty.collect(0, 0, SIZE, bits));
+        assertEquals(range(0, 16), pages(bits));
+    }
+
+    /**
+     * Два потребителя со своими поколениями: advance() одного не сбрасывает изменения для другого.
+     */
+    @Test
+    public void interleavedConsumers() {
+        final DirtyPages dirty = new DirtyPages(SIZE);
+        final long[]     bits  = new long[1];
+        int a = dirty.advance();
+        int b = dirty.advance();
+
+        dirty.mark(0x123);
+        // Потребитель A забирает изменения и начинает новое поколение
+        assertTrue  (dirty.collect(a, 0, SIZE, bits));
+        assertEquals(set(1), pages(bits));
+        a = dirty.advance();
+        assertFalse (dirty.collect(a, 0, SIZE, bits));
+
+        dirty.mark(0x5FF, 2);
+        // Потребитель B видит обе записи
+        assertTrue  (dirty.collect(b, 0, SIZE, bits));
+        assertEquals(set(1, 5, 6), pages(bits));
+        b = dirty.advance();
+
+        dirty.mark(0xA00);
+        // Потребитель A видит обе записи после своего advance(), потребитель B - только последнюю
+        assertTrue  (dirty.collect(a, 0, SIZE, bits));
+        assertEquals(set(5, 6, 10), pages(bits));
+        assertTrue  (dirty.collect(b, 0, SIZE, bits));
+        assertEquals(set(10), pages(bits));
+
+        dirty.markAll();
+        assertTrue  (dirty.collect(dirty.advance() - 1, 0, SIZE, bits));
+        assertEquals(range(0, 16), pages(bits));
+    }
+
+    /**
+     * Диапазон не на границе страницы массива: бит диапазона захватывает две страницы массива.
+     */
+    @Test
+    public void unalignedRange() {
+        final DirtyPages dirty = new DirtyPages(SIZE);
+        final long[]     bits  = {-1L};
+        final int        since = dirty.advance();
+
+        // Диапазон 0x180-0x57F: бит 0 - страницы 1-2 массива, 1 - 2-3, 2 - 3-4, 3 - 4-5
+        dirty.mark(0x2FF);
+        assertTrue  (dirty.collect(since, 0x180, 0x400, bits));
+        assertEquals(set(0, 1), pages(bits));
+
+        // Запись за пределами диапазона не учитывается, набор битов заполняется полностью
+        final int next = dirty.advance();
+        dirty.mark(0x0FF);
+        dirty.mark(0x600);
+        assertFalse (dirty.collect(next, 0x180, 0x400, bits));
+        assertEquals(0L, bits[0]);
+        dirty.mark(0x57F);
+        assertTrue  (dirty.collect(next, 0x180, 0x400, bits));
+        assertEquals(set(3), pages(bits));
+
+        // Неполный последний бит диапазона: 0x490-0x500 захватывает страницу 5 массива, 0x490-0x4FF - нет
+        assertTrue  (dirty.collect(next, 0x190, 0x371, bits));
+        assertEquals(set(3), pages(bits));
+        assertFalse (dirty.collect(next, 0x190, 0x370, bits));
+    }
+
+    /**
+     * Диспетчер помечает страницы основной памяти при записи любым путем (прямой доступ, слово на границе страниц,
+     * страница с несколькими устройствами, блок), с учетом страниц RAM-диска и ROM-диска.
+     */
+    @Test
+    public void markedByMemoryManager() {
+        final MainMemory    ram     = new MainMemory(9, null);
+        final MemoryManager manager = new MemoryManager();
+        manager.addMemoryUnit(0x0000, ram);
+        manager.addMemoryUnit(0x9000, new WriteOnlyUnit(0x3000));
+        manager.addMemoryUnit(0xFFFC, new MainMemoryPort(ram));
+
+        final DirtyPages dirty = ram.getDirtyPages();
+        final long[]     bits  = new long[4];
+        final int        since = dirty.advance();
+        manager.writeByte (0x1234, 1);
+        manager.writeWord (0x20FE, 0x1122);
+        manager.writeWord (0x30FF, 0x3344);
+        manager.writeByte (0x9100, 5);
+        manager.writeBlock(0x5000, new byte[0x180], 0, 0x180);
+        assertTrue  (ram.collectDirtyPages(0, since, bits));
+        assertEquals(set(0x12, 0x20, 0x30, 0x31, 0x50, 0x51, 0x91), pages(bits));
+        assertFalse (ram.collectDirtyPages(1, since, bits));
+
+        // Страница RAM-диска 3
+        manager.writeByte(0xFFFD, 2);
+        manager.writeByte(0x0010, 9);
+        assertTrue  (ram.collectDirtyPages(3, since, bits));
+        assertEquals(set(0), pages(bits));
+
+        // Страница ROM-диска: адреса >= C000 относятся к основной странице
+        final int next = dirty.advance();
+        manager.writeByte(0xFFFE, 0);
+        manager.writeByte(0xC100, 7);
+        assertFalse (ram.collectDirtyPages(MainMemory.ROM_DISK, next, bits));
+        assertTrue  (ram.collectDirtyPages(0, next, bits));
+        assertEquals(set(0xC1), pages(bits));
+    }
+
+    /**
+     * Запоминающее устройство без прямого доступа (страницы с ним диспетчер не читает/пишет прямо в массиве).
+     */
+    private static final class WriteOnlyUnit implements MemoryUnit {
+        private final int fSize;
+
+        WriteOnlyUnit(final int size) {
+            fSize = size;
+        }
+
+        @Override
+        public int storageSize() {
+            return fSize;
+        }
+
+        @Override
+        public void writeByte(final int address, final int value) {
+            // Запись игнорируется
+        }
+    }
+
+    private static Set<Integer> pages(final long[] bits) {
+        final Set<Integer> result = new TreeSet<>();
+        for (int i = 0; i < bits.length << 6; i++) {
+            if ((bits[i >> 6] & (1L << i)) != 0) {
+                result.add(i);
+            }
+        }
+        return result;
+    }
+
+    private static Set<Integer> range(final int from, final int to) {
+        final Set<Integer> result = new TreeSet<>();
+        for (int i = from; i < to; i++) {
+            result.add(i);
+        }
+        return result;
+    }
+
+    private static Set<Integer> set(final Integer... pages) {
+        return new TreeSet<>(Arrays.asList(pages));
+    }
+}
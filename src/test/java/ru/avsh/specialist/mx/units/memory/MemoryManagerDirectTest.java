@@ -0,0 +1,247 @@
+package ru.avsh.specialist.mx.units.memory;
+
+import org.junit.Test;
+import ru.avsh.specialist.mx.units.memory.units.MainMemory;
+import ru.avsh.specialist.mx.units.memory.units.MainMemoryPort;
+import ru.avsh.specialist.mx.units.memory.units.SimpleMemory;
+import ru.avsh.specialist.mx.units.types.MemoryUnit;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * Тест "Прямой доступ диспетчера запоминающих устройств" - сверка с эталоном (прежним линейным просмотром устройств).
+ * <p>
+ * Карта памяти повторяет карту ПК: основная память с RAM-диском и ROM-диском (MainMemory) по адресу 0000,
+ * устройство экрана по адресу 9000 (получает запись вместе с основной памятью в диапазоне 9000-BFFF),
+ * память по адресу FFC0 и порт выбора страницы MainMemoryPort по адресу FFFC. Случайные чтения и записи байтов
+ * и слов, блочные операции, смена страниц (методом setPage() и записью в порт), установка/снятие точек наблюдения
+ * и сброс выполняются одновременно в диспетчере и в эталоне. Адреса чаще выбираются около границы ROM-диска
+ * (C000) - на странице ROM-диска адреса >= C000 относятся к странице 0 - и в области экрана.
+ *
+ * @author -=AVSh=-
+ */
+public class MemoryManagerDirectTest {
+    // Количество случайных машин и обращений к каждой
+    private static final int MACHINES = 20;
+    private static final int ACCESSES = 100_000;
+
+    // Адрес и размер области экрана, адрес границы ROM-диска
+    private static final int SCREEN_ADDRESS = 0x9000;
+    private static final int SCREEN_SIZE    = 0x3000;
+    private static final int ROM_DISK_SPLIT = 0xC000;
+
+    /**
+     * Класс "Тестовый экран" - журналирует запись (адрес, байт).
+     */
+    private static final class TestScreen implements MemoryUnit {
+        private final List<Integer> fLog;
+
+        TestScreen(final List<Integer> log) {
+            fLog = log;
+        }
+
+        @Override
+        public int storageSize() {
+            return SCREEN_SIZE;
+        }
+
+        @Override
+        public void writeByte(final int address, final int value) {
+            fLog.add((address << 8) | value);
+        }
+    }
+
+    /**
+     * Класс "Тестовая машина" - запоминающие устройства и журналы.
+     */
+    private static final class Machine {
+        private final List<Integer> fScreenLog = new ArrayList<>();
+        private final List<Integer> fEvents    = new ArrayList<>();
+        private final MainMemory    fRAM      ;
+        private final SimpleMemory  fMemory   ;
+
+        Machine(final int numberPages) {
+            fRAM    = new MainMemory(numberPages, null);
+            fMemory = new SimpleMemory(0x20);
+        }
+
+        /**
+         * Размещает устройства машины.
+         *
+         * @param add метод добавления устройства диспетчером
+         */
+        void addUnits(final UnitAdder add) {
+            add.add(0x0000        , fRAM                    );
+            add.add(SCREEN_ADDRESS, new TestScreen(fScreenLog));
+            add.add(0xFFC0        , fMemory                 );
+            add.add(0xFFFC        , new MainMemoryPort(fRAM));
+        }
+
+        MemoryManager.AccessListener listener() {
+            return (address, value, write) -> fEvents.add((address << 9) | (value << 1) | (write ? 1 : 0));
+        }
+    }
+
+    @FunctionalInterface
+    private interface UnitAdder {
+        void add(int startAddress, MemoryUnit memoryUnit);
+    }
+
+    @Test
+    public void randomAccesses() {
+        final Random random = new Random(1);
+        for (int m = 0; m < MACHINES; m++) {
+            final int                    numberPages = random.nextInt(8) + 2;
+            final Machine                machine     = new Machine(numberPages);
+            final Machine                refMachine  = new Machine(numberPages);
+            final MemoryManager          manager     = new MemoryManager();
+            final ReferenceMemoryManager ref         = new ReferenceMemoryManager();
+            machine   .addUnits(manager::addMemoryUnit);
+            refMachine.addUnits(ref    ::addMemoryUnit);
+
+            final int[] readMap  = new int[0x800];
+            final int[] writeMap = new int[0x800];
+            for (int i = 0; i < ACCESSES; i++) {
+                final int address = address(random);
+                final int value   = random.nextInt(0x1_0000);
+                switch (random.nextInt(10)) {
+                    case 0:
+                    case 1:
+                        manager.writeByte(address, value & 0xFF);
+                        ref    .writeByte(address, value & 0xFF);
+                        break;
+                    case 2:
+                        manager.writeWord(address, value);
+                        ref    .writeWord(address, value);
+                        break;
+                    case 3:
+                        if (manager.readWord(address) != ref.readWord(address)) {
+                            fail(String.format("Чтение слова %04X: машина %d, страница %d", address, m, machine.fRAM.getPage()));
+                        }
+                        break;
+                    case 4:
+                        if (manager.debugReadByte(address) != ref.debugReadByte(address)) {
+                            fail(String.format("Отладочное чтение %04X: машина %d, страница %d", address, m, machine.fRAM.getPage()));
+                        }
+                        break;
+                    case 5:
+                        if (random.nextInt(50) == 0) {
+                            // Страницы RAM, RAM-диска и ROM-диска (номера больше количества страниц)
+                            final int page = random.nextInt(12);
+                            machine   .fRAM.setPage(page);
+                            refMachine.fRAM.setPage(page);
+                        }
+                        break;
+                    case 6:
+                        if (random.nextInt(2000) == 0) {
+                            if (random.nextBoolean()) {
+                                Arrays.fill(readMap , 0);
+                                Arrays.fill(writeMap, 0);
+                                for (int k = 0; k < 5; k++) {
+                                    final int r = address(random);
+                                    final int w = address(random);
+                                    readMap [r >> 5] |= 1 << r;
+                                    writeMap[w >> 5] |= 1 << w;
+                                }
+                                manager.setWatches(readMap, writeMap, machine   .listener());
+                                ref    .setWatches(readMap, writeMap, refMachine.listener());
+                            } else {
+                                manager.setWatches(readMap, writeMap, null);
+                                ref    .setWatches(readMap, writeMap, null);
+                            }
+                        }
+                        break;
+                    case 7:
+                        if (random.nextInt(5000) == 0) {
+                            manager.reset(false);
+                            ref    .reset(false);
+                        }
+                        if (random.nextInt(100) == 0) {
+                            block(random, address, manager, ref, m);
+                        }
+                        break;
+                    default:
+                        if (manager.readByte(address) != ref.readByte(address)) {
+                            fail(String.format("Чтение %04X: машина %d, страница %d", address, m, machine.fRAM.getPage()));
+                        }
+                        break;
+                }
+            }
+            final String message = String.format("Машина %d", m);
+            assertArrayEquals(message, refMachine.fRAM.getDirectMemory(), machine.fRAM.getDirectMemory());
+            assertEquals     (message, refMachine.fRAM.getPage()        , machine.fRAM.getPage()        );
+            for (int address = 0; address < 0x20; address++) {
+                assertEquals(message, refMachine.fMemory.readByte(address), machine.fMemory.readByte(address));
+            }
+            assertEquals(message, refMachine.fScreenLog, machine.fScreenLog);
+            assertEquals(message, refMachine.fEvents   , machine.fEvents   );
+        }
+    }
+
+    /**
+     * Возвращает случайный адрес: чаще - около границы ROM-диска, в области экрана и в области FF00-FFFF.
+     *
+     * @param random генератор случайных чисел
+     * @return адрес
+     */
+    private static int address(final Random random) {
+        switch (random.nextInt(8)) {
+            case 0:
+                return ROM_DISK_SPLIT - 0x40 + random.nextInt(0x80);
+            case 1:
+                return SCREEN_ADDRESS + random.nextInt(SCREEN_SIZE);
+            case 2:
+                return 0xFF00 + random.nextInt(0x100);
+            default:
+                return random.nextInt(0x1_0000);
+        }
+    }
+
+    /**
+     * Выполняет случайную блочную операцию (блочное чтение, отладочное блочное чтение или блочную запись) и сверяет
+     * ее с эталоном (чтение - с побайтным чтением, запись - с побайтной записью по устройствам).
+     *
+     * @param random  генератор случайных чисел
+     * @param address адрес (уменьшается, чтобы блок не выходил за пределы 64K)
+     * @param manager диспетчер
+     * @param ref     эталон
+     * @param m       номер машины (для сообщения о расхождении)
+     */
+    private static void block(final Random random, final int address, final MemoryManager manager,
+                              final ReferenceMemoryManager ref, final int m) {
+        final int    length = random.nextInt(random.nextBoolean() ? 0x40 : 0x1000) + 1;
+        final int    start  = Math.min(address, 0x1_0000 - length);
+        final byte[] buffer = new byte[length];
+        final byte[] expect = new byte[length];
+        switch (random.nextInt(3)) {
+            case 0:
+                manager.debugReadBlock(start, buffer, 0, length);
+                for (int i = 0; i < length; i++) {
+                    expect[i] = (byte) ref.debugReadByte(start + i);
+                }
+                break;
+            case 1:
+                manager.readBlock(start, buffer, 0, length);
+                for (int i = 0; i < length; i++) {
+                    expect[i] = (byte) ref.readByte(start + i);
+                }
+                break;
+            default:
+                random.nextBytes(buffer);
+                System.arraycopy(buffer, 0, expect, 0, length);
+                manager.writeBlock(start, buffer, 0, length);
+                ref    .writeBlock(start, expect, 0, length);
+                break;
+        }
+        if (!Arrays.equals(expect, buffer)) {
+            fail(String.format("Блок %04X, %d байт: машина %d", start, length, m));
+        }
+    }
+}
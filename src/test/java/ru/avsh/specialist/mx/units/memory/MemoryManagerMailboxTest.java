@@ -0,0 +1,303 @@
+package ru.avsh.specialist.mx.units.memory;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import ru.avsh.specialist.mx.units.memory.units.SimpleMemory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Тест "Почтовый ящик диспетчера запоминающих устройств" - acquire/release/isOwner/processMailbox/call/execute.
+ * <p>
+ * Владельца памяти (поток тактового генератора) изображает поток, который в цикле читает память и между
+ * "командами" обрабатывает почтовый ящик. Проверяется, что действия других потоков выполняет владелец,
+ * без владельца действия выполняются сразу, исключения действия получает вызывающий поток, точки наблюдения
+ * заменяются из другого потока между обращениями владельца, а действия, оставшиеся в почтовом ящике,
+ * выполняются при освобождении памяти (ни один вызов call() не остается без ответа).
+ *
+ * @author -=AVSh=-
+ */
+public class MemoryManagerMailboxTest {
+    // Время ожидания потоков
+    private static final long TIMEOUT = TimeUnit.SECONDS.toMillis(10);
+    // Наблюдаемый адрес
+    private static final int  WATCHED = 0x0123;
+
+    private MemoryManager fManager;
+    private Owner         fOwner  ;
+
+    /**
+     * Класс "Владелец памяти" - читает память и обрабатывает почтовый ящик, пока не будет остановлен.
+     */
+    private final class Owner extends Thread {
+        private volatile boolean fRun = true;
+        // true = память захвачена
+        private volatile boolean fAcquired;
+        // true = почтовый ящик между "командами" не обрабатывается
+        private final    boolean fDeaf;
+
+        Owner(final boolean deaf) {
+            super("Owner");
+            fDeaf = deaf;
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            fManager.acquire();
+            fAcquired = true;
+            try {
+                while (fRun) {
+                    fManager.readByte(WATCHED);
+                    if (!fDeaf) {
+                        fManager.processMailbox();
+                    }
+                }
+            } finally {
+                fManager.release();
+            }
+        }
+
+        void finish() throws InterruptedException {
+            fRun = false;
+            join(TIMEOUT);
+            assertFalse("Владелец не остановился", isAlive());
+        }
+    }
+
+    @Before
+    public void setUp() {
+        fManager = new MemoryManager();
+        fManager.addMemoryUnit(0x0000, new SimpleMemory(0x1000));
+    }
+
+    @After
+    public void tearDown() throws InterruptedException {
+        if (fOwner != null) {
+            fOwner.finish();
+        }
+    }
+
+    /**
+     * Запускает владельца памяти и дожидается, пока он станет владельцем.
+     *
+     * @param deaf true = владелец не обрабатывает почтовый ящик между "командами"
+     */
+    private void startOwner(final boolean deaf) throws InterruptedException {
+        fOwner = new Owner(deaf);
+        fOwner.start();
+        final long deadline = System.currentTimeMillis() + TIMEOUT;
+        while (!fOwner.fAcquired) {
+            if (System.currentTimeMillis() > deadline) {
+                fail("Владелец не захватил память");
+            }
+            Thread.sleep(1);
+        }
+    }
+
+    /**
+     * Действия других потоков выполняются владельцем, действия самого владельца - сразу.
+     */
+    @Test
+    public void ownerExecutesMailbox() throws InterruptedException {
+        startOwner(false);
+        assertSame(fOwner, fManager.call(Thread::currentThread));
+        // Владельцем считается только поток владельца
+        assertTrue (fManager.call(fManager::isOwner));
+        assertFalse(fManager.isOwner());
+
+        final AtomicReference<Thread> executor = new AtomicReference<>();
+        fManager.execute(() -> executor.set(Thread.currentThread()));
+        assertSame(fOwner, executor.get());
+
+        // Вложенный вызов из действия выполняется сразу (владелец не ждет сам себя)
+        assertSame(fOwner, fManager.call(() -> fManager.call(Thread::currentThread)));
+
+        // Действия нескольких потоков выполняются одним владельцем - без гонок
+        final int[]        counter = new int[1];
+        final List<Thread> callers = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            final Thread caller = new Thread(() -> {
+                for (int k = 0; k < 1000; k++) {
+                    fManager.execute(() -> counter[0]++);
+                }
+            });
+            callers.add(caller);
+            caller.start();
+        }
+        for (Thread caller : callers) {
+            caller.join(TIMEOUT);
+            assertFalse("Вызов call() не завершился", caller.isAlive());
+        }
+        assertEquals(4000, fManager.call(() -> counter[0]).longValue());
+    }
+
+    /**
+     * Без владельца (тактовый генератор остановлен) действия выполняются сразу в вызывающем потоке.
+     */
+    @Test
+    public void directWhenPaused() throws InterruptedException {
+        final Thread current = Thread.currentThread();
+        assertSame(current, fManager.call(Thread::currentThread));
+
+        startOwner(false);
+        fOwner.finish();
+        fOwner = null;
+        assertSame(current, fManager.call(Thread::currentThread));
+
+        // Текущий поток - сам владелец
+        fManager.acquire();
+        try {
+            assertSame(current, fManager.call(Thread::currentThread));
+        } finally {
+            fManager.release();
+        }
+    }
+
+    /**
+     * Исключения действия, выполненного владельцем, получает вызывающий поток (тот же объект исключения).
+     */
+    @Test
+    public void exceptionPropagation() throws InterruptedException {
+        startOwner(false);
+
+        final IllegalArgumentException runtime = new IllegalArgumentException("runtime");
+        try {
+            fManager.call(() -> {
+                throw runtime;
+            });
+            fail("Исключение не передано");
+        } catch (IllegalArgumentException e) {
+            assertSame(runtime, e);
+        }
+
+        final AssertionError error = new AssertionError("error");
+        try {
+            fManager.execute(() -> {
+                throw error;
+            });
+            fail("Ошибка не передана");
+        } catch (AssertionError e) {
+            assertSame(error, e);
+        }
+
+        // Владелец пережил исключения и продолжает обрабатывать почтовый ящик
+        assertTrue(fOwner.isAlive());
+        assertSame(fOwner, fManager.call(Thread::currentThread));
+    }
+
+    /**
+     * Точки наблюдения устанавливаются и снимаются из другого потока, пока владелец обращается к памяти:
+     * после возврата из setWatches() замена устройств уже выполнена владельцем.
+     */
+    @Test
+    public void watchesFromOtherThread() throws InterruptedException {
+        startOwner(false);
+
+        final int[] readMap  = new int[0x800];
+        final int[] writeMap = new int[0x800];
+        readMap[WATCHED >> 5] |= 1 << WATCHED;
+
+        final AtomicInteger           events   = new AtomicInteger();
+        final AtomicReference<Thread> listener = new AtomicReference<>();
+        for (int i = 0; i < 20; i++) {
+            fManager.setWatches(readMap, writeMap, (address, value, write) -> {
+                assertEquals(WATCHED, address);
+                assertFalse(write);
+                listener.set(Thread.currentThread());
+                events.incrementAndGet();
+            });
+            // Владелец продолжает читать наблюдаемый адрес - события приходят из его потока
+            final int  from     = events.get();
+            final long deadline = System.currentTimeMillis() + TIMEOUT;
+            while (events.get() == from) {
+                if (System.currentTimeMillis() > deadline) {
+                    fail("Нет событий точки наблюдения");
+                }
+                Thread.yield();
+            }
+            assertSame(fOwner, listener.get());
+
+            fManager.setWatches(readMap, writeMap, null);
+            // Снятие выполнено владельцем между обращениями - событий больше нет
+            final int count = events.get();
+            fManager.execute(() -> { });
+            assertEquals(count, events.get());
+        }
+    }
+
+    /**
+     * Действия, оставшиеся в почтовом ящике, выполняются владельцем при освобождении памяти.
+     */
+    @Test
+    public void drainOnRelease() throws InterruptedException {
+        // Владелец не обрабатывает почтовый ящик - действие дождется освобождения памяти
+        startOwner(true);
+
+        final AtomicReference<Thread> executor = new AtomicReference<>();
+        final AtomicReference<Object> result   = new AtomicReference<>();
+        final Thread caller = new Thread(() -> result.set(fManager.call(() -> {
+            executor.set(Thread.currentThread());
+            return "done";
+        })));
+        caller.start();
+
+        // Вызывающий поток ждет выполнения действия
+        final long deadline = System.currentTimeMillis() + TIMEOUT;
+        while (caller.getState() != Thread.State.WAITING) {
+            if (System.currentTimeMillis() > deadline) {
+                fail("Действие не поставлено в почтовый ящик");
+            }
+            Thread.sleep(1);
+        }
+        assertNull(executor.get());
+
+        fOwner.finish();
+        caller.join(TIMEOUT);
+        assertFalse("Действие не выполнено при освобождении памяти", caller.isAlive());
+        assertSame(fOwner, executor.get());
+        assertEquals("done", result.get());
+        fOwner = null;
+    }
+
+    /**
+     * Владелец многократно захватывает и освобождает память, пока другие потоки вызывают call():
+     * каждый вызов завершается (действие выполняет владелец, освобождение памяти или сам вызывающий поток).
+     */
+    @Test
+    public void noLostCalls() throws InterruptedException {
+        final AtomicInteger counter = new AtomicInteger();
+        final List<Thread>  callers = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            final Thread caller = new Thread(() -> {
+                for (int k = 0; k < 2000; k++) {
+                    fManager.execute(counter::incrementAndGet);
+                }
+            });
+            caller.setDaemon(true);
+            callers.add(caller);
+            caller.start();
+        }
+        for (int cycle = 0; callers.stream().anyMatch(Thread::isAlive); cycle++) {
+            fOwner = new Owner((cycle & 1) != 0);
+            fOwner.start();
+            Thread.sleep(1);
+            fOwner.finish();
+            fOwner = null;
+            assertTrue("Вызовы call() не завершились", cycle < 100_000);
+        }
+        assertEquals(8000, counter.get());
+    }
+}
@@ -0,0 +1,179 @@
+package ru.avsh.specialist.mx.units.memory;
+
+import org.junit.Test;
+import ru.avsh.specialist.mx.units.types.MemoryUnit;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * Тест "Таблица страниц диспетчера запоминающих устройств" - сверка с эталоном (прежним линейным просмотром устройств).
+ * <p>
+ * На случайных картах памяти (устройства с началом и концом на границе страницы и внутри нее, перекрывающиеся
+ * устройства, устройства, не отвечающие на чтение части адресов) сверяются чтение, отладочное чтение, блочное чтение,
+ * порядок записи в устройства (запись получают все устройства, размещенные по адресу, в порядке начальных адресов)
+ * и события точек наблюдения - до установки точек наблюдения, с ними и после их снятия.
+ *
+ * @author -=AVSh=-
+ */
+public class MemoryManagerPagesTest {
+    // Количество случайных карт памяти и обращений на каждом этапе
+    private static final int MAPS     = 100;
+    private static final int ACCESSES = 10_000;
+
+    /**
+     * Класс "Тестовое устройство" - журналирует запись, часть адресов не отвечает на чтение/отладочное чтение.
+     */
+    private static final class TestUnit implements MemoryUnit {
+        private final int           fId   ;
+        private final byte[]        fData ;
+        private final int           fHoles; // Период адресов, не отвечающих на чтение (0 = отвечают все)
+        private final List<Integer> fLog ; // Журнал записи: номер устройства, адрес, байт
+
+        TestUnit(final int id, final int size, final int holes, final List<Integer> log) {
+            fId    = id   ;
+            fData  = new byte[size];
+            fHoles = holes;
+            fLog   = log  ;
+        }
+
+        @Override
+        public int storageSize() {
+            return fData.length;
+        }
+
+        @Override
+        public int readByte(final int address) {
+            return ((fHoles != 0) && (address % fHoles == 0)) ? -1 : fData[address] & 0xFF;
+        }
+
+        @Override
+        public int debugReadByte(final int address) {
+            // Отладочное чтение отличается от обычного, чтобы диспетчер не мог подменить одно другим
+            return ((fHoles != 0) && (address % fHoles == 1)) ? -1 : (fData[address] & 0xFF) ^ 0x5A;
+        }
+
+        @Override
+        public void writeByte(final int address, final int value) {
+            fData[address] = (byte) value;
+            fLog.add((fId << 24) | (address << 8) | value);
+        }
+    }
+
+    @Test
+    public void randomMaps() {
+        final Random random = new Random(1);
+        for (int map = 0; map < MAPS; map++) {
+            final List<Integer>          log      = new ArrayList<>();
+            final List<Integer>          refLog   = new ArrayList<>();
+            final MemoryManager          manager  = new MemoryManager();
+            final ReferenceMemoryManager ref      = new ReferenceMemoryManager();
+            for (int id = 0, count = random.nextInt(12) + 1; id < count; id++) {
+                final int start = random.nextBoolean() ? random.nextInt(0x1_0000)
+                        : (random.nextInt(0x100) << 8) | (random.nextBoolean() ? 0 : 0xC0);
+                final int size  = random.nextBoolean() ? random.nextInt(64) + 1 : random.nextInt(0x1_0000) + 1;
+                final int holes = (random.nextInt(4) == 0) ? random.nextInt(5) + 2 : 0;
+                manager.addMemoryUnit(start, new TestUnit(id, size, holes, log   ));
+                ref    .addMemoryUnit(start, new TestUnit(id, size, holes, refLog));
+            }
+
+            final int[]        readMap   = new int[0x800];
+            final int[]        writeMap  = new int[0x800];
+            final List<String> events    = new ArrayList<>();
+            final List<String> refEvents = new ArrayList<>();
+            for (int phase = 0; phase < 3; phase++) {
+                if (phase == 1) {
+                    for (int i = 0; i < 20; i++) {
+                        final int r = random.nextInt(0x1_0000);
+                        final int w = random.nextInt(0x1_0000);
+                        readMap [r >> 5] |= 1 << r;
+                        writeMap[w >> 5] |= 1 << w;
+                    }
+                    manager.setWatches(readMap, writeMap, (a, v, w) -> events   .add(a + "," + v + "," + w));
+                    ref    .setWatches(readMap, writeMap, (a, v, w) -> refEvents.add(a + "," + v + "," + w));
+                } else if (phase == 2) {
+                    manager.setWatches(readMap, writeMap, null);
+                    ref    .setWatches(readMap, writeMap, null);
+                }
+                for (int i = 0; i < ACCESSES; i++) {
+                    access(random, manager, ref, map, phase);
+                }
+                assertEquals(String.format("Запись: карта %d, этап %d", map, phase), refLog   , log   );
+                assertEquals(String.format("События: карта %d, этап %d", map, phase), refEvents, events);
+            }
+        }
+    }
+
+    /**
+     * Выполняет случайное обращение к памяти и сверяет результат с эталоном.
+     *
+     * @param random  генератор случайных чисел
+     * @param manager диспетчер
+     * @param ref     эталон
+     * @param map     номер карты памяти (для сообщения о расхождении)
+     * @param phase   номер этапа (для сообщения о расхождении)
+     */
+    private static void access(final Random random, final MemoryManager manager, final ReferenceMemoryManager ref,
+                               final int map, final int phase) {
+        // Изредка - адреса за пределами 64K
+        final int address = (random.nextInt(20) == 0) ? random.nextInt(0x2_0000) - 0x8000 : random.nextInt(0x1_0000);
+        final int value   = random.nextInt(0x100);
+        switch (random.nextInt(7)) {
+            case 0:
+            case 1:
+                manager.writeByte(address, value);
+                ref    .writeByte(address, value);
+                break;
+            case 2:
+                if (manager.debugReadByte(address) != ref.debugReadByte(address)) {
+                    fail(String.format("Отладочное чтение %04X: карта %d, этап %d", address, map, phase));
+                }
+                break;
+            case 3:
+                if (random.nextInt(10) == 0) {
+                    readBlock(random, manager, ref, map, phase);
+                }
+                break;
+            default:
+                if (manager.readByte(address) != ref.readByte(address)) {
+                    fail(String.format("Чтение %04X: карта %d, этап %d", address, map, phase));
+                }
+                break;
+        }
+    }
+
+    /**
+     * Сверяет блочное (или отладочное блочное) чтение с побайтным чтением эталона.
+     *
+     * @param random  генератор случайных чисел
+     * @param manager диспетчер
+     * @param ref     эталон
+     * @param map     номер карты памяти (для сообщения о расхождении)
+     * @param phase   номер этапа (для сообщения о расхождении)
+     */
+    private static void readBlock(final Random random, final MemoryManager manager, final ReferenceMemoryManager ref,
+                                  final int map, final int phase) {
+        final int     length  = random.nextInt(random.nextBoolean() ? 0x40 : 0x2000) + 1;
+        final int     address = random.nextInt(0x1_0000 - length + 1);
+        final boolean debug   = random.nextBoolean();
+        // Буферы с запасом по краям - блочное чтение не должно выходить за свою часть буфера
+        final byte[]  buffer  = new byte[length + 2];
+        final byte[]  expect  = new byte[length + 2];
+        if (debug) {
+            manager.debugReadBlock(address, buffer, 1, length);
+        } else {
+            manager.readBlock(address, buffer, 1, length);
+        }
+        for (int i = 0; i < length; i++) {
+            expect[1 + i] = (byte) (debug ? ref.debugReadByte(address + i) : ref.readByte(address + i));
+        }
+        if (!Arrays.equals(expect, buffer)) {
+            fail(String.format("Блок %04X, %d байт (отладочный - %b): карта %d, этап %d", address, length, debug, map, phase));
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package ru.avsh.specialist.mx.units.memory;
+
+import ru.avsh.specialist.mx.units.types.MemoryUnit;
+
+/**
+ * Класс "Эталонный диспетчер запоминающих устройств" для тестов.
+ * <p>
+ * Копия прежнего диспетчера (до таблицы страниц и таблиц прямого доступа): устройства хранятся в массивах,
+ * отсортированных по начальному адресу, и при каждом обращении просматриваются линейно. Точки наблюдения
+ * проверяются при каждом обращении к устройству, а не обертками. Блочное чтение выполняется побайтно, блочная запись -
+ * побайтно по устройствам: каждое устройство получает свою часть блока целиком (до следующего устройства).
+ *
+ * @author -=AVSh=-
+ */
+final class ReferenceMemoryManager {
+    private static final int STORAGE_SIZE      = 0x1_0000;
+    // Максимальное количество запоминающих устройств
+    private static final int MAX_STORAGE_UNITS = 50;
+
+    private final      int[][] fAddresses   = new     int[2][MAX_STORAGE_UNITS];
+    private final MemoryUnit[] fMemoryUnits = new MemoryUnit[MAX_STORAGE_UNITS];
+    private int fSize;
+
+    // Точки наблюдения (null = не установлены)
+    private int[] fReadMap;
+    private int[] fWriteMap;
+    private MemoryManager.AccessListener fListener;
+
+    /**
+     * Добавляет запоминающее устройство (устройства с нулевой длинной памяти и выходящие за границы
+     * диапазона адресов 64K не добавляются).
+     *
+     * @param startAddress начальный адрес размещения устройства
+     * @param memoryUnit   запоминающее устройство
+     */
+    void addMemoryUnit(final int startAddress, final MemoryUnit memoryUnit) {
+        if ((startAddress >= 0) && (startAddress < STORAGE_SIZE) && (memoryUnit != null)) {
+            final int endAddress = startAddress + memoryUnit.storageSize() - 1;
+            if ((endAddress >= startAddress) && (endAddress < STORAGE_SIZE)) {
+                add(startAddress, endAddress, memoryUnit);
+            }
+        }
+    }
+
+    private void add(final int startAddress, final int endAddress, final MemoryUnit memoryUnit) {
+        int index = 0;
+        for (; index < fSize; index++) {
+            if (fMemoryUnits[index].equals(memoryUnit) && (fAddresses[0][index] == startAddress)) {
+                break;
+            }
+        }
+        if ((fSize == index) && (fSize < MAX_STORAGE_UNITS)) {
+            for (index = 0; index < fSize; index++) {
+                if (fAddresses[0][index] > startAddress) {
+                    for (int i = fSize; i > index; i--) {
+                        fAddresses[0][i] = fAddresses[0][i - 1];
+                        fAddresses[1][i] = fAddresses[1][i - 1];
+                        fMemoryUnits [i] = fMemoryUnits [i - 1];
+                    }
+                    break;
+                }
+            }
+            fAddresses[0][index] = startAddress;
+            fAddresses[1][index] =   endAddress;
+            fMemoryUnits [index] =   memoryUnit;
+            fSize++;
+        }
+    }
+
+    /**
+     * Устанавливает/снимает точки наблюдения.
+     *
+     * @param readMap  битовая карта адресов, наблюдаемых при чтении
+     * @param writeMap битовая карта адресов, наблюдаемых при записи
+     * @param listener слушатель обращений (null = снять точки наблюдения)
+     */
+    void setWatches(final int[] readMap, final int[] writeMap, final MemoryManager.AccessListener listener) {
+        fReadMap  = readMap ;
+        fWriteMap = writeMap;
+        fListener = listener;
+    }
+
+    int readByte(final int address) {
+        for (int i = 0, startAddress; (i < fSize) && ((startAddress = fAddresses[0][i]) <= address); i++) {
+            if (fAddresses[1][i] >= address) {
+                final int value = fMemoryUnits[i].readByte(address - startAddress);
+                if (value != -1) {
+                    if ((fListener != null) && ((fReadMap[address >> 5] & (1 << address)) != 0)) {
+                        fListener.accessed(address, value & 0xFF, false);
+                    }
+                    return value & 0xFF;
+                }
+            }
+        }
+        return 0xFF;
+    }
+
+    int debugReadByte(final int address) {
+        for (int i = 0, startAddress; (i < fSize) && ((startAddress = fAddresses[0][i]) <= address); i++) {
+            if (fAddresses[1][i] >= address) {
+                final int value = fMemoryUnits[i].debugReadByte(address - startAddress);
+                if (value != -1) {
+                    return value & 0xFF;
+                }
+            }
+        }
+        return 0xFF;
+    }
+
+    int readWord(final int address) {
+        return readByte(address) | (readByte(address + 1) << 8);
+    }
+
+    void writeByte(final int address, final int value) {
+        for (int i = 0, startAddress; (i < fSize) && ((startAddress = fAddresses[0][i]) <= address); i++) {
+            if (fAddresses[1][i] >= address) {
+                fMemoryUnits[i].writeByte(address - startAddress, value & 0xFF);
+                if ((fListener != null) && ((fWriteMap[address >> 5] & (1 << address)) != 0)) {
+                    fListener.accessed(address, value & 0xFF, true);
+                }
+            }
+        }
+    }
+
+    void writeWord(final int address, final int word) {
+        writeByte(address, word);
+        writeByte(address + 1, word >> 8);
+    }
+
+    void writeBlock(final int address, final byte[] buffer, final int offset, final int length) {
+        final int endAddress = address + length - 1;
+        for (int i = 0, startAddress; (i < fSize) && ((startAddress = fAddresses[0][i]) <= endAddress); i++) {
+            if (fAddresses[1][i] >= address) {
+                final int from = Math.max(address   , startAddress     );
+                final int to   = Math.min(endAddress, fAddresses[1][i]);
+                for (int a = from; a <= to; a++) {
+                    final int value = buffer[offset + a - address] & 0xFF;
+                    fMemoryUnits[i].writeByte(a - startAddress, value);
+                    if ((fListener != null) && ((fWriteMap[a >> 5] & (1 << a)) != 0)) {
+                        fListener.accessed(a, value, true);
+                    }
+                }
+            }
+        }
+    }
+
+    void reset(final boolean clear) {
+        for (int i = 0; i < fSize; i++) {
+            fMemoryUnits[i].reset(clear);
+        }
+    }
+}